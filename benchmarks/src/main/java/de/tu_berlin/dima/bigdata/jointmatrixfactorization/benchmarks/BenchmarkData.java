@@ -0,0 +1,81 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.benchmarks;
+
+import java.util.Random;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactFloat;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This class builds the seeded input records of the benchmarks.
+ * The records are copied before they are handed out, so their fields are read from the binary representation
+ * as they are when a stub gets them from the runtime, and not from the objects they were set from.
+ */
+public final class BenchmarkData {
+
+	public static final long SEED = 42;
+
+	private BenchmarkData(){
+	}
+
+	/*
+	 * @return feature-vector with values uniform in [0, 1) / sqrt(rank), so dot products stay about the size of a rating
+	 */
+	public static PactFactorVector featureVector(Random random, int rank){
+		PactFactorVector featureVector = new PactFactorVector(rank);
+		double scale = 1 / Math.sqrt(rank);
+		for(int i = 0; i < rank; i ++){
+			featureVector.set(i, (float) (random.nextDouble() * scale));
+		}
+		return featureVector;
+	}
+
+	/*
+	 * @return rating between 1 and 5 in steps of 0.5
+	 */
+	public static float rating(Random random){
+		return 1 + random.nextInt(9) * 0.5f;
+	}
+
+	/*
+	 * @return (ID, feature-vector) as written by the feature-vector update
+	 */
+	public static PactRecord featureVectorRecord(int id, PactFactorVector featureVector){
+		PactRecord record = new PactRecord();
+		record.setField(0, new PactInteger(id));
+		record.setField(1, featureVector);
+		return record.createCopy();
+	}
+
+	/*
+	 * @return (userID, itemID, rating) as read by the RatingInputFormat
+	 */
+	public static PactRecord ratingRecord(int userID, int itemID, float rating){
+		PactRecord record = new PactRecord();
+		record.setField(0, new PactInteger(userID));
+		record.setField(1, new PactInteger(itemID));
+		record.setField(2, new PactFloat(rating));
+		return record.createCopy();
+	}
+
+	/*
+	 * @return (userID, itemID, rating, item-feature-vector) as assembled by the Joint
+	 */
+	public static PactRecord jointRecord(int userID, int itemID, float rating, PactFactorVector featureVector){
+		PactRecord record = new PactRecord();
+		record.setField(0, new PactInteger(userID));
+		record.setField(1, new PactInteger(itemID));
+		record.setField(2, new PactFloat(rating));
+		record.setField(3, featureVector);
+		return record.createCopy();
+	}
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+/*
+ * This class is the main class of the benchmarks.jar, it takes the usual JMH command line
+ * but always runs the GC profiler, so every throughput is reported with its allocation rate
+ * (gc.alloc.rate.norm in bytes per operation), and always writes the results as JSON.
+ * Results of two commits are compared by running the same benchmarks with -rff results/<commit>.json on both.
+ *
+ * Usage: java -jar benchmarks.jar ([regexp]) ([-rff results.json]) ([-p rank=10,50]) ([JMH options]...)
+ */
+public class BenchmarkRunner {
+
+	public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+	public static void main(String[] args) throws Exception{
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		if(commandLine.shouldHelp()){
+			commandLine.showHelp();
+			return;
+		}
+		if(commandLine.shouldList()){
+			new Runner(commandLine).list();
+			return;
+		}
+
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(commandLine);
+		if(!hasGcProfiler(commandLine)){
+			options.addProfiler(GCProfiler.class);
+		}
+		if(!commandLine.getResultFormat().hasValue()){
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		if(!commandLine.getResult().hasValue()){
+			options.result(DEFAULT_RESULT_FILE);
+		}
+		new Runner(options.build()).run();
+	}
+
+	private static boolean hasGcProfiler(CommandLineOptions commandLine){
+		for(ProfilerConfig profiler : commandLine.getProfilers()){
+			if("gc".equals(profiler.getKlass()) || GCProfiler.class.getName().equals(profiler.getKlass())){
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.benchmarks;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.type.PactRecord;
+
+/*
+ * This Collector hands every collected record to the Blackhole of the benchmark,
+ * so the work of a stub is not eliminated while nothing is serialized or buffered behind it.
+ * The Blackhole is set by the benchmark method, as it is only passed to the benchmark methods.
+ */
+public class BlackholeCollector implements Collector<PactRecord>{
+
+	private Blackhole blackhole;
+	private long count;
+
+	/*
+	 * @return this collector, consuming into the Blackhole
+	 */
+	public BlackholeCollector into(Blackhole blackhole){
+		this.blackhole = blackhole;
+		return this;
+	}
+
+	/*
+	 * @return number of records collected so far
+	 */
+	public long getCount(){
+		return count;
+	}
+
+	@Override
+	public void collect(PactRecord record) {
+		blackhole.consume(record);
+		count ++;
+	}
+
+	@Override
+	public void close() {
+	}
+
+}
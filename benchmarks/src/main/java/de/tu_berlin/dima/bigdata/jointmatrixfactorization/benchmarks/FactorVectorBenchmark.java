@@ -0,0 +1,87 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.benchmarks;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mahout.math.DenseVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactVector;
+
+/*
+ * This benchmark measures the write/read round-trip of one feature-vector, once as the PactFactorVector
+ * in every wire precision and once as the Mahout-backed PactVector it replaced, which allocates a new Vector per read
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FactorVectorBenchmark {
+
+	@Param({"10", "50", "100", "200"})
+	public int rank;
+
+	/*
+	 * Wire precision of the PactFactorVector, the PactVector always writes doubles
+	 */
+	@State(Scope.Benchmark)
+	public static class Precision {
+
+		@Param({"float", "half", "bf16"})
+		public String precision;
+	}
+
+	private final SerializationBuffer buffer = new SerializationBuffer();
+	private PactFactorVector factorVector;
+	private final PactFactorVector readFactorVector = new PactFactorVector();
+	private final PactVector vector = new PactVector();
+	private final PactVector readVector = new PactVector();
+
+	@Setup
+	public void setUp(){
+		Random random = new Random(BenchmarkData.SEED);
+		factorVector = BenchmarkData.featureVector(random, rank);
+		double[] values = new double[rank];
+		for(int i = 0; i < rank; i ++){
+			values[i] = factorVector.get(i);
+		}
+		vector.set(new DenseVector(values));
+	}
+
+	@Benchmark
+	public PactFactorVector factorVectorRoundTrip(Precision precision) throws IOException{
+		factorVector.setWirePrecision(PactFactorVector.parsePrecision(precision.precision));
+		buffer.write(factorVector);
+		buffer.read(readFactorVector);
+		return readFactorVector;
+	}
+
+	@Benchmark
+	public PactVector pactVectorRoundTrip() throws IOException{
+		buffer.write(vector);
+		buffer.read(readVector);
+		return readVector;
+	}
+
+}
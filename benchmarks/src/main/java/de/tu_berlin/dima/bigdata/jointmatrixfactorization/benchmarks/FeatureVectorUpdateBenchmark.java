@@ -0,0 +1,79 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.ConjugateGradientSolver;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.UserFeatureVectorUpdateReducer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.type.PactRecord;
+
+/*
+ * This benchmark measures one call of UserFeatureVectorUpdateReducer.reduce, which reads the joint records
+ * of one user and solves its feature-vector, for users of different degree (number of ratings) and ranks.
+ * The only allocation per call outside of the reducer is the Iterator over the records of the user.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeatureVectorUpdateBenchmark {
+
+	@Param({"10", "50", "100"})
+	public int rank;
+
+	@Param({"10", "100", "1000"})
+	public int degree;
+
+	@Param({ConjugateGradientSolver.CHOLESKY, ConjugateGradientSolver.CONJUGATE_GRADIENT})
+	public String solver;
+
+	private final UserFeatureVectorUpdateReducer reducer = new UserFeatureVectorUpdateReducer();
+	private final List<PactRecord> records = new ArrayList<PactRecord>();
+	private final BlackholeCollector collector = new BlackholeCollector();
+
+	@Setup
+	public void setUp() throws Exception{
+		Configuration parameters = new Configuration();
+		parameters.setInteger(Util.RANK_PARAMETER, rank);
+		parameters.setString(ConjugateGradientSolver.SOLVER_PARAMETER, solver);
+		reducer.open(parameters);
+
+		Random random = new Random(BenchmarkData.SEED);
+		for(int itemID = 1; itemID <= degree; itemID ++){
+			records.add(BenchmarkData.jointRecord(1, itemID, BenchmarkData.rating(random),
+					BenchmarkData.featureVector(random, rank)));
+		}
+	}
+
+	@Benchmark
+	public void reduce(Blackhole blackhole) throws Exception{
+		reducer.reduce(records.iterator(), collector.into(blackhole));
+	}
+
+}
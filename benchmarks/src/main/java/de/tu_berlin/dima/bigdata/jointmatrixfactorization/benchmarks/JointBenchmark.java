@@ -0,0 +1,61 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.Joint;
+import eu.stratosphere.pact.common.type.PactRecord;
+
+/*
+ * This benchmark measures how the Joint assembles one (userID, itemID, rating, feature-vector) record
+ * from a rating record and a feature-vector record
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JointBenchmark {
+
+	@Param({"10", "50", "100", "200"})
+	public int rank;
+
+	private final Joint joint = new Joint();
+	private PactRecord ratingRecord;
+	private PactRecord featureRecord;
+	private final BlackholeCollector collector = new BlackholeCollector();
+
+	@Setup
+	public void setUp(){
+		Random random = new Random(BenchmarkData.SEED);
+		ratingRecord = BenchmarkData.ratingRecord(1, 2, BenchmarkData.rating(random));
+		featureRecord = BenchmarkData.featureVectorRecord(2, BenchmarkData.featureVector(random, rank));
+	}
+
+	@Benchmark
+	public void match(Blackhole blackhole) throws Exception{
+		joint.match(ratingRecord, featureRecord, collector.into(blackhole));
+	}
+
+}
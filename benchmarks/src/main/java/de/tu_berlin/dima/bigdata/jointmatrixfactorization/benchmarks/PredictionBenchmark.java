@@ -0,0 +1,71 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.predict.PredictionCrosser;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
+import eu.stratosphere.pact.common.type.PactRecord;
+
+/*
+ * This benchmark measures the prediction of one (user, item) pair by the PredictionCrosser,
+ * which reads both feature-vectors from their records, and the bare dot product of the two feature-vectors
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PredictionBenchmark {
+
+	@Param({"10", "50", "100", "200"})
+	public int rank;
+
+	private final PredictionCrosser crosser = new PredictionCrosser();
+	private PactFactorVector userFeatureVector;
+	private PactFactorVector itemFeatureVector;
+	private PactRecord userRecord;
+	private PactRecord itemRecord;
+	private final BlackholeCollector collector = new BlackholeCollector();
+
+	@Setup
+	public void setUp(){
+		Random random = new Random(BenchmarkData.SEED);
+		userFeatureVector = BenchmarkData.featureVector(random, rank);
+		itemFeatureVector = BenchmarkData.featureVector(random, rank);
+		userRecord = BenchmarkData.featureVectorRecord(1, userFeatureVector);
+		itemRecord = BenchmarkData.featureVectorRecord(2, itemFeatureVector);
+	}
+
+	@Benchmark
+	public void cross(Blackhole blackhole) throws Exception{
+		crosser.cross(itemRecord, userRecord, collector.into(blackhole));
+	}
+
+	@Benchmark
+	public double dot(){
+		return userFeatureVector.dot(itemFeatureVector);
+	}
+
+}
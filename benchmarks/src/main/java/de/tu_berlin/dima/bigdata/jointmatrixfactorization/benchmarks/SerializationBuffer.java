@@ -0,0 +1,66 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import eu.stratosphere.pact.common.type.Value;
+
+/*
+ * This object writes a Value to a reused byte array and reads it back from there,
+ * so a round-trip allocates nothing but what the Value itself allocates
+ */
+public class SerializationBuffer {
+
+	private static final class Output extends ByteArrayOutputStream {
+		byte[] buffer(){
+			return buf;
+		}
+	}
+
+	private static final class Input extends ByteArrayInputStream {
+		Input(){
+			super(new byte[0]);
+		}
+
+		void reset(byte[] bytes, int length){
+			buf = bytes;
+			pos = 0;
+			mark = 0;
+			count = length;
+		}
+	}
+
+	private final Output output = new Output();
+	private final DataOutputStream dataOutput = new DataOutputStream(output);
+	private final Input input = new Input();
+	private final DataInputStream dataInput = new DataInputStream(input);
+
+	/*
+	 * Replaces the content of the buffer with the value
+	 * @return number of bytes written
+	 */
+	public int write(Value value) throws IOException{
+		output.reset();
+		value.write(dataOutput);
+		return output.size();
+	}
+
+	/*
+	 * Reads the value last written from the start of the buffer
+	 */
+	public void read(Value value) throws IOException{
+		input.reset(output.buffer(), output.size());
+		value.read(dataInput);
+	}
+
+}
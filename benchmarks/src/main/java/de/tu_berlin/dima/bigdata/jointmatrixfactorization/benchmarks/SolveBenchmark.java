@@ -0,0 +1,82 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.ConjugateGradientSolver;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.NormalEquations;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+
+/*
+ * This benchmark measures the solve of one normal equation whose ratings were added beforehand,
+ * with the Cholesky decomposition of the NormalEquations, which replaced Mahout's AlternatingLeastSquaresSolver,
+ * and with the steps of the ConjugateGradientSolver started from zero as in the plan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolveBenchmark {
+
+	@Param({"10", "50", "100", "200"})
+	public int rank;
+
+	@Param({"10", "100", "1000"})
+	public int degree;
+
+	private NormalEquations normalEquations;
+	private ConjugateGradientSolver conjugateGradient;
+	private double[] solution;
+
+	@Setup
+	public void setUp(){
+		normalEquations = new NormalEquations(rank);
+		conjugateGradient = new ConjugateGradientSolver(rank, ConjugateGradientSolver.DEFAULT_ITERATIONS,
+				ConjugateGradientSolver.DEFAULT_TOLERANCE);
+		solution = new double[rank];
+		Random random = new Random(BenchmarkData.SEED);
+		for(int i = 0; i < degree; i ++){
+			PactFactorVector featureVector = BenchmarkData.featureVector(random, rank);
+			float rating = BenchmarkData.rating(random);
+			normalEquations.add(featureVector.getValues(), 0, rating);
+			conjugateGradient.add(featureVector.getValues(), 0, rating);
+		}
+	}
+
+	@Benchmark
+	public double[] cholesky(){
+		normalEquations.solve(Util.lambda, solution);
+		return solution;
+	}
+
+	@Benchmark
+	public double[] conjugateGradient(){
+		Arrays.fill(solution, 0);
+		conjugateGradient.solve(Util.lambda, solution);
+		return solution;
+	}
+
+}
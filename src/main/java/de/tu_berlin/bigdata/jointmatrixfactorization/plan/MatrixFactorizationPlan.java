@@ -7,38 +7,96 @@
 
 package de.tu_berlin.bigdata.jointmatrixfactorization.plan;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.dictionary.ExternalIdMapper;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.dictionary.IdDictionary;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.evaluation.ErrorMetricReducer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.evaluation.ErrorMetrics;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.evaluation.PairErrorMapper;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.InitItemFeatureVectorInputFormat;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingInputFormat;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingStoreInputFormat;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.local.CrossValidation;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.local.LocalAlsTrainer;
 import de.tu_berlin.dima.bigdata.jointmatrixfactorization.mapper.InitItemFeatureVectorReducer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorModel;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.ModelOutputFormat;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.ModelSideMapper;
 import de.tu_berlin.dima.bigdata.jointmatrixfactorization.mapper.TuppleMapper;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.predict.PairScoreMatcher;
 import de.tu_berlin.dima.bigdata.jointmatrixfactorization.predict.PredictionCrosser;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.recommend.FactorBlockAssignMapper;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.recommend.FactorBlockReducer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.recommend.RatedItemsMatcher;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.recommend.TopKCrosser;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.recommend.TopKMergeReducer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.BlockAssignMapper;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.BlockFeatureVectorUpdateCoGroup;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.ConjugateGradientSolver;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.ConvergenceReducer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.DegreeReducer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.FactorDeltaMatcher;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.FactorGramianMapper;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.FactorRoutingMatcher;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.GramianSolveReducer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.HotKeyTagMatcher;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.ImplicitSolveCrosser;
 import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.ItemFeatureVectorUpdateReducer;
 import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.Joint;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.PartialGramianJoint;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.PartialGramianReducer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.RatingBlockReducer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.RoutingTableReducer;
 import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.UserFeatureVectorUpdateReducer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.FeatureInitializer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.PlanOptions;
 import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.pact.common.contract.CoGroupContract;
+import eu.stratosphere.pact.common.contract.Contract;
 import eu.stratosphere.pact.common.contract.CrossContract;
 import eu.stratosphere.pact.common.contract.FileDataSink;
 import eu.stratosphere.pact.common.contract.FileDataSource;
+import eu.stratosphere.pact.common.contract.GenericDataSource;
 import eu.stratosphere.pact.common.contract.MapContract;
 import eu.stratosphere.pact.common.contract.MatchContract;
 import eu.stratosphere.pact.common.contract.ReduceContract;
 import eu.stratosphere.pact.common.io.RecordOutputFormat;
-import eu.stratosphere.pact.common.io.TextInputFormat;
 import eu.stratosphere.pact.common.plan.Plan;
 import eu.stratosphere.pact.common.plan.PlanAssembler;
 import eu.stratosphere.pact.common.plan.PlanAssemblerDescription;
+import eu.stratosphere.pact.common.type.Key;
+import eu.stratosphere.pact.common.type.base.PactDouble;
 import eu.stratosphere.pact.common.type.base.PactFloat;
 import eu.stratosphere.pact.common.type.base.PactInteger;
+import eu.stratosphere.pact.common.type.base.PactLong;
+import eu.stratosphere.pact.generic.contract.BulkIteration;
 
 /*
  * This Class is the the "plan" class of this project.
  */
 public class MatrixFactorizationPlan implements PlanAssembler, PlanAssemblerDescription{
 	
-	private final int numIterations = 50;
+	/*
+	 * Defaults of the optional job parameters
+	 */
+	public static final int DEFAULT_NUM_ITERATIONS = 50;
+	public static final double DEFAULT_CONVERGENCE_THRESHOLD = 0.0;
+	public static final int DEFAULT_HOT_KEY_DEGREE = 1000;
+	public static final int DEFAULT_NUM_SALTS = 8;
+	public static final int DEFAULT_NUM_RECOMMENDATION_BLOCKS = 16;
 	
-	private final MatchContract userFeatureVectorUpdateJoints[] = new MatchContract[numIterations];
-	private final MatchContract itemFeatureVectorUpdateJoints[] = new MatchContract[numIterations];
-	private final ReduceContract userFeatureVectorUpdateReducers[] = new ReduceContract[numIterations];
-	private final ReduceContract itemFeatureVectorUpdateReducers[] = new ReduceContract[numIterations];
+	/*
+	 * Rank and wire precision of the feature-vectors of the plan being built
+	 */
+	private int rank = Util.numFeatures;
+	private String precision = "float";
+	private double lambda = Util.lambda;
+	private String solver = ConjugateGradientSolver.CHOLESKY;
+	private int cgIterations = ConjugateGradientSolver.DEFAULT_ITERATIONS;
+	private double cgTolerance = ConjugateGradientSolver.DEFAULT_TOLERANCE;
 	
 	  /*
 	   * This method defines how the data would be operated.
@@ -46,130 +104,644 @@ public class MatrixFactorizationPlan implements PlanAssembler, PlanAssemblerDesc
 	   * @param args(0) Path to input file
 	   * @param args(1) Path to output file
 	   * @param args(2) Number of subtasks to specify parallelism
+	   * @param iterations=N Maximum number of ALS rounds
+	   * @param threshold=T Stop as soon as the root mean squared change of the item-feature-vectors
+	   *                    in one round is not above T, 0 always runs all rounds
+	   * @param blocks=B Run blocked ALS with B user blocks and B item blocks, 0 runs ALS per rating
+	   * @param gramians=true Solve from combinable partial sums of the normal equations
+	   * @param hotdegree=D In gramians mode, spread the partial sums of keys with more than D ratings
+	   * @param salts=S over S reducers
+	   * @param implicit=true Implicit-feedback ALS: the ratings are confidences c = 1 + alpha * r of the preference 1,
+	   *                      Y'Y of the opposite side is summed up once per half-step and crossed with the
+	   *                      per-key corrections, hotdegree and salts apply, blocks and gramians are ignored
+	   * @param alpha=A In implicit mode, the confidence weight of a rating
+	   * @param lambda=L Regularization of the normal equations
+	   * @param solver=cholesky|cg Solve the normal equations exactly or with conjugate gradient steps,
+	   *                           which only multiply with the observed feature-vectors and pay off at a high rank.
+	   *                           In the plan only ALS per rating uses them, starting from zero,
+	   *                           the local engine starts them from the previous feature-vector of the key
+	   * @param cgiterations=N Maximum number of conjugate gradient steps per key
+	   * @param cgtolerance=T Stop the steps once the residual is below T times the norm of the right hand side
+	   * @param rank=K Number of features of the feature-vectors
+	   * @param precision=float|half|bf16 Wire precision of the feature-vectors
+	   * @param store=DIR Read the ratings from the binary rating store in DIR, written by RatingStoreConverter,
+	   *                  instead of parsing the input file
+	   * @param dictionary=DIR Map the external IDs to dense internal IDs with the dictionary in DIR,
+	   *                       written by IdDictionaryBuilder, and map the results back to the external IDs
+	   * @param topk=K Output only the K best items of every user instead of all predictions
+	   * @param exclude=true In topk mode, do not recommend items the user rated in the input
+	   * @param recblocks=B In topk mode, score B user blocks against B item blocks
+	   * @param pairs=PATH Score only the (user, item[, rating]) pairs in PATH instead of all predictions,
+	   *                   RMSE and MAE of the pairs with a rating are written to the metrics sink
+	   * @param metrics=PATH Path of the metrics sink, the output path with ".metrics" by default
+	   * @param model=PATH Also write the final feature-vectors as a binary model file to PATH, loaded by the FactorModel
+	   * @param seed=S Seed of the random initial feature-vectors, the vector of an ID is the same in every run
+	   * @param warmstart=PATH Start from the feature-vectors of the previous model file in PATH,
+	   *                       only IDs which are not in it get a random initial feature-vector
+	   * @param engine=local Only read by main: train with the multi-threaded LocalAlsTrainer in this JVM
+	   *                     instead of running the plan, numSubtasks is the number of threads then,
+	   *                     trainer=sgd trains with lock-free parallel SGD instead, see LocalAlsTrainer.run
+	   * @param folds=K Only read by main: run a K-fold CrossValidation of the local engine on the input
+	   *                instead of training once, the folds are trained at the same time
 	   */
 	@Override
 	public String getDescription() {
-		return "Usage: [inputPath] [outputPath] ([numSubtasks])";
+		return "Usage: [inputPath] [outputPath] ([numSubtasks]) ([iterations=N]) ([threshold=T]) ([blocks=B])"
+				+ " ([gramians=true] [hotdegree=D] [salts=S]) ([implicit=true] [alpha=A]) ([lambda=L]) ([solver=cholesky|cg] [cgiterations=N] [cgtolerance=T]) ([rank=K]) ([precision=float|half|bf16]) ([store=DIR]) ([dictionary=DIR])"
+				+ " ([topk=K] [exclude=true] [recblocks=B]) ([pairs=PATH] [metrics=PATH]) ([model=PATH]) ([seed=S] [warmstart=PATH])"
+				+ " ([engine=plan|local])";
 	}
 	@Override
 	public Plan getPlan(String... args) {
 		String inputPath = args.length >= 1 ? args[0] : "";
 		String outputPath = args.length >= 2 ? args[1] : "";
-		int numSubtasks = args.length >= 3 ? Integer.parseInt(args[2]) : 1;
-
-		FileDataSource source = new FileDataSource(new TextInputFormat(), inputPath, "Input Documents");
+		int numSubtasks = args.length >= 3 && args[2].indexOf('=') < 0 ? Integer.parseInt(args[2]) : 1;
+		PlanOptions options = new PlanOptions(args);
+		int numIterations = options.getInt("iterations", DEFAULT_NUM_ITERATIONS);
+		double convergenceThreshold = options.getDouble("threshold", DEFAULT_CONVERGENCE_THRESHOLD);
+		int numBlocks = options.getInt("blocks", 0);
+		boolean usePartialGramians = options.getBoolean("gramians", false);
+		int hotKeyDegree = options.getInt("hotdegree", DEFAULT_HOT_KEY_DEGREE);
+		int numSalts = options.getInt("salts", DEFAULT_NUM_SALTS);
+		boolean implicit = options.getBoolean("implicit", false);
+		double alpha = options.getDouble("alpha", Util.alpha);
+		lambda = options.getDouble("lambda", Util.lambda);
+		solver = options.getString("solver", ConjugateGradientSolver.CHOLESKY);
+		cgIterations = options.getInt("cgiterations", ConjugateGradientSolver.DEFAULT_ITERATIONS);
+		cgTolerance = options.getDouble("cgtolerance", ConjugateGradientSolver.DEFAULT_TOLERANCE);
+		rank = options.getInt("rank", Util.numFeatures);
+		precision = options.getString("precision", "float");
+		String storePath = options.getString("store", null);
+		String dictionaryPath = options.getString("dictionary", null);
+		int topK = options.getInt("topk", 0);
+		boolean excludeRated = options.getBoolean("exclude", false);
+		int numRecommendationBlocks = options.getInt("recblocks", DEFAULT_NUM_RECOMMENDATION_BLOCKS);
+		String pairsPath = options.getString("pairs", null);
+		String modelPath = options.getString("model", null);
+		String seed = options.getString("seed", String.valueOf(FeatureInitializer.DEFAULT_SEED));
+		String warmStartPath = options.getString("warmstart", null);
 
 		System.out.println("Processing.. start iteration..");
 		
-		MapContract tuppleMapper = MapContract
-				.builder(TuppleMapper.class).input(source)
-				.name("Rating Tupple Mapper").build();
+		Contract ratings;
+		if(storePath != null){
+		    /*
+		     * The store is already parsed and validated, the ratings are mapped directly
+		     */
+			GenericDataSource<RatingStoreInputFormat> storeSource = new GenericDataSource<RatingStoreInputFormat>(
+					RatingStoreInputFormat.class, "Rating Store");
+			storeSource.setParameter(RatingStoreInputFormat.STORE_PATH_PARAMETER, storePath);
+			storeSource.setParameter(RatingStoreInputFormat.NUM_SPLITS_PARAMETER, numSubtasks);
+			ratings = storeSource;
+		}else{
+			FileDataSource source = new FileDataSource(RatingInputFormat.class, inputPath, "Input Ratings");
+			if(dictionaryPath != null){
+				source.setParameter(IdDictionary.DICTIONARY_PATH_PARAMETER, dictionaryPath);
+			}
+			ratings = MapContract
+					.builder(TuppleMapper.class).input(source)
+					.name("Rating Tupple Mapper").build();
+		}
 
 	    /*
-	     * Initialize item-feature-vectors with random value
+	     * Initialize the item-feature-vectors, seeded per itemID or from the previous model.
+	     * The distinct items are known from the rating store or the dictionary without a pass over the ratings,
+	     * otherwise they are found by a combinable reduce which shuffles one record per item and partition
 	     */
-		ReduceContract initItemFeatureVectorReducer = ReduceContract
-				.builder(InitItemFeatureVectorReducer.class, PactInteger.class, 1)
-				.input(tuppleMapper).name("Init Item Feature Vector Reducer").build();
-		
+		Contract initItemFeatureVectors;
+		if(storePath != null || dictionaryPath != null){
+			GenericDataSource<InitItemFeatureVectorInputFormat> initSource = new GenericDataSource<InitItemFeatureVectorInputFormat>(
+					InitItemFeatureVectorInputFormat.class, "Init Item Feature Vector Source");
+			if(storePath != null){
+				initSource.setParameter(RatingStoreInputFormat.STORE_PATH_PARAMETER, storePath);
+			}
+			initSource.setParameter(InitItemFeatureVectorInputFormat.NUM_SPLITS_PARAMETER, numSubtasks);
+			initItemFeatureVectors = initSource;
+		}else{
+			initItemFeatureVectors = ReduceContract
+					.builder(InitItemFeatureVectorReducer.class, PactInteger.class, 1)
+					.input(ratings).name("Init Item Feature Vector Reducer").build();
+		}
+		setFactorParameters(initItemFeatureVectors);
+		initItemFeatureVectors.setParameter(FeatureInitializer.SEED_PARAMETER, seed);
+		if(warmStartPath != null){
+			initItemFeatureVectors.setParameter(FeatureInitializer.WARM_START_PARAMETER, warmStartPath);
+		}
+		if(dictionaryPath != null){
+			initItemFeatureVectors.setParameter(IdDictionary.DICTIONARY_PATH_PARAMETER, dictionaryPath);
+		}
 		
 	    /*
-	     * Learn the user-feature-vectors with initialized item-feature-vectors
+	     * Alternative-Least-Sqaure (ALS) learning as a bulk iteration over the item-feature-vectors.
+	     * One round updates all user-feature-vectors from the item-feature-vectors of the previous round
+	     * and then all item-feature-vectors from these user-feature-vectors.
+	     * The ratings are produced outside of the loop, so they are loop-invariant
+	     * and are not re-read or re-shuffled in every round
 	     */
-		userFeatureVectorUpdateJoints[0] = MatchContract
-				.builder(Joint.class, PactInteger.class, 1, 0)
-				.input1(tuppleMapper)
-				.input2(initItemFeatureVectorReducer)
-				.name("user Feature Vector Update Joint 0")
-				.build();
-		
-		userFeatureVectorUpdateReducers[0] = ReduceContract
-				.builder(UserFeatureVectorUpdateReducer.class, PactInteger.class, 0)
-				.input(userFeatureVectorUpdateJoints[0])
-				.name("user Feature Vector Update Reducer 0")
-				.build();
+		BulkIteration iteration = new BulkIteration("ALS Iteration");
+		iteration.setInput(initItemFeatureVectors);
+		iteration.setMaximumNumberOfIterations(numIterations);
 		
+		Contract itemFeatureVectorUpdateReducer;
+		Contract finalUserFeatureVectorUpdateReducer;
+		if(implicit){
+		    /*
+		     * Implicit-feedback ALS: the ratings are tagged with salts like in partial Gramian ALS,
+		     * each half-step sums up Y'Y of the opposite side once and only the corrections of the ratings per key
+		     */
+			ReduceContract userDegreeReducer = degree(ratings, Util.USER_ID_POS, "user");
+			ReduceContract itemDegreeReducer = degree(ratings, Util.ITEM_ID_POS, "item");
+			MatchContract userTaggedRatings = hotKeyTag(ratings, userDegreeReducer,
+					Util.USER_ID_POS, Util.USER_SALT_POS, hotKeyDegree, numSalts, "user");
+			MatchContract taggedRatings = hotKeyTag(userTaggedRatings, itemDegreeReducer,
+					Util.ITEM_ID_POS, Util.ITEM_SALT_POS, hotKeyDegree, numSalts, "item");
+			
+			CrossContract userImplicitSolveCrosser = implicitFeatureVectorUpdate(taggedRatings, iteration.getPartialSolution(),
+					Util.USER_ID_POS, Util.USER_SALT_POS, alpha, "user", "");
+			itemFeatureVectorUpdateReducer = implicitFeatureVectorUpdate(taggedRatings, userImplicitSolveCrosser,
+					Util.ITEM_ID_POS, Util.ITEM_SALT_POS, alpha, "item", "");
+			iteration.setNextPartialSolution(itemFeatureVectorUpdateReducer);
+			
+			finalUserFeatureVectorUpdateReducer = implicitFeatureVectorUpdate(taggedRatings, iteration,
+					Util.USER_ID_POS, Util.USER_SALT_POS, alpha, "user", " Final");
+		}else if(numBlocks > 0){
+		    /*
+		     * Blocked ALS: the ratings are partitioned into user blocks and item blocks once,
+		     * the routing tables list which blocks need the feature-vector of a user or item,
+		     * so every feature-vector is sent to each consuming block only once per round
+		     */
+			MapContract blockAssignMapper = MapContract
+					.builder(BlockAssignMapper.class).input(ratings)
+					.name("Block Assign Mapper").build();
+			blockAssignMapper.setParameter(BlockAssignMapper.NUM_BLOCKS_PARAMETER, numBlocks);
+			
+			ReduceContract userRatingBlocks = ratingBlocks(blockAssignMapper, Util.USER_ID_POS, Util.USER_BLOCK_POS, "user");
+			ReduceContract itemRatingBlocks = ratingBlocks(blockAssignMapper, Util.ITEM_ID_POS, Util.ITEM_BLOCK_POS, "item");
+			ReduceContract userRoutingTable = routingTable(blockAssignMapper, Util.USER_ID_POS, Util.ITEM_BLOCK_POS, numBlocks, "user");
+			ReduceContract itemRoutingTable = routingTable(blockAssignMapper, Util.ITEM_ID_POS, Util.USER_BLOCK_POS, numBlocks, "item");
+			
+			CoGroupContract userFeatureVectorUpdateCoGroup = blockedFeatureVectorUpdate(userRatingBlocks, itemRoutingTable, iteration.getPartialSolution(), "user", "");
+			itemFeatureVectorUpdateReducer = blockedFeatureVectorUpdate(itemRatingBlocks, userRoutingTable, userFeatureVectorUpdateCoGroup, "item", "");
+			iteration.setNextPartialSolution(itemFeatureVectorUpdateReducer);
+			
+			finalUserFeatureVectorUpdateReducer = blockedFeatureVectorUpdate(userRatingBlocks, itemRoutingTable, iteration, "user", " Final");
+		}else if(usePartialGramians){
+		    /*
+		     * Partial Gramian ALS: the ratings are tagged with the salts of their user and item once,
+		     * each round combines the partial sums of the normal equations on the sender side
+		     * and the partial sums of hot keys are built by several reducers before the final solve
+		     */
+			ReduceContract userDegreeReducer = degree(ratings, Util.USER_ID_POS, "user");
+			ReduceContract itemDegreeReducer = degree(ratings, Util.ITEM_ID_POS, "item");
+			MatchContract userTaggedRatings = hotKeyTag(ratings, userDegreeReducer,
+					Util.USER_ID_POS, Util.USER_SALT_POS, hotKeyDegree, numSalts, "user");
+			MatchContract taggedRatings = hotKeyTag(userTaggedRatings, itemDegreeReducer,
+					Util.ITEM_ID_POS, Util.ITEM_SALT_POS, hotKeyDegree, numSalts, "item");
+			
+			ReduceContract userGramianSolveReducer = gramianFeatureVectorUpdate(taggedRatings, iteration.getPartialSolution(),
+					Util.USER_ID_POS, Util.USER_SALT_POS, "user", "");
+			itemFeatureVectorUpdateReducer = gramianFeatureVectorUpdate(taggedRatings, userGramianSolveReducer,
+					Util.ITEM_ID_POS, Util.ITEM_SALT_POS, "item", "");
+			iteration.setNextPartialSolution(itemFeatureVectorUpdateReducer);
+			
+			finalUserFeatureVectorUpdateReducer = gramianFeatureVectorUpdate(taggedRatings, iteration,
+					Util.USER_ID_POS, Util.USER_SALT_POS, "user", " Final");
+		}else{
+			ReduceContract userFeatureVectorUpdateReducer = userFeatureVectorUpdate(ratings, iteration.getPartialSolution(), "");
+			itemFeatureVectorUpdateReducer = itemFeatureVectorUpdate(ratings, userFeatureVectorUpdateReducer, "");
+			iteration.setNextPartialSolution(itemFeatureVectorUpdateReducer);
+			
+		    /*
+		     * Learn the final user-feature-vectors from the final item-feature-vectors
+		     */
+			finalUserFeatureVectorUpdateReducer = userFeatureVectorUpdate(ratings, iteration, " Final");
+		}
 		
 	    /*
-	     * Continue to Alternative-Least-Sqaure (ALS) learning with numIter iterations
+	     * Stop the iteration once the item-feature-vectors do not change any more
 	     */
-		for(int i = 1; i < numIterations; i ++){
+		if(convergenceThreshold > 0){
+			MatchContract factorDeltaMatcher = MatchContract
+					.builder(FactorDeltaMatcher.class, PactInteger.class, 0, 0)
+					.input1(itemFeatureVectorUpdateReducer)
+					.input2(iteration.getPartialSolution())
+					.name("Item Feature Vector Delta Matcher")
+					.build();
+			ReduceContract convergenceReducer = ReduceContract
+					.builder(ConvergenceReducer.class)
+					.input(factorDeltaMatcher)
+					.name("Convergence Reducer")
+					.build();
+			convergenceReducer.setParameter(ConvergenceReducer.THRESHOLD_PARAMETER, String.valueOf(convergenceThreshold));
+			iteration.setTerminationCriterion(convergenceReducer);
+		}
+		
+		List<FileDataSink> sinks = new ArrayList<FileDataSink>();
+		Contract predictions;
+		if(pairsPath != null){
 		    /*
-		     * Learn the item-feature-vectors with user-feature-vectors
+		     * Score only the requested pairs: each pair is joined to its user- and its item-feature-vector,
+		     * the errors of the pairs with a rating are summed up to RMSE and MAE in the job
 		     */
-			itemFeatureVectorUpdateJoints[i-1] = MatchContract
+			FileDataSource pairSource = new FileDataSource(RatingInputFormat.class, pairsPath, "Input Pairs");
+			pairSource.setParameter(RatingInputFormat.RATING_OPTIONAL_PARAMETER, true);
+			if(dictionaryPath != null){
+				pairSource.setParameter(IdDictionary.DICTIONARY_PATH_PARAMETER, dictionaryPath);
+			}
+			MatchContract pairUserJoint = MatchContract
 					.builder(Joint.class, PactInteger.class, 0, 0)
-					.input1(tuppleMapper)
-					.input2(userFeatureVectorUpdateReducers[0])
-					.name("item Feature Vector Update Joint " + (i-1))
+					.input1(pairSource)
+					.input2(finalUserFeatureVectorUpdateReducer)
+					.name("Pair User Joint")
 					.build();
-			itemFeatureVectorUpdateReducers[i-1] = ReduceContract
-					.builder(ItemFeatureVectorUpdateReducer.class, PactInteger.class, 1)
-					.input(itemFeatureVectorUpdateJoints[i-1])
-					.name("item Feature Vector Update Reducer " + (i-1))
+			MatchContract pairScoreMatcher = MatchContract
+					.builder(PairScoreMatcher.class, PactInteger.class, 1, 0)
+					.input1(pairUserJoint)
+					.input2(iteration)
+					.name("Pair Score Matcher")
 					.build();
+			predictions = pairScoreMatcher;
 			
-			userFeatureVectorUpdateJoints[i] = MatchContract
-					.builder(Joint.class, PactInteger.class, 1, 0)
-					.input1(tuppleMapper)
-					.input2(itemFeatureVectorUpdateReducers[i-1])
-					.name("user Feature Vector Update Joint " + i)
+			MapContract pairErrorMapper = MapContract
+					.builder(PairErrorMapper.class).input(pairScoreMatcher)
+					.name("Pair Error Mapper").build();
+			ReduceContract errorMetricReducer = ReduceContract
+					.builder(ErrorMetricReducer.class)
+					.input(pairErrorMapper)
+					.name("Error Metric Reducer")
 					.build();
+			FileDataSink metricsSink = new FileDataSink(RecordOutputFormat.class, metricsPath(outputPath, options),
+					errorMetricReducer, "Error Metrics");
+			RecordOutputFormat.configureRecordFormat(metricsSink)
+				.recordDelimiter('\n')
+				.fieldDelimiter(' ')
+				.field(PactDouble.class, 0)
+				.field(PactDouble.class, 1)
+				.field(PactLong.class, 2);
+			metricsSink.setDegreeOfParallelism(1);
+			sinks.add(metricsSink);
+		}else if(topK > 0){
+		    /*
+		     * Recommend the top-K items of every user: user blocks are scored against item blocks
+		     * and only the best K items of each pair of blocks leave the cross
+		     */
+			ReduceContract userFactorBlocks = factorBlocks(finalUserFeatureVectorUpdateReducer, numRecommendationBlocks, "user");
+			ReduceContract itemFactorBlocks = factorBlocks(iteration, numRecommendationBlocks, "item");
+			Contract userBlocks = userFactorBlocks;
+			if(excludeRated){
+				MapContract blockAssignMapper = MapContract
+						.builder(BlockAssignMapper.class).input(ratings)
+						.name("Recommendation Block Assign Mapper").build();
+				blockAssignMapper.setParameter(BlockAssignMapper.NUM_BLOCKS_PARAMETER, numRecommendationBlocks);
+				ReduceContract userRatingBlocks = ratingBlocks(blockAssignMapper, Util.USER_ID_POS, Util.USER_BLOCK_POS, "recommendation user");
+				userBlocks = MatchContract
+						.builder(RatedItemsMatcher.class, PactInteger.class, 0, 0)
+						.input1(userFactorBlocks)
+						.input2(userRatingBlocks)
+						.name("Rated Items Matcher")
+						.build();
+			}
 			
-			userFeatureVectorUpdateReducers[i] = ReduceContract
-					.builder(UserFeatureVectorUpdateReducer.class, PactInteger.class, 0)
-					.input(userFeatureVectorUpdateJoints[i])
-					.name("user Feature Vector Update Reducer " + i)
+			CrossContract topKCrosser = CrossContract.builder(TopKCrosser.class)
+					.input1(userBlocks)
+					.input2(itemFactorBlocks)
+					.name("Top-K Crosser")
 					.build();
+			topKCrosser.setParameter(TopKCrosser.TOP_K_PARAMETER, topK);
+			topKCrosser.setParameter(TopKCrosser.EXCLUDE_RATED_PARAMETER, excludeRated);
 			
+			ReduceContract topKMergeReducer = ReduceContract
+					.builder(TopKMergeReducer.class, PactInteger.class, 0)
+					.input(topKCrosser)
+					.name("Top-K Merge Reducer")
+					.build();
+			topKMergeReducer.setParameter(TopKCrosser.TOP_K_PARAMETER, topK);
+			predictions = topKMergeReducer;
+		}else{
+		    /*
+		     * Use learned user- and item-feature-vectors to do the prediction of rating
+		     */
+			predictions = CrossContract.builder(PredictionCrosser.class)
+					.input1(iteration)
+					.input2(finalUserFeatureVectorUpdateReducer)
+					.name("Predict Crosser")
+					.build();
 		}
 		
-		itemFeatureVectorUpdateJoints[numIterations-1] = MatchContract
-				.builder(Joint.class, PactInteger.class, 0, 0)
-				.input1(tuppleMapper)
-				.input2(userFeatureVectorUpdateReducers[numIterations-1])
-				.name("item Feature Vector Update Joint " + (numIterations-1))
-				.build();
-		itemFeatureVectorUpdateReducers[numIterations-1] = ReduceContract
-				.builder(ItemFeatureVectorUpdateReducer.class, PactInteger.class, 1)
-				.input(itemFeatureVectorUpdateJoints[numIterations-1])
-				.name("item Feature Vector Update Reducer " + (numIterations-1))
-				.build();
-		
 	    /*
-	     * Use learned user- and item-feature-vectors to do the prediction of rating
+	     * Put the predicted-rating result to output stream, with the external IDs if a dictionary is used
 	     */
-		CrossContract predictCrosser = CrossContract.builder(PredictionCrosser.class)
-				.input1(itemFeatureVectorUpdateReducers[numIterations-1])
-				.input2(userFeatureVectorUpdateReducers[numIterations-1])
-				.name("Predict Crosser")
-				.build();
-		
-	    /*
-	     * Put the predicted-rating result to output stream
-	     */
-		FileDataSink sink = new FileDataSink(RecordOutputFormat.class, outputPath, predictCrosser, "Rating Prediction");
+		Class<? extends Key> idClass = PactInteger.class;
+		if(dictionaryPath != null){
+			MapContract externalIdMapper = MapContract
+					.builder(ExternalIdMapper.class).input(predictions)
+					.name("External ID Mapper").build();
+			externalIdMapper.setParameter(IdDictionary.DICTIONARY_PATH_PARAMETER, dictionaryPath);
+			predictions = externalIdMapper;
+			idClass = PactLong.class;
+		}
+		FileDataSink sink = new FileDataSink(RecordOutputFormat.class, outputPath, predictions, "Rating Prediction");
 		RecordOutputFormat.configureRecordFormat(sink)
 			.recordDelimiter('\n')
 			.fieldDelimiter(' ')
-			.field(PactInteger.class, 0)
-			.field(PactInteger.class, 1)
+			.field(idClass, 0)
+			.field(idClass, 1)
 			.field(PactFloat.class, 2);
+		sinks.add(sink);
+		
+	    /*
+	     * Keep the trained model itself: both sides go to a single sink which writes one binary model file
+	     */
+		if(modelPath != null){
+			FileDataSink modelSink = new FileDataSink(ModelOutputFormat.class, modelPath,
+					modelSide(finalUserFeatureVectorUpdateReducer, ModelSideMapper.USER_SIDE, "user"), "Model");
+			modelSink.addInput(modelSide(iteration, ModelSideMapper.ITEM_SIDE, "item"));
+			setFactorParameters(modelSink);
+			modelSink.setParameter(ModelOutputFormat.LAMBDA_PARAMETER, String.valueOf(lambda));
+			// the iteration does not report how many rounds ran, so a convergence threshold leaves them unknown
+			modelSink.setParameter(ModelOutputFormat.ITERATIONS_PARAMETER,
+					convergenceThreshold > 0 ? FactorModel.UNKNOWN_ITERATIONS : numIterations);
+			if(dictionaryPath != null){
+				modelSink.setParameter(IdDictionary.DICTIONARY_PATH_PARAMETER, dictionaryPath);
+			}
+			modelSink.setDegreeOfParallelism(1);
+			sinks.add(modelSink);
+		}
 		
 
 	    /*
 	     * Return the plan
 	     */
-		Plan plan = new Plan(sink, "Rating Prediction Computation");
+		Plan plan = new Plan(sinks, "Rating Prediction Computation");
 		plan.setDefaultParallelism(numSubtasks);
 
 		return plan;
 	}
 	
+	/*
+	 * Learn the user-feature-vectors from the ratings and the item-feature-vectors
+	 * @return (userID, user-feature-vector)
+	 */
+	private ReduceContract userFeatureVectorUpdate(Contract ratings, Contract itemFeatureVectors, String suffix){
+		MatchContract userFeatureVectorUpdateJoint = MatchContract
+				.builder(Joint.class, PactInteger.class, 1, 0)
+				.input1(ratings)
+				.input2(itemFeatureVectors)
+				.name("user Feature Vector Update Joint" + suffix)
+				.build();
+		
+		ReduceContract userFeatureVectorUpdateReducer = ReduceContract
+				.builder(UserFeatureVectorUpdateReducer.class, PactInteger.class, 0)
+				.input(userFeatureVectorUpdateJoint)
+				.name("user Feature Vector Update Reducer" + suffix)
+				.build();
+		setFactorParameters(userFeatureVectorUpdateReducer);
+		return userFeatureVectorUpdateReducer;
+	}
+	
+	/*
+	 * Learn the item-feature-vectors from the ratings and the user-feature-vectors
+	 * @return (itemID, item-feature-vector)
+	 */
+	private ReduceContract itemFeatureVectorUpdate(Contract ratings, Contract userFeatureVectors, String suffix){
+		MatchContract itemFeatureVectorUpdateJoint = MatchContract
+				.builder(Joint.class, PactInteger.class, 0, 0)
+				.input1(ratings)
+				.input2(userFeatureVectors)
+				.name("item Feature Vector Update Joint" + suffix)
+				.build();
+		
+		ReduceContract itemFeatureVectorUpdateReducer = ReduceContract
+				.builder(ItemFeatureVectorUpdateReducer.class, PactInteger.class, 1)
+				.input(itemFeatureVectorUpdateJoint)
+				.name("item Feature Vector Update Reducer" + suffix)
+				.build();
+		setFactorParameters(itemFeatureVectorUpdateReducer);
+		return itemFeatureVectorUpdateReducer;
+	}
+	
+	/*
+	 * Build the rating blocks of one side in blocked ALS
+	 * @return (block, rating-block)
+	 */
+	private ReduceContract ratingBlocks(Contract blockedRatings, int keyPos, int blockPos, String side){
+		ReduceContract ratingBlockReducer = ReduceContract
+				.builder(RatingBlockReducer.class, PactInteger.class, blockPos)
+				.input(blockedRatings)
+				.name(side + " Rating Block Reducer")
+				.build();
+		ratingBlockReducer.setParameter(RatingBlockReducer.KEY_POS_PARAMETER, keyPos);
+		ratingBlockReducer.setParameter(RatingBlockReducer.BLOCK_POS_PARAMETER, blockPos);
+		return ratingBlockReducer;
+	}
+	
+	/*
+	 * Build the routing table of one side in blocked ALS
+	 * @return (ID, list of consuming blocks)
+	 */
+	private ReduceContract routingTable(Contract blockedRatings, int keyPos, int blockPos, int numBlocks, String side){
+		ReduceContract routingTableReducer = ReduceContract
+				.builder(RoutingTableReducer.class, PactInteger.class, keyPos)
+				.input(blockedRatings)
+				.name(side + " Routing Table Reducer")
+				.build();
+		routingTableReducer.setParameter(RoutingTableReducer.KEY_POS_PARAMETER, keyPos);
+		routingTableReducer.setParameter(RoutingTableReducer.BLOCK_POS_PARAMETER, blockPos);
+		routingTableReducer.setParameter(BlockAssignMapper.NUM_BLOCKS_PARAMETER, numBlocks);
+		return routingTableReducer;
+	}
+	
+	/*
+	 * Learn the feature-vectors of all keys of one side block by block from the feature-vectors of the other side
+	 * @return (ID, feature-vector)
+	 */
+	private CoGroupContract blockedFeatureVectorUpdate(Contract ratingBlocks, Contract routingTable,
+			Contract featureVectors, String side, String suffix){
+		MatchContract factorRoutingMatcher = MatchContract
+				.builder(FactorRoutingMatcher.class, PactInteger.class, 0, 0)
+				.input1(featureVectors)
+				.input2(routingTable)
+				.name(side + " Feature Vector Routing Matcher" + suffix)
+				.build();
+		
+		CoGroupContract blockFeatureVectorUpdateCoGroup = CoGroupContract
+				.builder(BlockFeatureVectorUpdateCoGroup.class, PactInteger.class, 0, 0)
+				.input1(ratingBlocks)
+				.input2(factorRoutingMatcher)
+				.name(side + " Feature Vector Block Update" + suffix)
+				.build();
+		setFactorParameters(blockFeatureVectorUpdateCoGroup);
+		return blockFeatureVectorUpdateCoGroup;
+	}
+	
+	
+	/*
+	 * Count the ratings of each user or item
+	 * @return (ID, number of ratings)
+	 */
+	private ReduceContract degree(Contract ratings, int keyPos, String side){
+		ReduceContract degreeReducer = ReduceContract
+				.builder(DegreeReducer.class, PactInteger.class, keyPos)
+				.input(ratings)
+				.name(side + " Degree Reducer")
+				.build();
+		degreeReducer.setParameter(DegreeReducer.KEY_POS_PARAMETER, keyPos);
+		return degreeReducer;
+	}
+	
+	/*
+	 * Tag the ratings with the salt of their user or item
+	 * @return (userID, itemID, rating, ..., salt)
+	 */
+	private MatchContract hotKeyTag(Contract ratings, Contract degrees, int keyPos, int saltPos,
+			int hotKeyDegree, int numSalts, String side){
+		MatchContract hotKeyTagMatcher = MatchContract
+				.builder(HotKeyTagMatcher.class, PactInteger.class, keyPos, 0)
+				.input1(ratings)
+				.input2(degrees)
+				.name(side + " Hot Key Tag Matcher")
+				.build();
+		hotKeyTagMatcher.setParameter(HotKeyTagMatcher.KEY_POS_PARAMETER, keyPos);
+		hotKeyTagMatcher.setParameter(HotKeyTagMatcher.SALT_POS_PARAMETER, saltPos);
+		hotKeyTagMatcher.setParameter(HotKeyTagMatcher.DEGREE_THRESHOLD_PARAMETER, hotKeyDegree);
+		hotKeyTagMatcher.setParameter(HotKeyTagMatcher.NUM_SALTS_PARAMETER, numSalts);
+		return hotKeyTagMatcher;
+	}
+	
+	/*
+	 * Learn the feature-vectors of one side from combinable partial sums of their normal equations
+	 * @return (ID, feature-vector)
+	 */
+	private ReduceContract gramianFeatureVectorUpdate(Contract taggedRatings, Contract featureVectors,
+			int keyPos, int saltPos, String side, String suffix){
+		int otherPos = keyPos == Util.USER_ID_POS ? Util.ITEM_ID_POS : Util.USER_ID_POS;
+		MatchContract partialGramianJoint = MatchContract
+				.builder(PartialGramianJoint.class, PactInteger.class, otherPos, 0)
+				.input1(taggedRatings)
+				.input2(featureVectors)
+				.name(side + " Partial Gramian Joint" + suffix)
+				.build();
+		partialGramianJoint.setParameter(PartialGramianJoint.KEY_POS_PARAMETER, keyPos);
+		partialGramianJoint.setParameter(PartialGramianJoint.SALT_POS_PARAMETER, saltPos);
+		
+		ReduceContract partialGramianReducer = ReduceContract
+				.builder(PartialGramianReducer.class, PactInteger.class, 0)
+				.keyField(PactInteger.class, 1)
+				.input(partialGramianJoint)
+				.name(side + " Partial Gramian Reducer" + suffix)
+				.build();
+		
+		ReduceContract gramianSolveReducer = ReduceContract
+				.builder(GramianSolveReducer.class, PactInteger.class, 0)
+				.input(partialGramianReducer)
+				.name(side + " Gramian Solve Reducer" + suffix)
+				.build();
+		setFactorParameters(gramianSolveReducer);
+		return gramianSolveReducer;
+	}
+	
+	/*
+	 * Learn the feature-vectors of one side with implicit-feedback ALS:
+	 * Y'Y of all feature-vectors of the other side is summed up by a combinable reduce into a single record,
+	 * which is crossed with the summed corrections of every key
+	 * @return (ID, feature-vector)
+	 */
+	private CrossContract implicitFeatureVectorUpdate(Contract taggedRatings, Contract featureVectors,
+			int keyPos, int saltPos, double alpha, String side, String suffix){
+		int otherPos = keyPos == Util.USER_ID_POS ? Util.ITEM_ID_POS : Util.USER_ID_POS;
+		MapContract factorGramianMapper = MapContract
+				.builder(FactorGramianMapper.class).input(featureVectors)
+				.name(side + " Factor Gramian Mapper" + suffix).build();
+		ReduceContract factorGramianReducer = ReduceContract
+				.builder(PartialGramianReducer.class, PactInteger.class, 0)
+				.keyField(PactInteger.class, 1)
+				.input(factorGramianMapper)
+				.name(side + " Factor Gramian Reducer" + suffix)
+				.build();
+		
+		MatchContract correctionJoint = MatchContract
+				.builder(PartialGramianJoint.class, PactInteger.class, otherPos, 0)
+				.input1(taggedRatings)
+				.input2(featureVectors)
+				.name(side + " Implicit Correction Joint" + suffix)
+				.build();
+		correctionJoint.setParameter(PartialGramianJoint.KEY_POS_PARAMETER, keyPos);
+		correctionJoint.setParameter(PartialGramianJoint.SALT_POS_PARAMETER, saltPos);
+		correctionJoint.setParameter(Util.ALPHA_PARAMETER, String.valueOf(alpha));
+		
+		ReduceContract partialCorrectionReducer = ReduceContract
+				.builder(PartialGramianReducer.class, PactInteger.class, 0)
+				.keyField(PactInteger.class, 1)
+				.input(correctionJoint)
+				.name(side + " Partial Correction Reducer" + suffix)
+				.build();
+		ReduceContract correctionReducer = ReduceContract
+				.builder(PartialGramianReducer.class, PactInteger.class, 0)
+				.input(partialCorrectionReducer)
+				.name(side + " Correction Reducer" + suffix)
+				.build();
+		
+		CrossContract implicitSolveCrosser = CrossContract.builder(ImplicitSolveCrosser.class)
+				.input1(correctionReducer)
+				.input2(factorGramianReducer)
+				.name(side + " Implicit Solve Crosser" + suffix)
+				.build();
+		setFactorParameters(implicitSolveCrosser);
+		return implicitSolveCrosser;
+	}
+	
+	/*
+	 * Tag the feature-vectors of one side for the model sink
+	 * @return (ID, feature-vector, side)
+	 */
+	private MapContract modelSide(Contract featureVectors, int side, String name){
+		MapContract modelSideMapper = MapContract
+				.builder(ModelSideMapper.class).input(featureVectors)
+				.name(name + " Model Side Mapper").build();
+		modelSideMapper.setParameter(ModelSideMapper.SIDE_PARAMETER, side);
+		return modelSideMapper;
+	}
+	
+	/*
+	 * @return path of the metrics sink in pairs mode
+	 */
+	public static String metricsPath(String outputPath, PlanOptions options){
+		return options.getString("metrics", outputPath + ".metrics");
+	}
+	
+	/*
+	 * Collect the feature-vectors of one side into dense blocks for top-K scoring
+	 * @return (block, factor-block)
+	 */
+	private ReduceContract factorBlocks(Contract featureVectors, int numBlocks, String side){
+		MapContract factorBlockAssignMapper = MapContract
+				.builder(FactorBlockAssignMapper.class).input(featureVectors)
+				.name(side + " Factor Block Assign Mapper").build();
+		factorBlockAssignMapper.setParameter(BlockAssignMapper.NUM_BLOCKS_PARAMETER, numBlocks);
+		return ReduceContract
+				.builder(FactorBlockReducer.class, PactInteger.class, 2)
+				.input(factorBlockAssignMapper)
+				.name(side + " Factor Block Reducer")
+				.build();
+	}
+	
+	/*
+	 * Pass rank, wire precision, regularization and solver to a contract which produces feature-vectors
+	 */
+	private void setFactorParameters(Contract contract){
+		contract.setParameter(Util.RANK_PARAMETER, rank);
+		contract.setParameter(PactFactorVector.PRECISION_PARAMETER, precision);
+		contract.setParameter(Util.LAMBDA_PARAMETER, String.valueOf(lambda));
+		contract.setParameter(ConjugateGradientSolver.SOLVER_PARAMETER, solver);
+		contract.setParameter(ConjugateGradientSolver.ITERATIONS_PARAMETER, cgIterations);
+		contract.setParameter(ConjugateGradientSolver.TOLERANCE_PARAMETER, String.valueOf(cgTolerance));
+	}
+	
 	
 	/*
 	 * This object enables you to run this project locally.
 	 * Run this object with the parameters specified below will result in run this project locally.
+	 * Optional "key=value" job parameters can be passed as program arguments.
 	 */
 	public static void main(String[] args) throws Exception {
 
@@ -181,7 +753,28 @@ public class MatrixFactorizationPlan implements PlanAssembler, PlanAssemblerDesc
 		System.out.println("Reading input from " + inputPath);
 		System.out.println("Writing output to " + outputPath);
 
-		Plan toExecute = new MatrixFactorizationPlan().getPlan(inputPath, outputPath);
-		Util.executePlan(toExecute);
+		String[] planArgs = new String[args.length + 2];
+		planArgs[0] = inputPath;
+		planArgs[1] = outputPath;
+		System.arraycopy(args, 0, planArgs, 2, args.length);
+
+		PlanOptions options = new PlanOptions(planArgs);
+		if(options.contains("folds")){
+			String[] crossValidationArgs = new String[planArgs.length - 1];
+			crossValidationArgs[0] = planArgs[0];
+			System.arraycopy(planArgs, 2, crossValidationArgs, 1, planArgs.length - 2);
+			CrossValidation.main(crossValidationArgs);
+			return;
+		}
+		if(options.getString("engine", "plan").equals("local")){
+			LocalAlsTrainer.run(planArgs);
+		}else{
+			Plan toExecute = new MatrixFactorizationPlan().getPlan(planArgs);
+			Util.executePlan(toExecute);
+		}
+		
+		if(options.contains("pairs")){
+			System.out.println(ErrorMetrics.read(metricsPath(outputPath, options)));
+		}
 	}
 }
\ No newline at end of file
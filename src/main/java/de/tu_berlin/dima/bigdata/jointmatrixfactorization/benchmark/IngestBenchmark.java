@@ -0,0 +1,126 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.regex.Pattern;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingInputFormat;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactFloat;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This class measures the ingest throughput in lines per second of a rating file,
+ * once with the old String/regex path of the TuppleMapper and once with the byte-level RatingInputFormat.
+ * The file is loaded into memory first, so only parsing is measured.
+ *
+ * Usage: IngestBenchmark [ratingFile] ([rounds])
+ */
+public class IngestBenchmark {
+
+	/*
+	 * Delimiters of the 100k and the 10M data set, as split by the former Util.splitPrefTokens in either configuration
+	 */
+	private static final Pattern DELIMITER = Pattern.compile("::|[\t,]");
+
+	private static long checksum;
+
+	public static void main(String[] args) throws IOException{
+		if(args.length < 1){
+			System.out.println("Usage: IngestBenchmark [ratingFile] ([rounds])");
+			return;
+		}
+		byte[] data = readFully(new File(args[0]));
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		for(int round = 0; round < rounds; round ++){
+			long start = System.nanoTime();
+			long lines = parseWithStrings(data);
+			report("String/regex ", round, lines, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			lines = parseWithInputFormat(data);
+			report("RatingInputFormat", round, lines, System.nanoTime() - start);
+		}
+		System.out.println("checksum: " + checksum);
+	}
+
+	/*
+	 * The path of the former TuppleMapper: one String, one String[] and three boxed values per line
+	 */
+	private static long parseWithStrings(byte[] data){
+		PactRecord record = new PactRecord();
+		long lines = 0;
+		int start = 0;
+		for(int i = 0; i <= data.length; i ++){
+			if(i == data.length || data[i] == '\n'){
+				if(i > start){
+					String[] tokens = DELIMITER.split(new String(data, start, i - start).trim());
+					record.setField(0, new PactInteger(Util.readID(tokens[Util.USER_ID_POS])));
+					record.setField(1, new PactInteger(Util.readID(tokens[Util.ITEM_ID_POS])));
+					record.setField(2, new PactFloat(Util.readRate(tokens[Util.RATING_POS])));
+					checksum += record.getField(0, PactInteger.class).getValue();
+					lines ++;
+				}
+				start = i + 1;
+			}
+		}
+		return lines;
+	}
+
+	private static long parseWithInputFormat(byte[] data){
+		RatingInputFormat format = new RatingInputFormat();
+		PactRecord record = new PactRecord();
+		PactInteger userID = new PactInteger();
+		long lines = 0;
+		int start = 0;
+		for(int i = 0; i <= data.length; i ++){
+			if(i == data.length || data[i] == '\n'){
+				if(i > start && format.readRecord(record, data, start, i - start)){
+					record.getField(0, userID);
+					checksum += userID.getValue();
+					lines ++;
+				}
+				start = i + 1;
+			}
+		}
+		return lines;
+	}
+
+	private static void report(String name, int round, long lines, long nanos){
+		System.out.println(name + "\tround " + round + ":\t" + lines + " lines in " + (nanos / 1000000) + " ms,\t"
+				+ (long) (lines / (nanos / 1e9)) + " lines/s");
+	}
+
+	private static byte[] readFully(File file) throws IOException{
+		if(file.length() > Integer.MAX_VALUE){
+			throw new IOException("File too large for the benchmark: " + file);
+		}
+		byte[] data = new byte[(int) file.length()];
+		InputStream in = new FileInputStream(file);
+		try{
+			int read = 0;
+			while(read < data.length){
+				int n = in.read(data, read, data.length - read);
+				if(n < 0){
+					break;
+				}
+				read += n;
+			}
+		}finally{
+			in.close();
+		}
+		return data;
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingStoreConverter;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.local.LocalAlsTrainer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.HeapFactorMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.ConjugateGradientSolver;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingBlock;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.FeatureInitializer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.PlanOptions;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+
+/*
+ * This class compares the exact Cholesky solver with the conjugate gradient solver of the LocalAlsTrainer.
+ * For every rank both train the same number of rounds from the same seeded feature-vectors,
+ * it reports the time per round and the RMSE on the test file, or on the training file if there is none.
+ *
+ * Usage: SolverBenchmark [trainFile] ([testFile]) ([ranks=10,50,100,200] [rounds=5] [threads=N]
+ *        [cgiterations=3] [cgtolerance=1e-4] [lambda=L])
+ */
+public class SolverBenchmark {
+
+	public static void main(String[] args) throws IOException{
+		if(args.length < 1){
+			System.out.println("Usage: SolverBenchmark [trainFile] ([testFile]) ([ranks=10,50,100,200] [rounds=5] [threads=N] "
+					+ "[cgiterations=3] [cgtolerance=1e-4] [lambda=L])");
+			return;
+		}
+		PlanOptions options = new PlanOptions(args);
+		String[] ranks = options.getString("ranks", "10,50,100,200").split(",");
+		int rounds = options.getInt("rounds", 5);
+		int numThreads = options.getInt("threads", Runtime.getRuntime().availableProcessors());
+		int cgIterations = options.getInt("cgiterations", ConjugateGradientSolver.DEFAULT_ITERATIONS);
+		double cgTolerance = options.getDouble("cgtolerance", ConjugateGradientSolver.DEFAULT_TOLERANCE);
+		double lambda = options.getDouble("lambda", Util.lambda);
+
+		RatingBlock byUser = new RatingBlock();
+		RatingBlock byItem = new RatingBlock();
+		RatingStoreConverter.read(new File(args[0]), null, byUser, byItem);
+		RatingBlock testByUser = byUser;
+		if(args.length > 1 && args[1].indexOf('=') < 0){
+			testByUser = new RatingBlock();
+			RatingStoreConverter.read(new File(args[1]), null, testByUser, new RatingBlock());
+		}
+		System.out.println(byUser.getNumRatings() + " ratings of " + byUser.getNumKeys() + " users and "
+				+ byItem.getNumKeys() + " items, " + rounds + " rounds, " + numThreads + " threads");
+
+		for(String rankValue : ranks){
+			int rank = Integer.parseInt(rankValue.trim());
+			for(int solver = 0; solver < 2; solver ++){
+				FactorMatrix userFactors = new HeapFactorMatrix(byUser.getNumKeys(), rank);
+				FactorMatrix itemFactors = new HeapFactorMatrix(byItem.getNumKeys(), rank);
+				LocalAlsTrainer trainer = new LocalAlsTrainer(byUser, byItem, userFactors, itemFactors, lambda, numThreads);
+				String name = "cholesky";
+				if(solver == 1){
+					trainer.setConjugateGradient(cgIterations, cgTolerance);
+					name = "cg(" + cgIterations + ")";
+				}
+				trainer.initialize(new FeatureInitializer(rank, FeatureInitializer.DEFAULT_SEED, null, null, null));
+				long start = System.nanoTime();
+				trainer.train(rounds, 0);
+				double msPerRound = (System.nanoTime() - start) / 1e6 / rounds;
+				System.out.println(String.format("rank %4d %-10s %10.1f ms/round  RMSE %.5f",
+						rank, name, msPerRound, trainer.rmse(testByUser)));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.dictionary;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.MapStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+import eu.stratosphere.pact.common.type.base.PactLong;
+
+/*
+ * This Map class maps the internal userID and itemID of a result back to the external IDs before the sink
+ */
+public class ExternalIdMapper extends MapStub{
+
+	private IdDictionary users;
+	private IdDictionary items;
+
+	private final PactInteger internalID = new PactInteger();
+	private final PactLong userID = new PactLong();
+	private final PactLong itemID = new PactLong();
+
+	@Override
+	public void open(Configuration parameters) throws Exception {
+		String dictionaryPath = parameters.getString(IdDictionary.DICTIONARY_PATH_PARAMETER, null);
+		users = IdDictionary.loadUsers(Util.localFile(dictionaryPath));
+		items = IdDictionary.loadItems(Util.localFile(dictionaryPath));
+	}
+
+	/*
+	 * @param in:(internal userID, internal itemID, ...)
+	 * @return (external userID, external itemID, ...)
+	 */
+	@Override
+	public void map(PactRecord record, Collector<PactRecord> collector)
+			throws Exception {
+		record.getField(0, internalID);
+		userID.setValue(users.toExternal(internalID.getValue()));
+		record.getField(1, internalID);
+		itemID.setValue(items.toExternal(internalID.getValue()));
+
+		record.setField(0, userID);
+		record.setField(1, itemID);
+		collector.collect(record);
+	}
+
+}
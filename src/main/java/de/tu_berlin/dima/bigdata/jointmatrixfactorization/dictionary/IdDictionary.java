@@ -0,0 +1,137 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.dictionary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/*
+ * This class maps the external long IDs of users or items to dense internal IDs 1 .. size() and back.
+ * It is a sorted array of the distinct external IDs: the internal ID of an external ID is its position + 1,
+ * so lookups never collide and the dictionary costs 8 bytes per ID.
+ * Internal IDs start at 1, because the stubs treat IDs not greater than zero as invalid.
+ *
+ * File layout, little endian: magic, version, size, 4 bytes padding, long[size] sorted external IDs
+ */
+public class IdDictionary {
+
+	/*
+	 * Directory of the user and item dictionary, passed to the stubs which load them in open()
+	 */
+	public static final String DICTIONARY_PATH_PARAMETER = "als.dictionary.path";
+
+	public static final String USER_FILE = "users.dict";
+	public static final String ITEM_FILE = "items.dict";
+
+	private static final int MAGIC = 0x414c5344;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+
+	private final long[] externalIDs;
+
+	private IdDictionary(long[] externalIDs){
+		this.externalIDs = externalIDs;
+	}
+
+	/*
+	 * @param ids external IDs in any order and with duplicates, the array is sorted in place
+	 */
+	public static IdDictionary build(long[] ids, int numIDs){
+		Arrays.sort(ids, 0, numIDs);
+		int size = 0;
+		for(int i = 0; i < numIDs; i ++){
+			if(size == 0 || ids[size - 1] != ids[i]){
+				ids[size ++] = ids[i];
+			}
+		}
+		return new IdDictionary(Arrays.copyOf(ids, size));
+	}
+
+	public static IdDictionary load(File file) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION){
+				throw new IOException("Not an ID dictionary of version " + VERSION + ": " + file);
+			}
+			long[] externalIDs = new long[header.getInt(8)];
+			channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, 8L * externalIDs.length)
+				.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(externalIDs);
+			return new IdDictionary(externalIDs);
+		}finally{
+			raf.close();
+		}
+	}
+
+	public static IdDictionary loadUsers(File dictionaryDirectory) throws IOException{
+		return load(new File(dictionaryDirectory, USER_FILE));
+	}
+
+	public static IdDictionary loadItems(File dictionaryDirectory) throws IOException{
+		return load(new File(dictionaryDirectory, ITEM_FILE));
+	}
+
+	public void write(File file) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try{
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(externalIDs.length).putInt(0);
+			for(int i = 0; i < externalIDs.length; i ++){
+				if(buffer.remaining() < 8){
+					flush(channel, buffer);
+				}
+				buffer.putLong(externalIDs[i]);
+			}
+			flush(channel, buffer);
+		}finally{
+			raf.close();
+		}
+	}
+
+	/*
+	 * @return number of distinct IDs, the largest internal ID
+	 */
+	public int size(){
+		return externalIDs.length;
+	}
+
+	/*
+	 * @return internal ID of the external ID, or -1 if the ID is not in the dictionary
+	 */
+	public int toInternal(long externalID){
+		int index = Arrays.binarySearch(externalIDs, externalID);
+		return index >= 0 ? index + 1 : -1;
+	}
+
+	public long toExternal(int internalID){
+		return externalIDs[internalID - 1];
+	}
+
+	@Override
+	public String toString(){
+		return "IdDictionary(" + externalIDs.length + " IDs"
+				+ (externalIDs.length > 0 ? " in [" + externalIDs[0] + ", " + externalIDs[externalIDs.length - 1] + "]" : "") + ")";
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException{
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.dictionary;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.mahout.math.list.LongArrayList;
+import org.apache.mahout.math.set.OpenLongHashSet;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingFileScanner;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingLineParser;
+
+/*
+ * This class is the pre-pass which builds the user and the item dictionary of one or more rating files,
+ * e.g. of the training and the test file, so both are mapped to the same internal IDs.
+ *
+ * Usage: IdDictionaryBuilder [dictionaryDirectory] [ratingFile] ([ratingFile] ...)
+ */
+public class IdDictionaryBuilder {
+
+	/*
+	 * Distinct IDs seen so far, so memory grows with the number of IDs and not with the number of ratings
+	 */
+	private final OpenLongHashSet userIDs = new OpenLongHashSet();
+	private final OpenLongHashSet itemIDs = new OpenLongHashSet();
+
+	public static void main(String[] args) throws IOException{
+		if(args.length < 2){
+			System.out.println("Usage: IdDictionaryBuilder [dictionaryDirectory] [ratingFile] ([ratingFile] ...)");
+			return;
+		}
+		File dictionaryDirectory = new File(args[0]);
+		IdDictionaryBuilder builder = new IdDictionaryBuilder();
+		for(int i = 1; i < args.length; i ++){
+			builder.addRatings(new File(args[i]));
+		}
+		builder.write(dictionaryDirectory);
+		System.out.println("users: " + IdDictionary.loadUsers(dictionaryDirectory));
+		System.out.println("items: " + IdDictionary.loadItems(dictionaryDirectory));
+	}
+
+	public void addRatings(File ratingFile) throws IOException{
+		RatingFileScanner.scan(ratingFile, new RatingFileScanner.Handler() {
+			@Override
+			public void rating(RatingLineParser parser) {
+				add(parser.getUserID(), parser.getItemID());
+			}
+		});
+	}
+
+	public void add(long userID, long itemID){
+		userIDs.add(userID);
+		itemIDs.add(itemID);
+	}
+
+	/*
+	 * Writes USER_FILE and ITEM_FILE into the dictionary directory
+	 */
+	public void write(File dictionaryDirectory) throws IOException{
+		if(!dictionaryDirectory.isDirectory() && !dictionaryDirectory.mkdirs()){
+			throw new IOException("Cannot create dictionary directory " + dictionaryDirectory);
+		}
+		build(userIDs).write(new File(dictionaryDirectory, IdDictionary.USER_FILE));
+		build(itemIDs).write(new File(dictionaryDirectory, IdDictionary.ITEM_FILE));
+	}
+
+	private static IdDictionary build(OpenLongHashSet ids){
+		LongArrayList keys = new LongArrayList(ids.size());
+		ids.keys(keys);
+		return IdDictionary.build(keys.elements(), keys.size());
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.evaluation;
+
+import java.util.Iterator;
+
+import eu.stratosphere.pact.common.contract.ReduceContract.Combinable;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.ReduceStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactDouble;
+import eu.stratosphere.pact.common.type.base.PactLong;
+
+/*
+ * This Reduce class adds up the error terms of all scored pairs to RMSE and MAE inside the job,
+ * the partial sums of every partition are combined before they are sent to the single reducer
+ */
+@Combinable
+public class ErrorMetricReducer extends ReduceStub{
+
+	private final PactRecord outputRecord = new PactRecord();
+	private final PactDouble squaredErrorSum = new PactDouble();
+	private final PactDouble absoluteErrorSum = new PactDouble();
+	private final PactLong count = new PactLong();
+	private final PactDouble rmse = new PactDouble();
+	private final PactDouble mae = new PactDouble();
+
+	/*
+	 * @param in:Iterator[(squared error, absolute error, count)]
+	 * @return (RMSE, MAE, count)
+	 */
+	@Override
+	public void reduce(Iterator<PactRecord> records, Collector<PactRecord> collector)
+			throws Exception {
+
+		sumUp(records);
+		long n = count.getValue();
+		rmse.setValue(n > 0 ? Math.sqrt(squaredErrorSum.getValue() / n) : Double.NaN);
+		mae.setValue(n > 0 ? absoluteErrorSum.getValue() / n : Double.NaN);
+
+		outputRecord.setField(0, rmse);
+		outputRecord.setField(1, mae);
+		outputRecord.setField(2, count);
+		collector.collect(outputRecord);
+	}
+
+	/*
+	 * Pre-aggregates the error terms of one partition
+	 * @return (sum of squared errors, sum of absolute errors, count)
+	 */
+	@Override
+	public void combine(Iterator<PactRecord> records, Collector<PactRecord> collector)
+			throws Exception {
+
+		sumUp(records);
+		outputRecord.setField(0, squaredErrorSum);
+		outputRecord.setField(1, absoluteErrorSum);
+		outputRecord.setField(2, count);
+		collector.collect(outputRecord);
+	}
+
+	private void sumUp(Iterator<PactRecord> records){
+		double squaredErrors = 0;
+		double absoluteErrors = 0;
+		long numPairs = 0;
+		while(records.hasNext()){
+			PactRecord record = records.next();
+			squaredErrors += record.getField(0, squaredErrorSum).getValue();
+			absoluteErrors += record.getField(1, absoluteErrorSum).getValue();
+			numPairs += record.getField(2, count).getValue();
+		}
+		squaredErrorSum.setValue(squaredErrors);
+		absoluteErrorSum.setValue(absoluteErrors);
+		count.setValue(numPairs);
+	}
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.evaluation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+
+/*
+ * This object holds the RMSE and MAE of the scored pairs of a job,
+ * as written by the ErrorMetricReducer to the metrics sink "rmse mae count"
+ */
+public class ErrorMetrics{
+
+	private final double rmse;
+	private final double mae;
+	private final long count;
+
+	public ErrorMetrics(double rmse, double mae, long count){
+		this.rmse = rmse;
+		this.mae = mae;
+		this.count = count;
+	}
+
+	/*
+	 * @return the metrics of count pairs from their error sums, RMSE and MAE are NaN if there is no pair
+	 */
+	public static ErrorMetrics of(double squaredErrorSum, double absoluteErrorSum, long count){
+		if(count == 0){
+			return new ErrorMetrics(Double.NaN, Double.NaN, 0);
+		}
+		return new ErrorMetrics(Math.sqrt(squaredErrorSum / count), absoluteErrorSum / count, count);
+	}
+
+	/*
+	 * Reads the metrics sink of a finished job from the local file system
+	 * @param path path or file URI of the metrics sink, a file or a directory with a single result file
+	 */
+	public static ErrorMetrics read(String path) throws IOException{
+		File file = Util.localFile(path);
+		if(file.isDirectory()){
+			File[] parts = file.listFiles();
+			for(File part : parts != null ? parts : new File[0]){
+				if(part.length() > 0){
+					file = part;
+					break;
+				}
+			}
+		}
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try{
+			String line = reader.readLine();
+			if(line == null){
+				return new ErrorMetrics(Double.NaN, Double.NaN, 0);
+			}
+			String[] tokens = line.trim().split(" ");
+			return new ErrorMetrics(Double.parseDouble(tokens[0]), Double.parseDouble(tokens[1]), Long.parseLong(tokens[2]));
+		}finally{
+			reader.close();
+		}
+	}
+
+	public double getRmse(){
+		return rmse;
+	}
+
+	public double getMae(){
+		return mae;
+	}
+
+	public long getCount(){
+		return count;
+	}
+
+	@Override
+	public String toString(){
+		if(count == 0){
+			return "no rated pairs";
+		}
+		return "RMSE: " + rmse + " MAE: " + mae + " (" + count + " pairs)";
+	}
+
+}
@@ -1,64 +1,346 @@
 package de.tu_berlin.dima.bigdata.jointmatrixfactorization.evaluation;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.mahout.math.function.IntObjectProcedure;
+import org.apache.mahout.math.list.IntArrayList;
+import org.apache.mahout.math.map.OpenIntObjectHashMap;
+import org.apache.mahout.math.map.OpenLongFloatHashMap;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingFileScanner;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingLineParser;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.PlanOptions;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.TopKHeap;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+
+/*
+ * This class evaluates a prediction file "user item score" against a test file "user item rating"
+ * independent of the order of both files.
+ * The predictions are loaded into a primitive (user, item) -> score hash map together with the top-K items of every user,
+ * then the test file is streamed in parallel chunks to compute in a single pass
+ * RMSE, MAE, coverage and the ranking metrics precision@K, recall@K, NDCG@K and MAP@K.
+ * A test rating counts as relevant for the ranking metrics if it is at least the relevance threshold.
+ *
+ * To keep the memory bounded for very large prediction files, the users are split into partitions
+ * and every partition is evaluated in its own pass over both files.
+ * The IDs have to fit into an int, e.g. the internal IDs of a dictionary.
+ */
 public class Evaluation{
 
-	static final int user_pos = 0;
-	static final int item_pos = 1;
-	static final int rating_pos =2;
-	
-	public static float evaluate(String testFile, Pattern pattern_test, String predictFile, Pattern pattern_predict) throws IOException{
-		BufferedReader br_test = new BufferedReader(new FileReader(testFile));
-		BufferedReader br_predict = new BufferedReader(new FileReader(predictFile));
-		
-		int count = 0;
-		float sd_sum = 0;
-		
-		while(br_test.ready()){
-			String line_test = br_test.readLine();
-			String []items = pattern_test.split(line_test);
-			int userID_test = Integer.parseInt(items[user_pos]);
-			int itemID_test = Integer.parseInt(items[item_pos]);
-			float rating_test = Float.parseFloat(items[rating_pos]);
-			
-			while(br_predict.ready()){
-				String line_predict = br_predict.readLine();
-				String []items_p = pattern_predict.split(line_predict);
-				int userID_predict = Integer.parseInt(items_p[user_pos]);
-				int itemID_predict = Integer.parseInt(items_p[item_pos]);
-				float rating_predict = Float.parseFloat(items_p[rating_pos]);
-				if(userID_predict == userID_test && itemID_predict == itemID_test){
-					count ++;
-					sd_sum += square_deviation(rating_test, rating_predict);
-					break;
+	private static final List<String> OPTIONS = Arrays.asList("k", "relevant", "partitions", "threads");
+
+	private final int k;
+	private final float relevanceThreshold;
+	private final int numPartitions;
+	private final int numThreads;
+
+	public Evaluation(int k, float relevanceThreshold, int numPartitions, int numThreads){
+		this.k = k;
+		this.relevanceThreshold = relevanceThreshold;
+		this.numPartitions = numPartitions;
+		this.numThreads = numThreads;
+	}
+
+	public Metrics evaluate(File testFile, File predictionFile) throws IOException{
+		Metrics total = new Metrics();
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try{
+			for(int partition = 0; partition < numPartitions; partition ++){
+				total.add(evaluatePartition(testFile, predictionFile, partition, executor));
+			}
+		}finally{
+			executor.shutdown();
+		}
+		return total;
+	}
+
+	/*
+	 * Evaluates the users of one partition
+	 */
+	private Metrics evaluatePartition(File testFile, File predictionFile, final int partition, ExecutorService executor)
+			throws IOException{
+
+	    /*
+	     * Load the predictions of the partition and keep the top-K items of every user
+	     */
+		final OpenLongFloatHashMap scores = new OpenLongFloatHashMap();
+		final OpenIntObjectHashMap<TopKHeap> topItems = new OpenIntObjectHashMap<TopKHeap>();
+		RatingFileScanner.scan(predictionFile, new RatingFileScanner.Handler() {
+			@Override
+			public void rating(RatingLineParser parser) {
+				if(!parser.hasIntIDs() || !inPartition((int) parser.getUserID(), partition)){
+					return;
+				}
+				int userID = (int) parser.getUserID();
+				int itemID = (int) parser.getItemID();
+				scores.put(pairKey(userID, itemID), parser.getRating());
+				TopKHeap heap = topItems.get(userID);
+				if(heap == null){
+					heap = new TopKHeap(k);
+					topItems.put(userID, heap);
+				}
+				if(heap.accepts(parser.getRating())){
+					heap.offer(itemID, parser.getRating());
 				}
 			}
-			
-		}
-		
-		br_test.close();
-		br_predict.close();
-		
-		return (float)Math.sqrt( sd_sum/count);
-		
+		});
+
+	    /*
+	     * Stream the test set in parallel chunks, the hash map is only read from now on
+	     */
+		long fileLength = testFile.length();
+		int numChunks = numThreads * 4;
+		List<Future<Metrics>> futures = new ArrayList<Future<Metrics>>();
+		for(int chunk = 0; chunk < numChunks; chunk ++){
+			futures.add(executor.submit(new TestChunk(testFile, fileLength * chunk / numChunks,
+					fileLength * (chunk + 1) / numChunks, partition, scores)));
+		}
+		final Metrics metrics = new Metrics();
+		for(Future<Metrics> future : futures){
+			metrics.add(get(future));
+		}
+
+	    /*
+	     * Rank the top-K items of every user with a relevant test item
+	     */
+		metrics.relevantItems.forEachPair(new IntObjectProcedure<IntArrayList>() {
+			@Override
+			public boolean apply(int userID, IntArrayList relevant) {
+				relevant.sortFromTo(0, relevant.size() - 1);
+				TopKHeap heap = topItems.get(userID);
+				if(heap != null){
+					heap.sortDescending();
+				}
+				metrics.addRanking(heap, relevant, k);
+				return true;
+			}
+		});
+		metrics.relevantItems.clear();
+		return metrics;
 	}
-	
-	private static float square_deviation(float r1, float r2){
-		return (r1-r2)*(r1-r2);
+
+	/*
+	 * Scores the test pairs of one byte range of the test file
+	 */
+	private class TestChunk implements Callable<Metrics>{
+
+		private final File testFile;
+		private final long start;
+		private final long end;
+		private final int partition;
+		private final OpenLongFloatHashMap scores;
+
+		TestChunk(File testFile, long start, long end, int partition, OpenLongFloatHashMap scores){
+			this.testFile = testFile;
+			this.start = start;
+			this.end = end;
+			this.partition = partition;
+			this.scores = scores;
+		}
+
+		@Override
+		public Metrics call() throws IOException{
+			final Metrics metrics = new Metrics();
+			RatingFileScanner.scan(testFile, start, end, true, new RatingFileScanner.Handler() {
+				@Override
+				public void rating(RatingLineParser parser) {
+					if(!parser.hasIntIDs() || !inPartition((int) parser.getUserID(), partition)){
+						return;
+					}
+					int userID = (int) parser.getUserID();
+					int itemID = (int) parser.getItemID();
+					float rating = parser.getRating();
+					long key = pairKey(userID, itemID);
+					metrics.numTestPairs ++;
+					if(scores.containsKey(key)){
+						double error = scores.get(key) - rating;
+						metrics.squaredErrorSum += error * error;
+						metrics.absoluteErrorSum += Math.abs(error);
+						metrics.numScoredPairs ++;
+					}
+					if(rating >= relevanceThreshold){
+						IntArrayList relevant = metrics.relevantItems.get(userID);
+						if(relevant == null){
+							relevant = new IntArrayList();
+							metrics.relevantItems.put(userID, relevant);
+						}
+						relevant.add(itemID);
+					}
+				}
+			});
+			return metrics;
+		}
 	}
-	
+
+	private boolean inPartition(int userID, int partition){
+		return numPartitions == 1 || Util.blockOf(userID, numPartitions) == partition;
+	}
+
+	private static long pairKey(int userID, int itemID){
+		return ((long) userID << 32) | (itemID & 0xFFFFFFFFL);
+	}
+
+	private static <T> T get(Future<T> future) throws IOException{
+		try{
+			return future.get();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}catch(ExecutionException e){
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/*
+	 * Sums of the error and ranking metrics, which can be added up over chunks and partitions
+	 */
+	public static class Metrics{
+
+		private long numTestPairs;
+		private long numScoredPairs;
+		private double squaredErrorSum;
+		private double absoluteErrorSum;
+
+		private long numRankedUsers;
+		private double precisionSum;
+		private double recallSum;
+		private double ndcgSum;
+		private double averagePrecisionSum;
+
+		// relevant test items per user, only used while a partition is evaluated
+		private final OpenIntObjectHashMap<IntArrayList> relevantItems = new OpenIntObjectHashMap<IntArrayList>();
+
+		private void add(final Metrics other){
+			numTestPairs += other.numTestPairs;
+			numScoredPairs += other.numScoredPairs;
+			squaredErrorSum += other.squaredErrorSum;
+			absoluteErrorSum += other.absoluteErrorSum;
+			numRankedUsers += other.numRankedUsers;
+			precisionSum += other.precisionSum;
+			recallSum += other.recallSum;
+			ndcgSum += other.ndcgSum;
+			averagePrecisionSum += other.averagePrecisionSum;
+			other.relevantItems.forEachPair(new IntObjectProcedure<IntArrayList>() {
+				@Override
+				public boolean apply(int userID, IntArrayList relevant) {
+					IntArrayList merged = relevantItems.get(userID);
+					if(merged == null){
+						relevantItems.put(userID, relevant);
+					}else{
+						merged.addAllOf(relevant);
+					}
+					return true;
+				}
+			});
+		}
+
+		/*
+		 * @param ranked top-K items of the user best first, null if the user has no predictions
+		 * @param relevant sorted relevant test items of the user
+		 */
+		private void addRanking(TopKHeap ranked, IntArrayList relevant, int k){
+			int hits = 0;
+			double dcg = 0;
+			double averagePrecision = 0;
+			int numRanked = ranked != null ? ranked.size() : 0;
+			for(int i = 0; i < numRanked; i ++){
+				if(relevant.binarySearch(ranked.getID(i)) >= 0){
+					hits ++;
+					dcg += 1 / log2(i + 2);
+					averagePrecision += (double) hits / (i + 1);
+				}
+			}
+			double idcg = 0;
+			for(int i = 0; i < Math.min(relevant.size(), k); i ++){
+				idcg += 1 / log2(i + 2);
+			}
+			numRankedUsers ++;
+			precisionSum += (double) hits / k;
+			recallSum += (double) hits / relevant.size();
+			ndcgSum += dcg / idcg;
+			averagePrecisionSum += averagePrecision / Math.min(relevant.size(), k);
+		}
+
+		private static double log2(double x){
+			return Math.log(x) / Math.log(2);
+		}
+
+		/*
+		 * @return RMSE of the scored pairs, NaN if no test pair has a prediction
+		 */
+		public double getRmse(){
+			return numScoredPairs > 0 ? Math.sqrt(squaredErrorSum / numScoredPairs) : Double.NaN;
+		}
+
+		public double getMae(){
+			return numScoredPairs > 0 ? absoluteErrorSum / numScoredPairs : Double.NaN;
+		}
+
+		/*
+		 * @return fraction of the test pairs that have a prediction
+		 */
+		public double getCoverage(){
+			return (double) numScoredPairs / numTestPairs;
+		}
+
+		public double getPrecision(){
+			return precisionSum / numRankedUsers;
+		}
+
+		public double getRecall(){
+			return recallSum / numRankedUsers;
+		}
+
+		public double getNdcg(){
+			return ndcgSum / numRankedUsers;
+		}
+
+		public double getMap(){
+			return averagePrecisionSum / numRankedUsers;
+		}
+
+		@Override
+		public String toString(){
+			String errors = numScoredPairs > 0 ? "RMSE: " + getRmse() + "\nMAE: " + getMae() : "RMSE, MAE: no rated pairs";
+			String ranking = numRankedUsers > 0 ? "precision@K: " + getPrecision() + "\nrecall@K: " + getRecall()
+					+ "\nNDCG@K: " + getNdcg() + "\nMAP@K: " + getMap() + " (" + numRankedUsers + " users)"
+					: "precision@K, recall@K, NDCG@K, MAP@K: no ranked users";
+			return errors
+					+ "\ncoverage: " + getCoverage() + " (" + numScoredPairs + " of " + numTestPairs + " test pairs)"
+					+ "\n" + ranking;
+		}
+	}
+
+	/*
+	 * Usage: Evaluation ([testFile] [predictionFile]) ([k=10] [relevant=4] [partitions=1] [threads=N])
+	 */
 	public static void main(String [] args) throws IOException{
-		String predict = "results/100k/Prediction_ua_i=50.result";
-		String test = "datasets/100k/ua.test.txt";
-		Pattern DELIMITER_test = Pattern.compile("[\t]");
-		Pattern DELIMITER_predict = Pattern.compile(" ");
-		float rmsd = evaluate(test,DELIMITER_test, predict, DELIMITER_predict);
-		
-		System.out.println("RMSD: " + rmsd);
+		String test = args.length >= 2 && !isOption(args[0]) ? args[0] : "datasets/100k/ua.test.txt";
+		String predict = args.length >= 2 && !isOption(args[1]) ? args[1] : "results/100k/Prediction_ua_i=50.result";
+		PlanOptions options = new PlanOptions(args);
+		Evaluation evaluation = new Evaluation(options.getInt("k", 10),
+				(float) options.getDouble("relevant", 4),
+				options.getInt("partitions", 1),
+				options.getInt("threads", Runtime.getRuntime().availableProcessors()));
+
+		System.out.println(evaluation.evaluate(new File(test), new File(predict)));
+	}
+
+	/*
+	 * @return true for a "key=value" argument of a known option, paths like "Prediction_ua_i=50.result" contain '=' as well
+	 */
+	private static boolean isOption(String arg){
+		int split = arg.indexOf('=');
+		return split > 0 && OPTIONS.contains(arg.substring(0, split).trim());
 	}
-	
-}
\ No newline at end of file
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.evaluation;
+
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.MapStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactDouble;
+import eu.stratosphere.pact.common.type.base.PactFloat;
+import eu.stratosphere.pact.common.type.base.PactLong;
+
+/*
+ * This Map class turns every scored pair with a known rating into the error terms of RMSE and MAE,
+ * pairs without a rating are not evaluated
+ */
+public class PairErrorMapper extends MapStub{
+
+	private final PactRecord outputRecord = new PactRecord();
+	private final PactFloat prediction = new PactFloat();
+	private final PactFloat rating = new PactFloat();
+	private final PactDouble squaredError = new PactDouble();
+	private final PactDouble absoluteError = new PactDouble();
+	private final PactLong count = new PactLong(1);
+
+	/*
+	 * @param in:(userID, itemID, prediction-rating, rating or NaN)
+	 * @return (squared error, absolute error, 1)
+	 */
+	@Override
+	public void map(PactRecord record, Collector<PactRecord> collector)
+			throws Exception {
+		record.getField(2, prediction);
+		record.getField(3, rating);
+		if(Float.isNaN(rating.getValue())){
+			return;
+		}
+		double error = prediction.getValue() - rating.getValue();
+		squaredError.setValue(error * error);
+		absoluteError.setValue(Math.abs(error));
+
+		outputRecord.setField(0, squaredError);
+		outputRecord.setField(1, absoluteError);
+		outputRecord.setField(2, count);
+		collector.collect(outputRecord);
+	}
+
+}
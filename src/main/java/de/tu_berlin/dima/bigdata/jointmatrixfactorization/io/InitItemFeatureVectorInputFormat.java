@@ -0,0 +1,117 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.io;
+
+import java.io.IOException;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.dictionary.IdDictionary;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.FeatureInitializer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.io.GenericInputFormat;
+import eu.stratosphere.pact.common.io.GenericInputSplit;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This input format produces the initial item-feature-vectors without reading a single rating:
+ * the distinct itemIDs are the keys of the item layout of a binary rating store,
+ * or 1 .. size of the item dictionary, whose internal IDs are dense.
+ * Every split initializes a contiguous range of items with the FeatureInitializer.
+ */
+public class InitItemFeatureVectorInputFormat extends GenericInputFormat{
+
+	/*
+	 * Number of splits the items are divided into, should be the degree of parallelism of the source
+	 */
+	public static final String NUM_SPLITS_PARAMETER = "als.init.splits";
+
+	private final PactInteger itemID = new PactInteger();
+	private final PactFactorVector featureVector = new PactFactorVector();
+
+	private Configuration parameters;
+	private String storePath;
+	private String dictionaryPath;
+	private int numSplits;
+	private int rank;
+
+	private RatingStore store;
+	private FeatureInitializer initializer;
+	private int index;
+	private int end;
+
+	@Override
+	public void configure(Configuration parameters){
+		super.configure(parameters);
+		this.parameters = parameters;
+		storePath = parameters.getString(RatingStoreInputFormat.STORE_PATH_PARAMETER, null);
+		dictionaryPath = parameters.getString(IdDictionary.DICTIONARY_PATH_PARAMETER, null);
+		numSplits = parameters.getInteger(NUM_SPLITS_PARAMETER, 1);
+		rank = parameters.getInteger(Util.RANK_PARAMETER, Util.numFeatures);
+		featureVector.setSize(rank);
+		featureVector.setWirePrecision(PactFactorVector.parsePrecision(parameters.getString(PactFactorVector.PRECISION_PARAMETER, "float")));
+	}
+
+	@Override
+	public GenericInputSplit[] createInputSplits(int minNumSplits) throws IOException{
+		GenericInputSplit[] splits = new GenericInputSplit[numSplits];
+		for(int i = 0; i < numSplits; i ++){
+			splits[i] = new GenericInputSplit(i);
+		}
+		return splits;
+	}
+
+	@Override
+	public void open(GenericInputSplit split) throws IOException{
+		super.open(split);
+		int numItems;
+		if(storePath != null){
+			store = RatingStore.openByItem(Util.localFile(storePath));
+			numItems = store.getNumKeys();
+		}else if(dictionaryPath != null){
+			numItems = IdDictionary.loadItems(Util.localFile(dictionaryPath)).size();
+		}else{
+			throw new IOException("No rating store or dictionary configured, set " + RatingStoreInputFormat.STORE_PATH_PARAMETER
+					+ " or " + IdDictionary.DICTIONARY_PATH_PARAMETER);
+		}
+		initializer = FeatureInitializer.configure(parameters, rank);
+		int splitNumber = split.getSplitNumber();
+		index = (int) ((long) numItems * splitNumber / numSplits);
+		end = (int) ((long) numItems * (splitNumber + 1) / numSplits);
+	}
+
+	@Override
+	public boolean reachedEnd() throws IOException{
+		return index >= end;
+	}
+
+	/*
+	 * @return (itemID, item-feature-vector)
+	 */
+	@Override
+	public boolean nextRecord(PactRecord record) throws IOException{
+		itemID.setValue(store != null ? store.getKey(index) : index + 1);
+		index ++;
+		initializer.initializeItem(itemID.getValue(), featureVector.getValues(), 0);
+
+		record.setField(0, itemID);
+		record.setField(1, featureVector);
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException{
+		store = null;
+		if(initializer != null){
+			initializer.close();
+		}
+		super.close();
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/*
+ * This class streams the well-formed ratings of a text file through a RatingLineParser
+ * outside of a Stratosphere job, e.g. for the conversion and dictionary pre-passes.
+ * A file can be scanned in byte ranges by several threads: a line belongs to the range it starts in.
+ */
+public class RatingFileScanner {
+
+	/*
+	 * Receives every well-formed rating, the values are only valid during the call
+	 */
+	public interface Handler {
+		void rating(RatingLineParser parser) throws IOException;
+	}
+
+	private RatingFileScanner(){
+	}
+
+	/*
+	 * @return number of well-formed ratings
+	 */
+	public static long scan(File ratingFile, Handler handler) throws IOException{
+		return scan(ratingFile, 0, Long.MAX_VALUE, true, handler);
+	}
+
+	/*
+	 * Scans the lines which start in [start, end)
+	 * @param ratingRequired false for files of pairs, whose rating may be left out
+	 * @return number of well-formed lines
+	 */
+	public static long scan(File ratingFile, long start, long end, boolean ratingRequired, Handler handler) throws IOException{
+		RatingLineParser parser = new RatingLineParser();
+		long numRatings = 0;
+		RandomAccessFile raf = new RandomAccessFile(ratingFile, "r");
+		try{
+			FileChannel channel = raf.getChannel();
+			long position = start;
+			// a line which starts before the range belongs to the previous range
+			boolean skipFirstLine = false;
+			if(start > 0){
+				raf.seek(start - 1);
+				skipFirstLine = raf.read() != '\n';
+			}
+
+			byte[] buffer = new byte[1 << 16];
+			int length = 0;
+			// file position of buffer[0]
+			long bufferPosition = position;
+			int read;
+			while((read = channel.read(ByteBuffer.wrap(buffer, length, buffer.length - length), position)) >= 0){
+				position += read;
+				length += read;
+				int lineStart = 0;
+				for(int i = 0; i < length; i ++){
+					if(buffer[i] == '\n'){
+						if(skipFirstLine){
+							skipFirstLine = false;
+						}else if(bufferPosition + lineStart >= end){
+							return numRatings;
+						}else if(i > lineStart && parse(parser, buffer, lineStart, i - lineStart, ratingRequired)){
+							handler.rating(parser);
+							numRatings ++;
+						}
+						lineStart = i + 1;
+					}
+				}
+				// keep the incomplete last line, grow the buffer if a single line does not fit
+				length -= lineStart;
+				bufferPosition += lineStart;
+				System.arraycopy(buffer, lineStart, buffer, 0, length);
+				if(length == buffer.length){
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				}
+			}
+			if(length > 0 && !skipFirstLine && bufferPosition < end && parse(parser, buffer, 0, length, ratingRequired)){
+				handler.rating(parser);
+				numRatings ++;
+			}
+		}finally{
+			raf.close();
+		}
+		return numRatings;
+	}
+
+	private static boolean parse(RatingLineParser parser, byte[] bytes, int offset, int numBytes, boolean ratingRequired){
+		return ratingRequired ? parser.parse(bytes, offset, numBytes) : parser.parsePair(bytes, offset, numBytes);
+	}
+
+}
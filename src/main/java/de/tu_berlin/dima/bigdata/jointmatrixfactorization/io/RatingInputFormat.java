@@ -0,0 +1,95 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.io;
+
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.dictionary.IdDictionary;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.io.DelimitedInputFormat;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactFloat;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This input format parses a rating line "user<sep>item<sep>rating[<sep>timestamp]"
+ * straight from the byte buffer of the file split into reused fields, without going over a String.
+ * The separator may be a TAB, ',', ' ' or "::", so the 100k and the 10M MovieLens files are read alike.
+ * If a dictionary is configured, the external IDs are mapped to dense internal IDs,
+ * otherwise they have to be ints already.
+ * Malformed lines and lines with unknown IDs are skipped.
+ * For files of pairs to score the rating may be left out, it is NaN then.
+ */
+public class RatingInputFormat extends DelimitedInputFormat{
+
+	public static final String RATING_OPTIONAL_PARAMETER = "als.input.rating.optional";
+
+	private final RatingLineParser parser = new RatingLineParser();
+	private final PactInteger userID = new PactInteger();
+	private final PactInteger itemID = new PactInteger();
+	private final PactFloat rating = new PactFloat();
+
+	private IdDictionary users;
+	private IdDictionary items;
+	private boolean ratingOptional;
+
+	private static final Logger LOGGER = Logger.getLogger(RatingInputFormat.class.getName());
+
+	@Override
+	public void configure(Configuration parameters) {
+		super.configure(parameters);
+		ratingOptional = parameters.getBoolean(RATING_OPTIONAL_PARAMETER, false);
+		String dictionaryPath = parameters.getString(IdDictionary.DICTIONARY_PATH_PARAMETER, null);
+		if(dictionaryPath != null){
+			try{
+				users = IdDictionary.loadUsers(Util.localFile(dictionaryPath));
+				items = IdDictionary.loadItems(Util.localFile(dictionaryPath));
+			}catch(IOException e){
+				throw new RuntimeException("Cannot load the ID dictionary from " + dictionaryPath, e);
+			}
+		}
+	}
+
+	/*
+	 * @param in:bytes[offset, offset + numBytes) one line of the rating file
+	 * @return (userID, itemID, rating) in the target record
+	 */
+	@Override
+	public boolean readRecord(PactRecord target, byte[] bytes, int offset, int numBytes) {
+		if(ratingOptional ? !parser.parsePair(bytes, offset, numBytes) : !parser.parse(bytes, offset, numBytes)){
+			if(LOGGER.isDebugEnabled()){
+				LOGGER.debug("Skipping malformed rating line at byte " + offset);
+			}
+			return false;
+		}
+		if(users != null){
+			userID.setValue(users.toInternal(parser.getUserID()));
+			itemID.setValue(items.toInternal(parser.getItemID()));
+			if(userID.getValue() < 0 || itemID.getValue() < 0){
+				LOGGER.debug("Skipping rating of IDs which are not in the dictionary");
+				return false;
+			}
+		}else if(parser.hasIntIDs()){
+			userID.setValue((int) parser.getUserID());
+			itemID.setValue((int) parser.getItemID());
+		}else{
+			LOGGER.debug("Skipping rating with long IDs, a dictionary is needed for them");
+			return false;
+		}
+		rating.setValue(parser.getRating());
+
+		target.setField(0, userID);
+		target.setField(1, itemID);
+		target.setField(2, rating);
+		return true;
+	}
+
+}
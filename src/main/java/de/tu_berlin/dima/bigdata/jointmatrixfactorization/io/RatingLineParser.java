@@ -0,0 +1,205 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.io;
+
+/*
+ * This class parses a rating line "user<sep>item<sep>rating[<sep>timestamp]" from a byte buffer
+ * without going over a String, the separator may be a TAB, ',', ' ' or "::".
+ * IDs are parsed as external long IDs, IdDictionary maps them to dense internal IDs.
+ * The parsed values stay in the parser until the next line is parsed.
+ */
+public class RatingLineParser {
+
+	private long userID;
+	private long itemID;
+	private float rating;
+
+	/*
+	 * Cursor of the parser in the current line, and its end
+	 */
+	private int pos;
+	private int limit;
+	private long parsedLong;
+
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+		1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+
+	/*
+	 * @param in:bytes[offset, offset + numBytes) one line of a rating file
+	 * @return whether the line is a well-formed rating, the rest of the line, e.g. the timestamp, is ignored
+	 */
+	public boolean parse(byte[] bytes, int offset, int numBytes){
+		return parse(bytes, offset, numBytes, true);
+	}
+
+	/*
+	 * Parses a line "user<sep>item[<sep>rating[...]]" of a file of pairs to score
+	 * @return whether the line starts with a well-formed pair, the rating is NaN if the line has none,
+	 * also if the pair is followed by a separator and nothing else
+	 */
+	public boolean parsePair(byte[] bytes, int offset, int numBytes){
+		return parse(bytes, offset, numBytes, false);
+	}
+
+	private boolean parse(byte[] bytes, int offset, int numBytes, boolean ratingRequired){
+		pos = offset;
+		limit = offset + numBytes;
+		// tolerate windows line endings
+		if(limit > pos && bytes[limit - 1] == '\r'){
+			limit --;
+		}
+		if(!parseLong(bytes)){
+			return false;
+		}
+		userID = parsedLong;
+		if(!skipSeparator(bytes) || !parseLong(bytes)){
+			return false;
+		}
+		itemID = parsedLong;
+		if(!ratingRequired && (pos == limit || endsAfterSeparator(bytes))){
+			rating = Float.NaN;
+			return true;
+		}
+		return skipSeparator(bytes) && parseFloat(bytes);
+	}
+
+	public long getUserID(){
+		return userID;
+	}
+
+	public long getItemID(){
+		return itemID;
+	}
+
+	/*
+	 * @return whether both IDs can be used as internal IDs without a dictionary
+	 */
+	public boolean hasIntIDs(){
+		return userID == (int) userID && itemID == (int) itemID;
+	}
+
+	public float getRating(){
+		return rating;
+	}
+
+	/*
+	 * Skips one separator, "::" counts as a single one
+	 */
+	private boolean skipSeparator(byte[] bytes){
+		if(pos >= limit){
+			return false;
+		}
+		byte b = bytes[pos];
+		if(b == ':'){
+			pos ++;
+			if(pos < limit && bytes[pos] == ':'){
+				pos ++;
+			}
+			return true;
+		}
+		if(b == '\t' || b == ',' || b == ' '){
+			pos ++;
+			return true;
+		}
+		return false;
+	}
+
+	/*
+	 * @return whether the rest of the line is a separator followed by whitespace only,
+	 * as some tools end every field of a line with the separator, the cursor is not moved otherwise
+	 */
+	private boolean endsAfterSeparator(byte[] bytes){
+		int start = pos;
+		if(skipSeparator(bytes)){
+			while(pos < limit && (bytes[pos] == ' ' || bytes[pos] == '\t')){
+				pos ++;
+			}
+			if(pos == limit){
+				return true;
+			}
+		}
+		pos = start;
+		return false;
+	}
+
+	private boolean parseLong(byte[] bytes){
+		boolean negative = false;
+		if(pos < limit && bytes[pos] == '-'){
+			negative = true;
+			pos ++;
+		}
+		int start = pos;
+		long value = 0;
+		while(pos < limit){
+			int digit = bytes[pos] - '0';
+			if(digit < 0 || digit > 9){
+				break;
+			}
+			if(value > (Long.MAX_VALUE - digit) / 10){
+				return false;
+			}
+			value = value * 10 + digit;
+			pos ++;
+		}
+		if(pos == start){
+			return false;
+		}
+		parsedLong = negative ? -value : value;
+		return true;
+	}
+
+	/*
+	 * Parses [-]digits[.digits] without allocation,
+	 * rare forms with an exponent or very many digits fall back to Float.parseFloat
+	 */
+	private boolean parseFloat(byte[] bytes){
+		int start = pos;
+		boolean negative = false;
+		if(pos < limit && bytes[pos] == '-'){
+			negative = true;
+			pos ++;
+		}
+		long mantissa = 0;
+		int numDigits = 0;
+		int fractionDigits = 0;
+		boolean fraction = false;
+		while(pos < limit){
+			byte b = bytes[pos];
+			if(b >= '0' && b <= '9'){
+				mantissa = mantissa * 10 + (b - '0');
+				numDigits ++;
+				if(fraction){
+					fractionDigits ++;
+				}
+			}else if(b == '.' && !fraction){
+				fraction = true;
+			}else{
+				break;
+			}
+			pos ++;
+		}
+		if(numDigits == 0){
+			return false;
+		}
+		if(numDigits > 18 || (pos < limit && (bytes[pos] == 'e' || bytes[pos] == 'E'))){
+			while(pos < limit && bytes[pos] != '\t' && bytes[pos] != ',' && bytes[pos] != ' ' && bytes[pos] != ':'){
+				pos ++;
+			}
+			try{
+				rating = Float.parseFloat(new String(bytes, start, pos - start, "US-ASCII"));
+				return true;
+			}catch(Exception e){
+				return false;
+			}
+		}
+		double value = mantissa / POWERS_OF_TEN[fractionDigits];
+		rating = (float) (negative ? -value : value);
+		return true;
+	}
+
+}
@@ -0,0 +1,262 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingBlock;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingMatrix;
+
+/*
+ * This class reads one layout of the binary rating store through memory-mapped int and float columns.
+ * A store directory holds the ratings twice: sorted by user (CSR, BY_USER_FILE) and sorted by item (CSC, BY_ITEM_FILE).
+ * In each file the ratings of the i-th key are others[offsets[i]] .. others[offsets[i+1] - 1]
+ * with the ratings in the same positions, keys and the others of each key are sorted ascending.
+ *
+ * File layout, little endian:
+ *   header   HEADER_SIZE bytes: magic, version, layout, numKeys, numRatings, minKey, maxKey, minOther, maxOther
+ *   keys     int[numKeys]
+ *   offsets  int[numKeys + 1]
+ *   others   int[numRatings]
+ *   ratings  float[numRatings]
+ *
+ * The accessors only use absolute reads, so one store can be shared by several threads.
+ */
+public class RatingStore implements RatingMatrix {
+
+	public static final String BY_USER_FILE = "ratings.csr";
+	public static final String BY_ITEM_FILE = "ratings.csc";
+
+	public static final int LAYOUT_BY_USER = 0;
+	public static final int LAYOUT_BY_ITEM = 1;
+
+	private static final int MAGIC = 0x414c5352;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+
+	private final int layout;
+	private final int numKeys;
+	private final int numRatings;
+	private final int minKey;
+	private final int maxKey;
+	private final int minOther;
+	private final int maxOther;
+
+	private final IntBuffer keys;
+	private final IntBuffer offsets;
+	private final IntBuffer others;
+	private final FloatBuffer ratings;
+
+	private RatingStore(FileChannel channel) throws IOException{
+		ByteBuffer header = map(channel, 0, HEADER_SIZE);
+		if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION){
+			throw new IOException("Not a rating store of version " + VERSION);
+		}
+		layout = header.getInt(8);
+		numKeys = header.getInt(12);
+		numRatings = header.getInt(16);
+		minKey = header.getInt(20);
+		maxKey = header.getInt(24);
+		minOther = header.getInt(28);
+		maxOther = header.getInt(32);
+
+		// every column is mapped on its own, so only a single column has to fit into 2GB
+		long position = HEADER_SIZE;
+		keys = map(channel, position, 4L * numKeys).asIntBuffer();
+		position += 4L * numKeys;
+		offsets = map(channel, position, 4L * (numKeys + 1)).asIntBuffer();
+		position += 4L * (numKeys + 1);
+		others = map(channel, position, 4L * numRatings).asIntBuffer();
+		position += 4L * numRatings;
+		ratings = map(channel, position, 4L * numRatings).asFloatBuffer();
+	}
+
+	/*
+	 * Maps one layout file of a store, the mapping stays valid after the file is closed
+	 */
+	public static RatingStore open(File file) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			return new RatingStore(raf.getChannel());
+		}finally{
+			raf.close();
+		}
+	}
+
+	public static RatingStore openByUser(File storeDirectory) throws IOException{
+		return open(new File(storeDirectory, BY_USER_FILE));
+	}
+
+	public static RatingStore openByItem(File storeDirectory) throws IOException{
+		return open(new File(storeDirectory, BY_ITEM_FILE));
+	}
+
+	/*
+	 * Writes a sealed rating block as one layout file of a store
+	 * @param layout LAYOUT_BY_USER if the keys of the block are userIDs, LAYOUT_BY_ITEM if they are itemIDs
+	 */
+	public static void write(RatingBlock block, int layout, File file) throws IOException{
+		int numKeys = block.getNumKeys();
+		int numRatings = block.getNumRatings();
+		int minOther = Integer.MAX_VALUE;
+		int maxOther = Integer.MIN_VALUE;
+		for(int i = 0; i < numRatings; i ++){
+			minOther = Math.min(minOther, block.getOther(i));
+			maxOther = Math.max(maxOther, block.getOther(i));
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try{
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(layout).putInt(numKeys).putInt(numRatings)
+				.putInt(numKeys > 0 ? block.getKey(0) : 0).putInt(numKeys > 0 ? block.getKey(numKeys - 1) : 0)
+				.putInt(numRatings > 0 ? minOther : 0).putInt(numRatings > 0 ? maxOther : 0);
+			while(buffer.position() < HEADER_SIZE){
+				buffer.put((byte) 0);
+			}
+			for(int i = 0; i < numKeys; i ++){
+				putInt(channel, buffer, block.getKey(i));
+			}
+			for(int i = 0; i < numKeys; i ++){
+				putInt(channel, buffer, block.getStart(i));
+			}
+			putInt(channel, buffer, numRatings);
+			for(int i = 0; i < numRatings; i ++){
+				putInt(channel, buffer, block.getOther(i));
+			}
+			for(int i = 0; i < numRatings; i ++){
+				putInt(channel, buffer, Float.floatToRawIntBits(block.getRating(i)));
+			}
+			flush(channel, buffer);
+		}finally{
+			raf.close();
+		}
+	}
+
+	public int getLayout(){
+		return layout;
+	}
+
+	@Override
+	public int getNumKeys(){
+		return numKeys;
+	}
+
+	@Override
+	public int getNumRatings(){
+		return numRatings;
+	}
+
+	public int getMinKey(){
+		return minKey;
+	}
+
+	public int getMaxKey(){
+		return maxKey;
+	}
+
+	public int getMinOther(){
+		return minOther;
+	}
+
+	public int getMaxOther(){
+		return maxOther;
+	}
+
+	@Override
+	public int getKey(int keyIndex){
+		return keys.get(keyIndex);
+	}
+
+	/*
+	 * @return index of the first rating of the key
+	 */
+	@Override
+	public int getStart(int keyIndex){
+		return offsets.get(keyIndex);
+	}
+
+	/*
+	 * @return index after the last rating of the key
+	 */
+	@Override
+	public int getEnd(int keyIndex){
+		return offsets.get(keyIndex + 1);
+	}
+
+	@Override
+	public int getOther(int ratingIndex){
+		return others.get(ratingIndex);
+	}
+
+	@Override
+	public float getRating(int ratingIndex){
+		return ratings.get(ratingIndex);
+	}
+
+	/*
+	 * @return index of the key, or -1 if the key has no ratings
+	 */
+	@Override
+	public int indexOfKey(int key){
+		int low = 0;
+		int high = numKeys - 1;
+		while(low <= high){
+			int mid = (low + high) >>> 1;
+			int midKey = keys.get(mid);
+			if(midKey < key){
+				low = mid + 1;
+			}else if(midKey > key){
+				high = mid - 1;
+			}else{
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public String toString(){
+		return "RatingStore(" + (layout == LAYOUT_BY_USER ? "by user" : "by item") + ", "
+				+ numKeys + " keys in [" + minKey + ", " + maxKey + "], "
+				+ numRatings + " ratings of others in [" + minOther + ", " + maxOther + "])";
+	}
+
+	private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException{
+		if(size > Integer.MAX_VALUE){
+			throw new IOException("Column of " + size + " bytes is too large to be mapped");
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static void putInt(FileChannel channel, ByteBuffer buffer, int value) throws IOException{
+		if(buffer.remaining() < 4){
+			flush(channel, buffer);
+		}
+		buffer.putInt(value);
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException{
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.io;
+
+import java.io.File;
+import java.io.IOException;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.dictionary.IdDictionary;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingBlock;
+
+/*
+ * This class converts a textual rating file once into a binary rating store,
+ * so later runs map the ratings sorted by user and sorted by item instead of parsing and shuffling the text.
+ * With a dictionary directory the external IDs are stored as dense internal IDs,
+ * without one the IDs have to be ints already.
+ * Like the TuppleMapper, it drops malformed lines and ratings with IDs not greater than zero.
+ *
+ * Usage: RatingStoreConverter [ratingFile] [storeDirectory] ([dictionaryDirectory])
+ */
+public class RatingStoreConverter {
+
+	public static void main(String[] args) throws IOException{
+		if(args.length < 2){
+			System.out.println("Usage: RatingStoreConverter [ratingFile] [storeDirectory] ([dictionaryDirectory])");
+			return;
+		}
+		long start = System.currentTimeMillis();
+		File storeDirectory = new File(args[1]);
+		File dictionaryDirectory = args.length > 2 ? new File(args[2]) : null;
+		convert(new File(args[0]), storeDirectory, dictionaryDirectory);
+		System.out.println(RatingStore.openByUser(storeDirectory));
+		System.out.println(RatingStore.openByItem(storeDirectory));
+		System.out.println("converted in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/*
+	 * Writes the ratings of the text file as BY_USER_FILE and BY_ITEM_FILE into the store directory
+	 * @param dictionaryDirectory directory of the ID dictionary, or null
+	 */
+	public static void convert(File ratingFile, File storeDirectory, File dictionaryDirectory) throws IOException{
+		if(!storeDirectory.isDirectory() && !storeDirectory.mkdirs()){
+			throw new IOException("Cannot create store directory " + storeDirectory);
+		}
+		RatingBlock byUser = new RatingBlock();
+		RatingBlock byItem = new RatingBlock();
+		read(ratingFile, dictionaryDirectory, byUser, byItem);
+		RatingStore.write(byUser, RatingStore.LAYOUT_BY_USER, new File(storeDirectory, RatingStore.BY_USER_FILE));
+		RatingStore.write(byItem, RatingStore.LAYOUT_BY_ITEM, new File(storeDirectory, RatingStore.BY_ITEM_FILE));
+	}
+
+	/*
+	 * Reads the ratings of the text file into two sealed rating blocks, keyed by user and keyed by item
+	 * @param dictionaryDirectory directory of the ID dictionary, or null
+	 */
+	public static void read(File ratingFile, File dictionaryDirectory, final RatingBlock byUser, final RatingBlock byItem)
+			throws IOException{
+		final IdDictionary users = dictionaryDirectory != null ? IdDictionary.loadUsers(dictionaryDirectory) : null;
+		final IdDictionary items = dictionaryDirectory != null ? IdDictionary.loadItems(dictionaryDirectory) : null;
+
+		RatingFileScanner.scan(ratingFile, new RatingFileScanner.Handler() {
+			@Override
+			public void rating(RatingLineParser parser) {
+				int userID;
+				int itemID;
+				if(users != null){
+					userID = users.toInternal(parser.getUserID());
+					itemID = items.toInternal(parser.getItemID());
+				}else if(parser.hasIntIDs()){
+					userID = (int) parser.getUserID();
+					itemID = (int) parser.getItemID();
+				}else{
+					return;
+				}
+				if(userID > 0 && itemID > 0){
+					byUser.add(userID, itemID, parser.getRating());
+					byItem.add(itemID, userID, parser.getRating());
+				}
+			}
+		});
+
+		byUser.seal();
+		byItem.seal();
+	}
+
+}
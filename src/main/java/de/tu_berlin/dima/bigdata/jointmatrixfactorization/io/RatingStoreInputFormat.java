@@ -0,0 +1,110 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.io;
+
+import java.io.IOException;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.io.GenericInputFormat;
+import eu.stratosphere.pact.common.io.GenericInputSplit;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactFloat;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This input format reads the ratings from the memory-mapped user layout of a binary rating store
+ * instead of parsing a text file, every split reads a contiguous range of users.
+ * The store directory has to be reachable under the same local path on every worker.
+ */
+public class RatingStoreInputFormat extends GenericInputFormat{
+
+	public static final String STORE_PATH_PARAMETER = "als.store.path";
+	/*
+	 * Number of splits the users are divided into, should be the degree of parallelism of the source
+	 */
+	public static final String NUM_SPLITS_PARAMETER = "als.store.splits";
+
+	private final PactInteger userID = new PactInteger();
+	private final PactInteger itemID = new PactInteger();
+	private final PactFloat rating = new PactFloat();
+
+	private String storePath;
+	private int numSplits;
+
+	private RatingStore store;
+	private int keyIndex;
+	private int keyEnd;
+	private int ratingIndex;
+	private int ratingEnd;
+
+	@Override
+	public void configure(Configuration parameters){
+		super.configure(parameters);
+		storePath = parameters.getString(STORE_PATH_PARAMETER, null);
+		numSplits = parameters.getInteger(NUM_SPLITS_PARAMETER, 1);
+	}
+
+	@Override
+	public GenericInputSplit[] createInputSplits(int minNumSplits) throws IOException{
+		GenericInputSplit[] splits = new GenericInputSplit[numSplits];
+		for(int i = 0; i < numSplits; i ++){
+			splits[i] = new GenericInputSplit(i);
+		}
+		return splits;
+	}
+
+	@Override
+	public void open(GenericInputSplit split) throws IOException{
+		super.open(split);
+		if(storePath == null){
+			throw new IOException("No rating store configured, set " + STORE_PATH_PARAMETER);
+		}
+		store = RatingStore.openByUser(Util.localFile(storePath));
+		int numKeys = store.getNumKeys();
+		int splitNumber = split.getSplitNumber();
+		keyIndex = (int) ((long) numKeys * splitNumber / numSplits);
+		keyEnd = (int) ((long) numKeys * (splitNumber + 1) / numSplits);
+		ratingIndex = keyIndex < keyEnd ? store.getStart(keyIndex) : 0;
+		ratingEnd = keyIndex < keyEnd ? store.getEnd(keyEnd - 1) : 0;
+		if(keyIndex < keyEnd){
+			userID.setValue(store.getKey(keyIndex));
+		}
+	}
+
+	@Override
+	public boolean reachedEnd() throws IOException{
+		return ratingIndex >= ratingEnd;
+	}
+
+	/*
+	 * @return (userID, itemID, rating)
+	 */
+	@Override
+	public boolean nextRecord(PactRecord record) throws IOException{
+		while(ratingIndex >= store.getEnd(keyIndex)){
+			keyIndex ++;
+			userID.setValue(store.getKey(keyIndex));
+		}
+		itemID.setValue(store.getOther(ratingIndex));
+		rating.setValue(store.getRating(ratingIndex));
+		ratingIndex ++;
+
+		record.setField(0, userID);
+		record.setField(1, itemID);
+		record.setField(2, rating);
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException{
+		store = null;
+		super.close();
+	}
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.tu_berlin.bigdata.jointmatrixfactorization.plan.MatrixFactorizationPlan;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.evaluation.ErrorMetrics;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.HeapFactorMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingBlock;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.FeatureInitializer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.PlanOptions;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+
+/*
+ * This class runs a K-fold cross-validation of the ALS model of the LocalAlsTrainer.
+ * Every rating goes to the fold of the hash of its (userID, itemID), so the folds are the same in every run
+ * and do not depend on the order of the ratings. The ratings are read once; every fold builds its
+ * training and test matrices from the shared ratings and the K folds are trained at the same time,
+ * each with a share of the threads. Test ratings of users or items without training ratings are left out.
+ * The RMSE and MAE of every fold are reported with their mean and sample variance over the folds.
+ *
+ * Usage: CrossValidation [inputPath] ([numThreads]) ([folds=5] [concurrent=K]) with the options rank, iterations,
+ *        threshold, lambda, seed, store, dictionary, solver, cgiterations and cgtolerance of the MatrixFactorizationPlan
+ */
+public class CrossValidation {
+
+	public static final int DEFAULT_NUM_FOLDS = 5;
+
+	private final RatingMatrix byUser;
+	private final int numFolds;
+	private final PlanOptions options;
+
+	/*
+	 * @param byUser all ratings keyed by userID
+	 */
+	public CrossValidation(RatingMatrix byUser, int numFolds, PlanOptions options){
+		this.byUser = byUser;
+		this.numFolds = numFolds;
+		this.options = options;
+	}
+
+	/*
+	 * @return fold of a rating, from a 64 bit mix of both IDs
+	 */
+	public static int foldOf(int userID, int itemID, int numFolds){
+		long z = ((long) userID << 32) | (itemID & 0xFFFFFFFFL);
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		z = z ^ (z >>> 31);
+		return (int) ((z >>> 1) % numFolds);
+	}
+
+	/*
+	 * Trains the model of one fold on the ratings of all other folds
+	 * @return RMSE and MAE of the ratings of the fold
+	 */
+	public ErrorMetrics trainFold(int fold, int numThreads) throws IOException{
+		RatingBlock trainByUser = new RatingBlock();
+		RatingBlock trainByItem = new RatingBlock();
+		RatingBlock test = new RatingBlock();
+		for(int key = 0; key < byUser.getNumKeys(); key ++){
+			int userID = byUser.getKey(key);
+			for(int i = byUser.getStart(key); i < byUser.getEnd(key); i ++){
+				int itemID = byUser.getOther(i);
+				float rating = byUser.getRating(i);
+				if(foldOf(userID, itemID, numFolds) == fold){
+					test.add(userID, itemID, rating);
+				}else{
+					trainByUser.add(userID, itemID, rating);
+					trainByItem.add(itemID, userID, rating);
+				}
+			}
+		}
+		trainByUser.seal();
+		trainByItem.seal();
+		test.seal();
+
+		int rank = options.getInt("rank", Util.numFeatures);
+		LocalAlsTrainer trainer = new LocalAlsTrainer(trainByUser, trainByItem,
+				new HeapFactorMatrix(trainByUser.getNumKeys(), rank), new HeapFactorMatrix(trainByItem.getNumKeys(), rank),
+				options.getDouble("lambda", Util.lambda), numThreads);
+		trainer.setSolverOptions(options);
+		trainer.initialize(new FeatureInitializer(rank,
+				Long.parseLong(options.getString("seed", String.valueOf(FeatureInitializer.DEFAULT_SEED))), null, null, null));
+		trainer.train(options.getInt("iterations", MatrixFactorizationPlan.DEFAULT_NUM_ITERATIONS),
+				options.getDouble("threshold", MatrixFactorizationPlan.DEFAULT_CONVERGENCE_THRESHOLD));
+		return trainer.errorMetrics(test);
+	}
+
+	/*
+	 * Trains all folds, concurrent of them at a time
+	 * @return the metrics of every fold
+	 */
+	public ErrorMetrics[] run(int concurrent, final int threadsPerFold) throws IOException{
+		ExecutorService executor = Executors.newFixedThreadPool(concurrent);
+		try{
+			List<Future<ErrorMetrics>> futures = new ArrayList<Future<ErrorMetrics>>();
+			for(int fold = 0; fold < numFolds; fold ++){
+				final int currentFold = fold;
+				futures.add(executor.submit(new Callable<ErrorMetrics>() {
+					@Override
+					public ErrorMetrics call() throws IOException {
+						return trainFold(currentFold, threadsPerFold);
+					}
+				}));
+			}
+			ErrorMetrics[] metrics = new ErrorMetrics[numFolds];
+			for(int fold = 0; fold < numFolds; fold ++){
+				metrics[fold] = LocalAlsTrainer.get(futures.get(fold));
+			}
+			return metrics;
+		}finally{
+			executor.shutdown();
+		}
+	}
+
+	public static void main(String[] args) throws IOException{
+		if(args.length < 1){
+			System.out.println("Usage: CrossValidation [inputPath] ([numThreads]) ([folds=5] [concurrent=K]) ([key=value]...)");
+			return;
+		}
+		PlanOptions options = new PlanOptions(args);
+		int numThreads = args.length >= 2 && args[1].indexOf('=') < 0 ? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		int numFolds = options.getInt("folds", DEFAULT_NUM_FOLDS);
+		int concurrent = Math.max(1, Math.min(options.getInt("concurrent", numFolds), numFolds));
+		String dictionaryPath = options.getString("dictionary", null);
+
+		long start = System.currentTimeMillis();
+		RatingMatrix byUser = LocalAlsTrainer.readRatings(args[0], options.getString("store", null),
+				dictionaryPath != null ? Util.localFile(dictionaryPath) : null)[0];
+		System.out.println("read " + byUser.getNumRatings() + " ratings in " + (System.currentTimeMillis() - start) + " ms");
+
+		start = System.currentTimeMillis();
+		ErrorMetrics[] metrics = new CrossValidation(byUser, numFolds, options).run(concurrent, Math.max(1, numThreads / concurrent));
+		double[] rmse = new double[numFolds];
+		double[] mae = new double[numFolds];
+		for(int fold = 0; fold < numFolds; fold ++){
+			System.out.println("fold " + (fold + 1) + ": " + metrics[fold]);
+			rmse[fold] = metrics[fold].getRmse();
+			mae[fold] = metrics[fold].getMae();
+		}
+		System.out.println(numFolds + " folds, " + concurrent + " at a time, in " + (System.currentTimeMillis() - start) + " ms");
+		System.out.println("RMSE: mean " + mean(rmse) + " variance " + variance(rmse));
+		System.out.println("MAE: mean " + mean(mae) + " variance " + variance(mae));
+	}
+
+	private static double mean(double[] values){
+		double sum = 0;
+		for(double value : values){
+			sum += value;
+		}
+		return sum / values.length;
+	}
+
+	/*
+	 * @return sample variance, 0 for a single value
+	 */
+	private static double variance(double[] values){
+		if(values.length < 2){
+			return 0;
+		}
+		double mean = mean(values);
+		double sum = 0;
+		for(double value : values){
+			sum += (value - mean) * (value - mean);
+		}
+		return sum / (values.length - 1);
+	}
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.tu_berlin.bigdata.jointmatrixfactorization.plan.MatrixFactorizationPlan;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.dictionary.IdDictionary;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingStoreConverter;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.HeapFactorMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingBlock;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.FeatureInitializer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.PlanOptions;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+
+/*
+ * This class trains one ALS model for every point of a grid of ranks and lambdas
+ * and reports the RMSE of validation ratings for each of them.
+ * The ratings are read once: all models share the rating matrices and the row index of the LocalAlsTrainer,
+ * each one only allocates its own feature-vectors, so the sweep costs about the sum of the training times.
+ * The models are trained back-to-back with all threads, or several at once with a share of the threads each.
+ * Only the best model so far is kept, it is written as a model file at the end.
+ *
+ * Usage: GridSearch [inputPath] [validationPath] ([numThreads]) ([ranks=10,20,50] [lambdas=0.01,0.05,0.1] [concurrent=C]
+ *        [model=PATH]) with the options iterations, threshold, seed, store, dictionary, solver, cgiterations
+ *        and cgtolerance of the MatrixFactorizationPlan
+ */
+public class GridSearch {
+
+	/*
+	 * Result of one point of the grid
+	 */
+	private static final class Result {
+		final int rank;
+		final double lambda;
+		LocalAlsTrainer trainer;
+		int rounds;
+		double rmse;
+		long millis;
+
+		Result(int rank, double lambda){
+			this.rank = rank;
+			this.lambda = lambda;
+		}
+	}
+
+	private final LocalAlsTrainer shared;
+	private final RatingMatrix validation;
+	private final PlanOptions options;
+	private final int threadsPerModel;
+	private Result best;
+
+	/*
+	 * @param shared trainer whose ratings and row index all models share
+	 * @param validation validation ratings keyed by userID
+	 */
+	public GridSearch(LocalAlsTrainer shared, RatingMatrix validation, PlanOptions options, int threadsPerModel){
+		this.shared = shared;
+		this.validation = validation;
+		this.options = options;
+		this.threadsPerModel = threadsPerModel;
+	}
+
+	/*
+	 * Trains the model of one point of the grid and keeps it if it is the best so far
+	 */
+	private void train(Result result) throws IOException{
+		long start = System.currentTimeMillis();
+		LocalAlsTrainer trainer = new LocalAlsTrainer(shared,
+				new HeapFactorMatrix(shared.getRatingsByUser().getNumKeys(), result.rank),
+				new HeapFactorMatrix(shared.getRatingsByItem().getNumKeys(), result.rank), result.lambda, threadsPerModel);
+		trainer.setSolverOptions(options);
+		trainer.initialize(new FeatureInitializer(result.rank,
+				Long.parseLong(options.getString("seed", String.valueOf(FeatureInitializer.DEFAULT_SEED))), null, null, null));
+		result.rounds = trainer.train(options.getInt("iterations", MatrixFactorizationPlan.DEFAULT_NUM_ITERATIONS),
+				options.getDouble("threshold", MatrixFactorizationPlan.DEFAULT_CONVERGENCE_THRESHOLD));
+		result.rmse = trainer.rmse(validation);
+		result.millis = System.currentTimeMillis() - start;
+		System.out.println(String.format("rank %4d lambda %-8s %3d rounds %8d ms  validation RMSE %.5f",
+				result.rank, String.valueOf(result.lambda), result.rounds, result.millis, result.rmse));
+		synchronized(this){
+			if(best == null || result.rmse < best.rmse){
+				result.trainer = trainer;
+				if(best != null){
+					best.trainer = null;
+				}
+				best = result;
+			}
+		}
+	}
+
+	/*
+	 * Trains all points of the grid, concurrent of them at a time
+	 * @return the results in the order of the grid
+	 */
+	List<Result> run(int[] ranks, double[] lambdas, int concurrent) throws IOException{
+		final List<Result> results = new ArrayList<Result>();
+		for(int rank : ranks){
+			for(double lambda : lambdas){
+				results.add(new Result(rank, lambda));
+			}
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(concurrent);
+		try{
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for(final Result result : results){
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						train(result);
+						return null;
+					}
+				}));
+			}
+			for(Future<Void> future : futures){
+				LocalAlsTrainer.get(future);
+			}
+		}finally{
+			executor.shutdown();
+		}
+		return results;
+	}
+
+	public static void main(String[] args) throws IOException{
+		if(args.length < 2){
+			System.out.println("Usage: GridSearch [inputPath] [validationPath] ([numThreads]) ([ranks=10,20,50] "
+					+ "[lambdas=0.01,0.05,0.1] [concurrent=C] [model=PATH]) ([key=value]...)");
+			return;
+		}
+		PlanOptions options = new PlanOptions(args);
+		int numThreads = args.length >= 3 && args[2].indexOf('=') < 0 ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+		int[] ranks = parseInts(options.getString("ranks", String.valueOf(Util.numFeatures)));
+		double[] lambdas = parseDoubles(options.getString("lambdas", String.valueOf(Util.lambda)));
+		int concurrent = Math.max(1, Math.min(options.getInt("concurrent", 1), ranks.length * lambdas.length));
+		String dictionaryPath = options.getString("dictionary", null);
+		File dictionaryDirectory = dictionaryPath != null ? Util.localFile(dictionaryPath) : null;
+
+		long start = System.currentTimeMillis();
+		RatingMatrix[] ratings = LocalAlsTrainer.readRatings(args[0], options.getString("store", null), dictionaryDirectory);
+		RatingBlock validation = new RatingBlock();
+		RatingStoreConverter.read(Util.localFile(args[1]), dictionaryDirectory, validation, new RatingBlock());
+		// holds the ratings and the row index for the models of the grid, its own feature-vectors are never trained
+		LocalAlsTrainer shared = new LocalAlsTrainer(ratings[0], ratings[1], new HeapFactorMatrix(ratings[0].getNumKeys(), 1),
+				new HeapFactorMatrix(ratings[1].getNumKeys(), 1), Util.lambda, numThreads);
+		System.out.println("read " + ratings[0].getNumRatings() + " ratings and " + validation.getNumRatings()
+				+ " validation ratings in " + (System.currentTimeMillis() - start) + " ms");
+
+		start = System.currentTimeMillis();
+		GridSearch search = new GridSearch(shared, validation, options, Math.max(1, numThreads / concurrent));
+		List<Result> results = search.run(ranks, lambdas, concurrent);
+		long trainingMillis = 0;
+		for(Result result : results){
+			trainingMillis += result.millis;
+		}
+		Result best = search.best;
+		System.out.println("swept " + results.size() + " configurations, " + concurrent + " at a time, in "
+				+ (System.currentTimeMillis() - start) + " ms, " + trainingMillis + " ms of training");
+		System.out.println("best: rank " + best.rank + " lambda " + best.lambda + " validation RMSE " + best.rmse);
+
+		String modelPath = options.getString("model", null);
+		if(modelPath != null){
+			best.trainer.writeModel(Util.localFile(modelPath), best.rounds,
+					dictionaryDirectory != null ? IdDictionary.loadUsers(dictionaryDirectory) : null,
+					dictionaryDirectory != null ? IdDictionary.loadItems(dictionaryDirectory) : null);
+			System.out.println("wrote model " + modelPath);
+		}
+	}
+
+	private static int[] parseInts(String values){
+		String[] tokens = values.split(",");
+		int[] result = new int[tokens.length];
+		for(int i = 0; i < tokens.length; i ++){
+			result[i] = Integer.parseInt(tokens[i].trim());
+		}
+		return result;
+	}
+
+	private static double[] parseDoubles(String values){
+		String[] tokens = values.split(",");
+		double[] result = new double[tokens.length];
+		for(int i = 0; i < tokens.length; i ++){
+			result[i] = Double.parseDouble(tokens[i].trim());
+		}
+		return result;
+	}
+
+}
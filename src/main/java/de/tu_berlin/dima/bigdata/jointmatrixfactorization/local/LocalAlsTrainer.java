@@ -0,0 +1,569 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.tu_berlin.bigdata.jointmatrixfactorization.plan.MatrixFactorizationPlan;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.dictionary.IdDictionary;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.evaluation.ErrorMetrics;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingStore;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingStoreConverter;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorModel;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.MappedFactorMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.ModelWriter;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.ConjugateGradientSolver;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.NormalEquations;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingBlock;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.FeatureInitializer;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.PlanOptions;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+
+/*
+ * This class trains the ALS model of the MatrixFactorizationPlan inside of a single JVM,
+ * for data sets which fit into the memory of one machine and would only pay for the shuffles of a job.
+ * The ratings are held once sorted by user (CSR) and once sorted by item (CSC),
+ * the feature-vectors of each side are one FactorMatrix of numKeys x rank values,
+ * on the heap, off the heap or paged from a file for models larger than the memory.
+ * Every half-step solves the keys of one side in parallel: the threads take chunks of keys from a shared counter
+ * and each of them reuses its own NormalEquations and solution buffer, so no memory is allocated per key.
+ *
+ * The rounds are the ones of the plan: the users are solved from the items of the previous round,
+ * then the items from these users, and the iteration stops early once the root mean squared change
+ * of the item-feature-vectors is not above the threshold. The final users are solved from the final items.
+ * A key whose normal equation cannot be solved keeps its previous feature-vector, like a key without output in the plan.
+ * In implicit-feedback mode every half-step first sums up Y'Y of the other side in parallel,
+ * each key then starts from a copy of it and only adds the corrections of its own ratings.
+ * With the conjugate gradient solver the explicit half-steps run a few steps per key from its previous feature-vector.
+ */
+public class LocalAlsTrainer {
+
+	/*
+	 * Number of keys a thread takes at once, small enough to balance keys of very different degree
+	 */
+	private static final int CHUNK_SIZE = 256;
+
+	private final RatingMatrix byUser;
+	private final RatingMatrix byItem;
+	private final int rank;
+	private final double lambda;
+	private final int numThreads;
+	private boolean implicit;
+	private double alpha;
+	private boolean conjugateGradient;
+	private int cgIterations;
+	private double cgTolerance;
+
+	/*
+	 * Row of the item of every rating in byUser and row of the user of every rating in byItem,
+	 * so the half-steps read the feature-vectors of the other side without a lookup
+	 */
+	private final int[] itemRowOfRating;
+	private final int[] userRowOfRating;
+
+	private final FactorMatrix userFactors;
+	private final FactorMatrix itemFactors;
+
+	/*
+	 * @param byUser ratings keyed by userID
+	 * @param byItem the same ratings keyed by itemID
+	 * @param userFactors matrix of a row for every key of byUser
+	 * @param itemFactors matrix of a row for every key of byItem
+	 */
+	public LocalAlsTrainer(RatingMatrix byUser, RatingMatrix byItem, FactorMatrix userFactors, FactorMatrix itemFactors,
+			double lambda, int numThreads){
+		if(userFactors.getNumRows() != byUser.getNumKeys() || itemFactors.getNumRows() != byItem.getNumKeys()
+				|| userFactors.getRank() != itemFactors.getRank()){
+			throw new IllegalArgumentException("The factor matrices do not match the rating matrices");
+		}
+		this.byUser = byUser;
+		this.byItem = byItem;
+		this.rank = itemFactors.getRank();
+		this.lambda = lambda;
+		this.numThreads = numThreads;
+		this.userFactors = userFactors;
+		this.itemFactors = itemFactors;
+		itemRowOfRating = rowsOfOthers(byUser, byItem);
+		userRowOfRating = rowsOfOthers(byItem, byUser);
+	}
+
+	/*
+	 * Trains other feature-vectors of the same ratings, sharing the ratings and the row index of another trainer
+	 */
+	public LocalAlsTrainer(LocalAlsTrainer shared, FactorMatrix userFactors, FactorMatrix itemFactors,
+			double lambda, int numThreads){
+		if(userFactors.getNumRows() != shared.byUser.getNumKeys() || itemFactors.getNumRows() != shared.byItem.getNumKeys()
+				|| userFactors.getRank() != itemFactors.getRank()){
+			throw new IllegalArgumentException("The factor matrices do not match the rating matrices");
+		}
+		this.byUser = shared.byUser;
+		this.byItem = shared.byItem;
+		this.rank = itemFactors.getRank();
+		this.lambda = lambda;
+		this.numThreads = numThreads;
+		this.userFactors = userFactors;
+		this.itemFactors = itemFactors;
+		this.itemRowOfRating = shared.itemRowOfRating;
+		this.userRowOfRating = shared.userRowOfRating;
+	}
+
+	private static int[] rowsOfOthers(RatingMatrix ratings, RatingMatrix others){
+		int[] rows = new int[ratings.getNumRatings()];
+		for(int i = 0; i < rows.length; i ++){
+			rows[i] = others.indexOfKey(ratings.getOther(i));
+		}
+		return rows;
+	}
+
+	/*
+	 * Switches to implicit-feedback ALS, the ratings are the confidences c = 1 + alpha * r of the preference 1
+	 */
+	public void setImplicit(double alpha){
+		this.implicit = true;
+		this.alpha = alpha;
+	}
+
+	/*
+	 * Solves the explicit half-steps with conjugate gradient steps from the previous feature-vector of every key
+	 */
+	public void setConjugateGradient(int maxIterations, double tolerance){
+		this.conjugateGradient = true;
+		this.cgIterations = maxIterations;
+		this.cgTolerance = tolerance;
+	}
+
+	/*
+	 * Applies the options implicit, alpha, solver, cgiterations and cgtolerance of the MatrixFactorizationPlan
+	 */
+	public void setSolverOptions(PlanOptions options){
+		if(options.getBoolean("implicit", false)){
+			setImplicit(options.getDouble("alpha", Util.alpha));
+		}
+		if(options.getString("solver", ConjugateGradientSolver.CHOLESKY).equals(ConjugateGradientSolver.CONJUGATE_GRADIENT)){
+			setConjugateGradient(options.getInt("cgiterations", ConjugateGradientSolver.DEFAULT_ITERATIONS),
+					options.getDouble("cgtolerance", ConjugateGradientSolver.DEFAULT_TOLERANCE));
+		}
+	}
+
+	/*
+	 * Gives each item and user its initial feature-vector, like the InitItemFeatureVectorReducer
+	 */
+	public void initialize(FeatureInitializer initializer){
+		float[] vector = new float[rank];
+		for(int row = 0; row < itemFactors.getNumRows(); row ++){
+			initializer.initializeItem(byItem.getKey(row), vector, 0);
+			itemFactors.setRow(row, vector, 0);
+		}
+		for(int row = 0; row < userFactors.getNumRows(); row ++){
+			initializer.initializeUser(byUser.getKey(row), vector, 0);
+			userFactors.setRow(row, vector, 0);
+		}
+	}
+
+	/*
+	 * Runs the ALS rounds and solves the final user-feature-vectors
+	 * @param threshold stop once the root mean squared change of the item-feature-vectors is not above it, 0 runs all rounds
+	 * @return number of rounds run
+	 */
+	public int train(int maxIterations, double threshold) throws IOException{
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try{
+			int round = 0;
+			while(round < maxIterations){
+				update(executor, byUser, itemRowOfRating, itemFactors, userFactors);
+				double squaredDelta = update(executor, byItem, userRowOfRating, userFactors, itemFactors);
+				round ++;
+				double rmsDelta = byItem.getNumKeys() > 0 ? Math.sqrt(squaredDelta / byItem.getNumKeys()) : 0;
+				if(threshold > 0 && rmsDelta <= threshold){
+					break;
+				}
+			}
+			update(executor, byUser, itemRowOfRating, itemFactors, userFactors);
+			return round;
+		}finally{
+			executor.shutdown();
+		}
+	}
+
+	/*
+	 * Solves the feature-vectors of all keys of one side in parallel
+	 * @param otherRows row in otherFactors of the other side of every rating
+	 * @return sum of the squared changes of the feature-vectors
+	 */
+	private double update(ExecutorService executor, final RatingMatrix ratings, final int[] otherRows,
+			final FactorMatrix otherFactors, final FactorMatrix factors) throws IOException{
+
+		final NormalEquations base = implicit ? gramian(executor, otherFactors) : null;
+		final AtomicInteger nextKey = new AtomicInteger();
+		final int numKeys = ratings.getNumKeys();
+		List<Future<Double>> futures = new ArrayList<Future<Double>>();
+		for(int thread = 0; thread < numThreads; thread ++){
+			futures.add(executor.submit(new Callable<Double>() {
+				@Override
+				public Double call() {
+					NormalEquations equations = new NormalEquations(rank);
+					ConjugateGradientSolver solver = conjugateGradient ? new ConjugateGradientSolver(rank, cgIterations, cgTolerance) : null;
+					double[] solution = new double[rank];
+					float[] previous = new float[rank];
+					float[] solved = new float[rank];
+					double squaredDelta = 0;
+					int start;
+					while((start = nextKey.getAndAdd(CHUNK_SIZE)) < numKeys){
+						int end = Math.min(start + CHUNK_SIZE, numKeys);
+						for(int key = start; key < end; key ++){
+							boolean solvable;
+							if(implicit){
+								equations.reset(base);
+								for(int i = ratings.getStart(key); i < ratings.getEnd(key); i ++){
+									equations.addImplicit(otherFactors, otherRows[i], ratings.getRating(i), alpha);
+								}
+								solvable = equations.solveImplicit(lambda, solution);
+							}else if(conjugateGradient){
+								solver.reset();
+								for(int i = ratings.getStart(key); i < ratings.getEnd(key); i ++){
+									solver.add(otherFactors, otherRows[i], ratings.getRating(i));
+								}
+								factors.getRow(key, previous, 0);
+								for(int i = 0; i < rank; i ++){
+									solution[i] = previous[i];
+								}
+								solvable = solver.solve(lambda, solution);
+							}else{
+								equations.reset();
+								for(int i = ratings.getStart(key); i < ratings.getEnd(key); i ++){
+									equations.add(otherFactors, otherRows[i], ratings.getRating(i));
+								}
+								solvable = equations.solve(lambda, solution);
+							}
+							if(!solvable){
+								continue;
+							}
+							factors.getRow(key, previous, 0);
+							for(int i = 0; i < rank; i ++){
+								solved[i] = (float) solution[i];
+								double delta = solved[i] - previous[i];
+								squaredDelta += delta * delta;
+							}
+							factors.setRow(key, solved, 0);
+						}
+					}
+					return squaredDelta;
+				}
+			}));
+		}
+		double squaredDelta = 0;
+		for(Future<Double> future : futures){
+			squaredDelta += get(future);
+		}
+		return squaredDelta;
+	}
+
+	/*
+	 * Sums up Y'Y of all feature-vectors of one side in parallel, every thread over its own chunks of rows
+	 * @return normal equation holding Y'Y
+	 */
+	private NormalEquations gramian(ExecutorService executor, final FactorMatrix factors) throws IOException{
+		final AtomicInteger nextRow = new AtomicInteger();
+		final int numRows = factors.getNumRows();
+		List<Future<NormalEquations>> futures = new ArrayList<Future<NormalEquations>>();
+		for(int thread = 0; thread < numThreads; thread ++){
+			futures.add(executor.submit(new Callable<NormalEquations>() {
+				@Override
+				public NormalEquations call() {
+					NormalEquations partial = new NormalEquations(rank);
+					int start;
+					while((start = nextRow.getAndAdd(CHUNK_SIZE)) < numRows){
+						int end = Math.min(start + CHUNK_SIZE, numRows);
+						for(int row = start; row < end; row ++){
+							partial.add(factors, row, 0);
+						}
+					}
+					return partial;
+				}
+			}));
+		}
+		NormalEquations gramian = new NormalEquations(rank);
+		for(Future<NormalEquations> future : futures){
+			gramian.add(get(future));
+		}
+		return gramian;
+	}
+
+	static <T> T get(Future<T> future) throws IOException{
+		try{
+			return future.get();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}catch(ExecutionException e){
+			throw new IOException(e.getCause());
+		}
+	}
+
+	public int getRank(){
+		return rank;
+	}
+
+	public RatingMatrix getRatingsByUser(){
+		return byUser;
+	}
+
+	public RatingMatrix getRatingsByItem(){
+		return byItem;
+	}
+
+	/*
+	 * @return row of the item of a rating of byUser
+	 */
+	public int getItemRow(int ratingIndex){
+		return itemRowOfRating[ratingIndex];
+	}
+
+	/*
+	 * @return feature-vectors of the users in the order of their keys in byUser
+	 */
+	public FactorMatrix getUserFactors(){
+		return userFactors;
+	}
+
+	/*
+	 * @return feature-vectors of the items in the order of their keys in byItem
+	 */
+	public FactorMatrix getItemFactors(){
+		return itemFactors;
+	}
+
+	/*
+	 * Trains and writes the output like the MatrixFactorizationPlan with the same arguments.
+	 * The options which only shape the distributed job (blocks, gramians, hotdegree, salts, precision, recblocks) are ignored.
+	 * @param args(2) Number of threads, all processors by default
+	 * @param factors=heap|direct|mapped Storage of the feature-vectors, heap by default
+	 * @param factordir=DIR In mapped mode, directory of the factor files of the run, which are deleted afterwards,
+	 *                      the temporary directory by default
+	 * @param resident=MB In mapped mode, megabytes of each factor file which are mapped at the same time
+	 * @param trainer=als|sgd Train with ALS rounds or with the epochs of the LocalSgdTrainer
+	 * @param epochs=N In sgd mode, maximum number of epochs, threshold is the least improvement of the training RMSE
+	 * @param rate=R In sgd mode, learning rate of the first epoch
+	 * @param schedule=constant|inverse|exponential|bold In sgd mode, learning rate schedule
+	 * @param decay=D In sgd mode, decay of the inverse and exponential schedules
+	 * @param strata=S In sgd mode, train S x S strata reproducibly instead of Hogwild
+	 * @param validation=PATH In sgd mode, report the RMSE of the ratings in PATH after every epoch
+	 */
+	public static void run(String[] args) throws IOException{
+		String inputPath = args[0];
+		String outputPath = args[1];
+		PlanOptions options = new PlanOptions(args);
+		int numThreads = args.length >= 3 && args[2].indexOf('=') < 0 ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+		String storePath = options.getString("store", null);
+		String dictionaryPath = options.getString("dictionary", null);
+		File dictionaryDirectory = dictionaryPath != null ? Util.localFile(dictionaryPath) : null;
+
+		long start = System.currentTimeMillis();
+		RatingMatrix[] ratings = readRatings(inputPath, storePath, dictionaryDirectory);
+		RatingMatrix byUser = ratings[0];
+		RatingMatrix byItem = ratings[1];
+		System.out.println("read " + byUser.getNumRatings() + " ratings of " + byUser.getNumKeys() + " users and "
+				+ byItem.getNumKeys() + " items in " + (System.currentTimeMillis() - start) + " ms");
+
+		start = System.currentTimeMillis();
+		int rank = options.getInt("rank", Util.numFeatures);
+		String storage = options.getString("factors", FactorMatrix.HEAP);
+		File factorDirectory = new File(options.getString("factordir", System.getProperty("java.io.tmpdir")));
+		long residentBytes = options.contains("resident") ? options.getInt("resident", 0) * (1L << 20)
+				: MappedFactorMatrix.DEFAULT_RESIDENT_BYTES;
+		// every run maps its own factor files, so runs at the same time do not overwrite each other's feature-vectors
+		File userFactorFile = factorFile(storage, "users", factorDirectory);
+		File itemFactorFile = factorFile(storage, "items", factorDirectory);
+		FactorMatrix userFactors = FactorMatrix.allocate(storage, byUser.getNumKeys(), rank, userFactorFile, residentBytes);
+		FactorMatrix itemFactors = FactorMatrix.allocate(storage, byItem.getNumKeys(), rank, itemFactorFile, residentBytes);
+		double lambda = options.getDouble("lambda", Util.lambda);
+		LocalAlsTrainer trainer = new LocalAlsTrainer(byUser, byItem, userFactors, itemFactors, lambda, numThreads);
+		trainer.setSolverOptions(options);
+		String warmStartPath = options.getString("warmstart", null);
+		long seed = Long.parseLong(options.getString("seed", String.valueOf(FeatureInitializer.DEFAULT_SEED)));
+		FeatureInitializer initializer = new FeatureInitializer(rank, seed,
+				warmStartPath != null ? FactorModel.load(Util.localFile(warmStartPath)) : null,
+				dictionaryDirectory != null ? IdDictionary.loadUsers(dictionaryDirectory) : null,
+				dictionaryDirectory != null ? IdDictionary.loadItems(dictionaryDirectory) : null);
+		trainer.initialize(initializer);
+		initializer.close();
+		if(warmStartPath != null){
+			System.out.println("warm start from " + warmStartPath + ": " + initializer.getNumWarm() + " feature-vectors reused, "
+					+ initializer.getNumNew() + " new");
+		}
+		int rounds;
+		if(options.getString("trainer", "als").equals("sgd")){
+			LocalSgdTrainer sgd = new LocalSgdTrainer(trainer, lambda,
+					options.getDouble("rate", LocalSgdTrainer.DEFAULT_LEARNING_RATE), seed, numThreads);
+			sgd.setSchedule(options.getString("schedule", LocalSgdTrainer.CONSTANT),
+					options.getDouble("decay", LocalSgdTrainer.DEFAULT_DECAY));
+			sgd.setStrata(options.getInt("strata", 0));
+			String validationPath = options.getString("validation", null);
+			if(validationPath != null){
+				RatingBlock validation = new RatingBlock();
+				RatingStoreConverter.read(Util.localFile(validationPath), dictionaryDirectory, validation, new RatingBlock());
+				sgd.setValidation(validation);
+			}
+			if(warmStartPath == null){
+				sgd.scaleInitialFeatures();
+			}
+			rounds = sgd.train(options.getInt("epochs", LocalSgdTrainer.DEFAULT_EPOCHS),
+					options.getDouble("threshold", MatrixFactorizationPlan.DEFAULT_CONVERGENCE_THRESHOLD));
+			System.out.println("trained " + rounds + " SGD epochs with " + numThreads + " threads in "
+					+ (System.currentTimeMillis() - start) + " ms, training RMSE " + (float) sgd.getTrainingRmse()
+					+ (sgd.hasValidation() ? ", validation RMSE " + (float) sgd.validationRmse() : ""));
+		}else{
+			rounds = trainer.train(options.getInt("iterations", MatrixFactorizationPlan.DEFAULT_NUM_ITERATIONS),
+					options.getDouble("threshold", MatrixFactorizationPlan.DEFAULT_CONVERGENCE_THRESHOLD));
+			System.out.println("trained " + rounds + " rounds with " + numThreads + " threads in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		}
+
+		start = System.currentTimeMillis();
+		LocalPredictor predictor = new LocalPredictor(trainer,
+				dictionaryDirectory != null ? IdDictionary.loadUsers(dictionaryDirectory) : null,
+				dictionaryDirectory != null ? IdDictionary.loadItems(dictionaryDirectory) : null, numThreads);
+		File output = Util.localFile(outputPath);
+		String pairsPath = options.getString("pairs", null);
+		int topK = options.getInt("topk", 0);
+		if(pairsPath != null){
+			System.out.println(predictor.scorePairs(Util.localFile(pairsPath), output,
+					Util.localFile(MatrixFactorizationPlan.metricsPath(outputPath, options))));
+		}else if(topK > 0){
+			predictor.writeTopK(output, topK, options.getBoolean("exclude", false));
+		}else{
+			predictor.writePredictions(output);
+		}
+		System.out.println("wrote " + output + " in " + (System.currentTimeMillis() - start) + " ms");
+		String modelPath = options.getString("model", null);
+		if(modelPath != null){
+			trainer.writeModel(Util.localFile(modelPath), rounds, predictor.getUserDictionary(), predictor.getItemDictionary());
+			System.out.println("wrote model " + modelPath);
+		}
+		userFactors.close();
+		itemFactors.close();
+		deleteFactorFile(userFactorFile);
+		deleteFactorFile(itemFactorFile);
+	}
+
+	/*
+	 * @return a new file in the directory for the feature-vectors of MAPPED storage, null for other storage;
+	 *         the file is deleted on exit if the run does not get to delete it
+	 */
+	private static File factorFile(String storage, String prefix, File directory) throws IOException{
+		if(!FactorMatrix.MAPPED.equals(storage)){
+			return null;
+		}
+		File file = File.createTempFile(prefix, ".factors", directory);
+		file.deleteOnExit();
+		return file;
+	}
+
+	private static void deleteFactorFile(File file){
+		if(file != null){
+			file.delete();
+		}
+	}
+
+	/*
+	 * Writes the feature-vectors as a binary model file, loaded by the FactorModel
+	 * @param users dictionary of the userIDs, or null if the IDs are external IDs
+	 * @param items dictionary of the itemIDs, or null
+	 */
+	public void writeModel(File file, int iterations, IdDictionary users, IdDictionary items) throws IOException{
+		ModelWriter writer = new ModelWriter(rank, lambda, iterations);
+		writer.setUsers(keys(byUser), userFactors, null);
+		writer.setItems(keys(byItem), itemFactors, null);
+		if(users != null){
+			writer.setDictionaries(users, items);
+		}
+		writer.write(file);
+	}
+
+	/*
+	 * @return root mean squared error of the ratings whose user and item are in the model
+	 * @param ratings ratings keyed by userID
+	 */
+	public double rmse(RatingMatrix ratings){
+		return errorMetrics(ratings).getRmse();
+	}
+
+	/*
+	 * @return RMSE and MAE of the ratings whose user and item are in the model
+	 * @param ratings ratings keyed by userID
+	 */
+	public ErrorMetrics errorMetrics(RatingMatrix ratings){
+		float[] user = new float[rank];
+		double squaredError = 0;
+		double absoluteError = 0;
+		long count = 0;
+		for(int key = 0; key < ratings.getNumKeys(); key ++){
+			int userRow = byUser.indexOfKey(ratings.getKey(key));
+			if(userRow < 0){
+				continue;
+			}
+			userFactors.getRow(userRow, user, 0);
+			for(int i = ratings.getStart(key); i < ratings.getEnd(key); i ++){
+				int itemRow = byItem.indexOfKey(ratings.getOther(i));
+				if(itemRow >= 0){
+					double error = itemFactors.dot(itemRow, user, 0) - ratings.getRating(i);
+					squaredError += error * error;
+					absoluteError += Math.abs(error);
+					count ++;
+				}
+			}
+		}
+		return ErrorMetrics.of(squaredError, absoluteError, count);
+	}
+
+	/*
+	 * Reads the ratings once keyed by user and once keyed by item, from the binary rating store if there is one
+	 * @return {byUser, byItem}
+	 */
+	static RatingMatrix[] readRatings(String inputPath, String storePath, File dictionaryDirectory) throws IOException{
+		if(storePath != null){
+			return new RatingMatrix[]{RatingStore.openByUser(Util.localFile(storePath)), RatingStore.openByItem(Util.localFile(storePath))};
+		}
+		RatingBlock userBlock = new RatingBlock();
+		RatingBlock itemBlock = new RatingBlock();
+		RatingStoreConverter.read(Util.localFile(inputPath), dictionaryDirectory, userBlock, itemBlock);
+		return new RatingMatrix[]{userBlock, itemBlock};
+	}
+
+	private static int[] keys(RatingMatrix ratings){
+		int[] keys = new int[ratings.getNumKeys()];
+		for(int i = 0; i < keys.length; i ++){
+			keys[i] = ratings.getKey(i);
+		}
+		return keys;
+	}
+
+	/*
+	 * Usage: LocalAlsTrainer [inputPath] [outputPath] ([numThreads]) ([key=value]...) with the options of the MatrixFactorizationPlan
+	 */
+	public static void main(String[] args) throws IOException{
+		if(args.length < 2){
+			System.out.println("Usage: LocalAlsTrainer [inputPath] [outputPath] ([numThreads]) ([key=value]...)");
+			return;
+		}
+		run(args);
+	}
+
+}
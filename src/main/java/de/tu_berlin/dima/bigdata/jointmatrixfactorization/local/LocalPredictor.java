@@ -0,0 +1,252 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.local;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.dictionary.IdDictionary;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.evaluation.ErrorMetrics;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingFileScanner;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingLineParser;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.TopKHeap;
+
+/*
+ * This class writes the output of a LocalAlsTrainer in the formats of the sinks of the MatrixFactorizationPlan:
+ * all predictions, the top-K items of every user or the scores of given pairs, one "user item score" per line.
+ * With dictionaries the internal IDs are mapped back to the external IDs.
+ */
+public class LocalPredictor {
+
+	private static final int CHUNK_SIZE = 64;
+
+	private final LocalAlsTrainer model;
+	private final RatingMatrix byUser;
+	private final RatingMatrix byItem;
+	private final int rank;
+	private final IdDictionary users;
+	private final IdDictionary items;
+	private final int numThreads;
+
+	/*
+	 * @param users dictionary of the userIDs, or null if the IDs are external IDs already
+	 * @param items dictionary of the itemIDs, or null
+	 */
+	public LocalPredictor(LocalAlsTrainer model, IdDictionary users, IdDictionary items, int numThreads){
+		this.model = model;
+		this.byUser = model.getRatingsByUser();
+		this.byItem = model.getRatingsByItem();
+		this.rank = model.getRank();
+		this.users = users;
+		this.items = items;
+		this.numThreads = numThreads;
+	}
+
+	/*
+	 * @return dictionary of the userIDs, or null
+	 */
+	public IdDictionary getUserDictionary(){
+		return users;
+	}
+
+	public IdDictionary getItemDictionary(){
+		return items;
+	}
+
+	/*
+	 * Writes the prediction of every (user, item) pair
+	 */
+	public void writePredictions(File output) throws IOException{
+		FactorMatrix userFactors = model.getUserFactors();
+		FactorMatrix itemFactors = model.getItemFactors();
+		float[] userVector = new float[rank];
+		float[] scores = new float[byItem.getNumKeys()];
+		Writer writer = open(output);
+		try{
+			for(int user = 0; user < byUser.getNumKeys(); user ++){
+				userFactors.getRow(user, userVector, 0);
+				itemFactors.dotAll(userVector, 0, scores);
+				for(int item = 0; item < byItem.getNumKeys(); item ++){
+					write(writer, byUser.getKey(user), byItem.getKey(item), scores[item]);
+				}
+			}
+		}finally{
+			writer.close();
+		}
+	}
+
+	/*
+	 * Writes the K best items of every user, best first
+	 * @param excludeRated do not recommend items the user rated
+	 */
+	public void writeTopK(File output, final int k, final boolean excludeRated) throws IOException{
+		final int numUsers = byUser.getNumKeys();
+		final int numItems = byItem.getNumKeys();
+		final FactorMatrix userFactors = model.getUserFactors();
+		final FactorMatrix itemFactors = model.getItemFactors();
+		// item rows and scores of the best items of every user, scored in parallel and written in order
+		final int[] topItems = new int[numUsers * k];
+		final float[] topScores = new float[numUsers * k];
+		final int[] numTop = new int[numUsers];
+
+		final AtomicInteger nextUser = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try{
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for(int thread = 0; thread < numThreads; thread ++){
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						TopKHeap heap = new TopKHeap(k);
+						boolean[] excluded = new boolean[excludeRated ? numItems : 0];
+						float[] userVector = new float[rank];
+						float[] scores = new float[numItems];
+						int start;
+						while((start = nextUser.getAndAdd(CHUNK_SIZE)) < numUsers){
+							int end = Math.min(start + CHUNK_SIZE, numUsers);
+							for(int user = start; user < end; user ++){
+								if(excludeRated){
+									setRated(excluded, user, true);
+								}
+								userFactors.getRow(user, userVector, 0);
+								itemFactors.dotAll(userVector, 0, scores);
+								heap.clear();
+								for(int item = 0; item < numItems; item ++){
+									if(heap.accepts(scores[item]) && !(excludeRated && excluded[item])){
+										heap.offer(item, scores[item]);
+									}
+								}
+								if(excludeRated){
+									setRated(excluded, user, false);
+								}
+								heap.sortDescending();
+								numTop[user] = heap.size();
+								for(int i = 0; i < heap.size(); i ++){
+									topItems[user * k + i] = heap.getID(i);
+									topScores[user * k + i] = heap.getScore(i);
+								}
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for(Future<Void> future : futures){
+				LocalAlsTrainer.get(future);
+			}
+		}finally{
+			executor.shutdown();
+		}
+
+		Writer writer = open(output);
+		try{
+			for(int user = 0; user < numUsers; user ++){
+				for(int i = 0; i < numTop[user]; i ++){
+					write(writer, byUser.getKey(user), byItem.getKey(topItems[user * k + i]), topScores[user * k + i]);
+				}
+			}
+		}finally{
+			writer.close();
+		}
+	}
+
+	private void setRated(boolean[] excluded, int user, boolean value){
+		for(int i = byUser.getStart(user); i < byUser.getEnd(user); i ++){
+			excluded[model.getItemRow(i)] = value;
+		}
+	}
+
+	/*
+	 * Writes the prediction of every pair of a file "user item[ rating]" whose user and item are in the model,
+	 * and the RMSE and MAE of the pairs with a rating to the metrics file as "rmse mae count",
+	 * which is "NaN NaN 0" as in the metrics sink of the plan if no pair has a rating
+	 * @return the error metrics
+	 */
+	public ErrorMetrics scorePairs(File pairFile, File output, File metricsFile) throws IOException{
+		final FactorMatrix userFactors = model.getUserFactors();
+		final FactorMatrix itemFactors = model.getItemFactors();
+		final float[] userVector = new float[rank];
+		final double[] errorSums = new double[2];
+		final long[] count = new long[1];
+		final Writer writer = open(output);
+		try{
+			RatingFileScanner.scan(pairFile, 0, Long.MAX_VALUE, false, new RatingFileScanner.Handler() {
+				@Override
+				public void rating(RatingLineParser parser) throws IOException {
+					int userID;
+					int itemID;
+					if(users != null){
+						userID = users.toInternal(parser.getUserID());
+						itemID = items.toInternal(parser.getItemID());
+					}else if(parser.hasIntIDs()){
+						userID = (int) parser.getUserID();
+						itemID = (int) parser.getItemID();
+					}else{
+						return;
+					}
+					int user = byUser.indexOfKey(userID);
+					int item = byItem.indexOfKey(itemID);
+					if(user < 0 || item < 0){
+						return;
+					}
+					userFactors.getRow(user, userVector, 0);
+					float prediction = (float) itemFactors.dot(item, userVector, 0);
+					write(writer, userID, itemID, prediction);
+					if(!Float.isNaN(parser.getRating())){
+						double error = prediction - parser.getRating();
+						errorSums[0] += error * error;
+						errorSums[1] += Math.abs(error);
+						count[0] ++;
+					}
+				}
+			});
+		}finally{
+			writer.close();
+		}
+
+		ErrorMetrics metrics = ErrorMetrics.of(errorSums[0], errorSums[1], count[0]);
+		Writer metricsWriter = open(metricsFile);
+		try{
+			metricsWriter.write(metrics.getRmse() + " " + metrics.getMae() + " " + metrics.getCount() + "\n");
+		}finally{
+			metricsWriter.close();
+		}
+		return metrics;
+	}
+
+	private void write(Writer writer, int userID, int itemID, float score) throws IOException{
+		writer.write(users != null ? String.valueOf(users.toExternal(userID)) : String.valueOf(userID));
+		writer.write(' ');
+		writer.write(items != null ? String.valueOf(items.toExternal(itemID)) : String.valueOf(itemID));
+		writer.write(' ');
+		writer.write(String.valueOf(score));
+		writer.write('\n');
+	}
+
+	private static Writer open(File file) throws IOException{
+		File parent = file.getAbsoluteFile().getParentFile();
+		if(parent != null && !parent.isDirectory() && !parent.mkdirs()){
+			throw new IOException("Cannot create directory " + parent);
+		}
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 1 << 16);
+	}
+
+}
@@ -0,0 +1,389 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.local;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.apache.mahout.math.list.FloatArrayList;
+import org.apache.mahout.math.list.IntArrayList;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+
+/*
+ * This class trains the feature-vectors of a LocalAlsTrainer with stochastic gradient descent instead of ALS rounds.
+ * Every epoch visits all ratings in a new random order and moves the feature-vectors of the user and the item
+ * of each rating against the gradient of its regularized squared error:
+ *   e = r - u'i,  u += rate * (e * i - lambda * u),  i += rate * (e * u - lambda * i)
+ *
+ * Hogwild mode: the threads take chunks of one shuffled order and update the shared factor rows without any lock,
+ * a lost update of a row which two threads touch at the same time is rare for sparse ratings and does no harm.
+ * Stratified mode (DSGD): users and items are divided into S blocks, every sub-epoch processes S strata
+ * (user block b, item block b + s mod S) which share no row, so the result does not depend on the threads
+ * and a run is reproducible with the same seed.
+ *
+ * The training RMSE of an epoch is measured on each rating just before its update, which costs nothing extra;
+ * the RMSE of validation ratings is measured after the epoch. The RMSEs of every epoch are logged,
+ * so a trainer of a grid search or of a cross-validation fold does not write to the console.
+ */
+public class LocalSgdTrainer {
+
+	/*
+	 * Learning rate schedules, the rate of epoch t is
+	 * CONSTANT rate, INVERSE rate / (1 + decay * t), EXPONENTIAL rate * exp(-decay * t),
+	 * BOLD_DRIVER grows the rate by 5% after an epoch which lowered the training RMSE and halves it otherwise
+	 */
+	public static final String CONSTANT = "constant";
+	public static final String INVERSE = "inverse";
+	public static final String EXPONENTIAL = "exponential";
+	public static final String BOLD_DRIVER = "bold";
+
+	public static final double DEFAULT_LEARNING_RATE = 0.01;
+	public static final double DEFAULT_DECAY = 0.1;
+	public static final int DEFAULT_EPOCHS = 20;
+
+	/*
+	 * Number of ratings a thread takes at once in Hogwild mode
+	 */
+	private static final int CHUNK_SIZE = 4096;
+
+	private final LocalAlsTrainer model;
+	private final RatingMatrix byUser;
+	private final FactorMatrix userFactors;
+	private final FactorMatrix itemFactors;
+	private final int rank;
+	private final double lambda;
+	private final double initialRate;
+	private final long seed;
+	private final int numThreads;
+
+	/*
+	 * Row of the user and row of the item of every rating of byUser
+	 */
+	private final int[] userRowOfRating;
+	private final int[] itemRowOfRating;
+
+	private String schedule = CONSTANT;
+	private double decay = DEFAULT_DECAY;
+	private double rate;
+
+	// ratings of every stratum (user block * numStrata + item block), null in Hogwild mode
+	private int numStrata;
+	private int[][] strata;
+
+	// validation ratings whose user and item are in the model
+	private int[] validationUserRows = new int[0];
+	private int[] validationItemRows = new int[0];
+	private float[] validationRatings = new float[0];
+
+	private double trainingRmse = Double.NaN;
+
+	private static final Logger LOGGER = Logger.getLogger(LocalSgdTrainer.class.getName());
+
+	/*
+	 * @param model ratings and feature-vectors to train, initialized already
+	 * @param learningRate rate of the first epoch
+	 * @param seed seed of the orders of the ratings
+	 */
+	public LocalSgdTrainer(LocalAlsTrainer model, double lambda, double learningRate, long seed, int numThreads){
+		this.model = model;
+		this.byUser = model.getRatingsByUser();
+		this.userFactors = model.getUserFactors();
+		this.itemFactors = model.getItemFactors();
+		this.rank = model.getRank();
+		this.lambda = lambda;
+		this.initialRate = learningRate;
+		this.seed = seed;
+		this.numThreads = numThreads;
+		userRowOfRating = new int[byUser.getNumRatings()];
+		itemRowOfRating = new int[byUser.getNumRatings()];
+		for(int key = 0; key < byUser.getNumKeys(); key ++){
+			for(int i = byUser.getStart(key); i < byUser.getEnd(key); i ++){
+				userRowOfRating[i] = key;
+				itemRowOfRating[i] = model.getItemRow(i);
+			}
+		}
+	}
+
+	/*
+	 * @param schedule CONSTANT, INVERSE, EXPONENTIAL or BOLD_DRIVER
+	 */
+	public void setSchedule(String schedule, double decay){
+		if(!CONSTANT.equals(schedule) && !INVERSE.equals(schedule) && !EXPONENTIAL.equals(schedule) && !BOLD_DRIVER.equals(schedule)){
+			throw new IllegalArgumentException("Unknown learning rate schedule: " + schedule);
+		}
+		this.schedule = schedule;
+		this.decay = decay;
+	}
+
+	/*
+	 * Switches to stratified mode with numStrata user and item blocks, 0 switches back to Hogwild mode
+	 */
+	public void setStrata(int numStrata){
+		this.numStrata = numStrata;
+		if(numStrata <= 0){
+			strata = null;
+			return;
+		}
+		IntArrayList[] lists = new IntArrayList[numStrata * numStrata];
+		for(int stratum = 0; stratum < lists.length; stratum ++){
+			lists[stratum] = new IntArrayList();
+		}
+		for(int i = 0; i < userRowOfRating.length; i ++){
+			lists[Util.blockOf(userRowOfRating[i], numStrata) * numStrata + Util.blockOf(itemRowOfRating[i], numStrata)].add(i);
+		}
+		strata = new int[lists.length][];
+		for(int stratum = 0; stratum < lists.length; stratum ++){
+			lists[stratum].trimToSize();
+			strata[stratum] = lists[stratum].elements();
+		}
+	}
+
+	/*
+	 * @param ratings validation ratings keyed by userID, ratings of unknown users or items are left out
+	 */
+	public void setValidation(RatingMatrix ratings){
+		IntArrayList userRows = new IntArrayList();
+		IntArrayList itemRows = new IntArrayList();
+		FloatArrayList values = new FloatArrayList();
+		for(int key = 0; key < ratings.getNumKeys(); key ++){
+			int userRow = byUser.indexOfKey(ratings.getKey(key));
+			if(userRow < 0){
+				continue;
+			}
+			for(int i = ratings.getStart(key); i < ratings.getEnd(key); i ++){
+				int itemRow = model.getRatingsByItem().indexOfKey(ratings.getOther(i));
+				if(itemRow >= 0){
+					userRows.add(userRow);
+					itemRows.add(itemRow);
+					values.add(ratings.getRating(i));
+				}
+			}
+		}
+		userRows.trimToSize();
+		itemRows.trimToSize();
+		values.trimToSize();
+		validationUserRows = userRows.elements();
+		validationItemRows = itemRows.elements();
+		validationRatings = values.elements();
+	}
+
+	/*
+	 * Scales the random initial feature-vectors so that the mean prediction is the mean rating,
+	 * the features in [0, 1) of the FeatureInitializer would predict about rank / 4
+	 */
+	public void scaleInitialFeatures(){
+		double sum = 0;
+		for(int i = 0; i < byUser.getNumRatings(); i ++){
+			sum += byUser.getRating(i);
+		}
+		double mean = byUser.getNumRatings() > 0 ? sum / byUser.getNumRatings() : 0;
+		float scale = (float) Math.sqrt(Math.max(mean, 0) / (rank / 4.0));
+		scale(userFactors, scale);
+		scale(itemFactors, scale);
+	}
+
+	private void scale(FactorMatrix factors, float scale){
+		float[] row = new float[rank];
+		for(int i = 0; i < factors.getNumRows(); i ++){
+			factors.getRow(i, row, 0);
+			factors.axpy(i, scale - 1, row, 0);
+		}
+	}
+
+	/*
+	 * @return training RMSE of the last epoch, NaN before the first one
+	 */
+	public double getTrainingRmse(){
+		return trainingRmse;
+	}
+
+	/*
+	 * @return true if validation ratings are set
+	 */
+	public boolean hasValidation(){
+		return validationRatings.length > 0;
+	}
+
+	/*
+	 * Runs the epochs and logs the RMSE of every epoch
+	 * @param threshold stop once an epoch lowers the training RMSE by not more than it, 0 runs all epochs
+	 * @return number of epochs run
+	 */
+	public int train(int maxEpochs, double threshold) throws IOException{
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try{
+			rate = initialRate;
+			double previousRmse = Double.POSITIVE_INFINITY;
+			int epoch = 0;
+			while(epoch < maxEpochs){
+				long start = System.currentTimeMillis();
+				double squaredError = strata != null ? stratifiedEpoch(executor, epoch) : hogwildEpoch(executor, epoch);
+				double rmse = Math.sqrt(squaredError / Math.max(1, userRowOfRating.length));
+				if(Double.isNaN(rmse) || Double.isInfinite(rmse)){
+					throw new IllegalStateException("SGD diverged in epoch " + (epoch + 1) + " with learning rate " + rate);
+				}
+				trainingRmse = rmse;
+				if(LOGGER.isInfoEnabled()){
+					LOGGER.info("epoch " + (epoch + 1) + ": rate " + (float) rate + ", training RMSE " + (float) rmse
+							+ (validationRatings.length > 0 ? ", validation RMSE " + (float) validationRmse() : "")
+							+ " in " + (System.currentTimeMillis() - start) + " ms");
+				}
+				epoch ++;
+				nextRate(epoch, rmse < previousRmse);
+				if(threshold > 0 && previousRmse - rmse <= threshold){
+					break;
+				}
+				previousRmse = rmse;
+			}
+			return epoch;
+		}finally{
+			executor.shutdown();
+		}
+	}
+
+	private void nextRate(int epoch, boolean improved){
+		if(INVERSE.equals(schedule)){
+			rate = initialRate / (1 + decay * epoch);
+		}else if(EXPONENTIAL.equals(schedule)){
+			rate = initialRate * Math.exp(-decay * epoch);
+		}else if(BOLD_DRIVER.equals(schedule)){
+			rate = improved ? rate * 1.05 : rate * 0.5;
+		}
+	}
+
+	/*
+	 * All threads work through chunks of one shuffled order of the ratings
+	 * @return sum of the squared errors before the updates
+	 */
+	private double hogwildEpoch(ExecutorService executor, int epoch) throws IOException{
+		final int[] order = new int[userRowOfRating.length];
+		for(int i = 0; i < order.length; i ++){
+			order[i] = i;
+		}
+		shuffle(order, order.length, new Random(seed + epoch));
+		final AtomicInteger next = new AtomicInteger();
+		final float step = (float) rate;
+		List<Future<Double>> futures = new ArrayList<Future<Double>>();
+		for(int thread = 0; thread < numThreads; thread ++){
+			futures.add(executor.submit(new Callable<Double>() {
+				@Override
+				public Double call() {
+					Scratch scratch = new Scratch();
+					double squaredError = 0;
+					int start;
+					while((start = next.getAndAdd(CHUNK_SIZE)) < order.length){
+						int end = Math.min(start + CHUNK_SIZE, order.length);
+						for(int i = start; i < end; i ++){
+							squaredError += update(order[i], step, scratch);
+						}
+					}
+					return squaredError;
+				}
+			}));
+		}
+		double squaredError = 0;
+		for(Future<Double> future : futures){
+			squaredError += LocalAlsTrainer.get(future);
+		}
+		return squaredError;
+	}
+
+	/*
+	 * Processes numStrata sub-epochs, the strata of one sub-epoch share no user and no item
+	 * @return sum of the squared errors before the updates
+	 */
+	private double stratifiedEpoch(ExecutorService executor, final int epoch) throws IOException{
+		final float step = (float) rate;
+		double squaredError = 0;
+		for(int subEpoch = 0; subEpoch < numStrata; subEpoch ++){
+			List<Future<Double>> futures = new ArrayList<Future<Double>>();
+			for(int userBlock = 0; userBlock < numStrata; userBlock ++){
+				final int stratum = userBlock * numStrata + (userBlock + subEpoch) % numStrata;
+				futures.add(executor.submit(new Callable<Double>() {
+					@Override
+					public Double call() {
+						int[] ratings = strata[stratum];
+						shuffle(ratings, ratings.length, new Random((seed + epoch) * strata.length + stratum));
+						Scratch scratch = new Scratch();
+						double squaredError = 0;
+						for(int i = 0; i < ratings.length; i ++){
+							squaredError += update(ratings[i], step, scratch);
+						}
+						return squaredError;
+					}
+				}));
+			}
+			for(Future<Double> future : futures){
+				squaredError += LocalAlsTrainer.get(future);
+			}
+		}
+		return squaredError;
+	}
+
+	/*
+	 * Feature-vectors of the current rating, one per thread
+	 */
+	private final class Scratch {
+		final float[] user = new float[rank];
+		final float[] item = new float[rank];
+	}
+
+	/*
+	 * Moves the feature-vectors of one rating against the gradient of its error
+	 * @return squared error before the update
+	 */
+	private double update(int rating, float step, Scratch scratch){
+		int userRow = userRowOfRating[rating];
+		int itemRow = itemRowOfRating[rating];
+		userFactors.getRow(userRow, scratch.user, 0);
+		itemFactors.getRow(itemRow, scratch.item, 0);
+		double error = byUser.getRating(rating) - itemFactors.dot(itemRow, scratch.user, 0);
+		float gradientStep = (float) (step * error);
+		float shrink = (float) (-step * lambda);
+		userFactors.axpy(userRow, gradientStep, scratch.item, 0);
+		userFactors.axpy(userRow, shrink, scratch.user, 0);
+		itemFactors.axpy(itemRow, gradientStep, scratch.user, 0);
+		itemFactors.axpy(itemRow, shrink, scratch.item, 0);
+		return error * error;
+	}
+
+	/*
+	 * @return RMSE of the validation ratings
+	 */
+	public double validationRmse(){
+		float[] user = new float[rank];
+		double squaredError = 0;
+		for(int i = 0; i < validationRatings.length; i ++){
+			userFactors.getRow(validationUserRows[i], user, 0);
+			double error = validationRatings[i] - itemFactors.dot(validationItemRows[i], user, 0);
+			squaredError += error * error;
+		}
+		return validationRatings.length > 0 ? Math.sqrt(squaredError / validationRatings.length) : Double.NaN;
+	}
+
+	private static void shuffle(int[] values, int length, Random random){
+		for(int i = length - 1; i > 0; i --){
+			int j = random.nextInt(i + 1);
+			int value = values[i];
+			values[i] = values[j];
+			values[j] = value;
+		}
+	}
+
+}
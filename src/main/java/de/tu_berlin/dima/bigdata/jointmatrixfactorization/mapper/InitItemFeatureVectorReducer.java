@@ -8,32 +8,46 @@
 package de.tu_berlin.dima.bigdata.jointmatrixfactorization.mapper;
 
 import java.util.Iterator;
-import java.util.Random;
 
-import org.apache.mahout.math.SequentialAccessSparseVector;
-import org.apache.mahout.math.Vector;
-
-import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactVector;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.FeatureInitializer;
 import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.contract.ReduceContract.Combinable;
 import eu.stratosphere.pact.common.stubs.Collector;
 import eu.stratosphere.pact.common.stubs.ReduceStub;
 import eu.stratosphere.pact.common.type.PactRecord;
 import eu.stratosphere.pact.common.type.base.PactInteger;
 
 /*
- * This Reduce class reduce all the input entries to each itemID and a random feature-vector 
+ * This Reduce class reduce all the input entries to each itemID and its initial feature-vector,
+ * the combiner keeps one entry per itemID and partition, so only the distinct items are shuffled
+ * instead of the whole rating set. The feature-vector comes from the FeatureInitializer,
+ * seeded per itemID or taken from a previous model.
  */
+@Combinable
 public class InitItemFeatureVectorReducer extends ReduceStub{
 
-	private final Vector features = new SequentialAccessSparseVector(Integer.MAX_VALUE, Util.numFeatures);
-	
 	private final PactRecord outputRecord = new PactRecord();
-	private final int numFeatures = Util.numFeatures;
-	private final Random random = new Random();
-	private final PactVector featureVector = new PactVector();
+	private final PactInteger itemID = new PactInteger();
+	private final PactFactorVector featureVector = new PactFactorVector();
+	private FeatureInitializer initializer;
+
+	@Override
+	public void open(Configuration parameters) throws Exception {
+		int numFeatures = parameters.getInteger(Util.RANK_PARAMETER, Util.numFeatures);
+		featureVector.setSize(numFeatures);
+		featureVector.setWirePrecision(PactFactorVector.parsePrecision(parameters.getString(PactFactorVector.PRECISION_PARAMETER, "float")));
+		initializer = FeatureInitializer.configure(parameters, numFeatures);
+	}
+
+	@Override
+	public void close() throws Exception {
+		initializer.close();
+	}
 
 	/*
-	 * This override method defines how the entries with same itemID reduce to a random feature-vector
+	 * This override method defines how the entries with same itemID reduce to an initial feature-vector
 	 * @param in:Iterator[(userID, itemID, rating)] List of entries with same itemID
 	 * @return (itemID, item-feature-vector)
 	 */
@@ -41,25 +55,28 @@ public class InitItemFeatureVectorReducer extends ReduceStub{
 	public void reduce(Iterator<PactRecord> records, Collector<PactRecord> collector)
 			throws Exception {
 
-		int itemID = -1;
-		if(records.hasNext()){
-			itemID = records.next().getField(1, PactInteger.class).getValue();	
-		}
-	    /*
-	     * Give each feature a random value
-	     */
-		if(itemID > 0){
-			for(int i = 0; i < numFeatures; i ++){
-				features.set(i, random.nextFloat());
-			}
-			featureVector.set(features);
-			
-			outputRecord.setField(0, new PactInteger(itemID));
+		records.next().getField(1, itemID);
+		if(itemID.getValue() > 0){
+			initializer.initializeItem(itemID.getValue(), featureVector.getValues(), 0);
+
+			outputRecord.setField(0, itemID);
 			outputRecord.setField(1, featureVector);
-			
+
 			collector.collect(outputRecord);
 		}
-		
+
+	}
+
+	/*
+	 * Keeps the first entry of every itemID of one partition
+	 * @param in:Iterator[(userID, itemID, rating)] List of entries with same itemID
+	 * @return (userID, itemID, rating)
+	 */
+	@Override
+	public void combine(Iterator<PactRecord> records, Collector<PactRecord> collector)
+			throws Exception {
+
+		collector.collect(records.next());
 	}
-	
-}
\ No newline at end of file
+
+}
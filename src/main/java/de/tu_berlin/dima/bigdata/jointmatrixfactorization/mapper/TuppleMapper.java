@@ -7,42 +7,44 @@
 
 package de.tu_berlin.dima.bigdata.jointmatrixfactorization.mapper;
 
+import org.apache.log4j.Logger;
+
 import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
 import eu.stratosphere.pact.common.stubs.Collector;
 import eu.stratosphere.pact.common.stubs.MapStub;
 import eu.stratosphere.pact.common.type.PactRecord;
-import eu.stratosphere.pact.common.type.base.PactFloat;
 import eu.stratosphere.pact.common.type.base.PactInteger;
-import eu.stratosphere.pact.common.type.base.PactString;
 
 /**
- * Input: rating file
- * Output: <userID, itemID, Rating>
+ * Input: (userID, itemID, Rating) parsed by RatingInputFormat
+ * Output: <userID, itemID, Rating> of valid IDs
+ * 
+ * The line is already parsed by the input format,
+ * so the mapper only drops invalid IDs and forwards the record itself without any allocation
  * 
  * @author titicaca
  *
  */
 public class TuppleMapper extends MapStub{
 
-	private final PactRecord outputRecord = new PactRecord();
+	private final PactInteger userID = new PactInteger();
+	private final PactInteger itemID = new PactInteger();
 
+	private static final Logger LOGGER = Logger.getLogger(TuppleMapper.class.getName());
 	
 	@Override
 	public void map(PactRecord record, Collector<PactRecord> collector)
 			throws Exception {
 		
-		String text = record.getField(0, PactString.class).toString();
-		String[] tokens = Util.splitPrefTokens(text);
-		int userID = Util.readID(tokens[Util.USER_ID_POS]);
-		int itemID = Util.readID(tokens[Util.ITEM_ID_POS]);
-		float rating = Util.readRate(tokens[Util.RATING_POS]);
-		
-		outputRecord.setField(0, new PactInteger(userID));
-		outputRecord.setField(1, new PactInteger(itemID));
-		outputRecord.setField(2, new PactFloat(rating));
+		record.getField(Util.USER_ID_POS, userID);
+		record.getField(Util.ITEM_ID_POS, itemID);
 		
-		collector.collect(outputRecord);
+		if(userID.getValue() > 0 && itemID.getValue() > 0){
+			collector.collect(record);
+		}else{
+			LOGGER.debug("Error! userID:" + userID.getValue() + " and itemID:" + itemID.getValue() + " muss be greater than zero!");
+		}
 		
 	}
 	
-}
\ No newline at end of file
+}
@@ -0,0 +1,122 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.model;
+
+import java.nio.FloatBuffer;
+
+/*
+ * This factor matrix keeps its rows in FloatBuffers outside of the heap, split into pages of whole rows,
+ * since a single buffer cannot hold more than 2GB. The row operations only use absolute reads and writes,
+ * so the buffers can be shared by several threads.
+ */
+abstract class BufferFactorMatrix extends FactorMatrix {
+
+	protected final int rowsPerPage;
+
+	/*
+	 * @param pageBytes maximum size of a page
+	 */
+	protected BufferFactorMatrix(int numRows, int rank, long pageBytes){
+		super(numRows, rank);
+		rowsPerPage = (int) Math.max(1, Math.min(numRows, pageBytes / (4L * rank)));
+	}
+
+	protected int numPages(){
+		return (numRows + rowsPerPage - 1) / rowsPerPage;
+	}
+
+	/*
+	 * @return number of rows of a page, only the last page may be shorter
+	 */
+	protected int rowsOfPage(int page){
+		return Math.min(rowsPerPage, numRows - page * rowsPerPage);
+	}
+
+	/*
+	 * @return the page holding the row, the row starts at (row % rowsPerPage) * rank in it
+	 */
+	protected abstract FloatBuffer page(int row);
+
+	/*
+	 * @return a view of the row which shares the memory of the matrix, rank floats from position 0
+	 */
+	public FloatBuffer getRowBuffer(int row){
+		FloatBuffer view = page(row).duplicate();
+		int start = (row % rowsPerPage) * rank;
+		view.limit(start + rank).position(start);
+		return view.slice();
+	}
+
+	@Override
+	public float get(int row, int feature){
+		return page(row).get((row % rowsPerPage) * rank + feature);
+	}
+
+	@Override
+	public void set(int row, int feature, float value){
+		page(row).put((row % rowsPerPage) * rank + feature, value);
+	}
+
+	@Override
+	public void getRow(int row, float[] dst, int offset){
+		FloatBuffer page = page(row);
+		int start = (row % rowsPerPage) * rank;
+		for(int i = 0; i < rank; i ++){
+			dst[offset + i] = page.get(start + i);
+		}
+	}
+
+	@Override
+	public void setRow(int row, float[] src, int offset){
+		FloatBuffer page = page(row);
+		int start = (row % rowsPerPage) * rank;
+		for(int i = 0; i < rank; i ++){
+			page.put(start + i, src[offset + i]);
+		}
+	}
+
+	@Override
+	public double dot(int row, float[] vector, int offset){
+		FloatBuffer page = page(row);
+		int start = (row % rowsPerPage) * rank;
+		double sum = 0;
+		for(int i = 0; i < rank; i ++){
+			sum += page.get(start + i) * vector[offset + i];
+		}
+		return sum;
+	}
+
+	@Override
+	public void axpy(int row, float alpha, float[] x, int offset){
+		FloatBuffer page = page(row);
+		int start = (row % rowsPerPage) * rank;
+		for(int i = 0; i < rank; i ++){
+			page.put(start + i, page.get(start + i) + alpha * x[offset + i]);
+		}
+	}
+
+	/*
+	 * Scores the rows page by page, so every page is looked up only once
+	 */
+	@Override
+	public void dotAll(float[] vector, int offset, float[] scores){
+		for(int first = 0; first < numRows; first += rowsPerPage){
+			FloatBuffer page = page(first);
+			int rows = Math.min(rowsPerPage, numRows - first);
+			for(int row = 0; row < rows; row ++){
+				int start = row * rank;
+				double sum = 0;
+				for(int i = 0; i < rank; i ++){
+					sum += page.get(start + i) * vector[offset + i];
+				}
+				scores[first + row] = (float) sum;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/*
+ * This factor matrix keeps its rows in direct buffers, so even a model of tens of millions of rows
+ * is a handful of objects for the garbage collector instead of one array per feature-vector.
+ * The memory is limited by -XX:MaxDirectMemorySize instead of the heap size.
+ */
+public class DirectFactorMatrix extends BufferFactorMatrix {
+
+	private static final long PAGE_BYTES = 1L << 30;
+
+	private final FloatBuffer[] pages;
+
+	public DirectFactorMatrix(int numRows, int rank){
+		super(numRows, rank, PAGE_BYTES);
+		pages = new FloatBuffer[numPages()];
+		for(int page = 0; page < pages.length; page ++){
+			pages[page] = ByteBuffer.allocateDirect(4 * rowsOfPage(page) * rank)
+					.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		}
+	}
+
+	@Override
+	protected FloatBuffer page(int row){
+		return pages[row / rowsPerPage];
+	}
+
+}
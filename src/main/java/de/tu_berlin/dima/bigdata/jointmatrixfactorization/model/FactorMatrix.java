@@ -0,0 +1,101 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.model;
+
+import java.io.File;
+import java.io.IOException;
+
+/*
+ * This object holds the feature-vectors of one side of the model as a dense row-major matrix of numRows x rank floats,
+ * row i is the feature-vector of the i-th key. The rows are only accessed through row-sized primitive operations,
+ * so the solvers and the scoring code work the same on the heap, off the heap and on a memory-mapped file.
+ * Different rows may be read and written by different threads at the same time.
+ */
+public abstract class FactorMatrix {
+
+	/*
+	 * Kinds of storage of allocate()
+	 */
+	public static final String HEAP = "heap";
+	public static final String DIRECT = "direct";
+	public static final String MAPPED = "mapped";
+
+	protected final int numRows;
+	protected final int rank;
+
+	protected FactorMatrix(int numRows, int rank){
+		this.numRows = numRows;
+		this.rank = rank;
+	}
+
+	/*
+	 * @param storage HEAP for a float[], DIRECT for off-heap memory or MAPPED for a file larger than the heap
+	 * @param file backing file of MAPPED storage, its content is discarded
+	 * @param residentBytes maximum number of bytes of MAPPED storage which are mapped at the same time
+	 */
+	public static FactorMatrix allocate(String storage, int numRows, int rank, File file, long residentBytes)
+			throws IOException{
+		if(HEAP.equals(storage)){
+			return new HeapFactorMatrix(numRows, rank);
+		}else if(DIRECT.equals(storage)){
+			return new DirectFactorMatrix(numRows, rank);
+		}else if(MAPPED.equals(storage)){
+			return MappedFactorMatrix.create(file, numRows, rank, residentBytes);
+		}
+		throw new IllegalArgumentException("Unknown factor storage " + storage + ", expected heap, direct or mapped");
+	}
+
+	public int getNumRows(){
+		return numRows;
+	}
+
+	public int getRank(){
+		return rank;
+	}
+
+	public abstract float get(int row, int feature);
+
+	public abstract void set(int row, int feature, float value);
+
+	/*
+	 * Copies a row into dst[offset, offset + rank)
+	 */
+	public abstract void getRow(int row, float[] dst, int offset);
+
+	/*
+	 * Overwrites a row with src[offset, offset + rank)
+	 */
+	public abstract void setRow(int row, float[] src, int offset);
+
+	/*
+	 * @return the dot product of a row and vector[offset, offset + rank), summed up in double
+	 */
+	public abstract double dot(int row, float[] vector, int offset);
+
+	/*
+	 * Adds alpha * x[offset, offset + rank) to a row
+	 */
+	public abstract void axpy(int row, float alpha, float[] x, int offset);
+
+	/*
+	 * Scores every row against one vector
+	 * @param scores array of at least numRows scores, scores[i] is set to the dot product of row i
+	 */
+	public void dotAll(float[] vector, int offset, float[] scores){
+		for(int row = 0; row < numRows; row ++){
+			scores[row] = (float) dot(row, vector, offset);
+		}
+	}
+
+	/*
+	 * Writes all changes to the backing storage and releases it, the matrix must not be used afterwards
+	 */
+	public void close() throws IOException{
+	}
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * This class loads a trained model file, as written by the ModelWriter, through memory mappings:
+ * loading only reads the header, the IDs and the feature-vectors are paged in by the OS on first access
+ * and the rows are read in place without being copied or parsed.
+ *
+ * File layout, little endian:
+ *   header        HEADER_SIZE bytes: magic, version, rank, numUsers, numItems, iterations, lambda,
+ *                 userFactorsOffset, itemFactorsOffset, dictionaryOffset (0 without a dictionary);
+ *                 iterations is UNKNOWN_ITERATIONS if the number of rounds run is not known
+ *   userIDs       int[numUsers], sorted ascending
+ *   itemIDs       int[numItems], sorted ascending
+ *   userFactors   float[numUsers * rank], row i is the feature-vector of userIDs[i]
+ *   itemFactors   float[numItems * rank]
+ *   dictionary    long[numUsers] external userIDs, long[numItems] external itemIDs, aligned to 8 bytes
+ */
+public class FactorModel {
+
+	public static final String FILE_EXTENSION = ".model";
+
+	static final int MAGIC = 0x414c534d;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+
+	/*
+	 * Iterations of a model whose training may have stopped before the maximum number of rounds,
+	 * e.g. a plan with a convergence threshold, which does not report the number of rounds it ran
+	 */
+	public static final int UNKNOWN_ITERATIONS = -1;
+
+	private final int rank;
+	private final int numUsers;
+	private final int numItems;
+	private final int iterations;
+	private final double lambda;
+
+	private final IntBuffer userIDs;
+	private final IntBuffer itemIDs;
+	private final MappedFactorMatrix userFactors;
+	private final MappedFactorMatrix itemFactors;
+	private final LongBuffer externalUserIDs;
+	private final LongBuffer externalItemIDs;
+
+	private FactorModel(File file, FileChannel channel) throws IOException{
+		ByteBuffer header = map(channel, 0, HEADER_SIZE);
+		if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION){
+			throw new IOException(file + " is not a model of version " + VERSION);
+		}
+		rank = header.getInt(8);
+		numUsers = header.getInt(12);
+		numItems = header.getInt(16);
+		iterations = header.getInt(20);
+		lambda = header.getDouble(24);
+		long userFactorsOffset = header.getLong(32);
+		long itemFactorsOffset = header.getLong(40);
+		long dictionaryOffset = header.getLong(48);
+
+		userIDs = map(channel, HEADER_SIZE, 4L * numUsers).asIntBuffer();
+		itemIDs = map(channel, HEADER_SIZE + 4L * numUsers, 4L * numItems).asIntBuffer();
+		// the whole model is the resident budget, so no page is dropped once it is mapped
+		userFactors = MappedFactorMatrix.open(file, userFactorsOffset, numUsers, rank, 4L * numUsers * rank, true);
+		itemFactors = MappedFactorMatrix.open(file, itemFactorsOffset, numItems, rank, 4L * numItems * rank, true);
+		if(dictionaryOffset > 0){
+			externalUserIDs = map(channel, dictionaryOffset, 8L * numUsers).asLongBuffer();
+			externalItemIDs = map(channel, dictionaryOffset + 8L * numUsers, 8L * numItems).asLongBuffer();
+		}else{
+			externalUserIDs = null;
+			externalItemIDs = null;
+		}
+	}
+
+	public static FactorModel load(File file) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			return new FactorModel(file, raf.getChannel());
+		}finally{
+			raf.close();
+		}
+	}
+
+	public int getRank(){
+		return rank;
+	}
+
+	public int getNumUsers(){
+		return numUsers;
+	}
+
+	public int getNumItems(){
+		return numItems;
+	}
+
+	/*
+	 * @return number of ALS rounds the model was trained with, or UNKNOWN_ITERATIONS
+	 */
+	public int getIterations(){
+		return iterations;
+	}
+
+	public double getLambda(){
+		return lambda;
+	}
+
+	/*
+	 * @return feature-vectors of the users, row i belongs to getUserID(i)
+	 */
+	public MappedFactorMatrix getUserFactors(){
+		return userFactors;
+	}
+
+	/*
+	 * @return feature-vectors of the items, row i belongs to getItemID(i)
+	 */
+	public MappedFactorMatrix getItemFactors(){
+		return itemFactors;
+	}
+
+	public int getUserID(int row){
+		return userIDs.get(row);
+	}
+
+	public int getItemID(int row){
+		return itemIDs.get(row);
+	}
+
+	/*
+	 * @return row of the user, or -1 if the user is not in the model
+	 */
+	public int userRow(int userID){
+		return indexOf(userIDs, numUsers, userID);
+	}
+
+	/*
+	 * @return row of the item, or -1 if the item is not in the model
+	 */
+	public int itemRow(int itemID){
+		return indexOf(itemIDs, numItems, itemID);
+	}
+
+	public boolean hasDictionary(){
+		return externalUserIDs != null;
+	}
+
+	/*
+	 * @return external ID of the user of a row, the userID itself without a dictionary
+	 */
+	public long getExternalUserID(int row){
+		return externalUserIDs != null ? externalUserIDs.get(row) : userIDs.get(row);
+	}
+
+	public long getExternalItemID(int row){
+		return externalItemIDs != null ? externalItemIDs.get(row) : itemIDs.get(row);
+	}
+
+	/*
+	 * The internal IDs of an IdDictionary are in the order of the external IDs,
+	 * so the external IDs of the rows are sorted as well and can be searched
+	 * @return row of the user of an external ID, or -1 if the user is not in the model
+	 */
+	public int userRowOfExternal(long externalID){
+		if(externalUserIDs == null){
+			return externalID == (int) externalID ? userRow((int) externalID) : -1;
+		}
+		return indexOf(externalUserIDs, numUsers, externalID);
+	}
+
+	/*
+	 * @return row of the item of an external ID, or -1 if the item is not in the model
+	 */
+	public int itemRowOfExternal(long externalID){
+		if(externalItemIDs == null){
+			return externalID == (int) externalID ? itemRow((int) externalID) : -1;
+		}
+		return indexOf(externalItemIDs, numItems, externalID);
+	}
+
+	public void close() throws IOException{
+		userFactors.close();
+		itemFactors.close();
+	}
+
+	@Override
+	public String toString(){
+		return "FactorModel(rank " + rank + ", " + numUsers + " users, " + numItems + " items, "
+				+ (iterations != UNKNOWN_ITERATIONS ? iterations + " iterations" : "unknown iterations") + ", lambda " + lambda + (hasDictionary() ? ", with dictionary)" : ")");
+	}
+
+	private static int indexOf(IntBuffer ids, int size, int id){
+		int low = 0;
+		int high = size - 1;
+		while(low <= high){
+			int mid = (low + high) >>> 1;
+			int midID = ids.get(mid);
+			if(midID < id){
+				low = mid + 1;
+			}else if(midID > id){
+				high = mid - 1;
+			}else{
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOf(LongBuffer ids, int size, long id){
+		int low = 0;
+		int high = size - 1;
+		while(low <= high){
+			int mid = (low + high) >>> 1;
+			long midID = ids.get(mid);
+			if(midID < id){
+				low = mid + 1;
+			}else if(midID > id){
+				high = mid - 1;
+			}else{
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException{
+		if(size > Integer.MAX_VALUE){
+			throw new IOException("Section of " + size + " bytes is too large to be mapped");
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+}
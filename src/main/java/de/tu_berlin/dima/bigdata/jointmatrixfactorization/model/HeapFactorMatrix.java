@@ -0,0 +1,70 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.model;
+
+/*
+ * This factor matrix is a single float[] on the heap, the fastest storage for models which fit into the heap
+ */
+public class HeapFactorMatrix extends FactorMatrix {
+
+	private final float[] values;
+
+	public HeapFactorMatrix(int numRows, int rank){
+		super(numRows, rank);
+		if((long) numRows * rank > Integer.MAX_VALUE){
+			throw new IllegalArgumentException(numRows + " rows of rank " + rank + " do not fit into one array");
+		}
+		values = new float[numRows * rank];
+	}
+
+	/*
+	 * @return the row-major values, row i starts at i * getRank()
+	 */
+	public float[] getValues(){
+		return values;
+	}
+
+	@Override
+	public float get(int row, int feature){
+		return values[row * rank + feature];
+	}
+
+	@Override
+	public void set(int row, int feature, float value){
+		values[row * rank + feature] = value;
+	}
+
+	@Override
+	public void getRow(int row, float[] dst, int offset){
+		System.arraycopy(values, row * rank, dst, offset, rank);
+	}
+
+	@Override
+	public void setRow(int row, float[] src, int offset){
+		System.arraycopy(src, offset, values, row * rank, rank);
+	}
+
+	@Override
+	public double dot(int row, float[] vector, int offset){
+		int start = row * rank;
+		double sum = 0;
+		for(int i = 0; i < rank; i ++){
+			sum += values[start + i] * vector[offset + i];
+		}
+		return sum;
+	}
+
+	@Override
+	public void axpy(int row, float alpha, float[] x, int offset){
+		int start = row * rank;
+		for(int i = 0; i < rank; i ++){
+			values[start + i] += alpha * x[offset + i];
+		}
+	}
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * This factor matrix pages its rows from a file of little endian floats, so a model can be larger than the memory.
+ * At most residentBytes of the file are mapped at the same time: a page is mapped on its first access,
+ * and once the budget is used up the least recently used page is written back and dropped, approximated by a clock.
+ * A hit only reads an array slot and sets a flag, only a miss takes the lock.
+ *
+ * A dropped mapping stays valid until it is garbage collected, so a thread which still holds it
+ * reads and writes the file correctly, the budget is a bound of the pages that are reachable through the matrix.
+ */
+public class MappedFactorMatrix extends BufferFactorMatrix {
+
+	public static final long DEFAULT_RESIDENT_BYTES = 256L << 20;
+	private static final long MAX_PAGE_BYTES = 64L << 20;
+
+	private static final class Page {
+		final MappedByteBuffer bytes;
+		final FloatBuffer floats;
+		boolean referenced = true;
+
+		Page(MappedByteBuffer bytes){
+			this.bytes = bytes;
+			this.floats = bytes.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+		}
+	}
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long offset;
+	private final boolean readOnly;
+
+	private final AtomicReferenceArray<Page> pages;
+	// clock over the mapped pages, guarded by this
+	private final int[] residentPages;
+	private int numResident;
+	private int hand;
+	private long numMappings;
+
+	private MappedFactorMatrix(RandomAccessFile file, long offset, int numRows, int rank, long residentBytes, boolean readOnly){
+		// at least four pages fit into the budget, so a scan does not evict the page in use
+		super(numRows, rank, Math.min(MAX_PAGE_BYTES, residentBytes / 4));
+		this.file = file;
+		this.channel = file.getChannel();
+		this.offset = offset;
+		this.readOnly = readOnly;
+		pages = new AtomicReferenceArray<Page>(numPages());
+		// the last page may be shorter than the others, so a budget of the whole matrix holds all pages
+		long pageBytes = 4L * rowsPerPage * rank;
+		int budgetPages = residentBytes >= 4L * numRows * rank ? numPages()
+				: (int) Math.min(numPages(), residentBytes / pageBytes);
+		residentPages = new int[Math.max(1, budgetPages)];
+	}
+
+	/*
+	 * Creates a new file for the matrix, all values are zero
+	 */
+	public static MappedFactorMatrix create(File file, int numRows, int rank, long residentBytes) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		raf.setLength(4L * numRows * rank);
+		return new MappedFactorMatrix(raf, 0, numRows, rank, residentBytes, false);
+	}
+
+	/*
+	 * Maps the matrix stored in a file from an offset on
+	 */
+	public static MappedFactorMatrix open(File file, long offset, int numRows, int rank, long residentBytes,
+			boolean readOnly) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file, readOnly ? "r" : "rw");
+		if(raf.length() < offset + 4L * numRows * rank){
+			raf.close();
+			throw new IOException(file + " is too short for " + numRows + " rows of rank " + rank);
+		}
+		return new MappedFactorMatrix(raf, offset, numRows, rank, residentBytes, readOnly);
+	}
+
+	@Override
+	protected FloatBuffer page(int row){
+		Page page = pages.get(row / rowsPerPage);
+		if(page == null){
+			page = map(row / rowsPerPage);
+		}
+		page.referenced = true;
+		return page.floats;
+	}
+
+	private synchronized Page map(int pageIndex){
+		Page page = pages.get(pageIndex);
+		if(page != null){
+			return page;
+		}
+		if(numResident < residentPages.length){
+			residentPages[numResident ++] = pageIndex;
+		}else{
+			while(true){
+				Page candidate = pages.get(residentPages[hand]);
+				if(candidate.referenced){
+					candidate.referenced = false;
+					hand = (hand + 1) % residentPages.length;
+				}else{
+					if(!readOnly){
+						candidate.bytes.force();
+					}
+					pages.set(residentPages[hand], null);
+					residentPages[hand] = pageIndex;
+					hand = (hand + 1) % residentPages.length;
+					break;
+				}
+			}
+		}
+		try{
+			page = new Page(channel.map(readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE,
+					offset + 4L * pageIndex * rowsPerPage * rank, 4L * rowsOfPage(pageIndex) * rank));
+		}catch(IOException e){
+			throw new IllegalStateException("Cannot map page " + pageIndex + " of the factor matrix", e);
+		}
+		numMappings ++;
+		pages.set(pageIndex, page);
+		return page;
+	}
+
+	/*
+	 * @return number of pages mapped so far, the misses of the resident budget
+	 */
+	public synchronized long getNumMappings(){
+		return numMappings;
+	}
+
+	@Override
+	public synchronized void close() throws IOException{
+		for(int i = 0; i < numResident; i ++){
+			Page page = pages.get(residentPages[i]);
+			if(page != null && !readOnly){
+				page.bytes.force();
+			}
+			pages.set(residentPages[i], null);
+		}
+		numResident = 0;
+		file.close();
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.model;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.mahout.math.Sorting;
+import org.apache.mahout.math.function.IntComparator;
+import org.apache.mahout.math.list.IntArrayList;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.dictionary.IdDictionary;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.io.FileOutputFormat;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This output format writes the final user- and item-feature-vectors of the plan as one binary model file,
+ * which is loaded by the FactorModel. It has to run with a degree of parallelism of 1.
+ * The header needs the number of rows before the first row, so the feature-vectors are spilled
+ * to a local temporary file per side in arrival order first and written sorted by ID when the sink is closed.
+ */
+public class ModelOutputFormat extends FileOutputFormat{
+
+	public static final String LAMBDA_PARAMETER = "als.model.lambda";
+	public static final String ITERATIONS_PARAMETER = "als.model.iterations";
+
+	private final PactInteger id = new PactInteger();
+	private final PactInteger side = new PactInteger();
+	private final PactFactorVector featureVector = new PactFactorVector();
+
+	private int rank;
+	private double lambda;
+	private int iterations;
+	private IdDictionary users;
+	private IdDictionary items;
+
+	private final File[] spillFiles = new File[2];
+	private final OutputStream[] spills = new OutputStream[2];
+	private final IntArrayList[] ids = { new IntArrayList(), new IntArrayList() };
+	private ByteBuffer row;
+
+	@Override
+	public void configure(Configuration parameters) {
+		super.configure(parameters);
+		rank = parameters.getInteger(Util.RANK_PARAMETER, Util.numFeatures);
+		lambda = Double.parseDouble(parameters.getString(LAMBDA_PARAMETER, String.valueOf(Util.lambda)));
+		iterations = parameters.getInteger(ITERATIONS_PARAMETER, FactorModel.UNKNOWN_ITERATIONS);
+		String dictionaryPath = parameters.getString(IdDictionary.DICTIONARY_PATH_PARAMETER, null);
+		if(dictionaryPath != null){
+			try{
+				users = IdDictionary.loadUsers(Util.localFile(dictionaryPath));
+				items = IdDictionary.loadItems(Util.localFile(dictionaryPath));
+			}catch(IOException e){
+				throw new RuntimeException("Cannot load the ID dictionary from " + dictionaryPath, e);
+			}
+		}
+	}
+
+	@Override
+	public void open(int taskNumber) throws IOException {
+		super.open(taskNumber);
+		row = ByteBuffer.allocate(4 * rank).order(ByteOrder.LITTLE_ENDIAN);
+		for(int i = 0; i < 2; i ++){
+			spillFiles[i] = File.createTempFile("als-model-" + (i == ModelSideMapper.USER_SIDE ? "users" : "items"), ".spill");
+			spills[i] = new BufferedOutputStream(new FileOutputStream(spillFiles[i]), 1 << 16);
+			ids[i].clear();
+		}
+	}
+
+	/*
+	 * @param in:(ID, feature-vector, side) side is ModelSideMapper.USER_SIDE or ITEM_SIDE
+	 */
+	@Override
+	public void writeRecord(PactRecord record) throws IOException {
+		record.getField(0, id);
+		record.getField(1, featureVector);
+		record.getField(2, side);
+		row.clear();
+		for(int i = 0; i < rank; i ++){
+			row.putFloat(featureVector.get(i));
+		}
+		spills[side.getValue()].write(row.array(), 0, row.position());
+		ids[side.getValue()].add(id.getValue());
+	}
+
+	@Override
+	public void close() throws IOException {
+		MappedFactorMatrix[] factors = new MappedFactorMatrix[2];
+		try{
+			ModelWriter writer = new ModelWriter(rank, lambda, iterations);
+			for(int i = 0; i < 2; i ++){
+				spills[i].close();
+				final int[] sideIDs = ids[i].elements();
+				int numRows = ids[i].size();
+				factors[i] = MappedFactorMatrix.open(spillFiles[i], 0, numRows, rank,
+						MappedFactorMatrix.DEFAULT_RESIDENT_BYTES, true);
+
+				// order of the spilled rows by ID
+				int[] rows = new int[numRows];
+				for(int j = 0; j < numRows; j ++){
+					rows[j] = j;
+				}
+				Sorting.quickSort(rows, 0, numRows, new IntComparator() {
+					@Override
+					public int compare(int a, int b) {
+						return sideIDs[a] < sideIDs[b] ? -1 : sideIDs[a] > sideIDs[b] ? 1 : 0;
+					}
+				});
+				int[] sortedIDs = new int[numRows];
+				for(int j = 0; j < numRows; j ++){
+					sortedIDs[j] = sideIDs[rows[j]];
+				}
+				if(i == ModelSideMapper.USER_SIDE){
+					writer.setUsers(sortedIDs, factors[i], rows);
+				}else{
+					writer.setItems(sortedIDs, factors[i], rows);
+				}
+			}
+			if(users != null){
+				writer.setDictionaries(users, items);
+			}
+			writer.write(stream);
+		}finally{
+			for(int i = 0; i < 2; i ++){
+				if(factors[i] != null){
+					factors[i].close();
+				}
+				spillFiles[i].delete();
+			}
+			super.close();
+		}
+	}
+
+}
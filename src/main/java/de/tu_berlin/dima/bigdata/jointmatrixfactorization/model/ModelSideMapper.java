@@ -0,0 +1,44 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.model;
+
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.MapStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This Map class tags the feature-vectors of one side with the side,
+ * so the user- and the item-feature-vectors can go to the same ModelOutputFormat sink
+ */
+public class ModelSideMapper extends MapStub{
+
+	public static final String SIDE_PARAMETER = "als.model.side";
+	public static final int USER_SIDE = 0;
+	public static final int ITEM_SIDE = 1;
+
+	private final PactInteger side = new PactInteger();
+
+	@Override
+	public void open(Configuration parameters) throws Exception {
+		side.setValue(parameters.getInteger(SIDE_PARAMETER, USER_SIDE));
+	}
+
+	/*
+	 * @param in:(ID, feature-vector)
+	 * @return (ID, feature-vector, side)
+	 */
+	@Override
+	public void map(PactRecord record, Collector<PactRecord> collector)
+			throws Exception {
+		record.setField(2, side);
+		collector.collect(record);
+	}
+
+}
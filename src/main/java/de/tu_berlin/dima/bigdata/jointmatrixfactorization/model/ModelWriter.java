@@ -0,0 +1,161 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.model;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.dictionary.IdDictionary;
+
+/*
+ * This object writes the feature-vectors of a trained model as one binary model file in the layout of the FactorModel.
+ * The rows of each side are given as a factor matrix and the order of its rows by ID,
+ * so the feature-vectors can be written from wherever they were collected without sorting the matrix itself.
+ */
+public class ModelWriter {
+
+	private final int rank;
+	private final double lambda;
+	private final int iterations;
+
+	private int[] userIDs = new int[0];
+	private FactorMatrix userFactors;
+	private int[] userRows;
+	private int[] itemIDs = new int[0];
+	private FactorMatrix itemFactors;
+	private int[] itemRows;
+	private IdDictionary users;
+	private IdDictionary items;
+	private long[] externalUserIDs;
+	private long[] externalItemIDs;
+
+	private final byte[] bytes = new byte[1 << 16];
+	private final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+	/*
+	 * @param iterations number of ALS rounds the model was trained with, or FactorModel.UNKNOWN_ITERATIONS
+	 */
+	public ModelWriter(int rank, double lambda, int iterations){
+		this.rank = rank;
+		this.lambda = lambda;
+		this.iterations = iterations;
+	}
+
+	/*
+	 * @param ids userIDs sorted ascending
+	 * @param rows row in factors of each userID, or null if row i belongs to ids[i]
+	 */
+	public void setUsers(int[] ids, FactorMatrix factors, int[] rows){
+		userIDs = ids;
+		userFactors = factors;
+		userRows = rows;
+	}
+
+	/*
+	 * @param ids itemIDs sorted ascending
+	 * @param rows row in factors of each itemID, or null if row i belongs to ids[i]
+	 */
+	public void setItems(int[] ids, FactorMatrix factors, int[] rows){
+		itemIDs = ids;
+		itemFactors = factors;
+		itemRows = rows;
+	}
+
+	/*
+	 * Stores the external IDs of all users and items in the model
+	 */
+	public void setDictionaries(IdDictionary users, IdDictionary items){
+		this.users = users;
+		this.items = items;
+	}
+
+	/*
+	 * Stores the external IDs of all users and items in the model
+	 * @param users external ID of each userID of setUsers, in the same order
+	 * @param items external ID of each itemID of setItems, in the same order
+	 */
+	public void setExternalIDs(long[] users, long[] items){
+		externalUserIDs = users;
+		externalItemIDs = items;
+	}
+
+	public void write(File file) throws IOException{
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		try{
+			write(out);
+		}finally{
+			out.close();
+		}
+	}
+
+	public void write(OutputStream out) throws IOException{
+		int numUsers = userIDs.length;
+		int numItems = itemIDs.length;
+		long userFactorsOffset = FactorModel.HEADER_SIZE + 4L * numUsers + 4L * numItems;
+		long itemFactorsOffset = userFactorsOffset + 4L * numUsers * rank;
+		long end = itemFactorsOffset + 4L * numItems * rank;
+		boolean dictionary = users != null || externalUserIDs != null;
+		long dictionaryOffset = dictionary ? (end + 7) & ~7L : 0;
+
+		buffer.clear();
+		buffer.putInt(FactorModel.MAGIC).putInt(FactorModel.VERSION).putInt(rank).putInt(numUsers).putInt(numItems)
+			.putInt(iterations).putDouble(lambda)
+			.putLong(userFactorsOffset).putLong(itemFactorsOffset).putLong(dictionaryOffset);
+		while(buffer.position() < FactorModel.HEADER_SIZE){
+			buffer.put((byte) 0);
+		}
+		for(int id : userIDs){
+			ensureRemaining(out, 4).putInt(id);
+		}
+		for(int id : itemIDs){
+			ensureRemaining(out, 4).putInt(id);
+		}
+		writeRows(out, userFactors, userRows, numUsers);
+		writeRows(out, itemFactors, itemRows, numItems);
+		if(dictionary){
+			for(long position = end; position < dictionaryOffset; position ++){
+				ensureRemaining(out, 1).put((byte) 0);
+			}
+			for(int i = 0; i < numUsers; i ++){
+				ensureRemaining(out, 8).putLong(users != null ? users.toExternal(userIDs[i]) : externalUserIDs[i]);
+			}
+			for(int i = 0; i < numItems; i ++){
+				ensureRemaining(out, 8).putLong(items != null ? items.toExternal(itemIDs[i]) : externalItemIDs[i]);
+			}
+		}
+		flush(out);
+	}
+
+	private void writeRows(OutputStream out, FactorMatrix factors, int[] rows, int numRows) throws IOException{
+		float[] row = new float[rank];
+		for(int i = 0; i < numRows; i ++){
+			factors.getRow(rows != null ? rows[i] : i, row, 0);
+			for(int j = 0; j < rank; j ++){
+				ensureRemaining(out, 4).putFloat(row[j]);
+			}
+		}
+	}
+
+	private ByteBuffer ensureRemaining(OutputStream out, int numBytes) throws IOException{
+		if(buffer.remaining() < numBytes){
+			flush(out);
+		}
+		return buffer;
+	}
+
+	private void flush(OutputStream out) throws IOException{
+		out.write(bytes, 0, buffer.position());
+		buffer.clear();
+	}
+
+}
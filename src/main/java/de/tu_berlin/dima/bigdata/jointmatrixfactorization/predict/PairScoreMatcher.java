@@ -0,0 +1,46 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.predict;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.MatchStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactFloat;
+
+/*
+ * This Join class scores a requested (user, item) pair, which is already joined to its user-feature-vector,
+ * with the item-feature-vector of its item, so only the requested pairs are scored
+ */
+public class PairScoreMatcher extends MatchStub{
+
+	private final PactFactorVector userFeatureVector = new PactFactorVector();
+	private final PactFactorVector itemFeatureVector = new PactFactorVector();
+	private final PactFloat prediction = new PactFloat();
+	private final PactFloat rating = new PactFloat();
+
+	/*
+	 * @param pairRecord:(userID, itemID, rating or NaN, user-feature-vector)
+	 * @param itemFeatureVectorRecord:(itemID, item-feature-vector)
+	 * @return (userID, itemID, prediction-rating, rating or NaN)
+	 */
+	@Override
+	public void match(PactRecord pairRecord, PactRecord itemFeatureVectorRecord,
+			Collector<PactRecord> collector) throws Exception {
+
+		pairRecord.getField(2, rating);
+		pairRecord.getField(3, userFeatureVector);
+		itemFeatureVectorRecord.getField(1, itemFeatureVector);
+		prediction.setValue((float) userFeatureVector.dot(itemFeatureVector));
+
+		pairRecord.setField(2, prediction);
+		pairRecord.setField(3, rating);
+		collector.collect(pairRecord);
+	}
+
+}
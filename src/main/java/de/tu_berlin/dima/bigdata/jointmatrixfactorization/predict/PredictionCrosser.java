@@ -7,9 +7,7 @@
 
 package de.tu_berlin.dima.bigdata.jointmatrixfactorization.predict;
 
-import org.apache.mahout.math.Vector;
-
-import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactVector;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
 import eu.stratosphere.pact.common.stubs.Collector;
 import eu.stratosphere.pact.common.stubs.CrossStub;
 import eu.stratosphere.pact.common.type.PactRecord;
@@ -23,6 +21,11 @@ import eu.stratosphere.pact.common.type.base.PactInteger;
 public class PredictionCrosser extends CrossStub{
 	
 	private final PactRecord outputRecord = new PactRecord();
+	private final PactInteger userID = new PactInteger();
+	private final PactInteger itemID = new PactInteger();
+	private final PactFloat prediction = new PactFloat();
+	private final PactFactorVector userFeatureVector = new PactFactorVector();
+	private final PactFactorVector itemFeatureVector = new PactFactorVector();
 
 	/*
 	 * The override method defines how the prediction calculated
@@ -34,20 +37,20 @@ public class PredictionCrosser extends CrossStub{
 	public void cross( PactRecord itemFeatureVectorRecord, PactRecord userFeatureVectorRecord,
 			Collector<PactRecord> collector) throws Exception {
 		
-		int userID = userFeatureVectorRecord.getField(0, PactInteger.class).getValue();
-		int itemID = itemFeatureVectorRecord.getField(0, PactInteger.class).getValue();
+		userFeatureVectorRecord.getField(0, userID);
+		itemFeatureVectorRecord.getField(0, itemID);
 		
-		Vector userFeatureVector = userFeatureVectorRecord.getField(1, PactVector.class).get();
-		Vector itemFeatureVector = itemFeatureVectorRecord.getField(1, PactVector.class).get();
+		userFeatureVectorRecord.getField(1, userFeatureVector);
+		itemFeatureVectorRecord.getField(1, itemFeatureVector);
 		
 	    /*
 	     * Calculate the prediction by dot-multiply two vectors
 	     */
-		float predict = (float)userFeatureVector.dot(itemFeatureVector);
+		prediction.setValue((float)userFeatureVector.dot(itemFeatureVector));
 		
-		outputRecord.setField(0, new PactInteger(userID));
-		outputRecord.setField(1, new PactInteger(itemID));
-		outputRecord.setField(2, new PactFloat(predict));
+		outputRecord.setField(0, userID);
+		outputRecord.setField(1, itemID);
+		outputRecord.setField(2, prediction);
 		
 		collector.collect(outputRecord);
 		
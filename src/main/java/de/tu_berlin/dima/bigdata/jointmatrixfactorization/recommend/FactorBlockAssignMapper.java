@@ -0,0 +1,46 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.recommend;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.BlockAssignMapper;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.MapStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This Map class assigns each feature-vector to the block of its ID,
+ * users use the same blocks as the rating blocks of BlockAssignMapper with the same number of blocks
+ */
+public class FactorBlockAssignMapper extends MapStub{
+
+	private final PactInteger id = new PactInteger();
+	private final PactInteger block = new PactInteger();
+	private int numBlocks;
+
+	@Override
+	public void open(Configuration parameters) throws Exception {
+		numBlocks = parameters.getInteger(BlockAssignMapper.NUM_BLOCKS_PARAMETER, 1);
+	}
+
+	/*
+	 * @param in:(ID, feature-vector)
+	 * @return (ID, feature-vector, block)
+	 */
+	@Override
+	public void map(PactRecord record, Collector<PactRecord> collector)
+			throws Exception {
+		record.getField(0, id);
+		block.setValue(Util.blockOf(id.getValue(), numBlocks));
+		record.setField(2, block);
+		collector.collect(record);
+	}
+
+}
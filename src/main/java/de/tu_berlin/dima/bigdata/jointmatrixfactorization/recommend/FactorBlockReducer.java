@@ -0,0 +1,56 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.recommend;
+
+import java.util.Iterator;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.FactorBlock;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.ReduceStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This Reduce class collects the feature-vectors of one block into a dense factor block
+ */
+public class FactorBlockReducer extends ReduceStub{
+
+	private final PactRecord outputRecord = new PactRecord();
+	private final PactInteger id = new PactInteger();
+	private final PactInteger block = new PactInteger();
+	private final PactFactorVector featureVector = new PactFactorVector();
+	private final FactorBlock factorBlock = new FactorBlock();
+
+	/*
+	 * @param in:Iterator[(ID, feature-vector, block)] List of feature-vectors with same block
+	 * @return (block, factor-block)
+	 */
+	@Override
+	public void reduce(Iterator<PactRecord> records, Collector<PactRecord> collector)
+			throws Exception {
+
+		boolean first = true;
+		while(records.hasNext()){
+			PactRecord record = records.next();
+			record.getField(0, id);
+			record.getField(1, featureVector);
+			if(first){
+				record.getField(2, block);
+				factorBlock.clear(featureVector.size());
+				first = false;
+			}
+			factorBlock.add(id.getValue(), featureVector);
+		}
+
+		outputRecord.setField(0, block);
+		outputRecord.setField(1, factorBlock);
+		collector.collect(outputRecord);
+	}
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.recommend;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingBlock;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.MatchStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+
+/*
+ * This Join class attaches the training ratings of a user block to its factor block,
+ * so the items a user already rated can be excluded from the recommendations
+ */
+public class RatedItemsMatcher extends MatchStub{
+
+	private final RatingBlock ratingBlock = new RatingBlock();
+
+	/*
+	 * @param factorBlockRecord:(block, user-factor-block)
+	 * @param ratingBlockRecord:(block, user-rating-block)
+	 * @return (block, user-factor-block, user-rating-block)
+	 */
+	@Override
+	public void match(PactRecord factorBlockRecord, PactRecord ratingBlockRecord,
+			Collector<PactRecord> collector) throws Exception {
+		ratingBlockRecord.getField(1, ratingBlock);
+		factorBlockRecord.setField(2, ratingBlock);
+		collector.collect(factorBlockRecord);
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.recommend;
+
+import org.apache.mahout.math.map.OpenIntIntHashMap;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.FactorBlock;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactScoredItems;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingBlock;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.TopKHeap;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.CrossStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This Cross class scores one user block against one item block as a dense matrix product
+ * and keeps only the K best items of the item block for every user,
+ * instead of emitting one record for every (user, item) pair
+ */
+public class TopKCrosser extends CrossStub{
+
+	public static final String TOP_K_PARAMETER = "als.topk";
+	/*
+	 * If set, the user blocks carry their rating block in field 2 and the rated items are not recommended
+	 */
+	public static final String EXCLUDE_RATED_PARAMETER = "als.topk.exclude";
+
+	private final PactRecord outputRecord = new PactRecord();
+	private final PactInteger userID = new PactInteger();
+	private final PactScoredItems scoredItems = new PactScoredItems();
+	private final FactorBlock userBlock = new FactorBlock();
+	private final FactorBlock itemBlock = new FactorBlock();
+	private final RatingBlock ratingBlock = new RatingBlock();
+
+	/*
+	 * Row of each itemID in the current item block and the rows excluded for the current user
+	 */
+	private final OpenIntIntHashMap itemRows = new OpenIntIntHashMap();
+	private boolean[] excluded = new boolean[0];
+
+	private TopKHeap heap;
+	private boolean excludeRated;
+
+	@Override
+	public void open(Configuration parameters) throws Exception {
+		heap = new TopKHeap(parameters.getInteger(TOP_K_PARAMETER, 10));
+		excludeRated = parameters.getBoolean(EXCLUDE_RATED_PARAMETER, false);
+	}
+
+	/*
+	 * @param userBlockRecord:(block, user-factor-block[, user-rating-block])
+	 * @param itemBlockRecord:(block, item-factor-block)
+	 * @return (userID, best items of the item block) for each user of the user block
+	 */
+	@Override
+	public void cross(PactRecord userBlockRecord, PactRecord itemBlockRecord,
+			Collector<PactRecord> collector) throws Exception {
+
+		userBlockRecord.getField(1, userBlock);
+		itemBlockRecord.getField(1, itemBlock);
+		int rank = userBlock.getRank();
+		int numItems = itemBlock.size();
+		float[] users = userBlock.getValues();
+		float[] items = itemBlock.getValues();
+
+		if(excludeRated){
+			userBlockRecord.getField(2, ratingBlock);
+			itemRows.clear();
+			for(int row = 0; row < numItems; row ++){
+				itemRows.put(itemBlock.getID(row), row);
+			}
+			if(excluded.length < numItems){
+				excluded = new boolean[numItems];
+			}
+		}
+
+		for(int u = 0; u < userBlock.size(); u ++){
+			int ratedKey = excludeRated ? ratingBlock.indexOfKey(userBlock.getID(u)) : -1;
+			if(ratedKey >= 0){
+				setExcluded(ratedKey, true);
+			}
+
+			heap.clear();
+			int userOffset = u * rank;
+			for(int i = 0, itemOffset = 0; i < numItems; i ++, itemOffset += rank){
+				if(ratedKey >= 0 && excluded[i]){
+					continue;
+				}
+				float score = 0;
+				for(int f = 0; f < rank; f ++){
+					score += users[userOffset + f] * items[itemOffset + f];
+				}
+				if(heap.accepts(score)){
+					heap.offer(itemBlock.getID(i), score);
+				}
+			}
+
+			if(ratedKey >= 0){
+				setExcluded(ratedKey, false);
+			}
+
+			if(heap.size() > 0){
+				userID.setValue(userBlock.getID(u));
+				scoredItems.set(heap);
+				outputRecord.setField(0, userID);
+				outputRecord.setField(1, scoredItems);
+				collector.collect(outputRecord);
+			}
+		}
+	}
+
+	/*
+	 * Marks or unmarks the rows of the items the user of the rating block key rated
+	 */
+	private void setExcluded(int ratedKey, boolean value){
+		for(int r = ratingBlock.getStart(ratedKey); r < ratingBlock.getEnd(ratedKey); r ++){
+			int itemID = ratingBlock.getOther(r);
+			if(itemRows.containsKey(itemID)){
+				excluded[itemRows.get(itemID)] = value;
+			}
+		}
+	}
+
+}
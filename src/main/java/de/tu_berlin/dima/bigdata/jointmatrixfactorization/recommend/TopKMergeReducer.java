@@ -0,0 +1,92 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.recommend;
+
+import java.util.Iterator;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactScoredItems;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.TopKHeap;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.contract.ReduceContract;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.ReduceStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactFloat;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This Reduce class merges the best items of all item blocks of one user into the final top-K list.
+ * Merging is associative, so the candidates of one user are already merged on the sender side
+ */
+@ReduceContract.Combinable
+public class TopKMergeReducer extends ReduceStub{
+
+	private final PactRecord outputRecord = new PactRecord();
+	private final PactRecord candidateRecord = new PactRecord();
+	private final PactInteger userID = new PactInteger();
+	private final PactInteger itemID = new PactInteger();
+	private final PactFloat score = new PactFloat();
+	private final PactScoredItems scoredItems = new PactScoredItems();
+
+	private TopKHeap heap;
+
+	@Override
+	public void open(Configuration parameters) throws Exception {
+		heap = new TopKHeap(parameters.getInteger(TopKCrosser.TOP_K_PARAMETER, 10));
+	}
+
+	/*
+	 * @param in:Iterator[(userID, candidate items)] List with same userID
+	 * @return (userID, itemID, score) for the K best items, best first
+	 */
+	@Override
+	public void reduce(Iterator<PactRecord> records, Collector<PactRecord> collector)
+			throws Exception {
+		merge(records);
+		heap.sortDescending();
+
+		outputRecord.setField(0, userID);
+		for(int i = 0; i < heap.size(); i ++){
+			itemID.setValue(heap.getID(i));
+			score.setValue(heap.getScore(i));
+			outputRecord.setField(1, itemID);
+			outputRecord.setField(2, score);
+			collector.collect(outputRecord);
+		}
+	}
+
+	/*
+	 * @param in:Iterator[(userID, candidate items)] List with same userID
+	 * @return (userID, merged candidate items)
+	 */
+	@Override
+	public void combine(Iterator<PactRecord> records, Collector<PactRecord> collector)
+			throws Exception {
+		merge(records);
+
+		scoredItems.set(heap);
+		candidateRecord.setField(0, userID);
+		candidateRecord.setField(1, scoredItems);
+		collector.collect(candidateRecord);
+	}
+
+	private void merge(Iterator<PactRecord> records){
+		heap.clear();
+		while(records.hasNext()){
+			PactRecord record = records.next();
+			record.getField(0, userID);
+			record.getField(1, scoredItems);
+			for(int i = 0; i < scoredItems.size(); i ++){
+				if(heap.accepts(scoredItems.getScore(i))){
+					heap.offer(scoredItems.getID(i), scoredItems.getScore(i));
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,274 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.serve;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mahout.math.Sorting;
+import org.apache.mahout.math.function.IntComparator;
+import org.apache.mahout.math.list.FloatArrayList;
+import org.apache.mahout.math.list.LongArrayList;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingFileScanner;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingLineParser;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorModel;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.NormalEquations;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.PlanOptions;
+
+/*
+ * This object computes the feature-vector of a new or changed user from the user's current ratings
+ * and the frozen item-feature-vectors of a model, with the same regularized least squares solve as the
+ * UserFeatureVectorUpdateReducer, and symmetrically the feature-vector of an item from the user-feature-vectors.
+ * A call solves one rank-sized normal equation in per-thread scratch space, so it takes microseconds and allocates nothing.
+ * Ratings of users or items which are not in the model are ignored.
+ *
+ * In batch mode a delta file "user item rating" holds the complete current ratings of every user (or item) to fold in,
+ * and one line "ID f1 f2 ... fk" is written per solved key, with external IDs if the model has a dictionary.
+ */
+public class FoldIn {
+
+	public static final String USER_SIDE = "user";
+	public static final String ITEM_SIDE = "item";
+
+	private static final int CHUNK_SIZE = 64;
+
+	private final FactorModel model;
+	private final int rank;
+	private final double lambda;
+
+	/*
+	 * Scratch space of one thread
+	 */
+	private final class Scratch {
+		final NormalEquations equations = new NormalEquations(rank);
+		final double[] solution = new double[rank];
+	}
+
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	public FoldIn(FactorModel model){
+		this(model, model.getLambda());
+	}
+
+	public FoldIn(FactorModel model, double lambda){
+		this.model = model;
+		this.rank = model.getRank();
+		this.lambda = lambda;
+	}
+
+	public FactorModel getModel(){
+		return model;
+	}
+
+	/*
+	 * @param itemIDs itemIDs of the model rated by the user
+	 * @param userVector array of length rank to store the user-feature-vector in
+	 * @return false if no rated item is in the model
+	 */
+	public boolean foldInUser(int[] itemIDs, float[] ratings, int numRatings, float[] userVector){
+		Scratch s = scratch.get();
+		s.equations.reset();
+		FactorMatrix itemFactors = model.getItemFactors();
+		for(int i = 0; i < numRatings; i ++){
+			int item = model.itemRow(itemIDs[i]);
+			if(item >= 0){
+				s.equations.add(itemFactors, item, ratings[i]);
+			}
+		}
+		return solve(s, userVector, 0);
+	}
+
+	/*
+	 * @param userIDs userIDs of the model who rated the item
+	 * @param itemVector array of length rank to store the item-feature-vector in
+	 * @return false if no rating user is in the model
+	 */
+	public boolean foldInItem(int[] userIDs, float[] ratings, int numRatings, float[] itemVector){
+		Scratch s = scratch.get();
+		s.equations.reset();
+		FactorMatrix userFactors = model.getUserFactors();
+		for(int i = 0; i < numRatings; i ++){
+			int user = model.userRow(userIDs[i]);
+			if(user >= 0){
+				s.equations.add(userFactors, user, ratings[i]);
+			}
+		}
+		return solve(s, itemVector, 0);
+	}
+
+	/*
+	 * Solves the key of the rows of the opposite side [from, to) of a batch
+	 */
+	private boolean foldIn(Scratch s, FactorMatrix others, int[] rows, float[] ratings, int[] order, int from, int to,
+			float[] target, int offset){
+		s.equations.reset();
+		for(int i = from; i < to; i ++){
+			int row = rows[order[i]];
+			if(row >= 0){
+				s.equations.add(others, row, ratings[order[i]]);
+			}
+		}
+		return solve(s, target, offset);
+	}
+
+	/*
+	 * Solves the normal equation accumulated in the scratch space
+	 * @param target array holding the feature-vector at offset
+	 */
+	private boolean solve(Scratch s, float[] target, int offset){
+		if(s.equations.getCount() == 0 || !s.equations.solve(lambda, s.solution)){
+			return false;
+		}
+		for(int i = 0; i < rank; i ++){
+			target[offset + i] = (float) s.solution[i];
+		}
+		return true;
+	}
+
+	/*
+	 * Folds in every user (or item) of a delta file
+	 * @param side USER_SIDE or ITEM_SIDE
+	 * @return number of feature-vectors written
+	 */
+	public int foldIn(File deltaFile, String side, File output, int numThreads) throws IOException{
+		final boolean users = USER_SIDE.equals(side);
+		final LongArrayList keyList = new LongArrayList();
+		final LongArrayList otherList = new LongArrayList();
+		final FloatArrayList ratingList = new FloatArrayList();
+		RatingFileScanner.scan(deltaFile, new RatingFileScanner.Handler() {
+			@Override
+			public void rating(RatingLineParser parser) {
+				keyList.add(users ? parser.getUserID() : parser.getItemID());
+				otherList.add(users ? parser.getItemID() : parser.getUserID());
+				ratingList.add(parser.getRating());
+			}
+		});
+		int numRatings = keyList.size();
+		final long[] keys = keyList.elements();
+		final float[] ratings = ratingList.elements();
+		final int[] rows = new int[numRatings];
+		for(int i = 0; i < numRatings; i ++){
+			long other = otherList.get(i);
+			rows[i] = users ? model.itemRowOfExternal(other) : model.userRowOfExternal(other);
+		}
+
+		// the ratings grouped by key
+		final int[] order = new int[numRatings];
+		for(int i = 0; i < numRatings; i ++){
+			order[i] = i;
+		}
+		Sorting.quickSort(order, 0, numRatings, new IntComparator() {
+			@Override
+			public int compare(int a, int b) {
+				return keys[a] < keys[b] ? -1 : keys[a] > keys[b] ? 1 : 0;
+			}
+		});
+		int numKeys = 0;
+		final int[] groupStarts = new int[numRatings + 1];
+		for(int i = 0; i < numRatings; i ++){
+			if(i == 0 || keys[order[i]] != keys[order[i - 1]]){
+				groupStarts[numKeys ++] = i;
+			}
+		}
+		groupStarts[numKeys] = numRatings;
+
+		final FactorMatrix others = users ? model.getItemFactors() : model.getUserFactors();
+		final float[] vectors = new float[numKeys * rank];
+		final boolean[] solved = new boolean[numKeys];
+		final int numGroups = numKeys;
+		final AtomicInteger nextChunk = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try{
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for(int thread = 0; thread < numThreads; thread ++){
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						Scratch s = scratch.get();
+						int start;
+						while((start = nextChunk.getAndAdd(CHUNK_SIZE)) < numGroups){
+							for(int key = start; key < Math.min(start + CHUNK_SIZE, numGroups); key ++){
+								solved[key] = foldIn(s, others, rows, ratings, order, groupStarts[key], groupStarts[key + 1],
+										vectors, key * rank);
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for(Future<Void> future : futures){
+				future.get();
+			}
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}catch(ExecutionException e){
+			throw new IOException(e.getCause());
+		}finally{
+			executor.shutdown();
+		}
+
+		int numWritten = 0;
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), "UTF-8"), 1 << 16);
+		try{
+			for(int key = 0; key < numKeys; key ++){
+				if(!solved[key]){
+					continue;
+				}
+				writer.write(String.valueOf(keys[order[groupStarts[key]]]));
+				for(int i = 0; i < rank; i ++){
+					writer.write(' ');
+					writer.write(String.valueOf(vectors[key * rank + i]));
+				}
+				writer.write('\n');
+				numWritten ++;
+			}
+		}finally{
+			writer.close();
+		}
+		return numWritten;
+	}
+
+	/*
+	 * Usage: FoldIn [modelFile] [deltaFile] [outputPath] ([side=user|item] [threads=N] [lambda=L])
+	 */
+	public static void main(String[] args) throws IOException{
+		if(args.length < 3){
+			System.out.println("Usage: FoldIn [modelFile] [deltaFile] [outputPath] ([side=user|item] [threads=N] [lambda=L])");
+			return;
+		}
+		PlanOptions options = new PlanOptions(args);
+		FactorModel model = FactorModel.load(new File(args[0]));
+		FoldIn foldIn = new FoldIn(model, options.getDouble("lambda", model.getLambda()));
+		long start = System.nanoTime();
+		int numWritten = foldIn.foldIn(new File(args[1]), options.getString("side", USER_SIDE), new File(args[2]),
+				options.getInt("threads", Runtime.getRuntime().availableProcessors()));
+		System.out.println("folded in " + numWritten + " feature-vectors in " + (System.nanoTime() - start) / 1000000 + " ms");
+		model.close();
+	}
+
+}
@@ -0,0 +1,676 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.serve;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorModel;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.TopKHeap;
+
+/*
+ * This object finds the items of approximately maximal inner product with a user-feature-vector
+ * without scoring every item, by a hierarchical navigable small world (HNSW) graph over the item-feature-vectors.
+ *
+ * The graph needs a metric, so the inner product is turned into an euclidean distance first:
+ * every item x gets the extra coordinate sqrt(M^2 - |x|^2), with M the largest item norm, and every query q the coordinate 0.
+ * Then |q - x'|^2 = |q|^2 + M^2 - 2 q.x, so the nearest items are exactly the items of the largest inner product.
+ * The extra coordinate is kept apart, so the item matrix is the one of the model.
+ *
+ * Knobs: m neighbors per node and layer (2m on the bottom layer) and efConstruction candidates while building
+ * trade the build time and the memory for recall, ef candidates while searching trades the latency for recall.
+ * The graph is built by several threads which lock the neighbor lists in stripes,
+ * the finished graph is read without locks. It is stored next to the model file with FILE_EXTENSION.
+ */
+public class HnswIndex {
+
+	public static final String FILE_EXTENSION = ".hnsw";
+	public static final int DEFAULT_M = 16;
+	public static final int DEFAULT_EF_CONSTRUCTION = 200;
+	public static final int DEFAULT_EF = 50;
+
+	private static final int MAGIC = 0x484e5357;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	private static final int MAX_LEVEL = 16;
+	private static final int LOCK_STRIPES = 1024;
+
+	private final FactorModel model;
+	private final int numItems;
+	private final int rank;
+	private final int m;
+	private final int maxM0;
+	private final int[] itemIDs;
+	private final float[] items;
+	private final float[] norms;
+	private final float[] extra;
+
+	private final byte[] levels;
+	// bottom layer of node i at i * (maxM0 + 1): number of neighbors, neighbors
+	private final int[] links0;
+	// layer l >= 1 of node i in upperLinks[i] at (l - 1) * (m + 1): number of neighbors, neighbors
+	private final int[][] upperLinks;
+	private int entryPoint = -1;
+	private int maxLevel = -1;
+
+	private final Object[] locks;
+	private volatile boolean locking;
+	private int ef = DEFAULT_EF;
+
+	/*
+	 * Scratch space of the searches of one thread
+	 */
+	private final class Search {
+		final int[] visited = new int[numItems];
+		int epoch;
+		final NodeHeap candidates = new NodeHeap();
+		// max-heap of the found nodes by distance, as a min-heap of negated distances
+		final NodeHeap results = new NodeHeap();
+		final int[] neighbors = new int[maxM0 + 1];
+		final float[] query = new float[rank];
+		final int[] selected = new int[maxM0 + 1];
+
+		void nextEpoch(){
+			if(++ epoch == 0){
+				Arrays.fill(visited, 0);
+				epoch = 1;
+			}
+		}
+	}
+
+	private final ThreadLocal<Search> searches = new ThreadLocal<Search>() {
+		@Override
+		protected Search initialValue() {
+			return new Search();
+		}
+	};
+
+	private HnswIndex(FactorModel model, int m, byte[] levels){
+		this.model = model;
+		this.numItems = model.getNumItems();
+		this.rank = model.getRank();
+		this.m = m;
+		this.maxM0 = 2 * m;
+		this.levels = levels;
+		if((long) numItems * Math.max(rank, maxM0 + 1) > Integer.MAX_VALUE){
+			throw new IllegalArgumentException(numItems + " items are too many for the index");
+		}
+
+		itemIDs = new int[numItems];
+		items = new float[numItems * rank];
+		norms = new float[numItems];
+		extra = new float[numItems];
+		FactorMatrix itemFactors = model.getItemFactors();
+		float maxNorm = 0;
+		for(int item = 0; item < numItems; item ++){
+			itemIDs[item] = model.getItemID(item);
+			itemFactors.getRow(item, items, item * rank);
+			norms[item] = (float) dot(items, item * rank, items, item * rank);
+			maxNorm = Math.max(maxNorm, norms[item]);
+		}
+
+		for(int item = 0; item < numItems; item ++){
+			extra[item] = (float) Math.sqrt(Math.max(0, maxNorm - norms[item]));
+		}
+
+		links0 = new int[numItems * (maxM0 + 1)];
+		upperLinks = new int[numItems][];
+		for(int item = 0; item < numItems; item ++){
+			if(levels[item] > 0){
+				upperLinks[item] = new int[levels[item] * (m + 1)];
+			}
+		}
+		locks = new Object[LOCK_STRIPES];
+		for(int i = 0; i < LOCK_STRIPES; i ++){
+			locks[i] = new Object();
+		}
+	}
+
+	/*
+	 * Builds the graph over the items of a model
+	 * @param seed seed of the random layers of the nodes
+	 */
+	public static HnswIndex build(FactorModel model, int m, final int efConstruction, long seed, int numThreads)
+			throws IOException{
+		Random random = new Random(seed);
+		double levelFactor = 1 / Math.log(m);
+		byte[] levels = new byte[model.getNumItems()];
+		for(int i = 0; i < levels.length; i ++){
+			levels[i] = (byte) Math.min(MAX_LEVEL, (int) (-Math.log(1 - random.nextDouble()) * levelFactor));
+		}
+		final HnswIndex index = new HnswIndex(model, m, levels);
+		final int numItems = index.numItems;
+		if(numItems == 0){
+			return index;
+		}
+		index.insert(0, efConstruction);
+
+		index.locking = true;
+		final AtomicInteger nextItem = new AtomicInteger(1);
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try{
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for(int thread = 0; thread < numThreads; thread ++){
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						int item;
+						while((item = nextItem.getAndIncrement()) < numItems){
+							index.insert(item, efConstruction);
+						}
+						return null;
+					}
+				}));
+			}
+			for(Future<Void> future : futures){
+				future.get();
+			}
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}catch(ExecutionException e){
+			throw new IOException(e.getCause());
+		}finally{
+			executor.shutdown();
+		}
+		index.locking = false;
+		return index;
+	}
+
+	/*
+	 * @return file of the index of a model file
+	 */
+	public static File indexFileOf(File modelFile){
+		return new File(modelFile.getPath() + FILE_EXTENSION);
+	}
+
+	/*
+	 * Sets the number of candidates of a search, at least K candidates are always used
+	 */
+	public void setEf(int ef){
+		this.ef = ef;
+	}
+
+	public int getEf(){
+		return ef;
+	}
+
+	public FactorModel getModel(){
+		return model;
+	}
+
+	/*
+	 * Finds the items of approximately largest inner product with a vector
+	 * @param result heap of capacity K, afterwards it holds the itemIDs and exact scores best first
+	 */
+	public void search(float[] query, TopKHeap result){
+		result.clear();
+		if(entryPoint < 0){
+			return;
+		}
+		Search search = searches.get();
+		float queryNorm = (float) dot(query, 0, query, 0);
+		int current = entryPoint;
+		float currentDistance = distance(query, 0, queryNorm, 0, current);
+		for(int level = maxLevel; level > 0; level --){
+			current = greedy(search, query, 0, queryNorm, 0, current, currentDistance, level);
+			currentDistance = distance(query, 0, queryNorm, 0, current);
+		}
+		searchLayer(search, query, 0, queryNorm, 0, current, currentDistance, Math.max(ef, result.capacity()), 0);
+		NodeHeap results = search.results;
+		while(results.size() > 0){
+			int item = results.topId();
+			results.pop();
+			float score = (float) dot(query, 0, items, item * rank);
+			if(result.accepts(score)){
+				result.offer(itemIDs[item], score);
+			}
+		}
+		result.sortDescending();
+	}
+
+	/*
+	 * Finds the items of approximately largest predicted rating for a user of the model
+	 */
+	public void recommend(int userID, TopKHeap result){
+		int user = model.userRow(userID);
+		if(user < 0){
+			result.clear();
+			return;
+		}
+		float[] query = searches.get().query;
+		model.getUserFactors().getRow(user, query, 0);
+		search(query, result);
+	}
+
+	/*
+	 * Adds a node to every layer up to its level
+	 */
+	private void insert(int node, int efConstruction){
+		Search search = searches.get();
+		int entry;
+		int topLevel;
+		synchronized(this){
+			entry = entryPoint;
+			topLevel = maxLevel;
+			if(entry < 0){
+				entryPoint = node;
+				maxLevel = levels[node];
+				return;
+			}
+		}
+		int level = levels[node];
+		int offset = node * rank;
+		float nodeNorm = norms[node];
+		float nodeExtra = extra[node];
+
+		int current = entry;
+		float currentDistance = distance(items, offset, nodeNorm, nodeExtra, current);
+		for(int l = topLevel; l > level; l --){
+			current = greedy(search, items, offset, nodeNorm, nodeExtra, current, currentDistance, l);
+			currentDistance = distance(items, offset, nodeNorm, nodeExtra, current);
+		}
+		for(int l = Math.min(level, topLevel); l >= 0; l --){
+			searchLayer(search, items, offset, nodeNorm, nodeExtra, current, currentDistance, efConstruction, l);
+			// the results without the node itself, ascending by distance
+			int numResults = 0;
+			int[] found = new int[search.results.size()];
+			float[] foundDistances = new float[found.length];
+			while(search.results.size() > 0){
+				if(search.results.topId() != node){
+					found[numResults] = search.results.topId();
+					foundDistances[numResults ++] = -search.results.topDistance();
+				}
+				search.results.pop();
+			}
+			reverse(found, foundDistances, numResults);
+			int numSelected = selectNeighbors(search, found, foundDistances, numResults, l == 0 ? maxM0 : m);
+			int[] selected = Arrays.copyOf(search.selected, numSelected);
+			setLinks(node, l, selected, numSelected);
+			for(int i = 0; i < numSelected; i ++){
+				connect(search, selected[i], node, l);
+			}
+			if(numResults > 0){
+				current = found[0];
+				currentDistance = foundDistances[0];
+			}
+		}
+		if(level > topLevel){
+			synchronized(this){
+				if(level > maxLevel){
+					maxLevel = level;
+					entryPoint = node;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Adds a link from a node to a new neighbor, if the node has too many neighbors then the best are kept
+	 */
+	private void connect(Search search, int node, int neighbor, int level){
+		int maxNeighbors = level == 0 ? maxM0 : m;
+		int[] links = level == 0 ? links0 : upperLinks[node];
+		int base = level == 0 ? node * (maxM0 + 1) : (level - 1) * (m + 1);
+		Object lock = lockOf(node);
+		synchronized(lock){
+			int count = links[base];
+			if(count < maxNeighbors){
+				links[base + 1 + count] = neighbor;
+				links[base] = count + 1;
+				return;
+			}
+			int[] candidates = new int[count + 1];
+			float[] candidateDistances = new float[count + 1];
+			for(int i = 0; i < count; i ++){
+				candidates[i] = links[base + 1 + i];
+			}
+			candidates[count] = neighbor;
+			int offset = node * rank;
+			for(int i = 0; i <= count; i ++){
+				candidateDistances[i] = distance(items, offset, norms[node], extra[node], candidates[i]);
+			}
+			sortByDistance(candidates, candidateDistances, count + 1);
+			int numSelected = selectNeighbors(search, candidates, candidateDistances, count + 1, maxNeighbors);
+			for(int i = 0; i < numSelected; i ++){
+				links[base + 1 + i] = search.selected[i];
+			}
+			links[base] = numSelected;
+		}
+	}
+
+	private void setLinks(int node, int level, int[] neighbors, int count){
+		int[] links = level == 0 ? links0 : upperLinks[node];
+		int base = level == 0 ? node * (maxM0 + 1) : (level - 1) * (m + 1);
+		synchronized(lockOf(node)){
+			System.arraycopy(neighbors, 0, links, base + 1, count);
+			links[base] = count;
+		}
+	}
+
+	/*
+	 * Keeps a candidate only if it is closer to the node than to every kept neighbor,
+	 * which spreads the neighbors over all directions instead of one dense cluster
+	 * @param candidates sorted by ascending distance to the node
+	 * @return number of neighbors in search.selected
+	 */
+	private int selectNeighbors(Search search, int[] candidates, float[] distances, int numCandidates, int maxNeighbors){
+		int numSelected = 0;
+		for(int i = 0; i < numCandidates && numSelected < maxNeighbors; i ++){
+			int candidate = candidates[i];
+			boolean good = true;
+			for(int j = 0; j < numSelected; j ++){
+				int other = search.selected[j];
+				if(distance(items, candidate * rank, norms[candidate], extra[candidate], other) < distances[i]){
+					good = false;
+					break;
+				}
+			}
+			if(good){
+				search.selected[numSelected ++] = candidate;
+			}
+		}
+		return numSelected;
+	}
+
+	/*
+	 * Walks to the neighbor closest to the query on one layer until there is no closer one
+	 */
+	private int greedy(Search search, float[] query, int offset, float queryNorm, float queryExtra,
+			int current, float currentDistance, int level){
+		boolean changed = true;
+		while(changed){
+			changed = false;
+			int count = neighbors(current, level, search.neighbors);
+			for(int i = 0; i < count; i ++){
+				int neighbor = search.neighbors[i];
+				float d = distance(query, offset, queryNorm, queryExtra, neighbor);
+				if(d < currentDistance){
+					current = neighbor;
+					currentDistance = d;
+					changed = true;
+				}
+			}
+		}
+		return current;
+	}
+
+	/*
+	 * Best-first search of one layer, afterwards search.results holds the ef closest nodes found
+	 */
+	private void searchLayer(Search search, float[] query, int offset, float queryNorm, float queryExtra,
+			int entry, float entryDistance, int ef, int level){
+		search.nextEpoch();
+		int[] visited = search.visited;
+		int epoch = search.epoch;
+		NodeHeap candidates = search.candidates;
+		NodeHeap results = search.results;
+		candidates.clear();
+		results.clear();
+		visited[entry] = epoch;
+		candidates.push(entry, entryDistance);
+		results.push(entry, -entryDistance);
+		while(candidates.size() > 0){
+			int candidate = candidates.topId();
+			if(candidates.topDistance() > -results.topDistance()){
+				break;
+			}
+			candidates.pop();
+			int count = neighbors(candidate, level, search.neighbors);
+			for(int i = 0; i < count; i ++){
+				int neighbor = search.neighbors[i];
+				if(visited[neighbor] == epoch){
+					continue;
+				}
+				visited[neighbor] = epoch;
+				float d = distance(query, offset, queryNorm, queryExtra, neighbor);
+				if(results.size() < ef || d < -results.topDistance()){
+					candidates.push(neighbor, d);
+					results.push(neighbor, -d);
+					if(results.size() > ef){
+						results.pop();
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * Copies the neighbors of a node on a layer
+	 * @return number of neighbors
+	 */
+	private int neighbors(int node, int level, int[] target){
+		int[] links = level == 0 ? links0 : upperLinks[node];
+		int base = level == 0 ? node * (maxM0 + 1) : (level - 1) * (m + 1);
+		if(locking){
+			synchronized(lockOf(node)){
+				int count = links[base];
+				System.arraycopy(links, base + 1, target, 0, count);
+				return count;
+			}
+		}
+		int count = links[base];
+		System.arraycopy(links, base + 1, target, 0, count);
+		return count;
+	}
+
+	private Object lockOf(int node){
+		return locks[node & (LOCK_STRIPES - 1)];
+	}
+
+	/*
+	 * Squared euclidean distance of a transformed vector to a transformed item
+	 * @param vectorExtra extra coordinate of the vector, 0 for a query
+	 */
+	private float distance(float[] vector, int offset, float norm, float vectorExtra, int item){
+		float d = vectorExtra - extra[item];
+		return (float) (norm + norms[item] - 2 * dot(vector, offset, items, item * rank)) + d * d;
+	}
+
+	private double dot(float[] a, int aOffset, float[] b, int bOffset){
+		double sum = 0;
+		for(int i = 0; i < rank; i ++){
+			sum += a[aOffset + i] * b[bOffset + i];
+		}
+		return sum;
+	}
+
+	private static void reverse(int[] nodes, float[] distances, int size){
+		for(int i = 0, j = size - 1; i < j; i ++, j --){
+			int node = nodes[i];
+			nodes[i] = nodes[j];
+			nodes[j] = node;
+			float d = distances[i];
+			distances[i] = distances[j];
+			distances[j] = d;
+		}
+	}
+
+	private static void sortByDistance(int[] nodes, float[] distances, int size){
+		for(int i = 1; i < size; i ++){
+			int node = nodes[i];
+			float d = distances[i];
+			int j = i - 1;
+			while(j >= 0 && distances[j] > d){
+				nodes[j + 1] = nodes[j];
+				distances[j + 1] = distances[j];
+				j --;
+			}
+			nodes[j + 1] = node;
+			distances[j + 1] = d;
+		}
+	}
+
+	/*
+	 * Writes the graph, the vectors are not stored but taken from the model when the index is loaded
+	 *
+	 * File layout, little endian:
+	 *   header      HEADER_SIZE bytes: magic, version, numItems, rank, m, maxLevel, entryPoint
+	 *   levels      byte[numItems], padded to 4 bytes
+	 *   links0      int[numItems * (2m + 1)]
+	 *   upperLinks  int[levels[i] * (m + 1)] of every node i with a level above 0, in node order
+	 */
+	public void write(File file) throws IOException{
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		try{
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(numItems).putInt(rank).putInt(m).putInt(maxLevel).putInt(entryPoint);
+			out.write(buffer.array());
+			out.write(levels);
+			out.write(new byte[(4 - numItems % 4) % 4]);
+			writeInts(out, links0);
+			for(int item = 0; item < numItems; item ++){
+				if(upperLinks[item] != null){
+					writeInts(out, upperLinks[item]);
+				}
+			}
+		}finally{
+			out.close();
+		}
+	}
+
+	/*
+	 * Loads the graph of the items of a model
+	 */
+	public static HnswIndex load(File file, FactorModel model) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+					.order(ByteOrder.LITTLE_ENDIAN);
+			if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION){
+				throw new IOException(file + " is not an index of version " + VERSION);
+			}
+			if(buffer.getInt(8) != model.getNumItems() || buffer.getInt(12) != model.getRank()){
+				throw new IOException(file + " is the index of another model");
+			}
+			int numItems = buffer.getInt(8);
+			int m = buffer.getInt(16);
+			byte[] levels = new byte[numItems];
+			buffer.position(HEADER_SIZE);
+			buffer.get(levels);
+			buffer.position(HEADER_SIZE + numItems + (4 - numItems % 4) % 4);
+
+			HnswIndex index = new HnswIndex(model, m, levels);
+			index.maxLevel = buffer.getInt(20);
+			index.entryPoint = buffer.getInt(24);
+			buffer.asIntBuffer().get(index.links0);
+			buffer.position(buffer.position() + 4 * index.links0.length);
+			for(int item = 0; item < numItems; item ++){
+				if(index.upperLinks[item] != null){
+					buffer.asIntBuffer().get(index.upperLinks[item]);
+					buffer.position(buffer.position() + 4 * index.upperLinks[item].length);
+				}
+			}
+			return index;
+		}finally{
+			raf.close();
+		}
+	}
+
+	private static void writeInts(OutputStream out, int[] values) throws IOException{
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		for(int value : values){
+			if(buffer.remaining() < 4){
+				out.write(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+			buffer.putInt(value);
+		}
+		out.write(buffer.array(), 0, buffer.position());
+	}
+
+	/*
+	 * Growable binary min-heap of (node, distance)
+	 */
+	private static final class NodeHeap {
+		private int[] ids = new int[64];
+		private float[] distances = new float[64];
+		private int size;
+
+		int size(){
+			return size;
+		}
+
+		void clear(){
+			size = 0;
+		}
+
+		int topId(){
+			return ids[0];
+		}
+
+		float topDistance(){
+			return distances[0];
+		}
+
+		void push(int id, float distance){
+			if(size == ids.length){
+				ids = Arrays.copyOf(ids, size * 2);
+				distances = Arrays.copyOf(distances, size * 2);
+			}
+			int child = size ++;
+			while(child > 0){
+				int parent = (child - 1) >>> 1;
+				if(distances[parent] <= distance){
+					break;
+				}
+				ids[child] = ids[parent];
+				distances[child] = distances[parent];
+				child = parent;
+			}
+			ids[child] = id;
+			distances[child] = distance;
+		}
+
+		void pop(){
+			size --;
+			if(size == 0){
+				return;
+			}
+			int id = ids[size];
+			float distance = distances[size];
+			int parent = 0;
+			while(true){
+				int child = 2 * parent + 1;
+				if(child >= size){
+					break;
+				}
+				if(child + 1 < size && distances[child + 1] < distances[child]){
+					child ++;
+				}
+				if(distances[child] >= distance){
+					break;
+				}
+				ids[parent] = ids[child];
+				distances[parent] = distances[child];
+				parent = child;
+			}
+			ids[parent] = id;
+			distances[parent] = distance;
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.serve;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * This object counts latencies in nanoseconds in log-linear buckets: every power of two is split into
+ * SUB_BUCKETS linear buckets, so a percentile is exact up to 1 / SUB_BUCKETS of its value (about 3%)
+ * for any latency up to hours, in a fixed array of counters. Recording is lock-free and can be done by many threads.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos){
+		nanos = Math.max(0, nanos);
+		counts.incrementAndGet(bucketOf(nanos));
+		count.incrementAndGet();
+		sum.addAndGet(nanos);
+		long currentMax;
+		while(nanos > (currentMax = max.get()) && !max.compareAndSet(currentMax, nanos)){
+		}
+	}
+
+	public void reset(){
+		for(int i = 0; i < counts.length(); i ++){
+			counts.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	public long getCount(){
+		return count.get();
+	}
+
+	public double getMeanNanos(){
+		long n = count.get();
+		return n > 0 ? (double) sum.get() / n : 0;
+	}
+
+	public long getMaxNanos(){
+		return max.get();
+	}
+
+	/*
+	 * @param percentile in [0, 100]
+	 * @return upper bound of the bucket of the percentile in nanoseconds
+	 */
+	public long getPercentileNanos(double percentile){
+		long n = count.get();
+		if(n == 0){
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+		long seen = 0;
+		for(int bucket = 0; bucket < counts.length(); bucket ++){
+			seen += counts.get(bucket);
+			if(seen >= rank){
+				return Math.min(upperBoundOf(bucket), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/*
+	 * Values below SUB_BUCKETS have a bucket of their own, above every power of two has SUB_BUCKETS buckets
+	 */
+	private static int bucketOf(long value){
+		if(value < SUB_BUCKETS){
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (exponent + 1) * SUB_BUCKETS + (int) ((value >>> exponent) - SUB_BUCKETS);
+	}
+
+	private static long upperBoundOf(int bucket){
+		if(bucket < SUB_BUCKETS){
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS - 1;
+		long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << exponent) - 1;
+	}
+
+	@Override
+	public String toString(){
+		return getCount() + " requests, mean " + micros(getMeanNanos())
+				+ ", p50 " + micros(getPercentileNanos(50)) + ", p90 " + micros(getPercentileNanos(90))
+				+ ", p99 " + micros(getPercentileNanos(99)) + ", p99.9 " + micros(getPercentileNanos(99.9))
+				+ ", max " + micros(getMaxNanos());
+	}
+
+	private static String micros(double nanos){
+		return String.format("%.1f us", nanos / 1000);
+	}
+
+}
@@ -0,0 +1,429 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.serve;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.mahout.math.Sorting;
+import org.apache.mahout.math.function.IntComparator;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorModel;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.ModelWriter;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.TopKHeap;
+
+/*
+ * This object is a model whose feature-vectors change while it is served.
+ * Readers take the current Snapshot, which never changes; a single writer stages new feature-vectors
+ * in an Update and publishes all of them at once as the next snapshot.
+ *
+ * Copy-on-write per page: the rows are float[] in pages of PAGE_SIZE rows, an update copies the page table
+ * and the pages it touches only, so publishing costs about the size of the touched rows regardless of the model size.
+ * Keys which are not in the loaded model are appended as new rows, unless the model has a dictionary,
+ * which has no external ID for a new key. The rows of the loaded model are found
+ * by its ID index, the appended ones by a shared map, which an older snapshot ignores beyond its own size.
+ * An update which is not published leaves no trace.
+ */
+public class LiveModel {
+
+	private static final int PAGE_BITS = 10;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	private final FactorModel model;
+	private final int rank;
+	private volatile Snapshot snapshot;
+
+	/*
+	 * Feature-vectors of one side in one snapshot
+	 */
+	private static final class Rows {
+		final boolean users;
+		final int size;
+		final float[][][] pages;
+		// ID of every row, shared by the snapshots, only entries below size belong to this one
+		final int[] ids;
+		// rows of the IDs which are not in the loaded model, shared by the snapshots
+		final ConcurrentHashMap<Integer, Integer> appended;
+
+		Rows(boolean users, int size, float[][][] pages, int[] ids, ConcurrentHashMap<Integer, Integer> appended){
+			this.users = users;
+			this.size = size;
+			this.pages = pages;
+			this.ids = ids;
+			this.appended = appended;
+		}
+
+		float[] vector(int row){
+			return pages[row >>> PAGE_BITS][row & PAGE_MASK];
+		}
+	}
+
+	/*
+	 * Immutable state of the model at one version
+	 */
+	public final class Snapshot {
+
+		private final long version;
+		private final Rows users;
+		private final Rows items;
+
+		private Snapshot(long version, Rows users, Rows items){
+			this.version = version;
+			this.users = users;
+			this.items = items;
+		}
+
+		public long getVersion(){
+			return version;
+		}
+
+		public int getNumUsers(){
+			return users.size;
+		}
+
+		public int getNumItems(){
+			return items.size;
+		}
+
+		/*
+		 * @return feature-vector of the user, which must not be modified, or null if the user is not in the model
+		 */
+		public float[] getUserVector(int userID){
+			int row = rowOf(users, userID);
+			return row >= 0 ? users.vector(row) : null;
+		}
+
+		public float[] getItemVector(int itemID){
+			int row = rowOf(items, itemID);
+			return row >= 0 ? items.vector(row) : null;
+		}
+
+		/*
+		 * @return predicted rating, or NaN if the user or the item is not in the model
+		 */
+		public double predict(int userID, int itemID){
+			float[] user = getUserVector(userID);
+			float[] item = getItemVector(itemID);
+			return user != null && item != null ? dot(user, item) : Double.NaN;
+		}
+
+		/*
+		 * Scores every item for a user
+		 * @param result heap of capacity K, afterwards it holds the itemIDs and scores best first
+		 */
+		public void recommend(int userID, TopKHeap result){
+			result.clear();
+			float[] user = getUserVector(userID);
+			if(user == null){
+				return;
+			}
+			for(int row = 0; row < items.size; row ++){
+				float score = (float) dot(user, items.vector(row));
+				if(result.accepts(score)){
+					result.offer(items.ids[row], score);
+				}
+			}
+			result.sortDescending();
+		}
+
+		/*
+		 * Writes the snapshot as a model file, first to a temporary file which then replaces the file
+		 */
+		public void write(File file) throws IOException{
+			ModelWriter writer = new ModelWriter(rank, model.getLambda(), model.getIterations());
+			int[] userRows = sortedRows(users);
+			int[] itemRows = sortedRows(items);
+			writer.setUsers(idsOf(users, userRows), new RowsMatrix(users), userRows);
+			writer.setItems(idsOf(items, itemRows), new RowsMatrix(items), itemRows);
+			if(model.hasDictionary()){
+				// UpdateRows.set appends no keys to a model with a dictionary, so the rows are the ones of the model
+				long[] externalUserIDs = new long[users.size];
+				for(int i = 0; i < users.size; i ++){
+					externalUserIDs[i] = model.getExternalUserID(userRows[i]);
+				}
+				long[] externalItemIDs = new long[items.size];
+				for(int i = 0; i < items.size; i ++){
+					externalItemIDs[i] = model.getExternalItemID(itemRows[i]);
+				}
+				writer.setExternalIDs(externalUserIDs, externalItemIDs);
+			}
+			File temporary = new File(file.getPath() + ".tmp");
+			writer.write(temporary);
+			if(!temporary.renameTo(file)){
+				file.delete();
+				if(!temporary.renameTo(file)){
+					throw new IOException("Cannot replace " + file);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Feature-vectors staged by the writer, published all at once
+	 */
+	public final class Update {
+
+		private final Snapshot base;
+		private final UpdateRows users;
+		private final UpdateRows items;
+
+		private Update(Snapshot base){
+			this.base = base;
+			this.users = new UpdateRows(base.users);
+			this.items = new UpdateRows(base.items);
+		}
+
+		/*
+		 * @return staged or published feature-vector of the user, or null if the user is in neither
+		 */
+		public float[] getUserVector(int userID){
+			return users.vector(userID);
+		}
+
+		public float[] getItemVector(int itemID){
+			return items.vector(itemID);
+		}
+
+		/*
+		 * @param vector new feature-vector of the user, which is taken over by the model
+		 * @throws IllegalArgumentException if the user is not in a model with a dictionary
+		 */
+		public void setUserVector(int userID, float[] vector){
+			users.set(userID, vector);
+		}
+
+		public void setItemVector(int itemID, float[] vector){
+			items.set(itemID, vector);
+		}
+
+		/*
+		 * Makes the staged feature-vectors visible to all readers at once
+		 * @return the new snapshot
+		 */
+		public Snapshot publish(){
+			synchronized(LiveModel.this){
+				if(snapshot != base){
+					throw new IllegalStateException("Snapshot " + snapshot.version + " was published during the update");
+				}
+				snapshot = new Snapshot(base.version + 1, users.toRows(), items.toRows());
+				return snapshot;
+			}
+		}
+	}
+
+	/*
+	 * Copy-on-write state of one side of an Update
+	 */
+	private final class UpdateRows {
+
+		private final Rows base;
+		private float[][][] pages;
+		private final boolean[] copied;
+		private int[] ids;
+		private int size;
+		// rows appended by this update, shared only when it is published
+		private final HashMap<Integer, Integer> appended = new HashMap<Integer, Integer>();
+
+		UpdateRows(Rows base){
+			this.base = base;
+			this.pages = base.pages.clone();
+			this.copied = new boolean[pages.length];
+			this.ids = base.ids;
+			this.size = base.size;
+		}
+
+		float[] vector(int id){
+			int row = rowOf(id);
+			return row >= 0 ? pages[row >>> PAGE_BITS][row & PAGE_MASK] : null;
+		}
+
+		void set(int id, float[] vector){
+			int row = rowOf(id);
+			if(row < 0){
+				if(model.hasDictionary()){
+					throw new IllegalArgumentException((base.users ? "User " : "Item ") + id
+							+ " is not in the model, a model with a dictionary has no external ID for it");
+				}
+				row = append(id);
+			}
+			int page = row >>> PAGE_BITS;
+			if(page < copied.length && !copied[page]){
+				pages[page] = pages[page].clone();
+				copied[page] = true;
+			}
+			pages[page][row & PAGE_MASK] = vector;
+		}
+
+		private int append(int id){
+			int row = size ++;
+			int page = row >>> PAGE_BITS;
+			if(page >= pages.length){
+				pages = Arrays.copyOf(pages, page + 1);
+				pages[page] = new float[PAGE_SIZE][];
+			}
+			if(row >= ids.length){
+				ids = Arrays.copyOf(ids, Math.max(PAGE_SIZE, 2 * ids.length));
+			}
+			ids[row] = id;
+			appended.put(id, row);
+			return row;
+		}
+
+		private int rowOf(int id){
+			int row = LiveModel.this.rowOf(base, id);
+			if(row < 0){
+				Integer staged = appended.get(id);
+				row = staged != null ? staged : -1;
+			}
+			return row;
+		}
+
+		Rows toRows(){
+			base.appended.putAll(appended);
+			return new Rows(base.users, size, pages, ids, base.appended);
+		}
+	}
+
+	/*
+	 * Read-only view of the rows of a snapshot for the ModelWriter
+	 */
+	private final class RowsMatrix extends FactorMatrix {
+
+		private final Rows rows;
+
+		RowsMatrix(Rows rows){
+			super(rows.size, LiveModel.this.rank);
+			this.rows = rows;
+		}
+
+		@Override
+		public float get(int row, int feature){
+			return rows.vector(row)[feature];
+		}
+
+		@Override
+		public void set(int row, int feature, float value){
+			throw new UnsupportedOperationException("The rows of a snapshot are read-only");
+		}
+
+		@Override
+		public void getRow(int row, float[] dst, int offset){
+			System.arraycopy(rows.vector(row), 0, dst, offset, rank);
+		}
+
+		@Override
+		public void setRow(int row, float[] src, int offset){
+			throw new UnsupportedOperationException("The rows of a snapshot are read-only");
+		}
+
+		@Override
+		public double dot(int row, float[] vector, int offset){
+			float[] values = rows.vector(row);
+			double sum = 0;
+			for(int i = 0; i < rank; i ++){
+				sum += values[i] * vector[offset + i];
+			}
+			return sum;
+		}
+
+		@Override
+		public void axpy(int row, float alpha, float[] x, int offset){
+			throw new UnsupportedOperationException("The rows of a snapshot are read-only");
+		}
+	}
+
+	/*
+	 * Copies the feature-vectors of a loaded model, which stays open for its ID index
+	 */
+	public LiveModel(FactorModel model){
+		this.model = model;
+		this.rank = model.getRank();
+		snapshot = new Snapshot(0, load(true), load(false));
+	}
+
+	private Rows load(boolean users){
+		FactorMatrix factors = users ? model.getUserFactors() : model.getItemFactors();
+		int size = factors.getNumRows();
+		float[][][] pages = new float[(size + PAGE_SIZE - 1) >>> PAGE_BITS][][];
+		int[] ids = new int[size];
+		for(int page = 0; page < pages.length; page ++){
+			pages[page] = new float[PAGE_SIZE][];
+		}
+		for(int row = 0; row < size; row ++){
+			float[] vector = new float[rank];
+			factors.getRow(row, vector, 0);
+			pages[row >>> PAGE_BITS][row & PAGE_MASK] = vector;
+			ids[row] = users ? model.getUserID(row) : model.getItemID(row);
+		}
+		return new Rows(users, size, pages, ids, new ConcurrentHashMap<Integer, Integer>());
+	}
+
+	public Snapshot getSnapshot(){
+		return snapshot;
+	}
+
+	/*
+	 * Starts staging the next snapshot, there is at most one update at a time
+	 */
+	public Update beginUpdate(){
+		return new Update(snapshot);
+	}
+
+	public FactorModel getModel(){
+		return model;
+	}
+
+	public int getRank(){
+		return rank;
+	}
+
+	private int rowOf(Rows rows, int id){
+		int row = rows.users ? model.userRow(id) : model.itemRow(id);
+		if(row < 0){
+			Integer appended = rows.appended.get(id);
+			row = appended != null && appended < rows.size ? appended : -1;
+		}
+		return row;
+	}
+
+	private int[] sortedRows(final Rows rows){
+		int[] order = new int[rows.size];
+		for(int i = 0; i < order.length; i ++){
+			order[i] = i;
+		}
+		Sorting.quickSort(order, 0, order.length, new IntComparator() {
+			@Override
+			public int compare(int a, int b) {
+				return rows.ids[a] < rows.ids[b] ? -1 : rows.ids[a] > rows.ids[b] ? 1 : 0;
+			}
+		});
+		return order;
+	}
+
+	private static int[] idsOf(Rows rows, int[] order){
+		int[] ids = new int[order.length];
+		for(int i = 0; i < order.length; i ++){
+			ids[i] = rows.ids[order[i]];
+		}
+		return ids;
+	}
+
+	private double dot(float[] a, float[] b){
+		double sum = 0;
+		for(int i = 0; i < rank; i ++){
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.serve;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.mahout.math.set.OpenIntHashSet;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorModel;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.PlanOptions;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.TopKHeap;
+
+/*
+ * This program compares the approximate top-K of the HnswIndex of a model with the exact top-K of the TopKScorer.
+ * For every ef it reports recall@K, the share of the exact top-K the index found, and the queries per second,
+ * so the knob can be set for the recall a deployment needs.
+ * The index next to the model file is built and stored if it does not exist yet.
+ *
+ * Usage: MipsBenchmark [modelFile] ([k=20] [queries=1000] [ef=10,20,50,100,200] [m=16] [efConstruction=200]
+ *        [threads=N] [rebuild=false])
+ */
+public class MipsBenchmark {
+
+	public static void main(String[] args) throws IOException{
+		if(args.length < 1){
+			System.out.println("Usage: MipsBenchmark [modelFile] ([k=20] [queries=1000] [ef=10,20,50,100,200] [m=16] "
+					+ "[efConstruction=200] [threads=N] [rebuild=false])");
+			return;
+		}
+		PlanOptions options = new PlanOptions(args);
+		int k = options.getInt("k", 20);
+		int numQueries = options.getInt("queries", 1000);
+		String[] efs = options.getString("ef", "10,20,50,100,200").split(",");
+		int m = options.getInt("m", HnswIndex.DEFAULT_M);
+		int efConstruction = options.getInt("efConstruction", HnswIndex.DEFAULT_EF_CONSTRUCTION);
+		int numThreads = options.getInt("threads", Runtime.getRuntime().availableProcessors());
+
+		File modelFile = new File(args[0]);
+		File indexFile = HnswIndex.indexFileOf(modelFile);
+		FactorModel model = FactorModel.load(modelFile);
+		HnswIndex index;
+		long start = System.nanoTime();
+		if(indexFile.exists() && !options.getBoolean("rebuild", false)){
+			index = HnswIndex.load(indexFile, model);
+			System.out.println("index loaded from " + indexFile + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+		}else{
+			index = HnswIndex.build(model, m, efConstruction, 1, numThreads);
+			System.out.println("index of " + model.getNumItems() + " items built with m=" + m
+					+ " efConstruction=" + efConstruction + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+			index.write(indexFile);
+		}
+
+		// exact results of random users
+		Random random = new Random(1);
+		TopKScorer scorer = new TopKScorer(model);
+		float[][] queries = new float[numQueries][model.getRank()];
+		int[][] exact = new int[numQueries][];
+		TopKHeap result = new TopKHeap(k);
+		start = System.nanoTime();
+		for(int i = 0; i < numQueries; i ++){
+			model.getUserFactors().getRow(random.nextInt(model.getNumUsers()), queries[i], 0);
+			scorer.recommend(queries[i], result);
+			exact[i] = new int[result.size()];
+			for(int j = 0; j < result.size(); j ++){
+				exact[i][j] = result.getID(j);
+			}
+		}
+		System.out.println(String.format("exact: %.0f queries/s", numQueries / ((System.nanoTime() - start) / 1e9)));
+
+		for(String ef : efs){
+			index.setEf(Integer.parseInt(ef.trim()));
+			for(int round = 0; round < 2; round ++){
+				long found = 0;
+				long relevant = 0;
+				start = System.nanoTime();
+				for(int i = 0; i < numQueries; i ++){
+					index.search(queries[i], result);
+					OpenIntHashSet approximate = new OpenIntHashSet(result.size());
+					for(int j = 0; j < result.size(); j ++){
+						approximate.add(result.getID(j));
+					}
+					for(int id : exact[i]){
+						if(approximate.contains(id)){
+							found ++;
+						}
+					}
+					relevant += exact[i].length;
+				}
+				double seconds = (System.nanoTime() - start) / 1e9;
+				if(round == 1){
+					System.out.println(String.format("ef=%d: recall@%d %.4f, %.0f queries/s",
+							index.getEf(), k, relevant > 0 ? (double) found / relevant : 1, numQueries / seconds));
+				}
+			}
+		}
+		model.close();
+	}
+
+}
@@ -0,0 +1,633 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.serve;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.apache.mahout.math.list.IntArrayList;
+import org.apache.mahout.math.map.OpenIntFloatHashMap;
+import org.apache.mahout.math.set.OpenIntHashSet;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingLineParser;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingStore;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorModel;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.NormalEquations;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.PlanOptions;
+
+/*
+ * This object keeps a LiveModel up to date with a continuous feed of ratings "user item rating",
+ * tailed from a growing local file or received on a local socket.
+ * The ratings are collected into micro-batches: every batch interval the users of the batch are re-solved
+ * from all their ratings against the current item-feature-vectors, then the items of the batch
+ * against the new user-feature-vectors, and both are published as one snapshot.
+ * All ratings of a key are the ones of the rating store of the training and the ones received since,
+ * a newer rating of a pair replaces the older one. The received ratings are kept for the lifetime of the updater.
+ * Without a rating store the ratings of the training are unknown, so the keys of the model keep their feature-vectors
+ * and only the keys which are not in the model are added, solved from their received ratings.
+ *
+ * Keys which are not in the model are added, unless the model has a dictionary: then the external IDs of the feed
+ * are mapped to the IDs of the model and ratings of unknown keys are skipped until the next training.
+ * The snapshot is written as a model file every checkpoint interval.
+ *
+ * Metrics: events per second and the latency from the arrival of a rating until its batch is visible.
+ */
+public class OnlineUpdater {
+
+	private static final Logger LOGGER = Logger.getLogger(OnlineUpdater.class.getName());
+
+	private static final int CHUNK_SIZE = 16;
+
+	private final LiveModel live;
+	private final FactorModel model;
+	private final RatingMatrix byUser;
+	private final RatingMatrix byItem;
+	private final int rank;
+	private final double lambda;
+	private final ExecutorService executor;
+	private final int numThreads;
+
+	// received ratings per key, only used by the updater thread
+	private final HashMap<Integer, OpenIntFloatHashMap> userDeltas = new HashMap<Integer, OpenIntFloatHashMap>();
+	private final HashMap<Integer, OpenIntFloatHashMap> itemDeltas = new HashMap<Integer, OpenIntFloatHashMap>();
+
+	private final Object lock = new Object();
+	private Events incoming = new Events();
+	private Events batch = new Events();
+
+	private long batchIntervalMillis = 100;
+	private File checkpointFile;
+	private long checkpointIntervalMillis = 60000;
+	private long lastCheckpoint;
+
+	private volatile boolean running;
+	private Thread updaterThread;
+	private final List<ServerSocket> serverSockets = new ArrayList<ServerSocket>();
+
+	private final AtomicLong numEvents = new AtomicLong();
+	private final AtomicLong numSkipped = new AtomicLong();
+	private final AtomicLong numBatches = new AtomicLong();
+	private final LatencyHistogram visibleLatencies = new LatencyHistogram();
+	private final LatencyHistogram batchLatencies = new LatencyHistogram();
+	private long startNanos = System.nanoTime();
+
+	/*
+	 * Ratings in arrival order
+	 */
+	private static final class Events {
+		long[] users = new long[1024];
+		long[] items = new long[1024];
+		float[] ratings = new float[1024];
+		long[] arrivals = new long[1024];
+		int size;
+
+		void add(long user, long item, float rating, long arrival){
+			if(size == users.length){
+				users = Arrays.copyOf(users, 2 * size);
+				items = Arrays.copyOf(items, 2 * size);
+				ratings = Arrays.copyOf(ratings, 2 * size);
+				arrivals = Arrays.copyOf(arrivals, 2 * size);
+			}
+			users[size] = user;
+			items[size] = item;
+			ratings[size] = rating;
+			arrivals[size] = arrival;
+			size ++;
+		}
+
+		void addAll(Events events){
+			for(int i = 0; i < events.size; i ++){
+				add(events.users[i], events.items[i], events.ratings[i], events.arrivals[i]);
+			}
+		}
+	}
+
+	/*
+	 * Splits the bytes of a source into lines and hands the well-formed ratings to the updater
+	 */
+	private final class LineReader {
+		private byte[] buffer = new byte[1 << 16];
+		private int length;
+		private final RatingLineParser parser = new RatingLineParser();
+		private final Events parsed = new Events();
+
+		/*
+		 * @return number of bytes read, -1 at the end of the stream
+		 */
+		int read(InputStream in) throws IOException{
+			int read = in.read(buffer, length, buffer.length - length);
+			consume(read);
+			return read;
+		}
+
+		int read(RandomAccessFile file) throws IOException{
+			int read = file.read(buffer, length, buffer.length - length);
+			consume(read);
+			return read;
+		}
+
+		private void consume(int read){
+			if(read <= 0){
+				return;
+			}
+			long arrival = System.nanoTime();
+			length += read;
+			int lineStart = 0;
+			for(int i = length - read; i < length; i ++){
+				if(buffer[i] == '\n'){
+					if(i > lineStart && parser.parse(buffer, lineStart, i - lineStart)){
+						parsed.add(parser.getUserID(), parser.getItemID(), parser.getRating(), arrival);
+					}
+					lineStart = i + 1;
+				}
+			}
+			// keep the incomplete last line
+			System.arraycopy(buffer, lineStart, buffer, 0, length - lineStart);
+			length -= lineStart;
+			if(length == buffer.length){
+				buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+			}
+			if(parsed.size > 0){
+				synchronized(lock){
+					incoming.addAll(parsed);
+				}
+				parsed.size = 0;
+			}
+		}
+	}
+
+	/*
+	 * @param byUser ratings of the training by user, or null to add only the keys which are not in the model
+	 * @param byItem ratings of the training by item, or null
+	 */
+	public OnlineUpdater(LiveModel live, RatingMatrix byUser, RatingMatrix byItem, int numThreads){
+		this.live = live;
+		this.model = live.getModel();
+		this.byUser = byUser;
+		this.byItem = byItem;
+		this.rank = live.getRank();
+		this.lambda = model.getLambda();
+		this.numThreads = numThreads;
+		this.executor = Executors.newFixedThreadPool(numThreads);
+	}
+
+	public LiveModel getModel(){
+		return live;
+	}
+
+	public void setBatchInterval(long millis){
+		batchIntervalMillis = millis;
+	}
+
+	/*
+	 * Writes the current snapshot to a model file every interval and when the updater stops
+	 */
+	public void setCheckpoint(File file, long intervalMillis){
+		checkpointFile = file;
+		checkpointIntervalMillis = intervalMillis;
+	}
+
+	/*
+	 * Follows a file which is appended to, like tail -f, a file which shrinks is read again from the start
+	 * @param fromStart false to skip the ratings which are in the file already
+	 */
+	public void tail(final File file, final boolean fromStart){
+		startSource("tail " + file, new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				LineReader reader = new LineReader();
+				long position = fromStart ? 0 : file.length();
+				while(running){
+					if(!file.exists() || file.length() == position){
+						Thread.sleep(Math.min(10, batchIntervalMillis));
+						continue;
+					}
+					if(file.length() < position){
+						position = 0;
+					}
+					RandomAccessFile raf = new RandomAccessFile(file, "r");
+					try{
+						raf.seek(position);
+						int read;
+						while(running && (read = reader.read(raf)) > 0){
+							position += read;
+						}
+					}finally{
+						raf.close();
+					}
+				}
+				return null;
+			}
+		});
+	}
+
+	/*
+	 * Accepts connections on a port of the loopback interface, every connection sends lines of ratings
+	 */
+	public void listen(int port) throws IOException{
+		final ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+		synchronized(serverSockets){
+			serverSockets.add(serverSocket);
+		}
+		startSource("listen " + serverSocket.getLocalPort(), new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				while(running){
+					final Socket socket = serverSocket.accept();
+					startSource("connection " + socket.getRemoteSocketAddress(), new Callable<Void>() {
+						@Override
+						public Void call() throws Exception {
+							LineReader reader = new LineReader();
+							InputStream in = socket.getInputStream();
+							try{
+								while(running && reader.read(in) >= 0){
+								}
+							}finally{
+								socket.close();
+							}
+							return null;
+						}
+					});
+				}
+				return null;
+			}
+		});
+	}
+
+	/*
+	 * @return the port of the first listen(), useful with port 0
+	 */
+	public int getPort(){
+		synchronized(serverSockets){
+			return serverSockets.isEmpty() ? -1 : serverSockets.get(0).getLocalPort();
+		}
+	}
+
+	private void startSource(final String name, final Callable<Void> source){
+		running = true;
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					source.call();
+				}catch(Exception e){
+					if(running){
+						LOGGER.error("Source " + name + " failed", e);
+					}
+				}
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/*
+	 * Starts applying the received ratings every batch interval
+	 */
+	public void start(){
+		running = true;
+		startNanos = System.nanoTime();
+		lastCheckpoint = System.currentTimeMillis();
+		updaterThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					while(running){
+						Thread.sleep(batchIntervalMillis);
+						applyBatch();
+						if(checkpointFile != null && System.currentTimeMillis() - lastCheckpoint >= checkpointIntervalMillis){
+							checkpoint();
+						}
+					}
+				}catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+				}catch(IOException e){
+					LOGGER.error("Updater failed", e);
+				}
+			}
+		}, "online updater");
+		updaterThread.start();
+	}
+
+	/*
+	 * Stops the sources, applies the ratings received so far and writes a last checkpoint
+	 */
+	public void stop() throws IOException{
+		running = false;
+		synchronized(serverSockets){
+			for(ServerSocket serverSocket : serverSockets){
+				serverSocket.close();
+			}
+		}
+		if(updaterThread != null){
+			try{
+				updaterThread.join();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+		}
+		applyBatch();
+		if(checkpointFile != null){
+			checkpoint();
+		}
+		executor.shutdown();
+	}
+
+	public void checkpoint() throws IOException{
+		live.getSnapshot().write(checkpointFile);
+		lastCheckpoint = System.currentTimeMillis();
+	}
+
+	/*
+	 * Applies the ratings received since the last batch, called by the updater thread
+	 * @return number of ratings applied
+	 */
+	public int applyBatch() throws IOException{
+		synchronized(lock){
+			Events swap = batch;
+			batch = incoming;
+			incoming = swap;
+			incoming.size = 0;
+		}
+		if(batch.size == 0){
+			return 0;
+		}
+		long start = System.nanoTime();
+		OpenIntHashSet touchedUsers = new OpenIntHashSet();
+		OpenIntHashSet touchedItems = new OpenIntHashSet();
+		int numApplied = 0;
+		for(int i = 0; i < batch.size; i ++){
+			int userID = toUserID(batch.users[i]);
+			int itemID = toItemID(batch.items[i]);
+			if(userID <= 0 || itemID <= 0){
+				numSkipped.incrementAndGet();
+				continue;
+			}
+			deltasOf(userDeltas, userID).put(itemID, batch.ratings[i]);
+			deltasOf(itemDeltas, itemID).put(userID, batch.ratings[i]);
+			touchedUsers.add(userID);
+			touchedItems.add(itemID);
+			numApplied ++;
+		}
+
+		LiveModel.Update update = live.beginUpdate();
+		IntArrayList users = touchedUsers.keys();
+		float[][] userVectors = solveAll(users, true, update);
+		for(int i = 0; i < users.size(); i ++){
+			if(userVectors[i] != null){
+				update.setUserVector(users.get(i), userVectors[i]);
+			}
+		}
+		IntArrayList items = touchedItems.keys();
+		float[][] itemVectors = solveAll(items, false, update);
+		for(int i = 0; i < items.size(); i ++){
+			if(itemVectors[i] != null){
+				update.setItemVector(items.get(i), itemVectors[i]);
+			}
+		}
+		update.publish();
+
+		long visible = System.nanoTime();
+		for(int i = 0; i < batch.size; i ++){
+			visibleLatencies.record(visible - batch.arrivals[i]);
+		}
+		batchLatencies.record(visible - start);
+		numEvents.addAndGet(batch.size);
+		numBatches.incrementAndGet();
+		batch.size = 0;
+		return numApplied;
+	}
+
+	/*
+	 * Solves the keys of one side in parallel against the other side of the update
+	 * @return new feature-vector of each key, null if it cannot be solved
+	 */
+	private float[][] solveAll(final IntArrayList keys, final boolean users, final LiveModel.Update update) throws IOException{
+		final float[][] vectors = new float[keys.size()][];
+		final AtomicInteger nextChunk = new AtomicInteger();
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for(int thread = 0; thread < numThreads; thread ++){
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					NormalEquations equations = new NormalEquations(rank);
+					double[] solution = new double[rank];
+					IntArrayList others = new IntArrayList();
+					int start;
+					while((start = nextChunk.getAndAdd(CHUNK_SIZE)) < keys.size()){
+						for(int i = start; i < Math.min(start + CHUNK_SIZE, keys.size()); i ++){
+							vectors[i] = solve(keys.get(i), users, update, equations, solution, others);
+						}
+					}
+					return null;
+				}
+			}));
+		}
+		try{
+			for(Future<Void> future : futures){
+				future.get();
+			}
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}catch(ExecutionException e){
+			throw new IOException(e.getCause());
+		}
+		return vectors;
+	}
+
+	/*
+	 * Solves one key from its ratings of the training which were not received again and its received ratings
+	 * @return null for a key of the model without the ratings of the training, which keeps its trained feature-vector
+	 */
+	private float[] solve(int key, boolean users, LiveModel.Update update, NormalEquations equations, double[] solution,
+			IntArrayList others){
+		RatingMatrix base = users ? byUser : byItem;
+		if(base == null && (users ? model.userRow(key) : model.itemRow(key)) >= 0){
+			return null;
+		}
+		OpenIntFloatHashMap deltas = (users ? userDeltas : itemDeltas).get(key);
+		equations.reset();
+		int keyIndex = base != null ? base.indexOfKey(key) : -1;
+		if(keyIndex >= 0){
+			for(int i = base.getStart(keyIndex); i < base.getEnd(keyIndex); i ++){
+				int other = base.getOther(i);
+				if(!deltas.containsKey(other)){
+					add(equations, users, update, other, base.getRating(i));
+				}
+			}
+		}
+		deltas.keys(others);
+		for(int i = 0; i < others.size(); i ++){
+			add(equations, users, update, others.get(i), deltas.get(others.get(i)));
+		}
+		if(equations.getCount() == 0 || !equations.solve(lambda, solution)){
+			return null;
+		}
+		float[] vector = new float[rank];
+		for(int i = 0; i < rank; i ++){
+			vector[i] = (float) solution[i];
+		}
+		return vector;
+	}
+
+	private static void add(NormalEquations equations, boolean users, LiveModel.Update update, int other, float rating){
+		float[] vector = users ? update.getItemVector(other) : update.getUserVector(other);
+		if(vector != null){
+			equations.add(vector, 0, rating);
+		}
+	}
+
+	private static OpenIntFloatHashMap deltasOf(HashMap<Integer, OpenIntFloatHashMap> deltas, int key){
+		OpenIntFloatHashMap keyDeltas = deltas.get(key);
+		if(keyDeltas == null){
+			keyDeltas = new OpenIntFloatHashMap();
+			deltas.put(key, keyDeltas);
+		}
+		return keyDeltas;
+	}
+
+	/*
+	 * @return userID of the model of an ID of the feed, or -1
+	 */
+	private int toUserID(long id){
+		if(model.hasDictionary()){
+			int row = model.userRowOfExternal(id);
+			return row >= 0 ? model.getUserID(row) : -1;
+		}
+		return id == (int) id ? (int) id : -1;
+	}
+
+	private int toItemID(long id){
+		if(model.hasDictionary()){
+			int row = model.itemRowOfExternal(id);
+			return row >= 0 ? model.getItemID(row) : -1;
+		}
+		return id == (int) id ? (int) id : -1;
+	}
+
+	public long getNumEvents(){
+		return numEvents.get();
+	}
+
+	/*
+	 * @return number of ratings of keys which are not in a model with a dictionary
+	 */
+	public long getNumSkipped(){
+		return numSkipped.get();
+	}
+
+	public long getNumBatches(){
+		return numBatches.get();
+	}
+
+	/*
+	 * @return applied ratings per second since the start
+	 */
+	public double getEventsPerSecond(){
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		return seconds > 0 ? numEvents.get() / seconds : 0;
+	}
+
+	/*
+	 * @return latencies from the arrival of a rating until the snapshot with it is published
+	 */
+	public LatencyHistogram getVisibleLatencies(){
+		return visibleLatencies;
+	}
+
+	/*
+	 * @return time to solve and publish a batch
+	 */
+	public LatencyHistogram getBatchLatencies(){
+		return batchLatencies;
+	}
+
+	@Override
+	public String toString(){
+		return String.format("%d events (%.0f/s), %d skipped, %d batches, snapshot %d; visible after: %s",
+				getNumEvents(), getEventsPerSecond(), getNumSkipped(), getNumBatches(),
+				live.getSnapshot().getVersion(), visibleLatencies);
+	}
+
+	/*
+	 * Runs an updater until it is killed
+	 * Usage: OnlineUpdater [modelFile] ([file=PATH] [port=N] [store=DIR] [batch=100] [checkpoint=PATH]
+	 *        [checkpointEvery=60] [report=10] [threads=N])
+	 *        batch is in milliseconds, checkpointEvery and report in seconds
+	 *        without store=DIR the keys of the model are not updated, only new keys are added
+	 */
+	public static void main(String[] args) throws Exception{
+		if(args.length < 1){
+			System.out.println("Usage: OnlineUpdater [modelFile] ([file=PATH] [port=N] [store=DIR] [batch=100] "
+					+ "[checkpoint=PATH] [checkpointEvery=60] [report=10] [threads=N])");
+			return;
+		}
+		PlanOptions options = new PlanOptions(args);
+		FactorModel model = FactorModel.load(new File(args[0]));
+		LiveModel live = new LiveModel(model);
+		RatingMatrix byUser = null;
+		RatingMatrix byItem = null;
+		if(options.contains("store")){
+			byUser = RatingStore.openByUser(new File(options.getString("store", null)));
+			byItem = RatingStore.openByItem(new File(options.getString("store", null)));
+		}else{
+			LOGGER.warn("No store is given, the users and items of the model keep their feature-vectors "
+					+ "and only new users and items are added");
+		}
+		final OnlineUpdater updater = new OnlineUpdater(live, byUser, byItem,
+				options.getInt("threads", Runtime.getRuntime().availableProcessors()));
+		updater.setBatchInterval(options.getInt("batch", 100));
+		if(options.contains("checkpoint")){
+			updater.setCheckpoint(new File(options.getString("checkpoint", null)), options.getInt("checkpointEvery", 60) * 1000L);
+		}
+		updater.start();
+		if(options.contains("file")){
+			updater.tail(new File(options.getString("file", null)), true);
+		}
+		if(options.contains("port")){
+			updater.listen(options.getInt("port", 0));
+			System.out.println("listening on port " + updater.getPort());
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				try{
+					updater.stop();
+				}catch(IOException e){
+					LOGGER.error("Cannot stop the updater", e);
+				}
+				System.out.println(updater);
+			}
+		});
+		long reportMillis = options.getInt("report", 10) * 1000L;
+		while(true){
+			Thread.sleep(reportMillis);
+			System.out.println(updater);
+		}
+	}
+
+}
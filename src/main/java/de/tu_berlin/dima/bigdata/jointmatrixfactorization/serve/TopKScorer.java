@@ -0,0 +1,354 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.serve;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.io.RatingStore;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorModel;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.PlanOptions;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.TopKHeap;
+
+/*
+ * This object answers "the K best items for user u" on a loaded model, online for single users
+ * and spread over a thread pool for batches of users.
+ * The item-feature-vectors are copied once into one row-major float[], which is scored in blocks of BLOCK_ITEMS rows:
+ * a batch scores every block against USER_GROUP users before it moves on, so a block is read from memory once per group.
+ * The scores of a block go through a bounded min-heap, which rejects almost every item with a single comparison.
+ * The items a user rated are kept as a compact sorted list of item rows per user and set in a per-thread bitmap
+ * for the duration of a request only.
+ *
+ * The latency of every single request and of every user of a batch is recorded in a LatencyHistogram.
+ */
+public class TopKScorer {
+
+	private static final int BLOCK_ITEMS = 1024;
+	private static final int USER_GROUP = 8;
+	// user rows of scoreGroup which are no rows of the model
+	private static final int UNKNOWN_USER = -1;
+	private static final int GIVEN_VECTOR = -2;
+
+	private final FactorModel model;
+	private final int rank;
+	private final int numItems;
+	private final int[] itemIDs;
+	private final float[] items;
+
+	// rated item rows of user row u are ratedItems[ratedOffsets[u] .. ratedOffsets[u + 1])
+	private int[] ratedOffsets;
+	private int[] ratedItems;
+
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private final LatencyHistogram batchLatencies = new LatencyHistogram();
+
+	/*
+	 * Scratch space of one thread
+	 */
+	private final class Scratch {
+		final float[] userVectors = new float[USER_GROUP * rank];
+		final float[] scores = new float[BLOCK_ITEMS];
+		final long[][] ratedBitmaps = new long[USER_GROUP][(numItems + 63) >>> 6];
+		// arguments of a single request, so it allocates nothing
+		final int[] singleUser = new int[1];
+		final TopKHeap[] singleResult = new TopKHeap[1];
+	}
+
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	public TopKScorer(FactorModel model){
+		this.model = model;
+		this.rank = model.getRank();
+		this.numItems = model.getNumItems();
+		itemIDs = new int[numItems];
+		FactorMatrix itemFactors = model.getItemFactors();
+		if((long) numItems * rank > Integer.MAX_VALUE){
+			throw new IllegalArgumentException(numItems + " items of rank " + rank + " do not fit into one array");
+		}
+		items = new float[numItems * rank];
+		for(int row = 0; row < numItems; row ++){
+			itemIDs[row] = model.getItemID(row);
+			itemFactors.getRow(row, items, row * rank);
+		}
+	}
+
+	/*
+	 * Excludes the rated items from the recommendations of each user
+	 * @param ratingsByUser ratings keyed by userID, with the IDs of the model
+	 */
+	public void setRatedItems(RatingMatrix ratingsByUser){
+		int numUsers = model.getNumUsers();
+		// item row of every rating, -1 for users and items the model does not know
+		int[] itemRows = new int[ratingsByUser.getNumRatings()];
+		int[] offsets = new int[numUsers + 1];
+		for(int key = 0; key < ratingsByUser.getNumKeys(); key ++){
+			int user = model.userRow(ratingsByUser.getKey(key));
+			for(int i = ratingsByUser.getStart(key); i < ratingsByUser.getEnd(key); i ++){
+				itemRows[i] = user >= 0 ? model.itemRow(ratingsByUser.getOther(i)) : -1;
+				if(itemRows[i] >= 0){
+					offsets[user + 1] ++;
+				}
+			}
+		}
+		for(int user = 0; user < numUsers; user ++){
+			offsets[user + 1] += offsets[user];
+		}
+		int[] rows = new int[offsets[numUsers]];
+		int[] next = Arrays.copyOf(offsets, numUsers);
+		for(int key = 0; key < ratingsByUser.getNumKeys(); key ++){
+			int user = model.userRow(ratingsByUser.getKey(key));
+			for(int i = ratingsByUser.getStart(key); i < ratingsByUser.getEnd(key); i ++){
+				if(itemRows[i] >= 0){
+					rows[next[user] ++] = itemRows[i];
+				}
+			}
+		}
+		ratedItems = rows;
+		ratedOffsets = offsets;
+	}
+
+	public FactorModel getModel(){
+		return model;
+	}
+
+	/*
+	 * @return latencies of the single requests
+	 */
+	public LatencyHistogram getLatencies(){
+		return latencies;
+	}
+
+	/*
+	 * @return latencies of the users of batch requests, the batch time divided by the number of users of a group
+	 */
+	public LatencyHistogram getBatchLatencies(){
+		return batchLatencies;
+	}
+
+	/*
+	 * Finds the best items of one user
+	 * @param result heap of capacity K, afterwards it holds the itemIDs best first, empty for an unknown user
+	 */
+	public void recommend(int userID, TopKHeap result){
+		long start = System.nanoTime();
+		int user = model.userRow(userID);
+		result.clear();
+		if(user >= 0){
+			Scratch local = scratch.get();
+			model.getUserFactors().getRow(user, local.userVectors, 0);
+			local.singleUser[0] = user;
+			local.singleResult[0] = result;
+			scoreGroup(local, local.singleUser, 0, 1, local.singleResult, 0);
+		}
+		latencies.record(System.nanoTime() - start);
+	}
+
+	/*
+	 * Finds the best items of a feature-vector which is not in the model, e.g. of a folded-in user
+	 */
+	public void recommend(float[] userVector, TopKHeap result){
+		long start = System.nanoTime();
+		Scratch local = scratch.get();
+		System.arraycopy(userVector, 0, local.userVectors, 0, rank);
+		result.clear();
+		local.singleUser[0] = GIVEN_VECTOR;
+		local.singleResult[0] = result;
+		scoreGroup(local, local.singleUser, 0, 1, local.singleResult, 0);
+		latencies.record(System.nanoTime() - start);
+	}
+
+	/*
+	 * Finds the best items of many users in parallel
+	 * @param results one heap per user, afterwards results[i] holds the best itemIDs of userIDs[i]
+	 */
+	public void recommend(int[] userIDs, final TopKHeap[] results, ExecutorService executor) throws IOException{
+		final int numUsers = userIDs.length;
+		final int[] users = new int[numUsers];
+		for(int i = 0; i < numUsers; i ++){
+			users[i] = model.userRow(userIDs[i]);
+			results[i].clear();
+		}
+		final AtomicInteger nextUser = new AtomicInteger();
+		int numTasks = Math.min((numUsers + USER_GROUP - 1) / USER_GROUP, Runtime.getRuntime().availableProcessors());
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for(int task = 0; task < numTasks; task ++){
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					Scratch local = scratch.get();
+					FactorMatrix userFactors = model.getUserFactors();
+					int first;
+					while((first = nextUser.getAndAdd(USER_GROUP)) < numUsers){
+						long start = System.nanoTime();
+						int groupSize = Math.min(USER_GROUP, numUsers - first);
+						for(int i = 0; i < groupSize; i ++){
+							if(users[first + i] >= 0){
+								userFactors.getRow(users[first + i], local.userVectors, i * rank);
+							}
+						}
+						scoreGroup(local, users, first, groupSize, results, first);
+						long nanosPerUser = (System.nanoTime() - start) / groupSize;
+						for(int i = 0; i < groupSize; i ++){
+							batchLatencies.record(nanosPerUser);
+						}
+					}
+					return null;
+				}
+			}));
+		}
+		for(Future<Void> future : futures){
+			try{
+				future.get();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}catch(ExecutionException e){
+				throw new IOException(e.getCause());
+			}
+		}
+	}
+
+	/*
+	 * Scores all item blocks against a group of users whose vectors are in local.userVectors,
+	 * each block is scored against all users of the group while it is in the cache
+	 * @param users user rows, UNKNOWN_USER is skipped, GIVEN_VECTOR has no rated items
+	 */
+	private void scoreGroup(Scratch local, int[] users, int firstUser, int groupSize, TopKHeap[] results, int firstResult){
+		float[] userVectors = local.userVectors;
+		float[] scores = local.scores;
+		for(int u = 0; u < groupSize; u ++){
+			if(ratedOffsets != null && users[firstUser + u] >= 0){
+				setRated(local.ratedBitmaps[u], users[firstUser + u], true);
+			}
+		}
+		for(int blockStart = 0; blockStart < numItems; blockStart += BLOCK_ITEMS){
+			int blockEnd = Math.min(blockStart + BLOCK_ITEMS, numItems);
+			for(int u = 0; u < groupSize; u ++){
+				int user = users[firstUser + u];
+				if(user == UNKNOWN_USER){
+					continue;
+				}
+				// the dot products of the block without branches, then the heap
+				int vectorOffset = u * rank;
+				for(int item = blockStart; item < blockEnd; item ++){
+					int offset = item * rank;
+					float sum = 0;
+					for(int i = 0; i < rank; i ++){
+						sum += userVectors[vectorOffset + i] * items[offset + i];
+					}
+					scores[item - blockStart] = sum;
+				}
+				TopKHeap heap = results[firstResult + u];
+				boolean exclude = ratedOffsets != null && user >= 0;
+				long[] rated = local.ratedBitmaps[u];
+				for(int item = blockStart; item < blockEnd; item ++){
+					float score = scores[item - blockStart];
+					if(heap.accepts(score) && !(exclude && (rated[item >>> 6] & (1L << item)) != 0)){
+						heap.offer(itemIDs[item], score);
+					}
+				}
+			}
+		}
+		for(int u = 0; u < groupSize; u ++){
+			if(ratedOffsets != null && users[firstUser + u] >= 0){
+				setRated(local.ratedBitmaps[u], users[firstUser + u], false);
+			}
+			results[firstResult + u].sortDescending();
+		}
+	}
+
+	/*
+	 * Sets the bits of the rated items of a user, or clears their words
+	 */
+	private void setRated(long[] bitmap, int user, boolean value){
+		for(int i = ratedOffsets[user]; i < ratedOffsets[user + 1]; i ++){
+			int item = ratedItems[i];
+			if(value){
+				bitmap[item >>> 6] |= 1L << item;
+			}else{
+				bitmap[item >>> 6] = 0;
+			}
+		}
+	}
+
+	/*
+	 * Measures the latency of single and batch requests of random users of a model
+	 * Usage: TopKScorer [modelFile] ([k=20] [requests=10000] [batch=256] [threads=N] [store=DIR])
+	 *        store=DIR excludes the rated items of the rating store in DIR
+	 */
+	public static void main(String[] args) throws IOException{
+		if(args.length < 1){
+			System.out.println("Usage: TopKScorer [modelFile] ([k=20] [requests=10000] [batch=256] [threads=N] [store=DIR])");
+			return;
+		}
+		PlanOptions options = new PlanOptions(args);
+		int k = options.getInt("k", 20);
+		int numRequests = options.getInt("requests", 10000);
+		int batchSize = options.getInt("batch", 256);
+		int numThreads = options.getInt("threads", Runtime.getRuntime().availableProcessors());
+
+		long start = System.nanoTime();
+		FactorModel model = FactorModel.load(new File(args[0]));
+		TopKScorer scorer = new TopKScorer(model);
+		if(options.contains("store")){
+			scorer.setRatedItems(RatingStore.openByUser(new File(options.getString("store", null))));
+		}
+		System.out.println(model + " ready in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+		Random random = new Random(1);
+		TopKHeap result = new TopKHeap(k);
+		for(int round = 0; round < 2; round ++){
+			scorer.getLatencies().reset();
+			for(int i = 0; i < numRequests; i ++){
+				scorer.recommend(model.getUserID(random.nextInt(model.getNumUsers())), result);
+			}
+			System.out.println((round == 0 ? "warm-up " : "") + "single: " + scorer.getLatencies());
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try{
+			int[] userIDs = new int[batchSize];
+			TopKHeap[] results = new TopKHeap[batchSize];
+			for(int i = 0; i < batchSize; i ++){
+				results[i] = new TopKHeap(k);
+			}
+			LatencyHistogram batches = new LatencyHistogram();
+			for(int batch = 0; batch * batchSize < numRequests; batch ++){
+				for(int i = 0; i < batchSize; i ++){
+					userIDs[i] = model.getUserID(random.nextInt(model.getNumUsers()));
+				}
+				long batchStart = System.nanoTime();
+				scorer.recommend(userIDs, results, executor);
+				batches.record(System.nanoTime() - batchStart);
+			}
+			System.out.println("batch of " + batchSize + " users per user: " + scorer.getBatchLatencies());
+			System.out.println("batch of " + batchSize + " users: " + batches);
+		}finally{
+			executor.shutdown();
+		}
+		model.close();
+	}
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.MapStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This Map class assigns each rating entry to the user block of its user and the item block of its item
+ */
+public class BlockAssignMapper extends MapStub{
+
+	public static final String NUM_BLOCKS_PARAMETER = "als.blocks";
+
+	private final PactInteger userBlock = new PactInteger();
+	private final PactInteger itemBlock = new PactInteger();
+	private int numBlocks;
+
+	@Override
+	public void open(Configuration parameters) throws Exception {
+		numBlocks = parameters.getInteger(NUM_BLOCKS_PARAMETER, 1);
+	}
+
+	/*
+	 * @param in:(userID, itemID, rating)
+	 * @return (userID, itemID, rating, user-block, item-block)
+	 */
+	@Override
+	public void map(PactRecord record, Collector<PactRecord> collector)
+			throws Exception {
+
+		int userID = record.getField(Util.USER_ID_POS, PactInteger.class).getValue();
+		int itemID = record.getField(Util.ITEM_ID_POS, PactInteger.class).getValue();
+
+		userBlock.setValue(Util.blockOf(userID, numBlocks));
+		itemBlock.setValue(Util.blockOf(itemID, numBlocks));
+		record.setField(Util.USER_BLOCK_POS, userBlock);
+		record.setField(Util.ITEM_BLOCK_POS, itemBlock);
+
+		collector.collect(record);
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.log4j.Logger;
+import org.apache.mahout.math.map.OpenIntIntHashMap;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingBlock;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.CoGroupStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This CoGroup class solves the feature-vectors of all keys of one block together.
+ * It gets the rating block once and every feature-vector of the opposite side
+ * which is needed in the block exactly once
+ */
+public class BlockFeatureVectorUpdateCoGroup extends CoGroupStub{
+
+	private final PactRecord outputRecord = new PactRecord();
+	private final PactInteger keyID = new PactInteger();
+	private final PactInteger otherID = new PactInteger();
+	private final PactFactorVector featureVector = new PactFactorVector();
+	private final PactFactorVector solvedFeatureVector = new PactFactorVector();
+	private final RatingBlock ratingBlock = new RatingBlock();
+
+	private double lambda;
+	private int numFeatures;
+
+	private NormalEquations normalEquations;
+	private double[] solution;
+
+    /*
+     * All feature-vectors routed to the block, row by row, and the row of each ID
+     */
+	private final OpenIntIntHashMap featureRows = new OpenIntIntHashMap();
+	private float[] featureMatrix = new float[0];
+
+	private static final Logger LOGGER = Logger.getLogger(BlockFeatureVectorUpdateCoGroup.class.getName());
+
+	@Override
+	public void open(Configuration parameters) throws Exception {
+		numFeatures = parameters.getInteger(Util.RANK_PARAMETER, Util.numFeatures);
+		lambda = Util.lambda(parameters);
+		normalEquations = new NormalEquations(numFeatures);
+		solution = new double[numFeatures];
+		solvedFeatureVector.setWirePrecision(PactFactorVector.parsePrecision(parameters.getString(PactFactorVector.PRECISION_PARAMETER, "float")));
+	}
+
+	/*
+	 * @param ratingBlocks:Iterator[(block, rating-block)] the rating block of this block
+	 * @param featureVectors:Iterator[(block, ID, feature-vector)] all feature-vectors routed to this block
+	 * @return (keyID, feature-vector) for each key of the block
+	 */
+	@Override
+	public void coGroup(Iterator<PactRecord> ratingBlocks, Iterator<PactRecord> featureVectors,
+			Collector<PactRecord> collector) throws Exception {
+
+		if(!ratingBlocks.hasNext()){
+			return;
+		}
+		ratingBlocks.next().getField(1, ratingBlock);
+
+		featureRows.clear();
+		int numRows = 0;
+		while(featureVectors.hasNext()){
+			PactRecord record = featureVectors.next();
+			record.getField(1, otherID);
+			record.getField(2, featureVector);
+			int offset = numRows * numFeatures;
+			if(featureMatrix.length < offset + numFeatures){
+				featureMatrix = Arrays.copyOf(featureMatrix, Math.max(offset + numFeatures, featureMatrix.length * 2));
+			}
+			System.arraycopy(featureVector.getValues(), 0, featureMatrix, offset, numFeatures);
+			featureRows.put(otherID.getValue(), numRows ++);
+		}
+
+		for(int k = 0; k < ratingBlock.getNumKeys(); k ++){
+			normalEquations.reset();
+			for(int r = ratingBlock.getStart(k); r < ratingBlock.getEnd(k); r ++){
+				int other = ratingBlock.getOther(r);
+				if(featureRows.containsKey(other)){
+					normalEquations.add(featureMatrix, featureRows.get(other) * numFeatures, ratingBlock.getRating(r));
+				}else{
+					LOGGER.debug("Error! no feature vector for:" + other + " in block");
+				}
+			}
+
+		    /*
+		     * Calculate the feature-vector using Alternative Least Square (ALS) method
+		     */
+			if(!normalEquations.solve(lambda, solution)){
+				LOGGER.debug("Error! normal equation of:" + ratingBlock.getKey(k) + " is not positive definite!");
+				continue;
+			}
+			solvedFeatureVector.set(solution);
+			keyID.setValue(ratingBlock.getKey(k));
+			outputRecord.setField(0, keyID);
+			outputRecord.setField(1, solvedFeatureVector);
+			collector.collect(outputRecord);
+		}
+	}
+
+}
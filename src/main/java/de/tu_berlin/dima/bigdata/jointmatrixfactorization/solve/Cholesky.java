@@ -0,0 +1,75 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
+
+/*
+ * This object solves small symmetric positive definite systems in place.
+ * Matrices are row-major double[n*n] arrays of which only the lower triangle is read and written.
+ */
+public final class Cholesky{
+
+	private Cholesky(){
+	}
+
+	/*
+	 * Replaces the lower triangle of a with its Cholesky factor L, so that L * L' = a
+	 * @return false if a is not positive definite
+	 */
+	public static boolean decompose(double[] a, int n){
+		for(int j = 0; j < n; j ++){
+			int rowJ = j * n;
+			double diagonal = a[rowJ + j];
+			for(int k = 0; k < j; k ++){
+				diagonal -= a[rowJ + k] * a[rowJ + k];
+			}
+			if(diagonal <= 0){
+				return false;
+			}
+			diagonal = Math.sqrt(diagonal);
+			a[rowJ + j] = diagonal;
+
+			for(int i = j + 1; i < n; i ++){
+				int rowI = i * n;
+				double sum = a[rowI + j];
+				for(int k = 0; k < j; k ++){
+					sum -= a[rowI + k] * a[rowJ + k];
+				}
+				a[rowI + j] = sum / diagonal;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Solves L * L' * x = b with the factor computed by decompose, b is overwritten with x
+	 */
+	public static void solve(double[] l, int n, double[] b){
+	    /*
+	     * Forward substitution L * z = b
+	     */
+		for(int i = 0; i < n; i ++){
+			int rowI = i * n;
+			double sum = b[i];
+			for(int k = 0; k < i; k ++){
+				sum -= l[rowI + k] * b[k];
+			}
+			b[i] = sum / l[rowI + i];
+		}
+	    /*
+	     * Backward substitution L' * x = z
+	     */
+		for(int i = n - 1; i >= 0; i --){
+			double sum = b[i];
+			for(int k = i + 1; k < n; k ++){
+				sum -= l[k * n + i] * b[k];
+			}
+			b[i] = sum / l[i * n + i];
+		}
+	}
+
+}
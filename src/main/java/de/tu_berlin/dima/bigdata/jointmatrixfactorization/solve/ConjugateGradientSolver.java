@@ -0,0 +1,193 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
+
+import java.util.Arrays;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorMatrix;
+import eu.stratosphere.nephele.configuration.Configuration;
+
+/*
+ * This object solves the same regularized normal equation (Y'Y + lambda * n * I) x = Y'r as the NormalEquations
+ * with a few steps of the conjugate gradient method instead of a Cholesky decomposition.
+ * Y'Y is never formed: every step multiplies with the n observed feature-vectors of the key, which costs O(n * rank)
+ * instead of O(n * rank^2) for Y'Y and O(rank^3) for the decomposition, so it pays off at a high rank.
+ * Started from the previous feature-vector of the key, which is already close to the solution in later rounds,
+ * a few steps are enough; the steps stop early once the residual is below tolerance times |Y'r|.
+ */
+public class ConjugateGradientSolver{
+
+	/*
+	 * Parameters of the solving stubs, the solver is CHOLESKY or CONJUGATE_GRADIENT
+	 */
+	public static final String SOLVER_PARAMETER = "als.solver";
+	public static final String ITERATIONS_PARAMETER = "als.cg.iterations";
+	public static final String TOLERANCE_PARAMETER = "als.cg.tolerance";
+	public static final String CHOLESKY = "cholesky";
+	public static final String CONJUGATE_GRADIENT = "cg";
+	public static final int DEFAULT_ITERATIONS = 3;
+	public static final double DEFAULT_TOLERANCE = 1e-4;
+
+	private final int rank;
+	private final int maxIterations;
+	private final double tolerance;
+	private float[] featureVectors = new float[0];
+	private final double[] rhs;
+	private final double[] residual;
+	private final double[] direction;
+	private final double[] product;
+	private int count;
+	private long numIterations;
+
+	public ConjugateGradientSolver(int rank, int maxIterations, double tolerance){
+		this.rank = rank;
+		this.maxIterations = maxIterations;
+		this.tolerance = tolerance;
+		this.rhs = new double[rank];
+		this.residual = new double[rank];
+		this.direction = new double[rank];
+		this.product = new double[rank];
+	}
+
+	/*
+	 * @return the solver configured for a stub, or null if the stub solves with the NormalEquations
+	 */
+	public static ConjugateGradientSolver configure(Configuration parameters, int rank){
+		if(!CONJUGATE_GRADIENT.equals(parameters.getString(SOLVER_PARAMETER, CHOLESKY))){
+			return null;
+		}
+		return new ConjugateGradientSolver(rank, parameters.getInteger(ITERATIONS_PARAMETER, DEFAULT_ITERATIONS),
+				Double.parseDouble(parameters.getString(TOLERANCE_PARAMETER, String.valueOf(DEFAULT_TOLERANCE))));
+	}
+
+	public int getRank(){
+		return rank;
+	}
+
+	/*
+	 * @return number of ratings added since the last reset
+	 */
+	public int getCount(){
+		return count;
+	}
+
+	/*
+	 * @return number of steps of all solves so far
+	 */
+	public long getNumIterations(){
+		return numIterations;
+	}
+
+	/*
+	 * Starts the normal equation of the next key
+	 */
+	public void reset(){
+		Arrays.fill(rhs, 0);
+		count = 0;
+	}
+
+	/*
+	 * Adds the rating of one feature-vector of the opposite side, the feature-vector is copied
+	 * @param featureVectors array holding the feature-vector at offset
+	 */
+	public void add(float[] featureVectors, int offset, double rating){
+		int start = ensureCapacity();
+		System.arraycopy(featureVectors, offset, this.featureVectors, start, rank);
+		addRhs(start, rating);
+	}
+
+	/*
+	 * Adds the rating of one row of the factor matrix of the opposite side
+	 */
+	public void add(FactorMatrix featureVectors, int featureVectorRow, double rating){
+		int start = ensureCapacity();
+		featureVectors.getRow(featureVectorRow, this.featureVectors, start);
+		addRhs(start, rating);
+	}
+
+	private int ensureCapacity(){
+		int start = count * rank;
+		if(featureVectors.length < start + rank){
+			featureVectors = Arrays.copyOf(featureVectors, Math.max(start + rank, 2 * featureVectors.length));
+		}
+		return start;
+	}
+
+	private void addRhs(int start, double rating){
+		for(int i = 0; i < rank; i ++){
+			rhs[i] += featureVectors[start + i] * rating;
+		}
+		count ++;
+	}
+
+	/*
+	 * Runs the steps of the conjugate gradient method on (Y'Y + lambda * n * I) x = Y'r, the added ratings are kept
+	 * @param solution array of length rank holding the start vector, e.g. the previous feature-vector or zeros,
+	 *                 and afterwards the approximate x
+	 * @return false if no rating was added
+	 */
+	public boolean solve(double lambda, double[] solution){
+		if(count == 0){
+			return false;
+		}
+		double regularization = lambda * count;
+		multiply(solution, regularization, product);
+		double squaredResidual = 0;
+		double squaredRhs = 0;
+		for(int i = 0; i < rank; i ++){
+			residual[i] = rhs[i] - product[i];
+			direction[i] = residual[i];
+			squaredResidual += residual[i] * residual[i];
+			squaredRhs += rhs[i] * rhs[i];
+		}
+		double threshold = tolerance * tolerance * squaredRhs;
+		for(int iteration = 0; iteration < maxIterations && squaredResidual > threshold; iteration ++){
+			multiply(direction, regularization, product);
+			double curvature = 0;
+			for(int i = 0; i < rank; i ++){
+				curvature += direction[i] * product[i];
+			}
+			if(curvature <= 0){
+				break;
+			}
+			double step = squaredResidual / curvature;
+			double nextSquaredResidual = 0;
+			for(int i = 0; i < rank; i ++){
+				solution[i] += step * direction[i];
+				residual[i] -= step * product[i];
+				nextSquaredResidual += residual[i] * residual[i];
+			}
+			double beta = nextSquaredResidual / squaredResidual;
+			for(int i = 0; i < rank; i ++){
+				direction[i] = residual[i] + beta * direction[i];
+			}
+			squaredResidual = nextSquaredResidual;
+			numIterations ++;
+		}
+		return true;
+	}
+
+	/*
+	 * result = (Y'Y + regularization * I) vector, as the sum of (y . vector) * y over the observed feature-vectors
+	 */
+	private void multiply(double[] vector, double regularization, double[] result){
+		for(int i = 0; i < rank; i ++){
+			result[i] = regularization * vector[i];
+		}
+		for(int start = 0; start < count * rank; start += rank){
+			double dot = 0;
+			for(int i = 0; i < rank; i ++){
+				dot += featureVectors[start + i] * vector[i];
+			}
+			for(int i = 0; i < rank; i ++){
+				result[i] += dot * featureVectors[start + i];
+			}
+		}
+	}
+
+}
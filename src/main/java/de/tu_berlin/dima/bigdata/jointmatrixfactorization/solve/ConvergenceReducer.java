@@ -0,0 +1,83 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
+
+import java.util.Iterator;
+
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.contract.ReduceContract.Combinable;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.ReduceStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactDouble;
+import eu.stratosphere.pact.common.type.base.PactLong;
+
+/*
+ * This Reduce class is the termination criterion of the ALS iteration.
+ * It sums up the squared changes of all feature-vectors of one round
+ * and emits a record only as long as the root mean squared change is above the threshold,
+ * so the iteration stops in the first round that produces no record
+ */
+@Combinable
+public class ConvergenceReducer extends ReduceStub{
+
+	public static final String THRESHOLD_PARAMETER = "als.convergence.threshold";
+
+	private final PactRecord outputRecord = new PactRecord();
+	private final PactDouble sum = new PactDouble();
+	private final PactLong count = new PactLong();
+
+	private double threshold;
+
+	@Override
+	public void open(Configuration parameters) throws Exception {
+		threshold = Double.parseDouble(parameters.getString(THRESHOLD_PARAMETER, "0"));
+	}
+
+	/*
+	 * @param in:Iterator[(squared-delta, count)]
+	 * @return (sum of squared-delta, count) if the model has not converged yet
+	 */
+	@Override
+	public void reduce(Iterator<PactRecord> records, Collector<PactRecord> collector)
+			throws Exception {
+
+		sumUp(records);
+
+		double rmsDelta = count.getValue() > 0 ? Math.sqrt(sum.getValue() / count.getValue()) : 0;
+		if(rmsDelta > threshold){
+			collector.collect(outputRecord);
+		}
+	}
+
+	/*
+	 * Pre-aggregates the squared changes of one partition
+	 */
+	@Override
+	public void combine(Iterator<PactRecord> records, Collector<PactRecord> collector)
+			throws Exception {
+
+		sumUp(records);
+		collector.collect(outputRecord);
+	}
+
+	private void sumUp(Iterator<PactRecord> records){
+		double squaredDeltaSum = 0;
+		long numVectors = 0;
+		while(records.hasNext()){
+			PactRecord record = records.next();
+			squaredDeltaSum += record.getField(0, PactDouble.class).getValue();
+			numVectors += record.getField(1, PactLong.class).getValue();
+		}
+		sum.setValue(squaredDeltaSum);
+		count.setValue(numVectors);
+		outputRecord.setField(0, sum);
+		outputRecord.setField(1, count);
+	}
+
+}
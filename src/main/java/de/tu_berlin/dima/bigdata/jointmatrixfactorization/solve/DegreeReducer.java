@@ -0,0 +1,60 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
+
+import java.util.Iterator;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.ReduceStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This Reduce class counts the ratings of one user (or item)
+ */
+public class DegreeReducer extends ReduceStub{
+
+	/*
+	 * Position of the ID to count, USER_ID_POS or ITEM_ID_POS
+	 */
+	public static final String KEY_POS_PARAMETER = "als.degree.key.pos";
+
+	private final PactRecord outputRecord = new PactRecord();
+	private final PactInteger id = new PactInteger();
+	private final PactInteger degree = new PactInteger();
+
+	private int keyPos;
+
+	@Override
+	public void open(Configuration parameters) throws Exception {
+		keyPos = parameters.getInteger(KEY_POS_PARAMETER, Util.USER_ID_POS);
+	}
+
+	/*
+	 * @param in:Iterator[(userID, itemID, rating)] List of entries with same ID
+	 * @return (ID, number of ratings)
+	 */
+	@Override
+	public void reduce(Iterator<PactRecord> records, Collector<PactRecord> collector)
+			throws Exception {
+
+		int numRatings = 0;
+		while(records.hasNext()){
+			records.next().getField(keyPos, id);
+			numRatings ++;
+		}
+
+		degree.setValue(numRatings);
+		outputRecord.setField(0, id);
+		outputRecord.setField(1, degree);
+		collector.collect(outputRecord);
+	}
+
+}
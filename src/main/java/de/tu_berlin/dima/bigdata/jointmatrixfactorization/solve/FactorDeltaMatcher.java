@@ -0,0 +1,50 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.MatchStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactDouble;
+import eu.stratosphere.pact.common.type.base.PactLong;
+
+/*
+ * This Join class joins the feature-vector of one key from the current round
+ * with the feature-vector of the same key from the previous round
+ * to produce the squared change of the feature-vector
+ */
+public class FactorDeltaMatcher extends MatchStub{
+
+	private final PactRecord outputRecord = new PactRecord();
+	private final PactDouble squaredDelta = new PactDouble();
+	private final PactLong count = new PactLong(1);
+	private final PactFactorVector current = new PactFactorVector();
+	private final PactFactorVector previous = new PactFactorVector();
+
+	/*
+	 * @param currentRecord:(ID, feature-vector of this round)
+	 * @param previousRecord:(ID, feature-vector of the previous round)
+	 * @return (squared-delta, 1)
+	 */
+	@Override
+	public void match(PactRecord currentRecord, PactRecord previousRecord,
+			Collector<PactRecord> collector) throws Exception {
+
+		currentRecord.getField(1, current);
+		previousRecord.getField(1, previous);
+
+		squaredDelta.setValue(current.getDistanceSquared(previous));
+
+		outputRecord.setField(0, squaredDelta);
+		outputRecord.setField(1, count);
+
+		collector.collect(outputRecord);
+	}
+
+}
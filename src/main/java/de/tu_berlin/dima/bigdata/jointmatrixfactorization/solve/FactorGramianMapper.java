@@ -0,0 +1,44 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactGramian;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.MapStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This Map class emits every feature-vector as a rank-one partial sum of Y'Y under one constant key,
+ * so the combinable PartialGramianReducer sums up the Y'Y of all feature-vectors of one side
+ * for implicit-feedback ALS, one rank x rank partial sum per sender partition
+ */
+public class FactorGramianMapper extends MapStub{
+
+	private final PactRecord outputRecord = new PactRecord();
+	private final PactInteger constant = new PactInteger(0);
+	private final PactFactorVector featureVector = new PactFactorVector();
+	private final PactGramian gramian = new PactGramian();
+
+	/*
+	 * @param in:(ID, feature-vector)
+	 * @return (0, 0, rank-one partial sum of Y'Y)
+	 */
+	@Override
+	public void map(PactRecord record, Collector<PactRecord> collector) throws Exception {
+		record.getField(1, featureVector);
+		gramian.setRankOne(featureVector, 0);
+
+		outputRecord.setField(0, constant);
+		outputRecord.setField(1, constant);
+		outputRecord.setField(2, gramian);
+		collector.collect(outputRecord);
+	}
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactIntArray;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.MatchStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This Join class sends each feature-vector once to every block that contains a rating of its ID,
+ * instead of once to every rating
+ */
+public class FactorRoutingMatcher extends MatchStub{
+
+	private final PactRecord outputRecord = new PactRecord();
+	private final PactInteger block = new PactInteger();
+	private final PactInteger id = new PactInteger();
+	private final PactFactorVector featureVector = new PactFactorVector();
+	private final PactIntArray blocks = new PactIntArray();
+
+	/*
+	 * @param featureRecord:(ID, feature-vector)
+	 * @param routingRecord:(ID, list of consuming blocks)
+	 * @return (block, ID, feature-vector) for each consuming block
+	 */
+	@Override
+	public void match(PactRecord featureRecord, PactRecord routingRecord,
+			Collector<PactRecord> collector) throws Exception {
+
+		featureRecord.getField(0, id);
+		featureRecord.getField(1, featureVector);
+		routingRecord.getField(1, blocks);
+
+		outputRecord.setField(1, id);
+		outputRecord.setField(2, featureVector);
+		for(int i = 0; i < blocks.size(); i ++){
+			block.setValue(blocks.get(i));
+			outputRecord.setField(0, block);
+			collector.collect(outputRecord);
+		}
+	}
+
+}
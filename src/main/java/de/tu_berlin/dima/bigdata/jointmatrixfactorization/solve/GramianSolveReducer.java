@@ -0,0 +1,75 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
+
+import java.util.Iterator;
+
+import org.apache.log4j.Logger;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactGramian;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.ReduceStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This Reduce class adds up the partial sums of all salts of one key and solves its feature-vector
+ */
+public class GramianSolveReducer extends ReduceStub{
+
+	private final PactRecord outputRecord = new PactRecord();
+
+	private double lambda;
+
+	private NormalEquations normalEquations;
+	private double[] solution;
+	private final PactFactorVector featureVector = new PactFactorVector();
+	private final PactInteger key = new PactInteger();
+	private final PactGramian partial = new PactGramian();
+
+	private static final Logger LOGGER = Logger.getLogger(GramianSolveReducer.class.getName());
+
+	@Override
+	public void open(Configuration parameters) throws Exception {
+		int numFeatures = parameters.getInteger(Util.RANK_PARAMETER, Util.numFeatures);
+		lambda = Util.lambda(parameters);
+		normalEquations = new NormalEquations(numFeatures);
+		solution = new double[numFeatures];
+		featureVector.setWirePrecision(PactFactorVector.parsePrecision(parameters.getString(PactFactorVector.PRECISION_PARAMETER, "float")));
+	}
+
+	/*
+	 * @param in:Iterator[(key, salt, partial sum)] List with same key
+	 * @return (key, feature-vector)
+	 */
+	@Override
+	public void reduce(Iterator<PactRecord> records, Collector<PactRecord> collector)
+			throws Exception {
+
+		normalEquations.reset();
+		while(records.hasNext()){
+			PactRecord record = records.next();
+			record.getField(0, key);
+			record.getField(2, partial);
+			normalEquations.add(partial);
+		}
+
+		if(!normalEquations.solve(lambda, solution)){
+			LOGGER.debug("Error! normal equation of:" + key.getValue() + " is not positive definite!");
+			return;
+		}
+		featureVector.set(solution);
+		outputRecord.setField(0, key);
+		outputRecord.setField(1, featureVector);
+		collector.collect(outputRecord);
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.MatchStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This Join class tags each rating entry with the salt of its user (or item).
+ * The salt is 0 for ordinary keys; the ratings of a hot key, whose number of ratings exceeds the threshold,
+ * are spread over several salts by the ID on the opposite side,
+ * so the partial sums of a hot key are built by several reducers
+ */
+public class HotKeyTagMatcher extends MatchStub{
+
+	/*
+	 * Position of the key whose degree is joined (USER_ID_POS or ITEM_ID_POS)
+	 * and the position to store its salt in (USER_SALT_POS or ITEM_SALT_POS)
+	 */
+	public static final String KEY_POS_PARAMETER = "als.hotkey.key.pos";
+	public static final String SALT_POS_PARAMETER = "als.hotkey.salt.pos";
+	public static final String DEGREE_THRESHOLD_PARAMETER = "als.hotkey.degree";
+	public static final String NUM_SALTS_PARAMETER = "als.hotkey.salts";
+
+	private final PactInteger other = new PactInteger();
+	private final PactInteger degree = new PactInteger();
+	private final PactInteger salt = new PactInteger();
+
+	private int otherPos;
+	private int saltPos;
+	private int degreeThreshold;
+	private int numSalts;
+
+	@Override
+	public void open(Configuration parameters) throws Exception {
+		int keyPos = parameters.getInteger(KEY_POS_PARAMETER, Util.USER_ID_POS);
+		otherPos = keyPos == Util.USER_ID_POS ? Util.ITEM_ID_POS : Util.USER_ID_POS;
+		saltPos = parameters.getInteger(SALT_POS_PARAMETER, Util.USER_SALT_POS);
+		degreeThreshold = parameters.getInteger(DEGREE_THRESHOLD_PARAMETER, Integer.MAX_VALUE);
+		numSalts = parameters.getInteger(NUM_SALTS_PARAMETER, 1);
+	}
+
+	/*
+	 * @param ratingRecord:(userID, itemID, rating, ...)
+	 * @param degreeRecord:(ID, number of ratings)
+	 * @return (userID, itemID, rating, ..., salt)
+	 */
+	@Override
+	public void match(PactRecord ratingRecord, PactRecord degreeRecord,
+			Collector<PactRecord> collector) throws Exception {
+
+		degreeRecord.getField(1, degree);
+		if(degree.getValue() > degreeThreshold){
+			ratingRecord.getField(otherPos, other);
+			salt.setValue(Util.blockOf(other.getValue(), numSalts));
+		}else{
+			salt.setValue(0);
+		}
+		ratingRecord.setField(saltPos, salt);
+
+		collector.collect(ratingRecord);
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
+
+import org.apache.log4j.Logger;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactGramian;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.CrossStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This Cross class solves the implicit-feedback feature-vector of every key:
+ * the single Y'Y record of the opposite side is crossed with the summed corrections of each key,
+ * so Y'Y is computed once per half-step and shipped to every solving partition instead of being rebuilt per key
+ */
+public class ImplicitSolveCrosser extends CrossStub{
+
+	private final PactRecord outputRecord = new PactRecord();
+
+	private double lambda;
+
+	private NormalEquations normalEquations;
+	private double[] solution;
+	private final PactFactorVector featureVector = new PactFactorVector();
+	private final PactInteger key = new PactInteger();
+	private final PactGramian corrections = new PactGramian();
+	private final PactGramian gramian = new PactGramian();
+
+	private static final Logger LOGGER = Logger.getLogger(ImplicitSolveCrosser.class.getName());
+
+	@Override
+	public void open(Configuration parameters) throws Exception {
+		int numFeatures = parameters.getInteger(Util.RANK_PARAMETER, Util.numFeatures);
+		lambda = Util.lambda(parameters);
+		normalEquations = new NormalEquations(numFeatures);
+		solution = new double[numFeatures];
+		featureVector.setWirePrecision(PactFactorVector.parsePrecision(parameters.getString(PactFactorVector.PRECISION_PARAMETER, "float")));
+	}
+
+	/*
+	 * @param correctionRecord:(key, salt, sum of the corrections of the key)
+	 * @param gramianRecord:(0, 0, Y'Y of the opposite side)
+	 * @return (key, feature-vector)
+	 */
+	@Override
+	public void cross(PactRecord correctionRecord, PactRecord gramianRecord,
+			Collector<PactRecord> collector) throws Exception {
+
+		correctionRecord.getField(0, key);
+		correctionRecord.getField(2, corrections);
+		gramianRecord.getField(2, gramian);
+
+		normalEquations.reset();
+		normalEquations.add(gramian);
+		normalEquations.add(corrections);
+		if(!normalEquations.solveImplicit(lambda, solution)){
+			LOGGER.debug("Error! normal equation of:" + key.getValue() + " is not positive definite!");
+			return;
+		}
+		featureVector.set(solution);
+		outputRecord.setField(0, key);
+		outputRecord.setField(1, featureVector);
+		collector.collect(outputRecord);
+	}
+
+}
@@ -7,9 +7,7 @@
 
 package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
 
-import org.apache.mahout.math.Vector;
-
-import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactVector;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
 import eu.stratosphere.pact.common.stubs.Collector;
 import eu.stratosphere.pact.common.stubs.MatchStub;
 import eu.stratosphere.pact.common.type.PactRecord;
@@ -23,7 +21,10 @@ import eu.stratosphere.pact.common.type.base.PactInteger;
 public class Joint extends MatchStub{
 
 	private final PactRecord outputRecord = new PactRecord();
-	private final PactVector vectorWritable = new PactVector();
+	private final PactInteger userID = new PactInteger();
+	private final PactInteger itemID = new PactInteger();
+	private final PactFloat rating = new PactFloat();
+	private final PactFactorVector featureVector = new PactFactorVector();
 	
 	/*
 	 * This override method defines how the join works
@@ -32,16 +33,15 @@ public class Joint extends MatchStub{
 	public void match(PactRecord ratingRecord, PactRecord featureRecord,
 			Collector<PactRecord> collector) throws Exception {
 
-		int userID = ratingRecord.getField(0, PactInteger.class).getValue();
-		int itemID = ratingRecord.getField(1, PactInteger.class).getValue();
-		float rating = ratingRecord.getField(2, PactFloat.class).getValue();
-		Vector featureVector = featureRecord.getField(1, PactVector.class).get();
-		vectorWritable.set(featureVector);
+		ratingRecord.getField(0, userID);
+		ratingRecord.getField(1, itemID);
+		ratingRecord.getField(2, rating);
+		featureRecord.getField(1, featureVector);
 		
-		outputRecord.setField(0, new PactInteger(userID));
-		outputRecord.setField(1, new PactInteger(itemID));
-		outputRecord.setField(2, new PactFloat(rating));
-		outputRecord.setField(3, vectorWritable);
+		outputRecord.setField(0, userID);
+		outputRecord.setField(1, itemID);
+		outputRecord.setField(2, rating);
+		outputRecord.setField(3, featureVector);
 		
 		collector.collect(outputRecord);
 		
@@ -0,0 +1,193 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
+
+import java.util.Arrays;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactGramian;
+
+/*
+ * This object builds the regularized normal equation (Y'Y + lambda * n * I) x = Y'r of one key
+ * incrementally while its ratings stream in, and solves it with a rank-sized Cholesky decomposition.
+ * It is the same least squares problem as the one of Mahout's AlternatingLeastSquaresSolver,
+ * but its memory is O(rank^2) regardless of the number of ratings and it is reused for every key.
+ *
+ * For implicit-feedback ALS (Hu, Koren and Volinsky) the equation is (Y'Y + Y'(C - I)Y + lambda * I) x = Y'Cp
+ * with the confidence c = 1 + alpha * r and the preference p = 1 of every positive rating r.
+ * Y'Y of all feature-vectors of the opposite side is the same for every key, so it is added once as a base
+ * and only the corrections of the ratings of the key are added, which costs O(nnz * rank^2) instead of
+ * O(numKeys * numOthers * rank^2) per half-step.
+ */
+public class NormalEquations{
+
+	private final int rank;
+	private final double[] gramian;
+	private final double[] rhs;
+	private final double[] factor;
+	private final double[] y;
+	private final float[] row;
+	private int count;
+
+	public NormalEquations(int rank){
+		this.rank = rank;
+		this.gramian = new double[rank * rank];
+		this.rhs = new double[rank];
+		this.factor = new double[rank * rank];
+		this.y = new double[rank];
+		this.row = new float[rank];
+	}
+
+	public int getRank(){
+		return rank;
+	}
+
+	/*
+	 * @return number of ratings added since the last reset
+	 */
+	public int getCount(){
+		return count;
+	}
+
+	/*
+	 * Starts the normal equation of the next key
+	 */
+	public void reset(){
+		Arrays.fill(gramian, 0);
+		Arrays.fill(rhs, 0);
+		count = 0;
+	}
+
+	/*
+	 * Starts the normal equation of the next key from a copy of another one, e.g. the Y'Y of implicit-feedback ALS
+	 */
+	public void reset(NormalEquations base){
+		System.arraycopy(base.gramian, 0, gramian, 0, gramian.length);
+		System.arraycopy(base.rhs, 0, rhs, 0, rank);
+		count = base.count;
+	}
+
+	/*
+	 * Adds the normal equation of other ratings, e.g. the partial Y'Y summed up by another thread
+	 */
+	public void add(NormalEquations other){
+		for(int i = 0; i < rank; i ++){
+			int row = i * rank;
+			for(int j = 0; j <= i; j ++){
+				gramian[row + j] += other.gramian[row + j];
+			}
+			rhs[i] += other.rhs[i];
+		}
+		count += other.count;
+	}
+
+	/*
+	 * Adds the rating of one feature-vector of the opposite side
+	 * @param featureVectors array holding the feature-vector at offset
+	 */
+	public void add(float[] featureVectors, int offset, double rating){
+		for(int i = 0; i < rank; i ++){
+			y[i] = featureVectors[offset + i];
+		}
+		addScratch(1, rating);
+	}
+
+	/*
+	 * Adds the rating of one row of the factor matrix of the opposite side
+	 */
+	public void add(FactorMatrix featureVectors, int featureVectorRow, double rating){
+		featureVectors.getRow(featureVectorRow, row, 0);
+		add(row, 0, rating);
+	}
+
+	/*
+	 * Adds the correction (c - 1) yy' and cp * y of one implicit rating on top of the base Y'Y,
+	 * a rating which is not positive is no observation and adds nothing
+	 * @param alpha confidence weight, c = 1 + alpha * rating
+	 */
+	public void addImplicit(float[] featureVectors, int offset, double rating, double alpha){
+		if(rating <= 0){
+			return;
+		}
+		for(int i = 0; i < rank; i ++){
+			y[i] = featureVectors[offset + i];
+		}
+		addScratch(alpha * rating, 1 + alpha * rating);
+	}
+
+	public void addImplicit(FactorMatrix featureVectors, int featureVectorRow, double rating, double alpha){
+		featureVectors.getRow(featureVectorRow, row, 0);
+		addImplicit(row, 0, rating, alpha);
+	}
+
+	/*
+	 * Adds a partial sum of ratings of the same key
+	 */
+	public void add(PactGramian partial){
+		if(partial.isRankOne()){
+			System.arraycopy(partial.getVector(), 0, y, 0, rank);
+			addScratch(partial.getWeight(), partial.getRating());
+			return;
+		}
+		double[] packedGramian = partial.getPackedGramian();
+		double[] partialRhs = partial.getRhs();
+		int index = 0;
+		for(int i = 0; i < rank; i ++){
+			int row = i * rank;
+			for(int j = 0; j <= i; j ++){
+				gramian[row + j] += packedGramian[index ++];
+			}
+			rhs[i] += partialRhs[i];
+		}
+		count += partial.getCount();
+	}
+
+	private void addScratch(double weight, double rating){
+		for(int i = 0; i < rank; i ++){
+			double yi = y[i];
+			double wyi = weight * yi;
+			int row = i * rank;
+			for(int j = 0; j <= i; j ++){
+				gramian[row + j] += wyi * y[j];
+			}
+			rhs[i] += yi * rating;
+		}
+		count ++;
+	}
+
+	/*
+	 * Solves (Y'Y + lambda * n * I) x = Y'r, the added ratings are kept
+	 * @param solution array of length rank to store x in
+	 * @return false if the system is not positive definite, e.g. if no rating was added and lambda is zero
+	 */
+	public boolean solve(double lambda, double[] solution){
+		return solveRegularized(lambda * count, solution);
+	}
+
+	/*
+	 * Solves (Y'Y + Y'(C - I)Y + lambda * I) x = Y'Cp of implicit-feedback ALS,
+	 * the base Y'Y and the corrections of the ratings are kept
+	 */
+	public boolean solveImplicit(double lambda, double[] solution){
+		return solveRegularized(lambda, solution);
+	}
+
+	private boolean solveRegularized(double regularization, double[] solution){
+		System.arraycopy(gramian, 0, factor, 0, gramian.length);
+		for(int i = 0; i < rank; i ++){
+			factor[i * rank + i] += regularization;
+		}
+		if(!Cholesky.decompose(factor, rank)){
+			return false;
+		}
+		System.arraycopy(rhs, 0, solution, 0, rank);
+		Cholesky.solve(factor, rank, solution);
+		return true;
+	}
+
+}
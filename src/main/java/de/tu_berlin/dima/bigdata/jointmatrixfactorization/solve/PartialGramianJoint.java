@@ -0,0 +1,84 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactGramian;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.MatchStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactFloat;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This Join class joins each salted rating entry to the feature-vector of the opposite side
+ * and emits it as a rank-one partial sum of the normal equation of its key.
+ * With Util.ALPHA_PARAMETER set it emits the implicit-feedback correction instead:
+ * alpha * r * yy' and (1 + alpha * r) * y, a rating which is not positive only keeps its key in the result
+ */
+public class PartialGramianJoint extends MatchStub{
+
+	/*
+	 * Position of the key to solve for (USER_ID_POS or ITEM_ID_POS)
+	 * and of its salt (USER_SALT_POS or ITEM_SALT_POS)
+	 */
+	public static final String KEY_POS_PARAMETER = "als.gramian.key.pos";
+	public static final String SALT_POS_PARAMETER = "als.gramian.salt.pos";
+
+	private final PactRecord outputRecord = new PactRecord();
+	private final PactInteger key = new PactInteger();
+	private final PactInteger salt = new PactInteger();
+	private final PactFloat rating = new PactFloat();
+	private final PactFactorVector featureVector = new PactFactorVector();
+	private final PactGramian gramian = new PactGramian();
+
+	private int keyPos;
+	private int saltPos;
+	private boolean implicit;
+	private double alpha;
+
+	@Override
+	public void open(Configuration parameters) throws Exception {
+		keyPos = parameters.getInteger(KEY_POS_PARAMETER, Util.USER_ID_POS);
+		saltPos = parameters.getInteger(SALT_POS_PARAMETER, Util.USER_SALT_POS);
+		String alphaParameter = parameters.getString(Util.ALPHA_PARAMETER, null);
+		implicit = alphaParameter != null;
+		alpha = implicit ? Double.parseDouble(alphaParameter) : 0;
+	}
+
+	/*
+	 * @param ratingRecord:(userID, itemID, rating, user-salt, item-salt)
+	 * @param featureRecord:(ID, feature-vector) of the opposite side
+	 * @return (key, salt, rank-one partial sum)
+	 */
+	@Override
+	public void match(PactRecord ratingRecord, PactRecord featureRecord,
+			Collector<PactRecord> collector) throws Exception {
+
+		ratingRecord.getField(keyPos, key);
+		ratingRecord.getField(saltPos, salt);
+		ratingRecord.getField(Util.RATING_POS, rating);
+		featureRecord.getField(1, featureVector);
+
+		if(!implicit){
+			gramian.setRankOne(featureVector, rating.getValue());
+		}else if(rating.getValue() > 0){
+			gramian.setRankOne(featureVector, 1 + alpha * rating.getValue(), alpha * rating.getValue());
+		}else{
+			gramian.setRankOne(featureVector, 0, 0);
+		}
+
+		outputRecord.setField(0, key);
+		outputRecord.setField(1, salt);
+		outputRecord.setField(2, gramian);
+		collector.collect(outputRecord);
+	}
+
+}
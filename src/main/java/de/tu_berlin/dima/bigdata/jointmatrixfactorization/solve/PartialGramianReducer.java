@@ -0,0 +1,65 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
+
+import java.util.Iterator;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactGramian;
+import eu.stratosphere.pact.common.contract.ReduceContract.Combinable;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.ReduceStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This Reduce class sums up the partial sums of one (key, salt) pair.
+ * It is combinable, so every sender partition ships one rank x rank partial sum per (key, salt)
+ * instead of one feature-vector per rating
+ */
+@Combinable
+public class PartialGramianReducer extends ReduceStub{
+
+	private final PactRecord outputRecord = new PactRecord();
+	private final PactInteger key = new PactInteger();
+	private final PactInteger salt = new PactInteger();
+	private final PactGramian partial = new PactGramian();
+	private final PactGramian sum = new PactGramian();
+
+	/*
+	 * @param in:Iterator[(key, salt, partial sum)] List with same key and salt
+	 * @return (key, salt, partial sum)
+	 */
+	@Override
+	public void reduce(Iterator<PactRecord> records, Collector<PactRecord> collector)
+			throws Exception {
+
+		PactRecord record = records.next();
+		if(!records.hasNext()){
+		    /*
+		     * A single partial sum is passed on as it is, so single ratings stay in rank-one form
+		     */
+			collector.collect(record);
+			return;
+		}
+		record.getField(0, key);
+		record.getField(1, salt);
+		record.getField(2, partial);
+		sum.clear(partial.getRank());
+		sum.add(partial);
+		while(records.hasNext()){
+			records.next().getField(2, partial);
+			sum.add(partial);
+		}
+
+		outputRecord.setField(0, key);
+		outputRecord.setField(1, salt);
+		outputRecord.setField(2, sum);
+		collector.collect(outputRecord);
+	}
+
+}
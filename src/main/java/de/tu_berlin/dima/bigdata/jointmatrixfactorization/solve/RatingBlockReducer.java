@@ -0,0 +1,74 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
+
+import java.util.Iterator;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingBlock;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.ReduceStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactFloat;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This Reduce class reduces all rating entries of one user block (or item block) to one rating block.
+ * The rating blocks do not change between the rounds, so they are built once before the iteration
+ */
+public class RatingBlockReducer extends ReduceStub{
+
+	/*
+	 * Positions of the ID to solve for and of the block of the rating entry,
+	 * (USER_ID_POS, USER_BLOCK_POS) for user blocks and (ITEM_ID_POS, ITEM_BLOCK_POS) for item blocks
+	 */
+	public static final String KEY_POS_PARAMETER = "als.block.key.pos";
+	public static final String BLOCK_POS_PARAMETER = "als.block.block.pos";
+
+	private final PactRecord outputRecord = new PactRecord();
+	private final PactInteger blockID = new PactInteger();
+	private final RatingBlock ratingBlock = new RatingBlock();
+
+	private int keyPos;
+	private int otherPos;
+	private int blockPos;
+
+	@Override
+	public void open(Configuration parameters) throws Exception {
+		keyPos = parameters.getInteger(KEY_POS_PARAMETER, Util.USER_ID_POS);
+		otherPos = keyPos == Util.USER_ID_POS ? Util.ITEM_ID_POS : Util.USER_ID_POS;
+		blockPos = parameters.getInteger(BLOCK_POS_PARAMETER, Util.USER_BLOCK_POS);
+	}
+
+	/*
+	 * @param in:Iterator[(userID, itemID, rating, user-block, item-block)] List of entries with same block
+	 * @return (block, rating-block)
+	 */
+	@Override
+	public void reduce(Iterator<PactRecord> records, Collector<PactRecord> collector)
+			throws Exception {
+
+		ratingBlock.clear();
+		int block = -1;
+		while(records.hasNext()){
+			PactRecord record = records.next();
+			block = record.getField(blockPos, PactInteger.class).getValue();
+			ratingBlock.add(record.getField(keyPos, PactInteger.class).getValue(),
+					record.getField(otherPos, PactInteger.class).getValue(),
+					record.getField(Util.RATING_POS, PactFloat.class).getValue());
+		}
+		ratingBlock.seal();
+
+		blockID.setValue(block);
+		outputRecord.setField(0, blockID);
+		outputRecord.setField(1, ratingBlock);
+		collector.collect(outputRecord);
+	}
+
+}
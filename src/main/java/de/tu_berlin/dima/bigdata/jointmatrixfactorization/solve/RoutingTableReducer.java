@@ -0,0 +1,79 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactIntArray;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.ReduceStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+
+/*
+ * This Reduce class builds the routing table entry of one user (or item):
+ * the list of item blocks (or user blocks) which contain a rating of it and therefore need its feature-vector
+ */
+public class RoutingTableReducer extends ReduceStub{
+
+	/*
+	 * Positions of the ID to route and of the consuming block of the rating entry,
+	 * (USER_ID_POS, ITEM_BLOCK_POS) to route user-feature-vectors to item blocks
+	 * and (ITEM_ID_POS, USER_BLOCK_POS) to route item-feature-vectors to user blocks
+	 */
+	public static final String KEY_POS_PARAMETER = "als.routing.key.pos";
+	public static final String BLOCK_POS_PARAMETER = "als.routing.block.pos";
+
+	private final PactRecord outputRecord = new PactRecord();
+	private final PactInteger id = new PactInteger();
+	private final PactIntArray blocks = new PactIntArray();
+
+	private int keyPos;
+	private int blockPos;
+	private boolean[] consumingBlocks;
+
+	@Override
+	public void open(Configuration parameters) throws Exception {
+		keyPos = parameters.getInteger(KEY_POS_PARAMETER, Util.ITEM_ID_POS);
+		blockPos = parameters.getInteger(BLOCK_POS_PARAMETER, Util.USER_BLOCK_POS);
+		consumingBlocks = new boolean[parameters.getInteger(BlockAssignMapper.NUM_BLOCKS_PARAMETER, 1)];
+	}
+
+	/*
+	 * @param in:Iterator[(userID, itemID, rating, user-block, item-block)] List of entries with same ID
+	 * @return (ID, list of consuming blocks)
+	 */
+	@Override
+	public void reduce(Iterator<PactRecord> records, Collector<PactRecord> collector)
+			throws Exception {
+
+		Arrays.fill(consumingBlocks, false);
+		int key = -1;
+		while(records.hasNext()){
+			PactRecord record = records.next();
+			key = record.getField(keyPos, PactInteger.class).getValue();
+			consumingBlocks[record.getField(blockPos, PactInteger.class).getValue()] = true;
+		}
+
+		blocks.clear();
+		for(int block = 0; block < consumingBlocks.length; block ++){
+			if(consumingBlocks[block]){
+				blocks.add(block);
+			}
+		}
+
+		id.setValue(key);
+		outputRecord.setField(0, id);
+		outputRecord.setField(1, blocks);
+		collector.collect(outputRecord);
+	}
+
+}
@@ -7,21 +7,14 @@
 
 package de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve;
 
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 
 import org.apache.log4j.Logger;
-import org.apache.log4j.PropertyConfigurator;
-import org.apache.mahout.math.RandomAccessSparseVector;
-import org.apache.mahout.math.SequentialAccessSparseVector;
-import org.apache.mahout.math.Vector;
-import org.apache.mahout.math.als.AlternatingLeastSquaresSolver;
-import org.apache.mahout.math.map.OpenIntObjectHashMap;
 
-import com.google.common.collect.Lists;
-
-import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactVector;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.PactFactorVector;
 import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.Util;
+import eu.stratosphere.nephele.configuration.Configuration;
 import eu.stratosphere.pact.common.stubs.Collector;
 import eu.stratosphere.pact.common.stubs.ReduceStub;
 import eu.stratosphere.pact.common.type.PactRecord;
@@ -32,94 +25,99 @@ import eu.stratosphere.pact.common.type.base.PactInteger;
  * This Reduce class reduce all entries with same userID to its user-feature-vector
  */
 public class UserFeatureVectorUpdateReducer extends ReduceStub{
-	
-	PactRecord outputRecord = new PactRecord();
+
+	private final PactRecord outputRecord = new PactRecord();
     /*
      * Get common variables
      */
-	private final double lambda = Util.lambda;
-	private final int numFeatures = Util.numFeatures;
-	private final int numItems = Util.numItems;
-	private final PactVector userFeatureVectorWritable = new PactVector();
-	
-	private static final Logger LOGGER = Logger.getLogger(UserFeatureVectorUpdateReducer.class.getName()); 
-
-	
+	private double lambda;
+	private int numFeatures;
+
+    /*
+     * Scratch objects which are reused for every user
+     */
+	private NormalEquations normalEquations;
+	private ConjugateGradientSolver conjugateGradient;
+	private double[] solution;
+	private final PactFactorVector userFeatureVector = new PactFactorVector();
+	private final PactInteger userID = new PactInteger();
+	private final PactFloat rating = new PactFloat();
+	private final PactFactorVector itemFeatureVector = new PactFactorVector();
+
+	private static final Logger LOGGER = Logger.getLogger(UserFeatureVectorUpdateReducer.class.getName());
+
+
+	@Override
+	public void open(Configuration parameters) throws Exception {
+		numFeatures = parameters.getInteger(Util.RANK_PARAMETER, Util.numFeatures);
+		lambda = Util.lambda(parameters);
+		normalEquations = new NormalEquations(numFeatures);
+		conjugateGradient = ConjugateGradientSolver.configure(parameters, numFeatures);
+		solution = new double[numFeatures];
+		userFeatureVector.setWirePrecision(PactFactorVector.parsePrecision(parameters.getString(PactFactorVector.PRECISION_PARAMETER, "float")));
+	}
+
 	/*
 	 * This override method defines how user-feature-vector is calculated from all items' rating and their feature-vector
-	 * @param in:Iterator[(userID, itemID, rating, user-feature-vector)] List with same userID
+	 * @param in:Iterator[(userID, itemID, rating, item-feature-vector)] List with same userID
 	 * @return (userID, user-feature-vector)
 	 */
 	@Override
 	public void reduce(Iterator<PactRecord> records, Collector<PactRecord> collector)
 			throws Exception {
-		
-		PropertyConfigurator.configure("log4j.properties");
-
-		PactRecord currentRecord = null;
-	    /*
-	     * Set vector for put in the item rating from the user
-	     * The itemID starts from 1
-	     * So the initialized cardinality would be set to numItems + 1
-	     */
-		Vector vector = new RandomAccessSparseVector(numItems + 1, numItems + 1);
-		int userID = -1;
-		
-	    /*
-	     * Set a Map for all items' feature vectors
-	     */
-		OpenIntObjectHashMap<Vector> itemFeatureMatrix = new OpenIntObjectHashMap<Vector>(numItems);
 
 	    /*
-	     * Put all items' rating in a vector
-	     * HashMap all the items' feature-vectors
+	     * Add the rating and the feature-vector of every item to the normal equation
+	     * as the records stream in, nothing is materialized per item
+	     * but the feature-vectors kept for the conjugate gradient steps
 	     */
+		normalEquations.reset();
+		if(conjugateGradient != null){
+			conjugateGradient.reset();
+		}
 		while (records.hasNext()) {
-			currentRecord = records.next();
-			
-			userID = currentRecord.getField(0, PactInteger.class).getValue();
-			int itemID = currentRecord.getField(1, PactInteger.class).getValue();
-			float rating = currentRecord.getField(2, PactFloat.class).getValue();
-			
-			vector.setQuick(itemID, rating);
-			
-			Vector itemFeatureVector = currentRecord.getField(3, PactVector.class).get();
-			
-			itemFeatureMatrix.put(itemID, itemFeatureVector);
-			
+			PactRecord currentRecord = records.next();
+
+			currentRecord.getField(0, userID);
+			currentRecord.getField(2, rating);
+			currentRecord.getField(3, itemFeatureVector);
+
+			if(conjugateGradient != null){
+				conjugateGradient.add(itemFeatureVector.getValues(), 0, rating.getValue());
+			}else{
+				normalEquations.add(itemFeatureVector.getValues(), 0, rating.getValue());
+			}
 		}
-		
-	    /*
-	     * Extract all item-feature-vectors whose itemID rated by the user
-	     */    
-		Vector userRatingVector = new SequentialAccessSparseVector(vector);
-				
-		List<Vector> featureVectors = Lists.newArrayListWithCapacity(userRatingVector.getNumNondefaultElements());
-	    for (Vector.Element e : userRatingVector.nonZeroes()) {
-	      int index = e.index();
-	      if(itemFeatureMatrix.containsKey(index)){
-	    	  featureVectors.add(itemFeatureMatrix.get(index));	  
-	      }else{
-	    	  System.out.println("Error! no such item:" + index +" in itemFeatureMatrix");
-	    	  LOGGER.debug("Error! no such item:" + index +" in itemFeatureMatrix");
-	      }
-	    }
-	    
-	    if(userID > 0 ){
+
+	    if(userID.getValue() > 0 ){
 	        /*
 	         * Calculate the user-feature-vector using Alternative Least Square (ALS) method
 	         */
-		    Vector userFeatureVector = AlternatingLeastSquaresSolver.solve(featureVectors, userRatingVector, lambda, numFeatures);
-			userFeatureVectorWritable.set(userFeatureVector);
-			outputRecord.setField(0, new PactInteger(userID));
-			outputRecord.setField(1, userFeatureVectorWritable);
-			collector.collect(outputRecord);
+	    	if(solve()){
+	    		userFeatureVector.set(solution);
+	    		outputRecord.setField(0, userID);
+	    		outputRecord.setField(1, userFeatureVector);
+	    		collector.collect(outputRecord);
+	    	}else{
+	    		LOGGER.debug("Error! normal equation of userID:" + userID.getValue() + " is not positive definite!");
+	    	}
 	    }
 	    else{
-	    	LOGGER.debug("Error! userID:" + userID + "muss be greater than zero!");
+	    	LOGGER.debug("Error! userID:" + userID.getValue() + "muss be greater than zero!");
 	    }
 
-		
 	}
-	
-}
\ No newline at end of file
+
+	/*
+	 * Solves the normal equation of the user, the conjugate gradient steps start from zero
+	 * as the previous feature-vector of the user is not at hand in the plan
+	 */
+	private boolean solve(){
+		if(conjugateGradient == null){
+			return normalEquations.solve(lambda, solution);
+		}
+		Arrays.fill(solution, 0);
+		return conjugateGradient.solve(lambda, solution);
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.type;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import eu.stratosphere.pact.common.type.Value;
+
+/*
+ * This Pact class holds the feature-vectors of one block of users or items as a dense row-major matrix,
+ * row i is the feature-vector of ids[i], so a block of scores is computed over contiguous memory
+ */
+@SuppressWarnings("serial")
+public class FactorBlock implements Value{
+
+	private int size;
+	private int rank;
+	private int[] ids = new int[16];
+	private float[] values = new float[0];
+
+	/*
+	 * Removes all rows but keeps the allocated arrays
+	 */
+	public void clear(int rank){
+		this.rank = rank;
+		size = 0;
+	}
+
+	public void add(int id, PactFactorVector featureVector){
+		if(size == ids.length){
+			ids = Arrays.copyOf(ids, size * 2);
+		}
+		ensureValueCapacity((size + 1) * rank);
+		ids[size] = id;
+		System.arraycopy(featureVector.getValues(), 0, values, size * rank, rank);
+		size ++;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public int getRank(){
+		return rank;
+	}
+
+	public int getID(int row){
+		return ids[row];
+	}
+
+	/*
+	 * @return the row-major matrix, row i starts at i * getRank()
+	 */
+	public float[] getValues(){
+		return values;
+	}
+
+	private void ensureValueCapacity(int capacity){
+		if(values.length < capacity){
+			values = Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+		}
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(size);
+		out.writeInt(rank);
+		for(int i = 0; i < size; i ++){
+			out.writeInt(ids[i]);
+		}
+		for(int i = 0; i < size * rank; i ++){
+			out.writeFloat(values[i]);
+		}
+	}
+
+	@Override
+	public void read(DataInput in) throws IOException {
+		size = in.readInt();
+		rank = in.readInt();
+		if(ids.length < size){
+			ids = new int[size];
+		}
+		if(values.length < size * rank){
+			values = new float[size * rank];
+		}
+		for(int i = 0; i < size; i ++){
+			ids[i] = in.readInt();
+		}
+		for(int i = 0; i < size * rank; i ++){
+			values[i] = in.readFloat();
+		}
+	}
+
+	@Override
+	public String toString(){
+		return "FactorBlock(" + size + " rows of rank " + rank + ")";
+	}
+
+}
@@ -0,0 +1,299 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.type;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import eu.stratosphere.pact.common.type.Key;
+import eu.stratosphere.pact.common.type.NormalizableKey;
+
+/*
+ * This Pact class is a dense feature-vector of fixed rank backed by a float array.
+ * It is written as a length prefix followed by the raw values, without indices or flags per element.
+ * The two top bits of the length prefix carry the wire precision, so a vector written in half precision
+ * (IEEE binary16) or bfloat16 is read back without any configuration on the reading side.
+ * Reading reuses the float array as long as it is large enough, so no garbage is produced per record.
+ */
+@SuppressWarnings("serial")
+public class PactFactorVector implements NormalizableKey{
+
+	/*
+	 * Parameter and values of the wire precision of the written feature-vectors
+	 */
+	public static final String PRECISION_PARAMETER = "als.factor.precision";
+	public static final int FLOAT = 0;
+	public static final int HALF = 1;
+	public static final int BFLOAT16 = 2;
+
+	private static final int PRECISION_SHIFT = 30;
+	private static final int SIZE_MASK = (1 << PRECISION_SHIFT) - 1;
+
+	private float[] values;
+	private int size;
+	private int wirePrecision = FLOAT;
+
+	public PactFactorVector(){
+		this(0);
+	}
+
+	public PactFactorVector(int rank){
+		values = new float[rank];
+		size = rank;
+	}
+
+	/*
+	 * @return the wire precision for a parameter value "float", "half" or "bf16"
+	 */
+	public static int parsePrecision(String precision){
+		if("half".equalsIgnoreCase(precision)){
+			return HALF;
+		}
+		if("bf16".equalsIgnoreCase(precision)){
+			return BFLOAT16;
+		}
+		return FLOAT;
+	}
+
+	public void setWirePrecision(int wirePrecision){
+		this.wirePrecision = wirePrecision;
+	}
+
+	public int getWirePrecision(){
+		return wirePrecision;
+	}
+
+	/*
+	 * Sets the rank, the values are undefined afterwards
+	 */
+	public void setSize(int rank){
+		if(values.length < rank){
+			values = new float[rank];
+		}
+		size = rank;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public float get(int index){
+		return values[index];
+	}
+
+	public void set(int index, float value){
+		values[index] = value;
+	}
+
+	/*
+	 * @return the backing array, only the first size() values belong to the vector
+	 */
+	public float[] getValues(){
+		return values;
+	}
+
+	public void set(float[] source, int offset, int rank){
+		setSize(rank);
+		System.arraycopy(source, offset, values, 0, rank);
+	}
+
+	public void set(double[] source){
+		setSize(source.length);
+		for(int i = 0; i < size; i ++){
+			values[i] = (float) source[i];
+		}
+	}
+
+	public double dot(PactFactorVector other){
+		double sum = 0;
+		for(int i = 0; i < size; i ++){
+			sum += values[i] * other.values[i];
+		}
+		return sum;
+	}
+
+	public double getDistanceSquared(PactFactorVector other){
+		double sum = 0;
+		for(int i = 0; i < size; i ++){
+			double delta = values[i] - other.values[i];
+			sum += delta * delta;
+		}
+		return sum;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(size | (wirePrecision << PRECISION_SHIFT));
+		switch(wirePrecision){
+		case HALF:
+			for(int i = 0; i < size; i ++){
+				out.writeShort(floatToHalf(values[i]));
+			}
+			break;
+		case BFLOAT16:
+			for(int i = 0; i < size; i ++){
+				out.writeShort(floatToBFloat16(values[i]));
+			}
+			break;
+		default:
+			for(int i = 0; i < size; i ++){
+				out.writeFloat(values[i]);
+			}
+		}
+	}
+
+	@Override
+	public void read(DataInput in) throws IOException {
+		int header = in.readInt();
+		wirePrecision = header >>> PRECISION_SHIFT;
+		setSize(header & SIZE_MASK);
+		switch(wirePrecision){
+		case HALF:
+			for(int i = 0; i < size; i ++){
+				values[i] = halfToFloat(in.readUnsignedShort());
+			}
+			break;
+		case BFLOAT16:
+			for(int i = 0; i < size; i ++){
+				values[i] = Float.intBitsToFloat(in.readUnsignedShort() << 16);
+			}
+			break;
+		default:
+			for(int i = 0; i < size; i ++){
+				values[i] = in.readFloat();
+			}
+		}
+	}
+
+	/*
+	 * Feature-vectors are ordered by rank first and then lexicographically by their values
+	 */
+	@Override
+	public int compareTo(Key o) {
+		PactFactorVector other = (PactFactorVector) o;
+		if(size != other.size){
+			return size < other.size ? -1 : 1;
+		}
+		for(int i = 0; i < size; i ++){
+			int comparison = Float.compare(values[i], other.values[i]);
+			if(comparison != 0){
+				return comparison;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public boolean equals(Object o){
+		return o instanceof PactFactorVector && compareTo((PactFactorVector) o) == 0;
+	}
+
+	@Override
+	public int hashCode(){
+		int hash = size;
+		for(int i = 0; i < size; i ++){
+			hash = 31 * hash + Float.floatToIntBits(values[i]);
+		}
+		return hash;
+	}
+
+	@Override
+	public int getMaxNormalizedKeyLen() {
+		return 4 + 4 * size;
+	}
+
+	/*
+	 * Writes the rank and the values as unsigned big-endian bytes whose byte-wise order
+	 * is the order of compareTo, so sorted feature-vectors can be compared without deserialization
+	 */
+	@Override
+	public void copyNormalizedKey(byte[] memory, int offset, int len) {
+		int limit = offset + len;
+		offset = putNormalized(size ^ Integer.MIN_VALUE, memory, offset, limit);
+		for(int i = 0; i < size && offset < limit; i ++){
+			int bits = Float.floatToIntBits(values[i]);
+			bits = bits < 0 ? ~bits : bits ^ Integer.MIN_VALUE;
+			offset = putNormalized(bits, memory, offset, limit);
+		}
+		while(offset < limit){
+			memory[offset ++] = 0;
+		}
+	}
+
+	private static int putNormalized(int value, byte[] memory, int offset, int limit){
+		for(int shift = 24; shift >= 0 && offset < limit; shift -= 8){
+			memory[offset ++] = (byte) (value >>> shift);
+		}
+		return offset;
+	}
+
+	/*
+	 * Converts to IEEE binary16 with round to nearest
+	 */
+	static int floatToHalf(float value){
+		int bits = Float.floatToIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int magnitude = bits & 0x7fffffff;
+		if(magnitude >= 0x7f800000){
+			return sign | 0x7c00 | (magnitude > 0x7f800000 ? 0x200 : 0);
+		}
+		int rounded = magnitude + 0x1000;
+		if(rounded >= 0x47800000){
+			return sign | 0x7c00;
+		}
+		if(rounded >= 0x38800000){
+			return sign | ((rounded - 0x38000000) >>> 13);
+		}
+		if(magnitude < 0x33000000){
+			return sign;
+		}
+		int exponent = magnitude >>> 23;
+		int mantissa = (magnitude & 0x7fffff) | 0x800000;
+		return sign | ((mantissa + (0x800000 >>> (exponent - 102))) >>> (126 - exponent));
+	}
+
+	static float halfToFloat(int half){
+		int sign = (half & 0x8000) << 16;
+		int exponent = (half >>> 10) & 0x1f;
+		int mantissa = half & 0x3ff;
+		if(exponent == 31){
+			return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+		}
+		if(exponent == 0){
+			if(mantissa == 0){
+				return Float.intBitsToFloat(sign);
+			}
+			exponent = 1;
+			while((mantissa & 0x400) == 0){
+				mantissa <<= 1;
+				exponent --;
+			}
+			mantissa &= 0x3ff;
+		}
+		return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+	}
+
+	/*
+	 * Converts to bfloat16 with round to nearest even
+	 */
+	static int floatToBFloat16(float value){
+		int bits = Float.floatToIntBits(value);
+		if((bits & 0x7fffffff) > 0x7f800000){
+			return (bits >>> 16) | 0x40;
+		}
+		return (bits + 0x7fff + ((bits >>> 16) & 1)) >>> 16;
+	}
+
+	@Override
+	public String toString(){
+		return Arrays.toString(Arrays.copyOf(values, size));
+	}
+
+}
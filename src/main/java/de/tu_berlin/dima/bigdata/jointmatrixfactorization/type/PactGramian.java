@@ -0,0 +1,212 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.type;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import eu.stratosphere.pact.common.type.Value;
+
+/*
+ * This Pact class is a partial sum (Y'Y, Y'r, n) of the normal equation of one key.
+ * A single rating is kept as its feature-vector, rating value and weight (rank-one form),
+ * so it only costs rank values on the wire until it is added to another partial sum.
+ * The weight scales its share of Y'Y, it is 1 but for the confidence corrections of implicit-feedback ALS.
+ * Y'Y is symmetric, only its lower triangle is stored, row by row.
+ */
+@SuppressWarnings("serial")
+public class PactGramian implements Value{
+
+	private int rank;
+	private boolean rankOne;
+	private double[] vector = new double[0];
+	private double rating;
+	private double weight;
+	private double[] packedGramian = new double[0];
+	private double[] rhs = new double[0];
+	private long count;
+
+	/*
+	 * Sets this partial sum to a single rating
+	 */
+	public void setRankOne(PactFactorVector featureVector, double rating){
+		setRankOne(featureVector, rating, 1);
+	}
+
+	/*
+	 * Sets this partial sum to a single weighted rating, weight * yy' and rating * y
+	 */
+	public void setRankOne(PactFactorVector featureVector, double rating, double weight){
+		ensureRank(featureVector.size());
+		for(int i = 0; i < rank; i ++){
+			vector[i] = featureVector.get(i);
+		}
+		this.rating = rating;
+		this.weight = weight;
+		this.count = 1;
+		this.rankOne = true;
+	}
+
+	/*
+	 * Sets this partial sum to zero
+	 */
+	public void clear(int rank){
+		ensureRank(rank);
+		Arrays.fill(packedGramian, 0);
+		Arrays.fill(rhs, 0);
+		count = 0;
+		rankOne = false;
+	}
+
+	/*
+	 * Adds another partial sum of the same key to this one
+	 */
+	public void add(PactGramian other){
+		if(rankOne){
+			expand();
+		}
+		if(other.rankOne){
+			double[] y = other.vector;
+			int index = 0;
+			for(int i = 0; i < rank; i ++){
+				double wyi = other.weight * y[i];
+				for(int j = 0; j <= i; j ++){
+					packedGramian[index ++] += wyi * y[j];
+				}
+				rhs[i] += y[i] * other.rating;
+			}
+		}else{
+			for(int i = 0; i < packedGramian.length; i ++){
+				packedGramian[i] += other.packedGramian[i];
+			}
+			for(int i = 0; i < rank; i ++){
+				rhs[i] += other.rhs[i];
+			}
+		}
+		count += other.count;
+	}
+
+	public int getRank(){
+		return rank;
+	}
+
+	public boolean isRankOne(){
+		return rankOne;
+	}
+
+	/*
+	 * @return the feature-vector of a rank-one partial sum
+	 */
+	public double[] getVector(){
+		return vector;
+	}
+
+	/*
+	 * @return the rating of a rank-one partial sum
+	 */
+	public double getRating(){
+		return rating;
+	}
+
+	/*
+	 * @return the weight of the feature-vector of a rank-one partial sum in Y'Y
+	 */
+	public double getWeight(){
+		return weight;
+	}
+
+	/*
+	 * @return the lower triangle of Y'Y row by row
+	 */
+	public double[] getPackedGramian(){
+		return packedGramian;
+	}
+
+	public double[] getRhs(){
+		return rhs;
+	}
+
+	public long getCount(){
+		return count;
+	}
+
+	private void expand(){
+		double[] y = vector;
+		double r = rating;
+		double w = weight;
+		clear(rank);
+		int index = 0;
+		for(int i = 0; i < rank; i ++){
+			for(int j = 0; j <= i; j ++){
+				packedGramian[index ++] = w * y[i] * y[j];
+			}
+			rhs[i] = y[i] * r;
+		}
+		count = 1;
+	}
+
+	private void ensureRank(int rank){
+		if(this.rank != rank){
+			this.rank = rank;
+			vector = new double[rank];
+			packedGramian = new double[rank * (rank + 1) / 2];
+			rhs = new double[rank];
+		}
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(rank);
+		out.writeBoolean(rankOne);
+		if(rankOne){
+			for(int i = 0; i < rank; i ++){
+				out.writeDouble(vector[i]);
+			}
+			out.writeDouble(rating);
+			out.writeDouble(weight);
+		}else{
+			for(int i = 0; i < packedGramian.length; i ++){
+				out.writeDouble(packedGramian[i]);
+			}
+			for(int i = 0; i < rank; i ++){
+				out.writeDouble(rhs[i]);
+			}
+			out.writeLong(count);
+		}
+	}
+
+	@Override
+	public void read(DataInput in) throws IOException {
+		ensureRank(in.readInt());
+		rankOne = in.readBoolean();
+		if(rankOne){
+			for(int i = 0; i < rank; i ++){
+				vector[i] = in.readDouble();
+			}
+			rating = in.readDouble();
+			weight = in.readDouble();
+			count = 1;
+		}else{
+			for(int i = 0; i < packedGramian.length; i ++){
+				packedGramian[i] = in.readDouble();
+			}
+			for(int i = 0; i < rank; i ++){
+				rhs[i] = in.readDouble();
+			}
+			count = in.readLong();
+		}
+	}
+
+	@Override
+	public String toString(){
+		return "PactGramian(rank " + rank + ", " + count + " ratings)";
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.type;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import eu.stratosphere.pact.common.type.Value;
+
+/*
+ * This Pact class is a growable list of primitive ints which could be passed between on stratosphere
+ */
+@SuppressWarnings("serial")
+public class PactIntArray implements Value{
+
+	private int size;
+	private int[] values = new int[8];
+
+	public void clear(){
+		size = 0;
+	}
+
+	public void add(int value){
+		if(size == values.length){
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size ++] = value;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public int get(int index){
+		return values[index];
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(size);
+		for(int i = 0; i < size; i ++){
+			out.writeInt(values[i]);
+		}
+	}
+
+	@Override
+	public void read(DataInput in) throws IOException {
+		size = in.readInt();
+		if(values.length < size){
+			values = new int[size];
+		}
+		for(int i = 0; i < size; i ++){
+			values[i] = in.readInt();
+		}
+	}
+
+	@Override
+	public String toString(){
+		return Arrays.toString(Arrays.copyOf(values, size));
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.type;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.TopKHeap;
+import eu.stratosphere.pact.common.type.Value;
+
+/*
+ * This Pact class is a list of (itemID, score) candidates of one user, in no particular order
+ */
+@SuppressWarnings("serial")
+public class PactScoredItems implements Value{
+
+	private int size;
+	private int[] ids = new int[16];
+	private float[] scores = new float[16];
+
+	/*
+	 * Copies the content of the heap
+	 */
+	public void set(TopKHeap heap){
+		size = heap.size();
+		ensureCapacity(size);
+		for(int i = 0; i < size; i ++){
+			ids[i] = heap.getID(i);
+			scores[i] = heap.getScore(i);
+		}
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public int getID(int index){
+		return ids[index];
+	}
+
+	public float getScore(int index){
+		return scores[index];
+	}
+
+	private void ensureCapacity(int capacity){
+		if(ids.length < capacity){
+			ids = new int[capacity];
+			scores = new float[capacity];
+		}
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(size);
+		for(int i = 0; i < size; i ++){
+			out.writeInt(ids[i]);
+			out.writeFloat(scores[i]);
+		}
+	}
+
+	@Override
+	public void read(DataInput in) throws IOException {
+		size = in.readInt();
+		ensureCapacity(size);
+		for(int i = 0; i < size; i ++){
+			ids[i] = in.readInt();
+			scores[i] = in.readFloat();
+		}
+	}
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.type;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.mahout.math.Sorting;
+import org.apache.mahout.math.Swapper;
+import org.apache.mahout.math.function.IntComparator;
+
+import eu.stratosphere.pact.common.type.Value;
+
+/*
+ * This Pact class holds all ratings of one partition block in a compressed row layout:
+ * the ratings of the i-th key are others[offsets[i]] .. others[offsets[i+1] - 1]
+ * with the ratings in the same positions, keys and others of each key are sorted ascending.
+ * A key is the ID that is solved in the block (userID in a user block, itemID in an item block),
+ * an other is the ID on the opposite side of a rating.
+ */
+@SuppressWarnings("serial")
+public class RatingBlock implements Value, RatingMatrix{
+
+	private int numKeys;
+	private int[] keys = new int[16];
+	private int[] offsets = new int[17];
+
+	private int numRatings;
+	private int[] ratingKeys = new int[16];
+	private int[] others = new int[16];
+	private float[] ratings = new float[16];
+
+	/*
+	 * Removes all ratings but keeps the allocated arrays
+	 */
+	public void clear(){
+		numKeys = 0;
+		numRatings = 0;
+	}
+
+	/*
+	 * Adds one rating, seal() has to be called after the last rating is added
+	 */
+	public void add(int key, int other, float rating){
+		if(numRatings == others.length){
+			int capacity = numRatings * 2;
+			ratingKeys = Arrays.copyOf(ratingKeys, capacity);
+			others = Arrays.copyOf(others, capacity);
+			ratings = Arrays.copyOf(ratings, capacity);
+		}
+		ratingKeys[numRatings] = key;
+		others[numRatings] = other;
+		ratings[numRatings] = rating;
+		numRatings ++;
+	}
+
+	/*
+	 * Sorts the added ratings by (key, other) and builds the key offsets
+	 */
+	public void seal(){
+		Sorting.quickSort(0, numRatings, new IntComparator() {
+			@Override
+			public int compare(int a, int b) {
+				if(ratingKeys[a] != ratingKeys[b]){
+					return ratingKeys[a] < ratingKeys[b] ? -1 : 1;
+				}
+				return others[a] < others[b] ? -1 : (others[a] == others[b] ? 0 : 1);
+			}
+		}, new Swapper() {
+			@Override
+			public void swap(int a, int b) {
+				int key = ratingKeys[a]; ratingKeys[a] = ratingKeys[b]; ratingKeys[b] = key;
+				int other = others[a]; others[a] = others[b]; others[b] = other;
+				float rating = ratings[a]; ratings[a] = ratings[b]; ratings[b] = rating;
+			}
+		});
+
+		numKeys = 0;
+		for(int i = 0; i < numRatings; i ++){
+			if(numKeys == 0 || keys[numKeys - 1] != ratingKeys[i]){
+				ensureKeyCapacity(numKeys + 1);
+				keys[numKeys] = ratingKeys[i];
+				offsets[numKeys] = i;
+				numKeys ++;
+			}
+		}
+		offsets[numKeys] = numRatings;
+	}
+
+	@Override
+	public int getNumKeys(){
+		return numKeys;
+	}
+
+	@Override
+	public int getNumRatings(){
+		return numRatings;
+	}
+
+	@Override
+	public int getKey(int keyIndex){
+		return keys[keyIndex];
+	}
+
+	/*
+	 * @return index of the first rating of the key
+	 */
+	@Override
+	public int getStart(int keyIndex){
+		return offsets[keyIndex];
+	}
+
+	/*
+	 * @return index after the last rating of the key
+	 */
+	@Override
+	public int getEnd(int keyIndex){
+		return offsets[keyIndex + 1];
+	}
+
+	/*
+	 * @return index of the key, or -1 if the key has no ratings in this block
+	 */
+	@Override
+	public int indexOfKey(int key){
+		int index = Arrays.binarySearch(keys, 0, numKeys, key);
+		return index >= 0 ? index : -1;
+	}
+
+	@Override
+	public int getOther(int ratingIndex){
+		return others[ratingIndex];
+	}
+
+	@Override
+	public float getRating(int ratingIndex){
+		return ratings[ratingIndex];
+	}
+
+	private void ensureKeyCapacity(int capacity){
+		if(keys.length < capacity){
+			int newCapacity = Math.max(capacity, keys.length * 2);
+			keys = Arrays.copyOf(keys, newCapacity);
+			offsets = Arrays.copyOf(offsets, newCapacity + 1);
+		}
+	}
+
+	private void ensureRatingCapacity(int capacity){
+		if(others.length < capacity){
+			ratingKeys = new int[capacity];
+			others = new int[capacity];
+			ratings = new float[capacity];
+		}
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(numKeys);
+		for(int i = 0; i < numKeys; i ++){
+			out.writeInt(keys[i]);
+			out.writeInt(offsets[i + 1] - offsets[i]);
+		}
+		out.writeInt(numRatings);
+		for(int i = 0; i < numRatings; i ++){
+			out.writeInt(others[i]);
+			out.writeFloat(ratings[i]);
+		}
+	}
+
+	@Override
+	public void read(DataInput in) throws IOException {
+		numKeys = in.readInt();
+		ensureKeyCapacity(numKeys);
+		offsets[0] = 0;
+		for(int i = 0; i < numKeys; i ++){
+			keys[i] = in.readInt();
+			offsets[i + 1] = offsets[i] + in.readInt();
+		}
+		numRatings = in.readInt();
+		ensureRatingCapacity(numRatings);
+		for(int i = 0; i < numRatings; i ++){
+			others[i] = in.readInt();
+			ratings[i] = in.readFloat();
+		}
+		for(int i = 0; i < numKeys; i ++){
+			Arrays.fill(ratingKeys, offsets[i], offsets[i + 1], keys[i]);
+		}
+	}
+
+	@Override
+	public String toString(){
+		return "RatingBlock(" + numKeys + " keys, " + numRatings + " ratings)";
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.type;
+
+/*
+ * This interface is the read access to ratings in a compressed row layout, sorted by key:
+ * the ratings of the i-th key are getOther(getStart(i)) .. getOther(getEnd(i) - 1).
+ * It is implemented on the heap by RatingBlock and memory-mapped by RatingStore.
+ */
+public interface RatingMatrix {
+
+	int getNumKeys();
+
+	int getNumRatings();
+
+	int getKey(int keyIndex);
+
+	/*
+	 * @return index of the first rating of the key
+	 */
+	int getStart(int keyIndex);
+
+	/*
+	 * @return index after the last rating of the key
+	 */
+	int getEnd(int keyIndex);
+
+	int getOther(int ratingIndex);
+
+	float getRating(int ratingIndex);
+
+	/*
+	 * @return index of the key, or -1 if the key has no ratings
+	 */
+	int indexOfKey(int key);
+
+}
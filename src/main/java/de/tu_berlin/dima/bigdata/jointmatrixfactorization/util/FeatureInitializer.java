@@ -0,0 +1,144 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.util;
+
+import java.io.IOException;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.dictionary.IdDictionary;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorModel;
+import eu.stratosphere.nephele.configuration.Configuration;
+
+/*
+ * This object gives the initial feature-vector of a user or item.
+ * Without a previous model every feature is a random value in [0, 1) drawn from a generator seeded by the seed and the ID,
+ * so the vector of an ID is the same in every run, on every worker and in every order of the IDs.
+ * With a previous model (warm start) the IDs of the previous model keep their feature-vector
+ * and only new IDs get a random one. The IDs are matched by external ID, so a warm start works across rebuilt dictionaries.
+ */
+public class FeatureInitializer {
+
+	public static final String SEED_PARAMETER = "als.init.seed";
+	public static final String WARM_START_PARAMETER = "als.init.warmstart";
+	public static final long DEFAULT_SEED = 1;
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private final int rank;
+	private final long seed;
+	private final FactorModel previous;
+	private final IdDictionary users;
+	private final IdDictionary items;
+	private long numWarm;
+	private long numNew;
+
+	/*
+	 * @param previous model to start from, or null
+	 * @param users dictionary of the current userIDs, or null if the IDs are external IDs
+	 * @param items dictionary of the current itemIDs, or null
+	 */
+	public FeatureInitializer(int rank, long seed, FactorModel previous, IdDictionary users, IdDictionary items){
+		if(previous != null && previous.getRank() != rank){
+			throw new IllegalArgumentException("The previous model has rank " + previous.getRank() + " instead of " + rank);
+		}
+		this.rank = rank;
+		this.seed = seed;
+		this.previous = previous;
+		this.users = users;
+		this.items = items;
+	}
+
+	/*
+	 * Reads the seed, the previous model and the dictionaries from the parameters of a stub
+	 */
+	public static FeatureInitializer configure(Configuration parameters, int rank) throws IOException{
+		long seed = Long.parseLong(parameters.getString(SEED_PARAMETER, String.valueOf(DEFAULT_SEED)));
+		String warmStartPath = parameters.getString(WARM_START_PARAMETER, null);
+		FactorModel previous = warmStartPath != null ? FactorModel.load(Util.localFile(warmStartPath)) : null;
+		String dictionaryPath = parameters.getString(IdDictionary.DICTIONARY_PATH_PARAMETER, null);
+		IdDictionary users = null;
+		IdDictionary items = null;
+		if(previous != null && dictionaryPath != null){
+			users = IdDictionary.loadUsers(Util.localFile(dictionaryPath));
+			items = IdDictionary.loadItems(Util.localFile(dictionaryPath));
+		}
+		return new FeatureInitializer(rank, seed, previous, users, items);
+	}
+
+	/*
+	 * @param vector array to store the feature-vector of the item in at offset
+	 * @return whether the vector is the one of the previous model
+	 */
+	public boolean initializeItem(int itemID, float[] vector, int offset){
+		if(previous != null){
+			int row = previous.itemRowOfExternal(items != null ? items.toExternal(itemID) : itemID);
+			if(row >= 0){
+				previous.getItemFactors().getRow(row, vector, offset);
+				numWarm ++;
+				return true;
+			}
+		}
+		random(seed, itemID, vector, offset);
+		numNew ++;
+		return false;
+	}
+
+	/*
+	 * Users get another random stream than the items of the same ID
+	 */
+	public boolean initializeUser(int userID, float[] vector, int offset){
+		if(previous != null){
+			int row = previous.userRowOfExternal(users != null ? users.toExternal(userID) : userID);
+			if(row >= 0){
+				previous.getUserFactors().getRow(row, vector, offset);
+				numWarm ++;
+				return true;
+			}
+		}
+		random(~seed, userID, vector, offset);
+		numNew ++;
+		return false;
+	}
+
+	/*
+	 * @return number of feature-vectors taken from the previous model
+	 */
+	public long getNumWarm(){
+		return numWarm;
+	}
+
+	/*
+	 * @return number of random feature-vectors
+	 */
+	public long getNumNew(){
+		return numNew;
+	}
+
+	public void close() throws IOException{
+		if(previous != null){
+			previous.close();
+		}
+	}
+
+	/*
+	 * SplitMix64 stream of the ID, 24 random bits per feature like Random.nextFloat()
+	 */
+	private void random(long seed, int id, float[] vector, int offset){
+		long state = mix(seed + id * GOLDEN_GAMMA);
+		for(int i = 0; i < rank; i ++){
+			state += GOLDEN_GAMMA;
+			vector[offset + i] = (mix(state) >>> 40) / (float) (1 << 24);
+		}
+	}
+
+	private static long mix(long z){
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * This object parses the optional "key=value" job parameters which follow the positional
+ * arguments of a plan, e.g. "iterations=20 threshold=0.001"
+ */
+public class PlanOptions{
+
+	private final Map<String, String> options = new HashMap<String, String>();
+
+	/*
+	 * @param args all plan arguments, arguments without '=' are ignored
+	 */
+	public PlanOptions(String... args){
+		for(String arg : args){
+			int split = arg.indexOf('=');
+			if(split > 0){
+				options.put(arg.substring(0, split).trim(), arg.substring(split + 1).trim());
+			}
+		}
+	}
+
+	public boolean contains(String key){
+		return options.containsKey(key);
+	}
+
+	public String getString(String key, String defaultValue){
+		String value = options.get(key);
+		return value != null ? value : defaultValue;
+	}
+
+	public int getInt(String key, int defaultValue){
+		String value = options.get(key);
+		return value != null ? Integer.parseInt(value) : defaultValue;
+	}
+
+	public double getDouble(String key, double defaultValue){
+		String value = options.get(key);
+		return value != null ? Double.parseDouble(value) : defaultValue;
+	}
+
+	public boolean getBoolean(String key, boolean defaultValue){
+		String value = options.get(key);
+		return value != null ? Boolean.parseBoolean(value) : defaultValue;
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.util;
+
+/*
+ * This object keeps the K best scored IDs in a bounded min-heap of primitive arrays,
+ * the worst kept score is at the root, so a candidate is rejected with a single comparison
+ */
+public class TopKHeap{
+
+	private final int k;
+	private final int[] ids;
+	private final float[] scores;
+	private int size;
+
+	public TopKHeap(int k){
+		this.k = k;
+		ids = new int[k];
+		scores = new float[k];
+	}
+
+	public void clear(){
+		size = 0;
+	}
+
+	public int capacity(){
+		return k;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	/*
+	 * @return whether a candidate with this score would be kept
+	 */
+	public boolean accepts(float score){
+		return size < k || (k > 0 && score > scores[0]);
+	}
+
+	public void offer(int id, float score){
+		if(size < k){
+			int child = size ++;
+			while(child > 0){
+				int parent = (child - 1) >>> 1;
+				if(scores[parent] <= score){
+					break;
+				}
+				ids[child] = ids[parent];
+				scores[child] = scores[parent];
+				child = parent;
+			}
+			ids[child] = id;
+			scores[child] = score;
+		}else if(k > 0 && score > scores[0]){
+			siftDown(id, score, size);
+		}
+	}
+
+	/*
+	 * Sorts the kept IDs by descending score, afterwards getID(0) is the best one.
+	 * The heap has to be cleared before it is offered to again
+	 */
+	public void sortDescending(){
+		for(int end = size - 1; end > 0; end --){
+			int id = ids[end];
+			float score = scores[end];
+			ids[end] = ids[0];
+			scores[end] = scores[0];
+			siftDown(id, score, end);
+		}
+	}
+
+	public int getID(int index){
+		return ids[index];
+	}
+
+	public float getScore(int index){
+		return scores[index];
+	}
+
+	/*
+	 * Places the entry at the root of the heap [0, end) and moves it down to its position
+	 */
+	private void siftDown(int id, float score, int end){
+		int parent = 0;
+		while(true){
+			int child = 2 * parent + 1;
+			if(child >= end){
+				break;
+			}
+			if(child + 1 < end && scores[child + 1] < scores[child]){
+				child ++;
+			}
+			if(scores[child] >= score){
+				break;
+			}
+			ids[parent] = ids[child];
+			scores[parent] = scores[child];
+			parent = child;
+		}
+		ids[parent] = id;
+		scores[parent] = score;
+	}
+
+}
@@ -6,11 +6,13 @@
  */
 package de.tu_berlin.dima.bigdata.jointmatrixfactorization.util;
 
-import java.util.regex.Pattern;
+import java.io.File;
+import java.net.URI;
 
-import com.google.common.primitives.Longs;
+import org.apache.log4j.PropertyConfigurator;
 
 import eu.stratosphere.nephele.client.JobExecutionResult;
+import eu.stratosphere.nephele.configuration.Configuration;
 import eu.stratosphere.pact.client.LocalExecutor;
 import eu.stratosphere.pact.common.plan.Plan;
 
@@ -21,47 +23,39 @@ public class Util{
 	public static final int USER_ID_POS = 0;
 	public static final int ITEM_ID_POS = 1;
 	public static final int RATING_POS = 2;
+	// positions of the partition blocks of a rating in blocked ALS
+	public static final int USER_BLOCK_POS = 3;
+	public static final int ITEM_BLOCK_POS = 4;
+	// positions of the hot key salts of a rating in partial Gramian ALS
+	public static final int USER_SALT_POS = 3;
+	public static final int ITEM_SALT_POS = 4;
 	
 	public static final double lambda = 0.1;
 	public static final int numFeatures = 10;
+	// weight of a rating in the confidence 1 + alpha * rating of implicit-feedback ALS
+	public static final double alpha = 40;
+	/** Parameter of the stubs for the rank of the feature-vectors, numFeatures by default */
+	public static final String RANK_PARAMETER = "als.rank";
+	/** Parameter of the solving stubs for the regularization, lambda by default */
+	public static final String LAMBDA_PARAMETER = "als.lambda";
+	/** Parameter of the implicit-feedback stubs for the confidence weight, alpha by default */
+	public static final String ALPHA_PARAMETER = "als.implicit.alpha";
 	
-	//100k data set
-	public static final int numUsers = 943;
-	public static final int numItems = 1682;
-	public static final int maxUserID = 943;
-	public static final int maxItemID = 1682;
-	/** Standard delimiter of textual preference data */
-	private static final Pattern PREFERENCE_TOKEN_DELIMITER = Pattern
-			.compile("[\t,]");
-	
-//	//10m data set
-//	public static final int numUsers = 71567;
-//	public static final int numItems = 10681;
-//	// maxUserID and maxItemID is for loop searching of valid user and item
-//	//TODO use a ID map can be more efficient
-//	public static final int maxUserID = 71567;
-//	public static final int maxItemID = 65133;
-//	/** Standard delimiter of textual preference data */
-//	private static final Pattern PREFERENCE_TOKEN_DELIMITER = Pattern
-//			.compile("::");
-
-
-
 	private Util() {
 	}
 
 	/**
-	 * Splits a preference data line into string tokens
+	 * Maps a userID or itemID to its partition block in blocked ALS
 	 */
-	public static String[] splitPrefTokens(CharSequence line) {
-		return PREFERENCE_TOKEN_DELIMITER.split(line);
+	public static int blockOf(int id, int numBlocks) {
+		return (0x7FFFFFFF & id) % numBlocks;
 	}
-
+	
 	/**
-	 * Maps a long to an int
+	 * @return the regularization a solving stub is configured with
 	 */
-	public static int idToIndex(long id) {
-		return 0x7FFFFFFF & Longs.hashCode(id);
+	public static double lambda(Configuration parameters) {
+		return Double.parseDouble(parameters.getString(LAMBDA_PARAMETER, String.valueOf(lambda)));
 	}
 	
 	public static int readID(String token) {
@@ -72,12 +66,15 @@ public class Util{
 		return Float.parseFloat(token);
 	}
 
-	public static int readID(String token, boolean usesLongIDs) {
-		return usesLongIDs ? idToIndex(Long.parseLong(token)) : Integer
-				.parseInt(token);
+	/**
+	 * @return the file of a local path or file URI, as given to the plan
+	 */
+	public static File localFile(String path){
+		return path.startsWith("file:") ? new File(URI.create(path)) : new File(path);
 	}
-	
+
 	public static void executePlan(Plan toExecute) throws Exception {
+		PropertyConfigurator.configure("log4j.properties");
 		LocalExecutor executor = new LocalExecutor();
 		executor.start();
 		JobExecutionResult runtime = executor.executePlan(toExecute);
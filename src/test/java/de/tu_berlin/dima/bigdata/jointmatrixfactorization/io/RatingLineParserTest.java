@@ -0,0 +1,85 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.io;
+
+import java.io.UnsupportedEncodingException;
+
+import junit.framework.TestCase;
+
+/*
+ * Checks the ratings and the pairs the RatingLineParser reads from lines of every separator
+ */
+public class RatingLineParserTest extends TestCase {
+
+	private final RatingLineParser parser = new RatingLineParser();
+
+	/*
+	 * Parses a line in the middle of a buffer, so the parser has to respect the bounds of the line
+	 */
+	private boolean parse(String line, boolean pair) throws UnsupportedEncodingException{
+		byte[] bytes = ("9\t9\t9\n" + line + "\n7\t7\t7").getBytes("US-ASCII");
+		int offset = 6;
+		int numBytes = line.length();
+		return pair ? parser.parsePair(bytes, offset, numBytes) : parser.parse(bytes, offset, numBytes);
+	}
+
+	private void assertRating(String line, long userID, long itemID, float rating) throws UnsupportedEncodingException{
+		assertTrue(line, parse(line, false));
+		assertEquals(userID, parser.getUserID());
+		assertEquals(itemID, parser.getItemID());
+		assertEquals(rating, parser.getRating(), 0f);
+	}
+
+	private void assertPair(String line, long userID, long itemID) throws UnsupportedEncodingException{
+		assertTrue(line, parse(line, true));
+		assertEquals(userID, parser.getUserID());
+		assertEquals(itemID, parser.getItemID());
+		assertTrue(line, Float.isNaN(parser.getRating()));
+	}
+
+	public void testRatingsOfEverySeparator() throws UnsupportedEncodingException{
+		assertRating("196\t242\t3\t881250949", 196, 242, 3f);
+		assertRating("1::1193::5::978300760", 1, 1193, 5f);
+		assertRating("12,34,4.5", 12, 34, 4.5f);
+		assertRating("12 34 -0.25", 12, 34, -0.25f);
+		assertRating("12\t34\t3.5\r", 12, 34, 3.5f);
+		assertRating("12\t34\t1e2", 12, 34, 100f);
+		assertRating("-5\t8589934592\t2", -5, 8589934592L, 2f);
+	}
+
+	public void testMalformedRatings() throws UnsupportedEncodingException{
+		assertFalse(parse("", false));
+		assertFalse(parse("12", false));
+		assertFalse(parse("12\t34", false));
+		assertFalse(parse("12\t34\t", false));
+		assertFalse(parse("12\t34\tx", false));
+		assertFalse(parse("a\t34\t3", false));
+		assertFalse(parse("12;34;3", false));
+		assertFalse(parse("99999999999999999999\t34\t3", false));
+	}
+
+	public void testPairs() throws UnsupportedEncodingException{
+		assertPair("12\t34", 12, 34);
+		assertPair("12\t34\r", 12, 34);
+		assertTrue(parse("12\t34\t4", true));
+		assertEquals(4f, parser.getRating(), 0f);
+		assertFalse(parse("12", true));
+		assertFalse(parse("12\t34\tx", true));
+	}
+
+	public void testPairsWithATrailingSeparator() throws UnsupportedEncodingException{
+		assertPair("12\t34\t", 12, 34);
+		assertPair("12 34 ", 12, 34);
+		assertPair("12,34,", 12, 34);
+		assertPair("12::34::", 12, 34);
+		assertPair("12\t34\t  \t", 12, 34);
+		assertPair("12 34 \r", 12, 34);
+		// a separator and something else than a rating is still malformed
+		assertFalse(parse("12\t34\t x", true));
+	}
+
+}
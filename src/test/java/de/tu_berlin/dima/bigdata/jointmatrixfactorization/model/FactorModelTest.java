@@ -0,0 +1,141 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.model;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/*
+ * Checks that a model written by the ModelWriter is loaded by the FactorModel
+ * with the same header, IDs, feature-vectors and external IDs
+ */
+public class FactorModelTest extends TestCase {
+
+	private static final int RANK = 5;
+
+	private File file;
+
+	@Override
+	protected void setUp() throws IOException{
+		file = File.createTempFile("factors", FactorModel.FILE_EXTENSION);
+	}
+
+	@Override
+	protected void tearDown(){
+		file.delete();
+	}
+
+	public void testRoundTrip() throws IOException{
+		Random random = new Random(42);
+		HeapFactorMatrix userFactors = RandomModel.factors(4, RANK, random);
+		HeapFactorMatrix itemFactors = RandomModel.factors(3, RANK, random);
+		int[] userIDs = {3, 7, 11, 40};
+		// the rows of the users are in another order than their IDs
+		int[] userRows = {2, 0, 3, 1};
+		int[] itemIDs = {1, 2, 9};
+
+		ModelWriter writer = new ModelWriter(RANK, 0.065, 15);
+		writer.setUsers(userIDs, userFactors, userRows);
+		writer.setItems(itemIDs, itemFactors, null);
+		writer.write(file);
+
+		FactorModel model = FactorModel.load(file);
+		try{
+			assertEquals(RANK, model.getRank());
+			assertEquals(4, model.getNumUsers());
+			assertEquals(3, model.getNumItems());
+			assertEquals(15, model.getIterations());
+			assertEquals(0.065, model.getLambda(), 0);
+			assertFalse(model.hasDictionary());
+
+			for(int row = 0; row < userIDs.length; row ++){
+				assertEquals(userIDs[row], model.getUserID(row));
+				assertEquals(row, model.userRow(userIDs[row]));
+				assertEquals(userIDs[row], model.getExternalUserID(row));
+				assertRow(userFactors, userRows[row], model.getUserFactors(), row);
+			}
+			for(int row = 0; row < itemIDs.length; row ++){
+				assertEquals(itemIDs[row], model.getItemID(row));
+				assertEquals(row, model.itemRow(itemIDs[row]));
+				assertRow(itemFactors, row, model.getItemFactors(), row);
+			}
+			assertEquals(-1, model.userRow(4));
+			assertEquals(-1, model.userRow(41));
+			assertEquals(-1, model.itemRow(0));
+			assertEquals(2, model.userRowOfExternal(11));
+			assertEquals(-1, model.userRowOfExternal(1L << 40));
+		}finally{
+			model.close();
+		}
+	}
+
+	public void testExternalIDs() throws IOException{
+		Random random = new Random(7);
+		ModelWriter writer = new ModelWriter(RANK, 0.1, 3);
+		writer.setUsers(new int[] {0, 1, 2}, RandomModel.factors(3, RANK, random), null);
+		writer.setItems(new int[] {0, 1}, RandomModel.factors(2, RANK, random), null);
+		writer.setExternalIDs(new long[] {-5, 100, 1L << 40}, new long[] {17, 18});
+		writer.write(file);
+
+		FactorModel model = FactorModel.load(file);
+		try{
+			assertTrue(model.hasDictionary());
+			assertEquals(1L << 40, model.getExternalUserID(2));
+			assertEquals(-5, model.getExternalUserID(0));
+			assertEquals(18, model.getExternalItemID(1));
+			assertEquals(0, model.userRowOfExternal(-5));
+			assertEquals(1, model.userRowOfExternal(100));
+			assertEquals(2, model.userRowOfExternal(1L << 40));
+			assertEquals(-1, model.userRowOfExternal(101));
+			assertEquals(0, model.itemRowOfExternal(17));
+			assertEquals(-1, model.itemRowOfExternal(0));
+		}finally{
+			model.close();
+		}
+	}
+
+	public void testUnknownIterations() throws IOException{
+		Random random = new Random(3);
+		ModelWriter writer = new ModelWriter(RANK, 0.1, FactorModel.UNKNOWN_ITERATIONS);
+		writer.setUsers(new int[] {1}, RandomModel.factors(1, RANK, random), null);
+		writer.setItems(new int[] {1}, RandomModel.factors(1, RANK, random), null);
+		writer.write(file);
+
+		FactorModel model = FactorModel.load(file);
+		try{
+			assertEquals(FactorModel.UNKNOWN_ITERATIONS, model.getIterations());
+			assertTrue(model.toString().contains("unknown iterations"));
+		}finally{
+			model.close();
+		}
+	}
+
+	public void testLoadRejectsOtherFile() throws IOException{
+		FileOutputStream out = new FileOutputStream(file);
+		try{
+			out.write(new byte[FactorModel.HEADER_SIZE]);
+		}finally{
+			out.close();
+		}
+		try{
+			FactorModel.load(file).close();
+			fail("the file has no model header");
+		}catch(IOException expected){
+		}
+	}
+
+	private static void assertRow(FactorMatrix expected, int expectedRow, FactorMatrix actual, int actualRow){
+		for(int feature = 0; feature < RANK; feature ++){
+			assertEquals(expected.get(expectedRow, feature), actual.get(actualRow, feature), 0f);
+		}
+	}
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import junit.framework.TestCase;
+
+/*
+ * Checks that the clock of a MappedFactorMatrix drops pages beyond its budget
+ * and that the values written to a dropped page are in the file afterwards
+ */
+public class MappedFactorMatrixTest extends TestCase {
+
+	private static final int RANK = 4;
+	private static final int NUM_ROWS = 1000;
+	// a budget of 40 rows, so pages of 10 rows and 4 of the 100 pages are mapped at a time
+	private static final long RESIDENT_BYTES = 4L * RANK * 40;
+
+	private File file;
+
+	@Override
+	protected void setUp() throws IOException{
+		file = File.createTempFile("mapped", ".factors");
+	}
+
+	@Override
+	protected void tearDown(){
+		file.delete();
+	}
+
+	private static float value(int row, int feature){
+		return row * 10 + feature + 0.5f;
+	}
+
+	private static void fill(FactorMatrix matrix){
+		float[] vector = new float[RANK];
+		for(int row = 0; row < NUM_ROWS; row ++){
+			for(int feature = 0; feature < RANK; feature ++){
+				vector[feature] = value(row, feature);
+			}
+			matrix.setRow(row, vector, 0);
+		}
+	}
+
+	private static void assertRows(FactorMatrix matrix){
+		float[] vector = new float[RANK];
+		for(int row = 0; row < NUM_ROWS; row ++){
+			matrix.getRow(row, vector, 0);
+			for(int feature = 0; feature < RANK; feature ++){
+				assertEquals("row " + row, value(row, feature), vector[feature], 0f);
+			}
+		}
+	}
+
+	public void testEvictedPagesAreWrittenBack() throws IOException{
+		MappedFactorMatrix matrix = MappedFactorMatrix.create(file, NUM_ROWS, RANK, RESIDENT_BYTES);
+		try{
+			fill(matrix);
+			long mappings = matrix.getNumMappings();
+			assertEquals(100, mappings);
+			// the first pages were dropped while the last ones were written, so they are mapped again
+			assertRows(matrix);
+			assertTrue(matrix.getNumMappings() >= 2 * mappings);
+		}finally{
+			matrix.close();
+		}
+
+		ByteBuffer bytes = ByteBuffer.allocate(4 * NUM_ROWS * RANK).order(ByteOrder.LITTLE_ENDIAN);
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			assertEquals(bytes.capacity(), raf.length());
+			raf.readFully(bytes.array());
+		}finally{
+			raf.close();
+		}
+		for(int row = 0; row < NUM_ROWS; row ++){
+			for(int feature = 0; feature < RANK; feature ++){
+				assertEquals(value(row, feature), bytes.getFloat(4 * (row * RANK + feature)), 0f);
+			}
+		}
+	}
+
+	public void testReopenedMatrixHasTheWrittenRows() throws IOException{
+		MappedFactorMatrix matrix = MappedFactorMatrix.create(file, NUM_ROWS, RANK, RESIDENT_BYTES);
+		try{
+			fill(matrix);
+			matrix.axpy(7, 2f, new float[] {1f, 1f, 1f, 1f}, 0);
+		}finally{
+			matrix.close();
+		}
+
+		MappedFactorMatrix reopened = MappedFactorMatrix.open(file, 0, NUM_ROWS, RANK, RESIDENT_BYTES, true);
+		try{
+			for(int feature = 0; feature < RANK; feature ++){
+				assertEquals(value(7, feature) + 2f, reopened.get(7, feature), 0f);
+			}
+			assertEquals(value(8, 0) + value(8, 1), reopened.dot(8, new float[] {1f, 1f, 0f, 0f}, 0), 1e-6);
+			assertEquals(value(999, 3), reopened.get(999, 3), 0f);
+		}finally{
+			reopened.close();
+		}
+	}
+
+	public void testBudgetOfTheWholeMatrixMapsEveryPageOnce() throws IOException{
+		for(int numRows : new int[] {9, 13, 101}){
+			MappedFactorMatrix matrix = MappedFactorMatrix.create(file, numRows, 3, 4L * numRows * 3);
+			try{
+				for(int row = 0; row < numRows; row ++){
+					matrix.set(row, 2, row);
+				}
+				long mappings = matrix.getNumMappings();
+				for(int pass = 0; pass < 2; pass ++){
+					for(int row = 0; row < numRows; row ++){
+						assertEquals((float) row, matrix.get(row, 2), 0f);
+					}
+				}
+				assertEquals(numRows + " rows", mappings, matrix.getNumMappings());
+			}finally{
+				matrix.close();
+			}
+		}
+	}
+
+	public void testOpenRejectsShortFile(){
+		try{
+			MappedFactorMatrix.open(file, 0, NUM_ROWS, RANK, RESIDENT_BYTES, true).close();
+			fail("the file is empty");
+		}catch(IOException expected){
+		}
+	}
+
+}
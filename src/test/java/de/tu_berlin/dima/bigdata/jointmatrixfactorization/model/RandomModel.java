@@ -0,0 +1,71 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/*
+ * Writes model files with random feature-vectors for the tests,
+ * the userIDs are 3 * row + 1 and the itemIDs are 2 * row + 5
+ */
+public class RandomModel {
+
+	public static final double LAMBDA = 0.065;
+	public static final int ITERATIONS = 10;
+
+	public static int userID(int row){
+		return 3 * row + 1;
+	}
+
+	public static int itemID(int row){
+		return 2 * row + 5;
+	}
+
+	public static HeapFactorMatrix factors(int numRows, int rank, Random random){
+		HeapFactorMatrix factors = new HeapFactorMatrix(numRows, rank);
+		for(int row = 0; row < numRows; row ++){
+			for(int feature = 0; feature < rank; feature ++){
+				factors.set(row, feature, (float) random.nextGaussian());
+			}
+		}
+		return factors;
+	}
+
+	/*
+	 * Writes a model with random feature-vectors to a file and loads it
+	 */
+	public static FactorModel write(File file, int rank, int numUsers, int numItems, long seed) throws IOException{
+		Random random = new Random(seed);
+		int[] userIDs = new int[numUsers];
+		for(int row = 0; row < numUsers; row ++){
+			userIDs[row] = userID(row);
+		}
+		int[] itemIDs = new int[numItems];
+		for(int row = 0; row < numItems; row ++){
+			itemIDs[row] = itemID(row);
+		}
+		ModelWriter writer = new ModelWriter(rank, LAMBDA, ITERATIONS);
+		writer.setUsers(userIDs, factors(numUsers, rank, random), null);
+		writer.setItems(itemIDs, factors(numItems, rank, random), null);
+		writer.write(file);
+		return FactorModel.load(file);
+	}
+
+	/*
+	 * @return inner product of a feature-vector and a row of factors
+	 */
+	public static double dot(float[] vector, FactorMatrix factors, int row){
+		double dot = 0;
+		for(int feature = 0; feature < vector.length; feature ++){
+			dot += vector[feature] * factors.get(row, feature);
+		}
+		return dot;
+	}
+
+}
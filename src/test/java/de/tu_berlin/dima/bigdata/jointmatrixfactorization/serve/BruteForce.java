@@ -0,0 +1,81 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.serve;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorMatrix;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorModel;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.RandomModel;
+
+/*
+ * The exact top-K of a feature-vector, found by scoring every item of a model in double precision
+ */
+public class BruteForce {
+
+	private final int[] itemIDs;
+	private final double[] scores;
+
+	/*
+	 * @param excluded itemIDs which are not recommended, or null
+	 */
+	public BruteForce(FactorModel model, float[] vector, Set<Integer> excluded){
+		FactorMatrix items = model.getItemFactors();
+		int numItems = model.getNumItems();
+		final double[] all = new double[numItems];
+		Integer[] rows = new Integer[numItems];
+		int numRows = 0;
+		for(int row = 0; row < numItems; row ++){
+			all[row] = RandomModel.dot(vector, items, row);
+			if(excluded == null || !excluded.contains(model.getItemID(row))){
+				rows[numRows ++] = row;
+			}
+		}
+		Arrays.sort(rows, 0, numRows, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(all[b], all[a]);
+			}
+		});
+		itemIDs = new int[numRows];
+		scores = new double[numRows];
+		for(int i = 0; i < numRows; i ++){
+			itemIDs[i] = model.getItemID(rows[i]);
+			scores[i] = all[rows[i]];
+		}
+	}
+
+	/*
+	 * @return itemID of rank i, best first
+	 */
+	public int getID(int i){
+		return itemIDs[i];
+	}
+
+	public double getScore(int i){
+		return scores[i];
+	}
+
+	/*
+	 * @return how many of the best k itemIDs are among the given ones
+	 */
+	public int hits(int k, int[] ids, int numIDs){
+		int hits = 0;
+		for(int i = 0; i < k; i ++){
+			for(int j = 0; j < numIDs; j ++){
+				if(ids[j] == itemIDs[i]){
+					hits ++;
+					break;
+				}
+			}
+		}
+		return hits;
+	}
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.serve;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorModel;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.RandomModel;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.TopKHeap;
+
+/*
+ * Checks the recall of the HnswIndex against the exact top-K of every user
+ */
+public class HnswIndexTest extends TestCase {
+
+	private static final int RANK = 8;
+	private static final int NUM_USERS = 100;
+	private static final int NUM_ITEMS = 2000;
+	private static final int K = 10;
+	private static final double MIN_RECALL = 0.9;
+
+	private File file;
+	private FactorModel model;
+
+	@Override
+	protected void setUp() throws IOException{
+		file = File.createTempFile("hnsw", FactorModel.FILE_EXTENSION);
+		model = RandomModel.write(file, RANK, NUM_USERS, NUM_ITEMS, 5);
+	}
+
+	@Override
+	protected void tearDown() throws IOException{
+		model.close();
+		file.delete();
+		HnswIndex.indexFileOf(file).delete();
+	}
+
+	/*
+	 * @return recall@K averaged over all users, and checks that every returned score is exact
+	 */
+	private double recall(HnswIndex index){
+		TopKHeap result = new TopKHeap(K);
+		float[] vector = new float[RANK];
+		int[] ids = new int[K];
+		long hits = 0;
+		for(int row = 0; row < NUM_USERS; row ++){
+			model.getUserFactors().getRow(row, vector, 0);
+			index.recommend(RandomModel.userID(row), result);
+			assertEquals(K, result.size());
+			for(int i = 0; i < K; i ++){
+				ids[i] = result.getID(i);
+				assertEquals(RandomModel.dot(vector, model.getItemFactors(), model.itemRow(ids[i])), result.getScore(i), 1e-4);
+				if(i > 0){
+					assertTrue(result.getScore(i - 1) >= result.getScore(i));
+				}
+			}
+			hits += new BruteForce(model, vector, null).hits(K, ids, K);
+		}
+		return hits / (double) (NUM_USERS * K);
+	}
+
+	public void testRecall() throws IOException{
+		HnswIndex index = HnswIndex.build(model, HnswIndex.DEFAULT_M, HnswIndex.DEFAULT_EF_CONSTRUCTION, 1, 1);
+		index.setEf(HnswIndex.DEFAULT_EF);
+		double recall = recall(index);
+		assertTrue("recall@" + K + " " + recall, recall >= MIN_RECALL);
+	}
+
+	public void testRecallOfAParallelBuild() throws IOException{
+		HnswIndex index = HnswIndex.build(model, HnswIndex.DEFAULT_M, HnswIndex.DEFAULT_EF_CONSTRUCTION, 1, 4);
+		index.setEf(HnswIndex.DEFAULT_EF);
+		double recall = recall(index);
+		assertTrue("recall@" + K + " " + recall, recall >= MIN_RECALL);
+	}
+
+	public void testMoreCandidatesDoNotLowerTheRecall() throws IOException{
+		HnswIndex index = HnswIndex.build(model, 8, 50, 2, 1);
+		index.setEf(K);
+		double few = recall(index);
+		index.setEf(400);
+		double many = recall(index);
+		assertTrue(few + " with ef " + K + ", " + many + " with ef 400", many >= few);
+		assertTrue("recall@" + K + " " + many, many >= MIN_RECALL);
+	}
+
+	public void testLoadedIndexFindsTheSameItems() throws IOException{
+		HnswIndex built = HnswIndex.build(model, HnswIndex.DEFAULT_M, HnswIndex.DEFAULT_EF_CONSTRUCTION, 3, 2);
+		File indexFile = HnswIndex.indexFileOf(file);
+		built.write(indexFile);
+		HnswIndex loaded = HnswIndex.load(indexFile, model);
+		loaded.setEf(built.getEf());
+
+		TopKHeap expected = new TopKHeap(K);
+		TopKHeap actual = new TopKHeap(K);
+		for(int row = 0; row < NUM_USERS; row ++){
+			built.recommend(RandomModel.userID(row), expected);
+			loaded.recommend(RandomModel.userID(row), actual);
+			assertEquals(expected.size(), actual.size());
+			for(int i = 0; i < expected.size(); i ++){
+				assertEquals(expected.getID(i), actual.getID(i));
+				assertEquals(expected.getScore(i), actual.getScore(i), 0f);
+			}
+		}
+		loaded.recommend(0, actual);
+		assertEquals(0, actual.size());
+	}
+
+}
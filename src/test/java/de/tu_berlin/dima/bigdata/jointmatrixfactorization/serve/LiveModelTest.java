@@ -0,0 +1,274 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.serve;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorModel;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.ModelWriter;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.RandomModel;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.TopKHeap;
+
+/*
+ * Checks that a published update is visible to the readers of the next snapshot
+ * and that a snapshot never changes once it is taken
+ */
+public class LiveModelTest extends TestCase {
+
+	private static final int RANK = 4;
+	// more users than one page of the live model, so updates touch several pages
+	private static final int NUM_USERS = 2500;
+	private static final int NUM_ITEMS = 300;
+
+	private File file;
+	private File written;
+	private FactorModel model;
+	private LiveModel live;
+
+	@Override
+	protected void setUp() throws IOException{
+		file = File.createTempFile("live", FactorModel.FILE_EXTENSION);
+		written = File.createTempFile("snapshot", FactorModel.FILE_EXTENSION);
+		model = RandomModel.write(file, RANK, NUM_USERS, NUM_ITEMS, 23);
+		live = new LiveModel(model);
+	}
+
+	@Override
+	protected void tearDown() throws IOException{
+		model.close();
+		file.delete();
+		written.delete();
+	}
+
+	private static float[] vector(float value){
+		float[] vector = new float[RANK];
+		Arrays.fill(vector, value);
+		return vector;
+	}
+
+	public void testSnapshotOfTheLoadedModel(){
+		LiveModel.Snapshot snapshot = live.getSnapshot();
+		assertEquals(0, snapshot.getVersion());
+		assertEquals(NUM_USERS, snapshot.getNumUsers());
+		assertEquals(NUM_ITEMS, snapshot.getNumItems());
+		float[] user = snapshot.getUserVector(RandomModel.userID(2000));
+		for(int feature = 0; feature < RANK; feature ++){
+			assertEquals(model.getUserFactors().get(2000, feature), user[feature], 0f);
+		}
+		assertNull(snapshot.getUserVector(0));
+		assertTrue(Double.isNaN(snapshot.predict(0, RandomModel.itemID(0))));
+	}
+
+	public void testPublishedUpdateIsVisibleToANewReader(){
+		int userID = RandomModel.userID(5);
+		int itemID = RandomModel.itemID(7);
+		LiveModel.Snapshot before = live.getSnapshot();
+		float[] oldUser = before.getUserVector(userID).clone();
+		float[] oldItem = before.getItemVector(itemID).clone();
+		double oldPrediction = before.predict(userID, itemID);
+
+		LiveModel.Update update = live.beginUpdate();
+		update.setUserVector(userID, vector(1f));
+		update.setItemVector(itemID, vector(0.5f));
+		assertEquals(1f, update.getUserVector(userID)[0], 0f);
+		// nothing is visible before the update is published
+		assertSame(before, live.getSnapshot());
+		assertTrue(Arrays.equals(oldUser, live.getSnapshot().getUserVector(userID)));
+
+		LiveModel.Snapshot after = update.publish();
+		assertSame(after, live.getSnapshot());
+		assertEquals(1, after.getVersion());
+		assertTrue(Arrays.equals(vector(1f), after.getUserVector(userID)));
+		assertTrue(Arrays.equals(vector(0.5f), after.getItemVector(itemID)));
+		assertEquals(RANK * 0.5, after.predict(userID, itemID), 1e-6);
+		// the rows of the other users and items are the ones of the model
+		assertSame(before.getUserVector(RandomModel.userID(6)), after.getUserVector(RandomModel.userID(6)));
+
+		// the reader of the old snapshot still sees the old model
+		assertTrue(Arrays.equals(oldUser, before.getUserVector(userID)));
+		assertTrue(Arrays.equals(oldItem, before.getItemVector(itemID)));
+		assertEquals(oldPrediction, before.predict(userID, itemID), 0);
+	}
+
+	public void testAppendedKeysAreVisibleToNewReadersOnly(){
+		int newUser = 2;
+		int newItem = 4;
+		LiveModel.Snapshot before = live.getSnapshot();
+
+		LiveModel.Update update = live.beginUpdate();
+		update.setUserVector(newUser, vector(2f));
+		update.setItemVector(newItem, vector(3f));
+		LiveModel.Snapshot after = update.publish();
+
+		assertEquals(NUM_USERS + 1, after.getNumUsers());
+		assertEquals(NUM_ITEMS + 1, after.getNumItems());
+		assertEquals(RANK * 6.0, after.predict(newUser, newItem), 1e-6);
+		TopKHeap result = new TopKHeap(1);
+		after.recommend(newUser, result);
+		assertEquals(newItem, result.getID(0));
+
+		assertEquals(NUM_USERS, before.getNumUsers());
+		assertEquals(NUM_ITEMS, before.getNumItems());
+		assertNull(before.getUserVector(newUser));
+		assertNull(before.getItemVector(newItem));
+		before.recommend(RandomModel.userID(0), result);
+		assertTrue(result.getID(0) != newItem);
+
+		// an appended key is updated in place of being appended again
+		LiveModel.Update next = live.beginUpdate();
+		next.setUserVector(newUser, vector(-1f));
+		LiveModel.Snapshot last = next.publish();
+		assertEquals(NUM_USERS + 1, last.getNumUsers());
+		assertEquals(-1f, last.getUserVector(newUser)[0], 0f);
+		assertEquals(2f, after.getUserVector(newUser)[0], 0f);
+	}
+
+	public void testUnpublishedUpdateLeavesNoTrace(){
+		LiveModel.Update discarded = live.beginUpdate();
+		discarded.setUserVector(2, vector(1f));
+		discarded.setUserVector(RandomModel.userID(0), vector(1f));
+
+		// the update is replaced by a new one, which appends another user in the same row
+		LiveModel.Update update = live.beginUpdate();
+		update.setUserVector(5, vector(2f));
+		LiveModel.Snapshot snapshot = update.publish();
+
+		assertEquals(NUM_USERS + 1, snapshot.getNumUsers());
+		assertNull(snapshot.getUserVector(2));
+		assertEquals(2f, snapshot.getUserVector(5)[0], 0f);
+		assertEquals(model.getUserFactors().get(0, 0), snapshot.getUserVector(RandomModel.userID(0))[0], 0f);
+	}
+
+	public void testUpdateOfAnOldSnapshotIsRejected(){
+		LiveModel.Update first = live.beginUpdate();
+		LiveModel.Update second = live.beginUpdate();
+		first.setUserVector(RandomModel.userID(1), vector(1f));
+		second.setUserVector(RandomModel.userID(1), vector(2f));
+		first.publish();
+		try{
+			second.publish();
+			fail("the update is based on an old snapshot");
+		}catch(IllegalStateException expected){
+		}
+		assertEquals(1f, live.getSnapshot().getUserVector(RandomModel.userID(1))[0], 0f);
+	}
+
+	/*
+	 * Every update sets all users to its version, so a reader sees one value in all rows of a snapshot
+	 */
+	public void testReadersNeverSeeAPartialUpdate() throws InterruptedException{
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicReference<String> failure = new AtomicReference<String>();
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while(!done.get() && failure.get() == null){
+					LiveModel.Snapshot snapshot = live.getSnapshot();
+					if(snapshot.getVersion() == 0){
+						continue;
+					}
+					float expected = snapshot.getVersion();
+					for(int row = 0; row < NUM_USERS; row ++){
+						float value = snapshot.getUserVector(RandomModel.userID(row))[RANK - 1];
+						if(value != expected){
+							failure.set("user " + row + " has " + value + " in snapshot " + expected);
+							break;
+						}
+					}
+				}
+			}
+		});
+		reader.start();
+		for(int version = 1; version <= 50; version ++){
+			LiveModel.Update update = live.beginUpdate();
+			for(int row = NUM_USERS - 1; row >= 0; row --){
+				update.setUserVector(RandomModel.userID(row), vector(version));
+			}
+			update.publish();
+		}
+		done.set(true);
+		reader.join();
+		assertNull(failure.get(), failure.get());
+	}
+
+	public void testModelWithDictionaryRejectsNewKeys() throws IOException{
+		Random random = new Random(29);
+		ModelWriter writer = new ModelWriter(RANK, RandomModel.LAMBDA, RandomModel.ITERATIONS);
+		writer.setUsers(new int[] {0, 1}, RandomModel.factors(2, RANK, random), null);
+		writer.setItems(new int[] {0, 1, 2}, RandomModel.factors(3, RANK, random), null);
+		writer.setExternalIDs(new long[] {100, 200}, new long[] {7, 8, 9});
+		writer.write(written);
+		FactorModel dictionaryModel = FactorModel.load(written);
+		try{
+			LiveModel dictionaryLive = new LiveModel(dictionaryModel);
+			LiveModel.Update update = dictionaryLive.beginUpdate();
+			update.setUserVector(1, vector(1f));
+			try{
+				update.setUserVector(2, vector(2f));
+				fail("user 2 has no external ID");
+			}catch(IllegalArgumentException expected){
+			}
+			try{
+				update.setItemVector(3, vector(2f));
+				fail("item 3 has no external ID");
+			}catch(IllegalArgumentException expected){
+			}
+			LiveModel.Snapshot snapshot = update.publish();
+			assertEquals(2, snapshot.getNumUsers());
+			assertEquals(3, snapshot.getNumItems());
+
+			// the update of a known key is written with the external IDs of the model
+			File copy = File.createTempFile("snapshot", FactorModel.FILE_EXTENSION);
+			snapshot.write(copy);
+			FactorModel loaded = FactorModel.load(copy);
+			try{
+				assertTrue(loaded.hasDictionary());
+				assertEquals(200, loaded.getExternalUserID(1));
+				assertEquals(1f, loaded.getUserFactors().get(1, 0), 0f);
+				assertEquals(9, loaded.getExternalItemID(2));
+			}finally{
+				loaded.close();
+				copy.delete();
+			}
+		}finally{
+			dictionaryModel.close();
+		}
+	}
+
+	public void testWrittenSnapshotIsLoadedWithItsUpdates() throws IOException{
+		LiveModel.Update update = live.beginUpdate();
+		update.setUserVector(RandomModel.userID(3), vector(1f));
+		update.setUserVector(0, vector(2f));
+		update.setItemVector(1000000, vector(3f));
+		update.publish().write(written);
+
+		FactorModel loaded = FactorModel.load(written);
+		try{
+			assertEquals(NUM_USERS + 1, loaded.getNumUsers());
+			assertEquals(NUM_ITEMS + 1, loaded.getNumItems());
+			assertEquals(RANK, loaded.getRank());
+			assertEquals(model.getLambda(), loaded.getLambda(), 0);
+			// the appended user 0 is the first one of the sorted IDs
+			assertEquals(0, loaded.getUserID(0));
+			assertEquals(2f, loaded.getUserFactors().get(0, 0), 0f);
+			assertEquals(1f, loaded.getUserFactors().get(loaded.userRow(RandomModel.userID(3)), 0), 0f);
+			assertEquals(NUM_ITEMS, loaded.itemRow(1000000));
+			assertEquals(3f, loaded.getItemFactors().get(NUM_ITEMS, RANK - 1), 0f);
+			int row = loaded.userRow(RandomModel.userID(2000));
+			assertEquals(model.getUserFactors().get(2000, 1), loaded.getUserFactors().get(row, 1), 0f);
+		}finally{
+			loaded.close();
+		}
+	}
+
+}
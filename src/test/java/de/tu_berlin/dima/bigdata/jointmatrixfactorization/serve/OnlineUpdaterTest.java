@@ -0,0 +1,119 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.serve;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorModel;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.RandomModel;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.solve.NormalEquations;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingBlock;
+
+/*
+ * Checks which keys a batch of received ratings re-solves, with and without the ratings of the training
+ */
+public class OnlineUpdaterTest extends TestCase {
+
+	private static final int RANK = 4;
+	private static final int NUM_USERS = 20;
+	private static final int NUM_ITEMS = 30;
+	private static final int NEW_USER = 2;
+
+	private File file;
+	private File feed;
+	private FactorModel model;
+	private LiveModel live;
+
+	@Override
+	protected void setUp() throws IOException{
+		file = File.createTempFile("online", FactorModel.FILE_EXTENSION);
+		feed = File.createTempFile("online", ".ratings");
+		model = RandomModel.write(file, RANK, NUM_USERS, NUM_ITEMS, 31);
+		live = new LiveModel(model);
+
+		// user 0 rates item 0 again and a new user rates items 1 and 2
+		FileOutputStream out = new FileOutputStream(feed);
+		try{
+			out.write((RandomModel.userID(0) + "\t" + RandomModel.itemID(0) + "\t5\n"
+					+ NEW_USER + "\t" + RandomModel.itemID(1) + "\t4\n"
+					+ NEW_USER + "\t" + RandomModel.itemID(2) + "\t3\n").getBytes("US-ASCII"));
+		}finally{
+			out.close();
+		}
+	}
+
+	@Override
+	protected void tearDown() throws IOException{
+		model.close();
+		file.delete();
+		feed.delete();
+	}
+
+	/*
+	 * Applies the batches of the feed until its three ratings are applied
+	 */
+	private void apply(OnlineUpdater updater) throws Exception{
+		updater.tail(feed, true);
+		int numApplied = 0;
+		long deadline = System.currentTimeMillis() + 10000;
+		while(numApplied < 3 && System.currentTimeMillis() < deadline){
+			numApplied += updater.applyBatch();
+			Thread.sleep(5);
+		}
+		updater.stop();
+		assertEquals(3, numApplied);
+	}
+
+	public void testWithoutRatingsOfTheTrainingOnlyNewKeysAreAdded() throws Exception{
+		LiveModel.Snapshot before = live.getSnapshot();
+		apply(new OnlineUpdater(live, null, null, 2));
+
+		LiveModel.Snapshot after = live.getSnapshot();
+		assertSame(before.getUserVector(RandomModel.userID(0)), after.getUserVector(RandomModel.userID(0)));
+		for(int row = 0; row < 3; row ++){
+			assertSame(before.getItemVector(RandomModel.itemID(row)), after.getItemVector(RandomModel.itemID(row)));
+		}
+		assertNull(before.getUserVector(NEW_USER));
+		assertNotNull(after.getUserVector(NEW_USER));
+		assertEquals(NUM_USERS + 1, after.getNumUsers());
+	}
+
+	public void testKeysOfTheModelAreSolvedFromAllTheirRatings() throws Exception{
+		// user 0 has three ratings of the training, the one of item 0 is replaced by the received one
+		RatingBlock byUser = new RatingBlock();
+		RatingBlock byItem = new RatingBlock();
+		float[] ratings = {1f, 2f, 3f};
+		for(int row = 0; row < ratings.length; row ++){
+			byUser.add(RandomModel.userID(0), RandomModel.itemID(row), ratings[row]);
+			byItem.add(RandomModel.itemID(row), RandomModel.userID(0), ratings[row]);
+		}
+		byUser.seal();
+		byItem.seal();
+
+		LiveModel.Snapshot before = live.getSnapshot();
+		NormalEquations equations = new NormalEquations(RANK);
+		equations.add(before.getItemVector(RandomModel.itemID(0)), 0, 5f);
+		equations.add(before.getItemVector(RandomModel.itemID(1)), 0, 2f);
+		equations.add(before.getItemVector(RandomModel.itemID(2)), 0, 3f);
+		double[] solution = new double[RANK];
+		assertTrue(equations.solve(model.getLambda(), solution));
+
+		apply(new OnlineUpdater(live, byUser, byItem, 2));
+
+		float[] user = live.getSnapshot().getUserVector(RandomModel.userID(0));
+		for(int i = 0; i < RANK; i ++){
+			assertEquals(solution[i], user[i], 1e-5);
+		}
+		assertFalse(Arrays.equals(before.getItemVector(RandomModel.itemID(0)),
+				live.getSnapshot().getItemVector(RandomModel.itemID(0))));
+	}
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Project: JointMatrixFactorization
+ * @author Fangzhou Yang
+ * @author Xugang Zhou
+ * @version 1.0
+ */
+package de.tu_berlin.dima.bigdata.jointmatrixfactorization.serve;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.FactorModel;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.model.RandomModel;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.type.RatingBlock;
+import de.tu_berlin.dima.bigdata.jointmatrixfactorization.util.TopKHeap;
+
+/*
+ * Checks the recommendations of the TopKScorer against the exact top-K of every user,
+ * with more items than one block of the scorer
+ */
+public class TopKScorerTest extends TestCase {
+
+	private static final int RANK = 8;
+	private static final int NUM_USERS = 50;
+	private static final int NUM_ITEMS = 2500;
+	private static final int K = 10;
+	// a float sum of RANK products differs from the double sum by far less
+	private static final double TOLERANCE = 1e-4;
+
+	private File file;
+	private FactorModel model;
+	private TopKScorer scorer;
+
+	@Override
+	protected void setUp() throws IOException{
+		file = File.createTempFile("scorer", FactorModel.FILE_EXTENSION);
+		model = RandomModel.write(file, RANK, NUM_USERS, NUM_ITEMS, 11);
+		scorer = new TopKScorer(model);
+	}
+
+	@Override
+	protected void tearDown() throws IOException{
+		model.close();
+		file.delete();
+	}
+
+	private float[] userVector(int row){
+		float[] vector = new float[RANK];
+		model.getUserFactors().getRow(row, vector, 0);
+		return vector;
+	}
+
+	/*
+	 * The scores have to be the exact ones best first, and every itemID has to have its score,
+	 * so items of the same score may be in any order
+	 */
+	private void assertTopK(BruteForce expected, TopKHeap actual, float[] vector){
+		assertEquals(K, actual.size());
+		for(int i = 0; i < K; i ++){
+			assertEquals(expected.getScore(i), actual.getScore(i), TOLERANCE);
+			int itemRow = model.itemRow(actual.getID(i));
+			assertTrue(itemRow >= 0);
+			assertEquals(actual.getScore(i), RandomModel.dot(vector, model.getItemFactors(), itemRow), TOLERANCE);
+		}
+		assertEquals(K, expected.hits(K, idsOf(actual), K));
+	}
+
+	private static int[] idsOf(TopKHeap heap){
+		int[] ids = new int[heap.size()];
+		for(int i = 0; i < ids.length; i ++){
+			ids[i] = heap.getID(i);
+		}
+		return ids;
+	}
+
+	public void testRecommendIsTheExactTopK(){
+		TopKHeap result = new TopKHeap(K);
+		for(int row = 0; row < NUM_USERS; row ++){
+			float[] vector = userVector(row);
+			scorer.recommend(RandomModel.userID(row), result);
+			assertTopK(new BruteForce(model, vector, null), result, vector);
+		}
+	}
+
+	public void testRecommendOfAVector(){
+		TopKHeap result = new TopKHeap(K);
+		float[] vector = userVector(17);
+		for(int i = 0; i < RANK; i ++){
+			vector[i] = -vector[i];
+		}
+		scorer.recommend(vector, result);
+		assertTopK(new BruteForce(model, vector, null), result, vector);
+	}
+
+	public void testBatchEqualsSingleRequests() throws IOException{
+		int[] userIDs = new int[NUM_USERS + 1];
+		TopKHeap[] results = new TopKHeap[userIDs.length];
+		for(int i = 0; i < NUM_USERS; i ++){
+			userIDs[i] = RandomModel.userID(NUM_USERS - 1 - i);
+			results[i] = new TopKHeap(K);
+		}
+		// a user which is not in the model gets no recommendations
+		userIDs[NUM_USERS] = 2;
+		results[NUM_USERS] = new TopKHeap(K);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try{
+			scorer.recommend(userIDs, results, executor);
+		}finally{
+			executor.shutdown();
+		}
+		TopKHeap single = new TopKHeap(K);
+		for(int i = 0; i < NUM_USERS; i ++){
+			scorer.recommend(userIDs[i], single);
+			assertEquals(single.size(), results[i].size());
+			for(int j = 0; j < single.size(); j ++){
+				assertEquals(single.getID(j), results[i].getID(j));
+				assertEquals(single.getScore(j), results[i].getScore(j), 0f);
+			}
+		}
+		assertEquals(0, results[NUM_USERS].size());
+	}
+
+	public void testRatedItemsAreExcluded(){
+		int userRow = 3;
+		float[] vector = userVector(userRow);
+		BruteForce all = new BruteForce(model, vector, null);
+		// the best five items, one of the last block and one which is not in the model are rated
+		RatingBlock ratings = new RatingBlock();
+		Set<Integer> rated = new HashSet<Integer>();
+		for(int i = 0; i < 5; i ++){
+			rated.add(all.getID(i));
+		}
+		rated.add(RandomModel.itemID(NUM_ITEMS - 1));
+		for(int itemID : rated){
+			ratings.add(RandomModel.userID(userRow), itemID, 5f);
+		}
+		ratings.add(RandomModel.userID(userRow), 4, 1f);
+		ratings.add(RandomModel.userID(userRow + 1), all.getID(0), 1f);
+		ratings.seal();
+		scorer.setRatedItems(ratings);
+
+		TopKHeap result = new TopKHeap(K);
+		scorer.recommend(RandomModel.userID(userRow), result);
+		assertTopK(new BruteForce(model, vector, rated), result, vector);
+
+		// the rated items of one request are cleared before the next one
+		float[] next = userVector(userRow + 1);
+		scorer.recommend(RandomModel.userID(userRow + 1), result);
+		Set<Integer> nextRated = new HashSet<Integer>();
+		nextRated.add(all.getID(0));
+		assertTopK(new BruteForce(model, next, nextRated), result, next);
+	}
+
+	public void testUnknownUserGetsNothing(){
+		TopKHeap result = new TopKHeap(K);
+		scorer.recommend(RandomModel.userID(0), result);
+		// the result of the previous request is cleared as well
+		scorer.recommend(0, result);
+		assertEquals(0, result.size());
+	}
+
+}